@@ -0,0 +1,132 @@
+package com.zpark.wsagent.chatModel;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.ReactorNettyClientRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * 模型供应商 HTTP 客户端：每个供应商一个共享的 Reactor Netty HttpClient 与连接池
+ * - 同一供应商的所有 Agent（DashScope / Ollama 的同步 RestClient 与流式 WebClient、ModelScope 的 WebClient）复用同一连接池，
+ *   不再每次构建 Agent 都新建客户端、重新建连与 TLS 握手；供应商之间连接池隔离，一家慢不会占满另一家的连接
+ * - 连接池：最大连接数、等待获取连接的队列长度与超时（超出即快速失败，不无限堆积）、空闲与最长存活时间（keep-alive 复用）
+ * - https 供应商经 ALPN 协商 HTTP/2（一个连接多路复用），协商失败回落 HTTP/1.1；http 供应商使用 HTTP/1.1
+ * - 连接池指标由 Reactor Netty 发布到 Micrometer 全局注册表（Spring Boot 默认同步到应用的 MeterRegistry）：
+ *   reactor.netty.connection.provider.total.connections / active.connections / idle.connections / pending.connections 等，
+ *   以 name=ai-{vendor} 区分供应商
+ *
+ * 配置（application.properties，对所有供应商生效）：
+ *   ai.http.max-connections              每个供应商的最大连接数
+ *   ai.http.pending-acquire-max-count    等待获取连接的最大请求数
+ *   ai.http.pending-acquire-timeout-ms   等待获取连接的超时
+ *   ai.http.max-idle-seconds             空闲连接保留时间
+ *   ai.http.max-life-seconds             连接最长存活时间
+ *   ai.http.connect-timeout-ms           建连超时
+ *   ai.http.response-timeout-seconds     响应超时（模型生成较慢，默认较长）
+ *   ai.http.http2                        https 供应商是否启用 HTTP/2
+ */
+@Slf4j
+@Component
+public class VendorHttpClients {
+
+    // vendor -> 连接池与客户端
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    private final int maxConnections;
+    private final int pendingAcquireMaxCount;
+    private final Duration pendingAcquireTimeout;
+    private final Duration maxIdleTime;
+    private final Duration maxLifeTime;
+    private final int connectTimeoutMs;
+    private final Duration responseTimeout;
+    private final boolean http2;
+
+    public VendorHttpClients(@Value("${ai.http.max-connections:50}") int maxConnections,
+                             @Value("${ai.http.pending-acquire-max-count:500}") int pendingAcquireMaxCount,
+                             @Value("${ai.http.pending-acquire-timeout-ms:10000}") long pendingAcquireTimeoutMs,
+                             @Value("${ai.http.max-idle-seconds:30}") long maxIdleSeconds,
+                             @Value("${ai.http.max-life-seconds:300}") long maxLifeSeconds,
+                             @Value("${ai.http.connect-timeout-ms:5000}") int connectTimeoutMs,
+                             @Value("${ai.http.response-timeout-seconds:120}") long responseTimeoutSeconds,
+                             @Value("${ai.http.http2:true}") boolean http2) {
+        this.maxConnections = Math.max(1, maxConnections);
+        this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+        this.pendingAcquireTimeout = Duration.ofMillis(Math.max(1, pendingAcquireTimeoutMs));
+        this.maxIdleTime = Duration.ofSeconds(Math.max(1, maxIdleSeconds));
+        this.maxLifeTime = Duration.ofSeconds(Math.max(1, maxLifeSeconds));
+        this.connectTimeoutMs = Math.max(1, connectTimeoutMs);
+        this.responseTimeout = Duration.ofSeconds(Math.max(1, responseTimeoutSeconds));
+        this.http2 = http2;
+    }
+
+    /**
+     * 供应商共享的 HttpClient；首次调用时按 baseUrl 的协议创建，之后同一供应商始终返回同一实例
+     */
+    public HttpClient httpClient(String vendor, String baseUrl) {
+        return pools.computeIfAbsent(vendor.toLowerCase(), v -> createPool(v, baseUrl)).client;
+    }
+
+    /**
+     * 使用供应商共享连接池的 RestClient.Builder（同步调用），超时与响应超时一致
+     */
+    public RestClient.Builder restClientBuilder(String vendor, String baseUrl) {
+        ReactorNettyClientRequestFactory requestFactory = new ReactorNettyClientRequestFactory(httpClient(vendor, baseUrl));
+        requestFactory.setExchangeTimeout(responseTimeout);
+        requestFactory.setReadTimeout(responseTimeout);
+        return RestClient.builder().requestFactory(requestFactory);
+    }
+
+    /**
+     * 使用供应商共享连接池的 WebClient.Builder（流式调用）
+     */
+    public WebClient.Builder webClientBuilder(String vendor, String baseUrl) {
+        return WebClient.builder().clientConnector(new ReactorClientHttpConnector(httpClient(vendor, baseUrl)));
+    }
+
+    private Pool createPool(String vendor, String baseUrl) {
+        ConnectionProvider provider = ConnectionProvider.builder("ai-" + vendor)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(maxIdleTime)
+                .metrics(true)
+                .build();
+        HttpClient client = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(responseTimeout);
+        boolean secure = baseUrl != null && baseUrl.regionMatches(true, 0, "https:", 0, 6);
+        if (http2 && secure) {
+            client = client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+        log.info("创建模型供应商 HTTP 连接池 vendor={} maxConnections={} http2={}", vendor, maxConnections, http2 && secure);
+        return new Pool(provider, client);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Pool pool : pools.values()) {
+            pool.provider.dispose();
+        }
+        pools.clear();
+    }
+
+    private record Pool(ConnectionProvider provider, HttpClient client) {
+    }
+}
@@ -6,6 +6,7 @@ import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
 import com.zpark.wsagent.chatModel.AgentProvider;
+import com.zpark.wsagent.chatModel.VendorHttpClients;
 
 import java.util.List;
 
@@ -22,12 +23,20 @@ public class DashScope implements AgentProvider {
     @Value("${spring.ai.dashscope.apiUrl}")
     private String apiUrl;
 
+    private final VendorHttpClients httpClients;
+
+    public DashScope(VendorHttpClients httpClients) {
+        this.httpClients = httpClients;
+    }
+
     @Override
     public ReactAgent getAgent(String modelName,String prompt,List<ToolCallback> tool) {
-        // 创建 DashScope API 实例
+        // 创建 DashScope API 实例（同步与流式调用共用 dashscope 的共享连接池）
         DashScopeApi dashScopeApi = DashScopeApi.builder()
                 .apiKey(apiKey)
                 .baseUrl(apiUrl)
+                .restClientBuilder(httpClients.restClientBuilder(getVendor(), apiUrl))
+                .webClientBuilder(httpClients.webClientBuilder(getVendor(), apiUrl))
                 .build();
 
         // 创建 ChatModel
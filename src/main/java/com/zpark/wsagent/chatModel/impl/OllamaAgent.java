@@ -9,18 +9,31 @@ import org.springframework.ai.tool.ToolCallback;
 
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
 import com.zpark.wsagent.chatModel.AgentProvider;
+import com.zpark.wsagent.chatModel.VendorHttpClients;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class OllamaAgent implements AgentProvider {
 
+    @Value("${spring.ai.ollama.base-url:http://localhost:11434}")
+    private String baseUrl;
+
+    private final VendorHttpClients httpClients;
+
+    public OllamaAgent(VendorHttpClients httpClients) {
+        this.httpClients = httpClients;
+    }
 
     @Override
     public ReactAgent getAgent(String model,String prompt,List<ToolCallback> tool ) { // 统一接口方法：根据模型名返回 ReactAgent
         // 构建Ollama API客户端
         OllamaApi builder = OllamaApi.builder() // 通过静态 builder() 方法获取 OllamaApi 的构建器
-                .build(); // 调用 build() 生成 OllamaApi 客户端实例（使用默认配置）
+                .baseUrl(baseUrl) // Ollama 服务地址
+                .restClientBuilder(httpClients.restClientBuilder(getVendor(), baseUrl)) // 同步调用使用 ollama 的共享连接池
+                .webClientBuilder(httpClients.webClientBuilder(getVendor(), baseUrl)) // 流式调用使用同一连接池
+                .build(); // 调用 build() 生成 OllamaApi 客户端实例
 
         // 创建Ollama聊天模型并配置默认选项
         OllamaChatModel ollamaChatModel = OllamaChatModel.builder() // 获取 OllamaChatModel 的构建器，用于创建聊天模型
@@ -11,11 +11,13 @@ import org.springframework.web.reactive.function.client.WebClient;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
 import com.shiwu.ai.modelscope.ModelScopeWebClientChatModel;
 import com.zpark.wsagent.chatModel.AgentProvider;
+import com.zpark.wsagent.chatModel.VendorHttpClients;
 
 /**
  * ModelScope 构建器：
  * - 仅负责暴露 ChatClient.Builder
  * - 通过 WebClient + ModelScopeWebClientChatModel 调用兼容 OpenAI 的 /v1/chat/completions
+ * - WebClient 使用 modelscope 的共享连接池（见 VendorHttpClients）
  *
  * 使用方式（application.properties）：
  *   ai.vendor=modelscope
@@ -38,11 +40,18 @@ public class modelScopeAi implements AgentProvider {
 
     @Value("${spring.ai.modelscope.stream:false}")
     private boolean stream;
+
+    private final VendorHttpClients httpClients;
+
+    public modelScopeAi(VendorHttpClients httpClients) {
+        this.httpClients = httpClients;
+    }
+
     /**
      * 暴露 ChatClient.Builder，供 AiBuilderConfig 注入使用
      */
     public ReactAgent getAgent(String model,String prompt,List<ToolCallback> tool) {
-        WebClient webClient = WebClient.builder()
+        WebClient webClient = httpClients.webClientBuilder(getVendor(), baseUrl)
                 .baseUrl(baseUrl)
                 .defaultHeader("Authorization", "Bearer " + apiKey)
                 .build();
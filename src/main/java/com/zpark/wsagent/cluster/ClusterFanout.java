@@ -0,0 +1,216 @@
+package com.zpark.wsagent.cluster;
+
+import com.zpark.wsagent.websocket.ChatDispatcher;
+import com.zpark.wsagent.websocket.ChatSessionRegistry;
+import com.zpark.wsagent.websocket.RegistryListener;
+import com.zpark.wsagent.websocket.RoomReplayBuffer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 集群扇出：让房间与私聊跨节点生效
+ * - 发送方节点先投递本地会话，再把已编码的帧发布到 Redis 频道（房间：{prefix}room:{roomId}，用户：{prefix}user:{userId}）
+ * - 只有本地存在该房间成员 / 该用户连接的节点才订阅对应频道，订阅随注册表变化动态增删
+ * - 收到消息的节点只投递给自己的本地会话；消息带来源 nodeId，发送方节点忽略自己的回环消息
+ * - 房间消息额外携带房间序号，接收节点同时写入本地回放缓冲，重连补齐不必回退数据库；
+ *   退订房间频道时丢弃该房间的回放缓冲（退订期间的消息不会到达本节点，缓冲不再完整）
+ *
+ * 未启用集群（chat.cluster.enabled=false，无 ClusterTransport）时所有发布操作为空操作。
+ */
+@Slf4j
+@Component
+public class ClusterFanout implements RegistryListener {
+
+    private static final String ROOM_CHANNEL = "room:";
+    private static final String USER_CHANNEL = "user:";
+
+    private final ChatSessionRegistry registry;
+    private final ChatDispatcher dispatcher;
+    private final ClusterTransport transport;
+    private final RoomReplayBuffer replayBuffer;
+    private final String nodeId;
+    private final String channelPrefix;
+    // 频道 -> 订阅状态（未订阅且无对齐进行中的频道不保留条目）
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ClusterFanout(ChatSessionRegistry registry,
+                         ChatDispatcher dispatcher,
+                         ObjectProvider<ClusterTransport> transport,
+                         RoomReplayBuffer replayBuffer,
+                         @Value("${chat.cluster.node-id:}") String nodeId,
+                         @Value("${chat.cluster.channel-prefix:wsagent:}") String channelPrefix) {
+        this(registry, dispatcher, transport.getIfAvailable(), replayBuffer, nodeId, channelPrefix);
+    }
+
+    public ClusterFanout(ChatSessionRegistry registry,
+                         ChatDispatcher dispatcher,
+                         ClusterTransport transport,
+                         RoomReplayBuffer replayBuffer,
+                         String nodeId,
+                         String channelPrefix) {
+        this.registry = registry;
+        this.dispatcher = dispatcher;
+        this.transport = transport;
+        this.replayBuffer = replayBuffer;
+        this.nodeId = StringUtils.hasText(nodeId) ? nodeId : UUID.randomUUID().toString();
+        this.channelPrefix = channelPrefix;
+        if (transport != null) {
+            registry.addListener(this);
+            log.info("集群扇出已启用，nodeId={}", this.nodeId);
+        }
+    }
+
+    public boolean isEnabled() {
+        return transport != null;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 将已编码的群聊帧连同房间序号发布给其他节点（本节点会话由调用方直接投递）
+     */
+    public void publishToRoom(String roomId, long seq, TextMessage frame) {
+        publish(channelPrefix + ROOM_CHANNEL + roomId, seq + "\n" + frame.getPayload());
+    }
+
+    /**
+     * 将已编码的私聊帧发布给该用户连接所在的其他节点
+     */
+    public void publishToUser(String userId, TextMessage frame) {
+        publish(channelPrefix + USER_CHANNEL + userId, frame.getPayload());
+    }
+
+    private void publish(String channel, String body) {
+        if (transport == null) {
+            return;
+        }
+        try {
+            // 信封格式：nodeId + '\n' + [房间序号 + '\n'] + 帧内容，避免对 JSON 再做一次编码
+            transport.publish(channel, nodeId + '\n' + body);
+        } catch (Exception e) {
+            // 集群通道异常不影响本节点投递
+            log.warn("集群发布失败 channel={}: {}", channel, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onRoomChanged(String roomId) {
+        sync(channelPrefix + ROOM_CHANNEL + roomId, () -> registry.hasRoom(roomId), () -> replayBuffer.remove(roomId));
+    }
+
+    @Override
+    public void onUserChanged(String userId) {
+        sync(channelPrefix + USER_CHANNEL + userId, () -> registry.hasLocalSession(userId), () -> { });
+    }
+
+    /**
+     * 按注册表当前状态对齐订阅：同一频道同一时刻只有一个线程在对齐，且总以最新状态为准，回调乱序也不会留下错误订阅
+     * - 是否需要对齐在 compute 内决定，订阅/退订的 Redis 往返在 compute 之外执行，不占用 Map 的桶锁
+     * - 对齐进行中到来的变更只做标记，由正在对齐的线程按最新状态再对齐一轮
+     *
+     * @param onInactive 对齐完成后频道处于未订阅状态时执行
+     */
+    private void sync(String channel, BooleanSupplier wanted, Runnable onInactive) {
+        boolean[] owner = {false};
+        Subscription sub = subscriptions.compute(channel, (ch, s) -> {
+            Subscription state = s != null ? s : new Subscription();
+            if (state.syncing) {
+                state.dirty = true;
+            } else {
+                state.syncing = true;
+                owner[0] = true;
+            }
+            return state;
+        });
+        if (!owner[0]) {
+            return;
+        }
+        boolean again;
+        do {
+            try {
+                boolean want = wanted.getAsBoolean();
+                if (want && !sub.active) {
+                    transport.subscribe(channel, this::onClusterMessage);
+                    sub.active = true;
+                } else if (!want && sub.active) {
+                    sub.active = false;
+                    transport.unsubscribe(channel);
+                }
+            } catch (Exception e) {
+                log.warn("集群订阅变更失败 channel={}: {}", channel, e.getMessage());
+            }
+            if (!sub.active) {
+                onInactive.run();
+            }
+            boolean[] dirty = {false};
+            subscriptions.compute(channel, (ch, s) -> {
+                if (s.dirty) {
+                    s.dirty = false;
+                    dirty[0] = true;
+                    return s;
+                }
+                s.syncing = false;
+                return s.active ? s : null;
+            });
+            again = dirty[0];
+        } while (again);
+    }
+
+    private boolean isSubscribed(String channel) {
+        Subscription s = subscriptions.get(channel);
+        return s != null && s.active;
+    }
+
+    private void onClusterMessage(String channel, String message) {
+        int sep = message.indexOf('\n');
+        if (sep < 0) {
+            return;
+        }
+        if (nodeId.equals(message.substring(0, sep))) {
+            return; // 本节点发出的消息已在本地投递
+        }
+        String roomPrefix = channelPrefix + ROOM_CHANNEL;
+        String userPrefix = channelPrefix + USER_CHANNEL;
+        if (channel.startsWith(roomPrefix)) {
+            int seqEnd = message.indexOf('\n', sep + 1);
+            if (seqEnd < 0) {
+                return;
+            }
+            if (!isSubscribed(channel)) {
+                return; // 已退订，不再写入回放缓冲
+            }
+            String roomId = channel.substring(roomPrefix.length());
+            long seq = Long.parseLong(message.substring(sep + 1, seqEnd));
+            TextMessage frame = new TextMessage(message.substring(seqEnd + 1));
+            replayBuffer.record(roomId, seq, frame);
+            dispatcher.broadcast(registry.getRoomMembers(roomId), frame);
+        } else if (channel.startsWith(userPrefix)) {
+            TextMessage frame = new TextMessage(message.substring(sep + 1));
+            dispatcher.deliverToUser(channel.substring(userPrefix.length()), frame);
+        }
+    }
+
+    /**
+     * 单个频道的订阅状态；syncing / dirty 只在 compute 内读写，active 由正在对齐的线程写入
+     */
+    private static final class Subscription {
+        volatile boolean active;
+        boolean syncing;
+        boolean dirty;
+    }
+}
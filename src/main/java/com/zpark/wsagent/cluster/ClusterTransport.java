@@ -0,0 +1,26 @@
+package com.zpark.wsagent.cluster;
+
+import java.util.function.BiConsumer;
+
+/**
+ * 集群消息通道抽象（发布/订阅）
+ * - 生产实现：RedisClusterTransport（Redis Pub/Sub）
+ * - 测试可替换为进程内的替身实现
+ */
+public interface ClusterTransport {
+
+    /**
+     * 向频道发布一条消息
+     */
+    void publish(String channel, String message);
+
+    /**
+     * 订阅频道，收到消息时回调 listener(channel, message)
+     */
+    void subscribe(String channel, BiConsumer<String, String> listener);
+
+    /**
+     * 取消订阅频道
+     */
+    void unsubscribe(String channel);
+}
@@ -0,0 +1,99 @@
+package com.zpark.wsagent.cluster;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于 Redis Pub/Sub 的集群消息通道
+ * 仅在 chat.cluster.enabled=true 时启用；订阅按频道动态增删，只订阅本节点关心的房间/用户频道。
+ * - 监听容器在订阅线程上同步分发（不使用默认的每条消息一个新线程），再按频道散列到固定数量的单线程投递通道：
+ *   同一频道的消息按发布顺序投递，线程数固定为 chat.cluster.listener-threads
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "chat.cluster.enabled", havingValue = "true")
+public class RedisClusterTransport implements ClusterTransport {
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer container;
+    // channel -> 已注册的监听器（用于取消订阅）
+    private final Map<String, MessageListener> listeners = new ConcurrentHashMap<>();
+    // 按频道散列的串行投递通道
+    private final ExecutorService[] lanes;
+
+    public RedisClusterTransport(StringRedisTemplate redisTemplate,
+                                 RedisConnectionFactory connectionFactory,
+                                 @Value("${chat.cluster.listener-threads:4}") int listenerThreads) {
+        this.redisTemplate = redisTemplate;
+        this.lanes = new ExecutorService[Math.max(1, listenerThreads)];
+        for (int i = 0; i < lanes.length; i++) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cluster-listener-" + i + "-");
+            threadFactory.setDaemon(true);
+            lanes[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+        this.container = new RedisMessageListenerContainer();
+        this.container.setConnectionFactory(connectionFactory);
+        // 分发本身只是把消息放入投递通道，在订阅线程上同步执行即可保持到达顺序
+        this.container.setTaskExecutor(new SyncTaskExecutor());
+        this.container.afterPropertiesSet();
+        this.container.start();
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        redisTemplate.convertAndSend(channel, message);
+    }
+
+    @Override
+    public void subscribe(String channel, BiConsumer<String, String> listener) {
+        listeners.computeIfAbsent(channel, ch -> {
+            ExecutorService lane = lanes[Math.floorMod(ch.hashCode(), lanes.length)];
+            MessageListener ml = (message, pattern) -> {
+                String body = new String(message.getBody(), StandardCharsets.UTF_8);
+                lane.execute(() -> {
+                    try {
+                        listener.accept(ch, body);
+                    } catch (Exception e) {
+                        log.warn("集群消息处理失败 channel={}: {}", ch, e.getMessage());
+                    }
+                });
+            };
+            container.addMessageListener(ml, new ChannelTopic(ch));
+            return ml;
+        });
+    }
+
+    @Override
+    public void unsubscribe(String channel) {
+        MessageListener ml = listeners.remove(channel);
+        if (ml != null) {
+            container.removeMessageListener(ml, new ChannelTopic(channel));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        container.destroy();
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+    }
+}
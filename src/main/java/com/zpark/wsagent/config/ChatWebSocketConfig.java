@@ -1,31 +1,95 @@
 package com.zpark.wsagent.config;
 
+import com.zpark.wsagent.websocket.WireFormat;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * WebSocket配置：注册聊天端点"/ws/chat"
  * 支持群聊与私聊，后续由ChatWebSocketHandler处理消息路由。
+ *
+ * 子协议协商（chat.ws.cbor.enabled=true 时）：客户端在 Sec-WebSocket-Protocol 中声明 wsagent.cbor 即使用 CBOR 二进制帧，
+ * 声明 wsagent.json 或不声明则使用 JSON 文本帧。
+ *   const ws = new WebSocket("ws://localhost:8080/ws/chat?userId=alice", ["wsagent.cbor"]);
+ * chat.ws.deflate.enabled=true 时另提供 wsagent.json.deflate（下行大帧压缩，见 DeflateFrameCodec）；
+ * 选中该子协议的连接不再协商容器自带的 permessage-deflate 扩展，避免重复压缩。
  */
 @Configuration
 @EnableWebSocket
 public class ChatWebSocketConfig implements WebSocketConfigurer {
 
     private final WebSocketHandler chatWebSocketHandler;
+    private final boolean cborEnabled;
+    private final boolean deflateEnabled;
 
     @Autowired
-    public ChatWebSocketConfig(WebSocketHandler chatWebSocketHandler) {
+    public ChatWebSocketConfig(WebSocketHandler chatWebSocketHandler,
+                               @Value("${chat.ws.cbor.enabled:true}") boolean cborEnabled,
+                               @Value("${chat.ws.deflate.enabled:true}") boolean deflateEnabled) {
         this.chatWebSocketHandler = chatWebSocketHandler;
+        this.cborEnabled = cborEnabled;
+        this.deflateEnabled = deflateEnabled;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        List<String> protocols = new ArrayList<>();
+        if (cborEnabled) {
+            protocols.add(WireFormat.CBOR.subProtocol());
+        }
+        if (deflateEnabled) {
+            protocols.add(WireFormat.JSON_DEFLATE.subProtocol());
+        }
+        DefaultHandshakeHandler handshakeHandler = new WireFormatHandshakeHandler();
+        if (!protocols.isEmpty()) {
+            // 按客户端声明的顺序选取第一个支持的子协议
+            protocols.add(WireFormat.JSON.subProtocol());
+            handshakeHandler.setSupportedProtocols(protocols.toArray(String[]::new));
+        }
         // 允许所有来源；生产环境可改为指定域名
         registry.addHandler(chatWebSocketHandler, "/ws/chat")
+                .setHandshakeHandler(handshakeHandler)
                 .setAllowedOrigins("*");
     }
+
+    /**
+     * 选中 wsagent.json.deflate 的连接由应用层压缩，去掉客户端请求的 permessage-deflate 扩展
+     */
+    private static final class WireFormatHandshakeHandler extends DefaultHandshakeHandler {
+
+        @Override
+        protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                                                                     List<WebSocketExtension> requested,
+                                                                     List<WebSocketExtension> supported) {
+            List<WebSocketExtension> result = super.filterRequestedExtensions(request, requested, supported);
+            List<String> offered = new WebSocketHttpHeaders(request.getHeaders()).getSecWebSocketProtocol();
+            String selected = null;
+            for (String protocol : offered) {
+                if (Arrays.asList(getSupportedProtocols()).contains(protocol)) {
+                    selected = protocol;
+                    break;
+                }
+            }
+            if (WireFormat.fromSubProtocol(selected) != WireFormat.JSON_DEFLATE) {
+                return result;
+            }
+            return result.stream()
+                    .filter(ext -> !"permessage-deflate".equalsIgnoreCase(ext.getName()))
+                    .toList();
+        }
+    }
 }
@@ -2,13 +2,24 @@ package com.zpark.wsagent.controller;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.zpark.wsagent.dto.CursorPage;
+import com.zpark.wsagent.dto.MessageCursor;
 import com.zpark.wsagent.emtity.ChatMessageEntity;
 import com.zpark.wsagent.service.ChatMessageService;
+import com.zpark.wsagent.service.impl.ChatHistoryExporter;
+
+import jakarta.servlet.http.HttpServletResponse;
 
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 聊天记录查询控制器
@@ -24,15 +35,40 @@ import java.time.LocalDateTime;
  *
  * 返回：
  * - IPage<ChatMessageEntity>，包括 total/current/size/records 等
+ *
+ * 游标分页（深翻页推荐，不使用 OFFSET，默认不执行 COUNT）：
+ * - 群聊：GET /api/chat/group/{roomId}/messages/cursor
+ * - 私聊：GET /api/chat/private/messages/cursor
+ * 参数：
+ * - cursor: 上一页返回的 nextCursor（首页不传）
+ * - size: 每页大小（默认20，最大200）
+ * - order: desc（默认，从最新往更早翻）/ asc（从最早往后翻）
+ * - withTotal: 是否返回总条数（默认false）
+ * - startTime / endTime: 同上
+ *
+ * 最近消息（打开会话时的首屏，走最近消息缓存，按时间升序）：
+ * - 群聊：GET /api/chat/group/{roomId}/messages/recent?limit=50
+ * - 私聊：GET /api/chat/private/messages/recent?userA=alice&userB=bob&limit=50
+ *
+ * 全量导出（合规导出，NDJSON 流式输出，每行一条消息，按时间升序）：
+ * - 群聊：GET /api/chat/group/{roomId}/messages/export
+ * - 私聊：GET /api/chat/private/messages/export?userA=alice&userB=bob
+ * 参数：
+ * - gzip: 是否 gzip 压缩（默认false）
+ * - startTime / endTime: 同上
+ * 同时进行的导出数有上限（chat.export.max-concurrent），超出返回 429
  */
 @RestController
 @RequestMapping("/api/chat")
 public class ChatMessageController {
 
     private final ChatMessageService chatMessageService;
+    private final ChatHistoryExporter chatHistoryExporter;
 
-    public ChatMessageController(ChatMessageService chatMessageService) {
+    public ChatMessageController(ChatMessageService chatMessageService,
+                                 ChatHistoryExporter chatHistoryExporter) {
         this.chatMessageService = chatMessageService;
+        this.chatHistoryExporter = chatHistoryExporter;
     }
 
     /**
@@ -73,4 +109,159 @@ public class ChatMessageController {
         Page<ChatMessageEntity> page = new Page<>(pageNum, pageSize);
         return chatMessageService.pagePrivateHistory(page, userA, userB, startTime, endTime);
     }
+
+    /**
+     * 游标分页查询群聊历史
+     * 示例：
+     * GET /api/chat/group/room-1/messages/cursor?size=20
+     * GET /api/chat/group/room-1/messages/cursor?size=20&cursor={上一页的nextCursor}
+     */
+    @GetMapping("/group/{roomId}/messages/cursor")
+    public CursorPage<ChatMessageEntity> cursorGroupHistory(
+            @PathVariable("roomId") String roomId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size,
+            @RequestParam(value = "order", defaultValue = "desc") String order,
+            @RequestParam(value = "withTotal", defaultValue = "false") boolean withTotal,
+            @RequestParam(value = "startTime", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam(value = "endTime", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime
+    ) {
+        return chatMessageService.cursorGroupHistory(roomId, parseCursor(cursor), clampSize(size),
+                isNewestFirst(order), withTotal, startTime, endTime);
+    }
+
+    /**
+     * 游标分页查询私聊历史（双向）
+     * 示例：
+     * GET /api/chat/private/messages/cursor?userA=alice&userB=bob&size=20
+     */
+    @GetMapping("/private/messages/cursor")
+    public CursorPage<ChatMessageEntity> cursorPrivateHistory(
+            @RequestParam("userA") String userA,
+            @RequestParam("userB") String userB,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size,
+            @RequestParam(value = "order", defaultValue = "desc") String order,
+            @RequestParam(value = "withTotal", defaultValue = "false") boolean withTotal,
+            @RequestParam(value = "startTime", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam(value = "endTime", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime
+    ) {
+        return chatMessageService.cursorPrivateHistory(userA, userB, parseCursor(cursor), clampSize(size),
+                isNewestFirst(order), withTotal, startTime, endTime);
+    }
+
+    /**
+     * 房间最近消息
+     * 示例：
+     * GET /api/chat/group/room-1/messages/recent?limit=50
+     */
+    @GetMapping("/group/{roomId}/messages/recent")
+    public List<ChatMessageEntity> recentGroupMessages(
+            @PathVariable("roomId") String roomId,
+            @RequestParam(value = "limit", defaultValue = "50") int limit
+    ) {
+        return chatMessageService.recentGroupMessages(roomId, clampSize(limit));
+    }
+
+    /**
+     * 私聊最近消息（双向）
+     * 示例：
+     * GET /api/chat/private/messages/recent?userA=alice&userB=bob&limit=50
+     */
+    @GetMapping("/private/messages/recent")
+    public List<ChatMessageEntity> recentPrivateMessages(
+            @RequestParam("userA") String userA,
+            @RequestParam("userB") String userB,
+            @RequestParam(value = "limit", defaultValue = "50") int limit
+    ) {
+        return chatMessageService.recentPrivateMessages(userA, userB, clampSize(limit));
+    }
+
+    /**
+     * 导出房间全部群聊历史
+     * 示例：
+     * GET /api/chat/group/room-1/messages/export?gzip=true
+     */
+    @GetMapping("/group/{roomId}/messages/export")
+    public void exportGroupHistory(
+            @PathVariable("roomId") String roomId,
+            @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+            @RequestParam(value = "startTime", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam(value = "endTime", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            HttpServletResponse response
+    ) throws IOException {
+        export(response, "room-" + roomId, gzip,
+                sink -> chatMessageService.exportGroupHistory(roomId, startTime, endTime, sink));
+    }
+
+    /**
+     * 导出两个用户之间的全部私聊历史（双向）
+     * 示例：
+     * GET /api/chat/private/messages/export?userA=alice&userB=bob
+     */
+    @GetMapping("/private/messages/export")
+    public void exportPrivateHistory(
+            @RequestParam("userA") String userA,
+            @RequestParam("userB") String userB,
+            @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+            @RequestParam(value = "startTime", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam(value = "endTime", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            HttpServletResponse response
+    ) throws IOException {
+        export(response, "private-" + userA + "-" + userB, gzip,
+                sink -> chatMessageService.exportPrivateHistory(userA, userB, startTime, endTime, sink));
+    }
+
+    /**
+     * 直接写 Servlet 输出流（同步执行，不受异步请求超时限制），响应体长度未知时以 chunked 方式下发
+     * - 写出任何响应之前先申请导出名额，申请不到返回 429
+     * - 开始写出后的失败不再改写状态码，直接向上抛出中止响应（客户端收到的是不完整的下载）
+     */
+    private void export(HttpServletResponse response, String name, boolean gzip,
+                        Consumer<Consumer<ChatMessageEntity>> source) throws IOException {
+        ChatHistoryExporter.Permit permit = chatHistoryExporter.tryAcquire();
+        if (permit == null) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "同时进行的导出过多，请稍后重试");
+        }
+        try (permit) {
+            String filename = name.replaceAll("[^A-Za-z0-9._-]", "_") + (gzip ? ".ndjson.gz" : ".ndjson");
+            response.setContentType(gzip ? "application/gzip" : "application/x-ndjson");
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+            chatHistoryExporter.export(permit, response.getOutputStream(), gzip, source);
+        }
+    }
+
+    private static MessageCursor parseCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            return MessageCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    private static boolean isNewestFirst(String order) {
+        if ("asc".equalsIgnoreCase(order)) {
+            return false;
+        }
+        if ("desc".equalsIgnoreCase(order)) {
+            return true;
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "order 仅支持 asc / desc");
+    }
+
+    private static int clampSize(int size) {
+        return Math.min(Math.max(size, 1), 200);
+    }
 }
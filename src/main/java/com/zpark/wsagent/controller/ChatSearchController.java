@@ -0,0 +1,85 @@
+package com.zpark.wsagent.controller;
+
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+import com.zpark.wsagent.service.ChatMessageService;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 聊天消息全文检索控制器（进程内倒排索引，中文按二元组切分）
+ * - 群聊：GET /api/chat/group/{roomId}/messages/search?q=关键词
+ * - 私聊：GET /api/chat/private/messages/search?userA=alice&userB=bob&q=关键词
+ *
+ * 参数：
+ * - q: 关键词，多个词以空格分隔，要求全部命中
+ * - page: 第几页（从1开始，默认1）
+ * - size: 每页大小（默认20，最大100）
+ *
+ * 返回：
+ * - IPage<ChatMessageEntity>，records 按相关度排序（相同相关度时新消息在前），total 为命中总数
+ * - 索引仅支持单节点部署：集群模式（chat.cluster.enabled=true）或 chat.search.enabled=false 时返回 503
+ */
+@RestController
+@RequestMapping("/api/chat")
+public class ChatSearchController {
+
+    private final ChatMessageService chatMessageService;
+
+    public ChatSearchController(ChatMessageService chatMessageService) {
+        this.chatMessageService = chatMessageService;
+    }
+
+    /**
+     * 在房间群聊消息中检索
+     * 示例：
+     * GET /api/chat/group/room-1/messages/search?q=周报&page=1&size=20
+     */
+    @GetMapping("/group/{roomId}/messages/search")
+    public IPage<ChatMessageEntity> searchGroupMessages(
+            @PathVariable("roomId") String roomId,
+            @RequestParam("q") String query,
+            @RequestParam(value = "page", defaultValue = "1") long pageNum,
+            @RequestParam(value = "size", defaultValue = "20") long pageSize
+    ) {
+        requireSearchEnabled();
+        return chatMessageService.searchGroupMessages(roomId, requireQuery(query), page(pageNum, pageSize));
+    }
+
+    /**
+     * 在两个用户之间的私聊消息中检索（双向）
+     * 示例：
+     * GET /api/chat/private/messages/search?userA=alice&userB=bob&q=合同
+     */
+    @GetMapping("/private/messages/search")
+    public IPage<ChatMessageEntity> searchPrivateMessages(
+            @RequestParam("userA") String userA,
+            @RequestParam("userB") String userB,
+            @RequestParam("q") String query,
+            @RequestParam(value = "page", defaultValue = "1") long pageNum,
+            @RequestParam(value = "size", defaultValue = "20") long pageSize
+    ) {
+        requireSearchEnabled();
+        return chatMessageService.searchPrivateMessages(userA, userB, requireQuery(query), page(pageNum, pageSize));
+    }
+
+    private void requireSearchEnabled() {
+        if (!chatMessageService.isSearchEnabled()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "全文检索未启用（仅支持单节点部署）");
+        }
+    }
+
+    private static String requireQuery(String query) {
+        if (query == null || query.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "q 不能为空");
+        }
+        return query;
+    }
+
+    private static Page<ChatMessageEntity> page(long pageNum, long pageSize) {
+        return new Page<>(Math.max(1, pageNum), Math.min(Math.max(pageSize, 1), 100));
+    }
+}
@@ -1,5 +1,8 @@
 package com.zpark.wsagent.dto;
 
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import lombok.Data;
 
 /**
@@ -10,6 +13,10 @@ import lombok.Data;
  * - roomId: 群聊房间ID（JOIN_GROUP/LEAVE_GROUP/GROUP_MSG 使用）
  * - content: 文本内容
  * - clientMsgId: 客户端自定义的消息ID，用于回执关联（可选）
+ * - seq: 房间内序号；服务端下发 GROUP_MSG 时填充，客户端 RESUME 时携带最后收到的序号
+ * - id: 服务端分配的消息ID（时间有序，64 位，以字符串传输）；下发 GROUP_MSG/PRIVATE_MSG 及其 ACK 时填充，
+ *       客户端可据此去重与排序
+ * - retryAfterMs: 因限流被拒绝时的 ERROR 回执携带，建议客户端等待的毫秒数；其余消息不输出该字段
  */
 @Data
 public class ChatMessage {
@@ -19,4 +26,9 @@ public class ChatMessage {
     private String roomId;
     private String content;
     private String clientMsgId;
+    private Long seq;
+    @JsonFormat(shape = JsonFormat.Shape.STRING)
+    private Long id;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long retryAfterMs;
 }
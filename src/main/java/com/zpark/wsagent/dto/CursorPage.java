@@ -0,0 +1,24 @@
+package com.zpark.wsagent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ * - records: 本页记录
+ * - nextCursor: 下一页游标（不透明字符串，原样传回即可）；没有更多数据时为 null
+ * - hasMore: 是否还有下一页
+ * - total: 满足条件的总条数，仅在请求 withTotal=true 时返回，否则为 null
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> records;
+    private String nextCursor;
+    private boolean hasMore;
+    private Long total;
+}
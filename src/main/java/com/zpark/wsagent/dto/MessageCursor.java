@@ -0,0 +1,34 @@
+package com.zpark.wsagent.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 聊天记录游标：定位到某条消息的 (created_at, id)，编码为 URL 安全的 Base64 字符串对外暴露
+ *
+ * @param createdAt 消息创建时间
+ * @param id        消息主键（同一时间戳内的次序）
+ */
+public record MessageCursor(LocalDateTime createdAt, long id) {
+
+    public String encode() {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析客户端传回的游标
+     *
+     * @throws IllegalArgumentException 游标格式非法
+     */
+    public static MessageCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.lastIndexOf('|');
+            return new MessageCursor(LocalDateTime.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("非法的分页游标：" + cursor, e);
+        }
+    }
+}
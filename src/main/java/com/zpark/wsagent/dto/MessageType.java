@@ -8,6 +8,10 @@ package com.zpark.wsagent.dto;
  * - PRIVATE_MSG: 私聊消息
  * - ACK: 服务端确认/回执
  * - ERROR: 错误消息
+ * - HEARTBEAT: 客户端心跳（刷新在线状态），服务端原样回 HEARTBEAT
+ * - RESUME: 断线重连后补齐房间消息（携带 roomId 与最后收到的 seq），服务端重新加入房间并补发缺失消息
+ * - INBOX: 服务端批量推送离线期间收到的私聊消息（id 为本批最后一条消息的 id，messages 为原消息帧数组）
+ * - INBOX_ACK: 客户端确认已收到离线消息（携带 INBOX 帧的 id），服务端删除已确认的消息并推送下一批
  */
 public enum MessageType {
     JOIN_GROUP,
@@ -15,5 +19,9 @@ public enum MessageType {
     GROUP_MSG,
     PRIVATE_MSG,
     ACK,
-    ERROR
+    ERROR,
+    HEARTBEAT,
+    RESUME,
+    INBOX,
+    INBOX_ACK
 }
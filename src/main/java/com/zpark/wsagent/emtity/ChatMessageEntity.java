@@ -3,6 +3,7 @@ package com.zpark.wsagent.emtity;
 import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.fasterxml.jackson.annotation.JsonFormat;
 import lombok.Data;
 
 import java.time.LocalDateTime;
@@ -13,8 +14,9 @@ import java.time.LocalDateTime;
 @Data
 @TableName("chat_messages")
 public class ChatMessageEntity {
-    /** 主键ID */
-    @TableId(type = IdType.AUTO)
+    /** 主键ID：写入前由 MessageIdGenerator 分配（时间有序的 64 位 ID），JSON 中以字符串表示，避免 JS 精度丢失 */
+    @TableId(type = IdType.INPUT)
+    @JsonFormat(shape = JsonFormat.Shape.STRING)
     private Long id;
 
     /** 消息类型：GROUP_MSG/PRIVATE_MSG */
@@ -29,9 +31,15 @@ public class ChatMessageEntity {
     /** 群聊房间ID（私聊为空） */
     private String roomId;
 
+    /** 房间内序号（仅群聊，房间内单调递增） */
+    private Long roomSeq;
+
+    /** 私聊会话键（有序用户对，仅私聊） */
+    private String conversationKey;
+
     /** 消息内容 */
     private String content;
 
-    /** 创建时间（数据库默认CURRENT_TIMESTAMP） */
+    /** 创建时间（写入前由服务端按秒精度生成，与数据库 TIMESTAMP 精度一致；为空时取数据库默认值） */
     private LocalDateTime createdAt;
 }
@@ -0,0 +1,17 @@
+package com.zpark.wsagent.enums;
+
+/**
+ * write-behind 模式下向发送方回执 ACK 的时机
+ */
+public enum PersistAckMode {
+
+    /**
+     * 入队成功即回执（最低延迟，进程崩溃可能丢失队列中尚未落库的消息）
+     */
+    ENQUEUE,
+
+    /**
+     * 所在批次提交成功后再回执
+     */
+    COMMIT
+}
@@ -0,0 +1,17 @@
+package com.zpark.wsagent.enums;
+
+/**
+ * 聊天消息持久化模式
+ */
+public enum PersistMode {
+
+    /**
+     * 同步单行写入（在调用线程上直接 insert）
+     */
+    SYNC,
+
+    /**
+     * 异步写后（write-behind）：入有界队列，由后台线程按批量/时间窗口合并为多行 insert
+     */
+    WRITE_BEHIND
+}
@@ -1,42 +1,86 @@
 package com.zpark.wsagent.factory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
 
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
 import com.zpark.wsagent.chatModel.AgentProvider;
-import com.zpark.wsagent.tools.ToolBase;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * Agent 工厂：
  * - 基于供应商标识（vendor）路由到对应的 AgentProvider
  * - 统一对外暴露 getAgent(vendor, model) 方法
+ * - 已构建的 ReactAgent 按 (vendor, model, prompt 摘要, 工具集) 缓存复用，不再每次调用都新建 API 客户端、ChatModel 与 Agent；
+ *   同一 key 并发请求只构建一次
+ * - 模型配置更新或删除时由 ModelConfigServiceImpl 调用 invalidate 失效对应条目
+ * - 条目数超过 ai.agent.cache.max-size 时淘汰最久未使用的条目
+ *
+ * 指标：ai.agent.cache.size、ai.agent.cache.requests{result=hit|miss}、ai.agent.build（构建耗时，按 vendor）
  *
  * 用法示例：
  *   ReactAgent agent = agentFactory.getAgent("modelscope", "qwen2.5");
  *   ReactAgent agent = agentFactory.getAgent("dashscope", "qwen-turbo");
  *   ReactAgent agent = agentFactory.getAgent("ollama", "llama3");
  */
+@Slf4j
 @Component
 public class AgentFactory {
 
     private final Map<String, AgentProvider> providerRegistry = new HashMap<>();
 
+    private final Map<AgentKey, CachedAgent> cache = new ConcurrentHashMap<>();
+    private final int maxSize;
+    // 访问序号（单调递增），用于淘汰最久未使用的条目
+    private final AtomicLong accessClock = new AtomicLong();
+
+    private final MeterRegistry meterRegistry;
+    private final Counter hits;
+    private final Counter misses;
+
     /**
      * 通过 Spring 注入所有实现了 AgentProvider 的 Bean，并构建 vendor -> provider 的路由表
      */
-    public AgentFactory(List<AgentProvider> providers) {
+    public AgentFactory(List<AgentProvider> providers,
+                        MeterRegistry meterRegistry,
+                        @Value("${ai.agent.cache.max-size:256}") int maxSize) {
         for (AgentProvider provider : providers) {
             providerRegistry.put(provider.getVendor().toLowerCase(), provider);
         }
+        this.maxSize = Math.max(1, maxSize);
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("ai.agent.cache.size", cache, Map::size)
+                .description("已缓存的 ReactAgent 数")
+                .register(meterRegistry);
+        this.hits = Counter.builder("ai.agent.cache.requests")
+                .tag("result", "hit")
+                .description("获取 Agent 的请求数")
+                .register(meterRegistry);
+        this.misses = Counter.builder("ai.agent.cache.requests")
+                .tag("result", "miss")
+                .description("获取 Agent 的请求数")
+                .register(meterRegistry);
     }
 
     /**
-     * 根据供应商(vendor)与模型名(model)返回 ReactAgent
+     * 根据供应商(vendor)与模型名(model)返回 ReactAgent（命中缓存时复用已构建的实例）
      *
      * @param vendor 供应商标识（如 "modelscope"、"dashscope"、"ollama"）
      * @param model  模型名称
@@ -47,11 +91,43 @@ public class AgentFactory {
         if (vendor == null || vendor.isEmpty()) {
             throw new IllegalArgumentException("vendor 不能为空");
         }
-        AgentProvider provider = providerRegistry.get(vendor.toLowerCase());
+        String normalized = vendor.toLowerCase();
+        AgentProvider provider = providerRegistry.get(normalized);
         if (provider == null) {
             throw new IllegalArgumentException("未找到对应的 AgentProvider，vendor=" + vendor + "。已注册的供应商：" + providerRegistry.keySet());
         }
-        return provider.getAgent(model,prompt,tool);
+        AgentKey key = new AgentKey(normalized, model, digest(prompt), toolset(tool));
+        CachedAgent cached = cache.get(key);
+        if (cached == null) {
+            cached = cache.computeIfAbsent(key, k -> build(provider, k, model, prompt, tool));
+        } else {
+            hits.increment();
+        }
+        cached.lastAccess = accessClock.incrementAndGet();
+        if (cache.size() > maxSize) {
+            evictLeastRecentlyUsed();
+        }
+        return cached.agent;
+    }
+
+    /**
+     * 失效某个供应商与模型的全部缓存条目（不同 prompt / 工具集）
+     */
+    public void invalidate(String vendor, String model) {
+        if (vendor == null) {
+            return;
+        }
+        String normalized = vendor.toLowerCase();
+        if (cache.keySet().removeIf(k -> k.vendor().equals(normalized) && Objects.equals(k.model(), model))) {
+            log.info("Agent 缓存已失效 vendor={} model={}", normalized, model);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        cache.clear();
     }
 
     /**
@@ -60,4 +136,62 @@ public class AgentFactory {
     public List<String> getVendors() {
         return providerRegistry.keySet().stream().sorted().toList();
     }
+
+    private CachedAgent build(AgentProvider provider, AgentKey key, String model, String prompt, List<ToolCallback> tool) {
+        misses.increment();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return new CachedAgent(provider.getAgent(model, prompt, tool));
+        } finally {
+            sample.stop(Timer.builder("ai.agent.build")
+                    .tag("vendor", key.vendor())
+                    .description("构建 ReactAgent 的耗时")
+                    .register(meterRegistry));
+        }
+    }
+
+    private void evictLeastRecentlyUsed() {
+        while (cache.size() > maxSize) {
+            Map.Entry<AgentKey, CachedAgent> oldest = null;
+            for (Map.Entry<AgentKey, CachedAgent> e : cache.entrySet()) {
+                if (oldest == null || e.getValue().lastAccess < oldest.getValue().lastAccess) {
+                    oldest = e;
+                }
+            }
+            if (oldest == null || !cache.remove(oldest.getKey(), oldest.getValue())) {
+                return;
+            }
+        }
+    }
+
+    private static String digest(String prompt) {
+        return prompt == null ? "" : DigestUtils.md5DigestAsHex(prompt.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 工具集按工具名排序后拼接，与传入顺序无关
+     */
+    private static String toolset(List<ToolCallback> tools) {
+        if (tools == null || tools.isEmpty()) {
+            return "";
+        }
+        List<String> names = new ArrayList<>(tools.size());
+        for (ToolCallback tool : tools) {
+            names.add(tool.getToolDefinition().name());
+        }
+        names.sort(null);
+        return String.join(",", names);
+    }
+
+    private record AgentKey(String vendor, String model, String promptDigest, String toolset) {
+    }
+
+    private static final class CachedAgent {
+        final ReactAgent agent;
+        volatile long lastAccess;
+
+        CachedAgent(ReactAgent agent) {
+            this.agent = agent;
+        }
+    }
 }
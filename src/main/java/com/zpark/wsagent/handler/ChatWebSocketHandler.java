@@ -1,26 +1,52 @@
 package com.zpark.wsagent.handler;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zpark.wsagent.cluster.ClusterFanout;
 import com.zpark.wsagent.dto.ChatMessage;
 import com.zpark.wsagent.dto.MessageType;
+import com.zpark.wsagent.emtity.ChatMessageEntity;
 import com.zpark.wsagent.service.ChatMessageService;
+import com.zpark.wsagent.service.OfflineInboxService;
+import com.zpark.wsagent.service.PresenceService;
+import com.zpark.wsagent.websocket.ChatDispatcher;
 import com.zpark.wsagent.websocket.ChatSessionRegistry;
+import com.zpark.wsagent.websocket.ClientMessageDeduplicator;
+import com.zpark.wsagent.websocket.MessageIdGenerator;
+import com.zpark.wsagent.websocket.MessageRateLimiter;
+import com.zpark.wsagent.websocket.RoomReplayBuffer;
+import com.zpark.wsagent.websocket.RoomSequencer;
+import com.zpark.wsagent.websocket.SessionHeartbeatMonitor;
+import com.zpark.wsagent.websocket.SessionInboundExecutor;
+import com.zpark.wsagent.websocket.SessionOutboundManager;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * WebSocket文本处理器：
  * - 连接建立时基于URL参数获取userId并注册会话
- * - 处理消息类型：JOIN_GROUP / LEAVE_GROUP / GROUP_MSG / PRIVATE_MSG
+ * - 处理消息类型：JOIN_GROUP / LEAVE_GROUP / GROUP_MSG / PRIVATE_MSG / HEARTBEAT / RESUME / INBOX_ACK
  * - 将消息路由到群成员或目标用户（支持同一用户多连接）
  * - 发送ACK和ERROR回执
+ * - 所有下行消息经 SessionOutboundManager 的会话级有界队列异步写出，慢连接不阻塞广播
+ * - 群聊广播只编码一次，同一帧复用给房间内所有会话（见 ChatDispatcher）
+ * - 启用集群时同一帧再经 ClusterFanout 发布给其他节点上的成员
  * - 将群聊与私聊消息持久化到数据库
+ * - 群聊与私聊消息在持久化前分配时间有序的消息 id（MessageIdGenerator），随广播与 ACK 下发，客户端据此去重与排序
+ * - 带 clientMsgId 的群聊/私聊消息按 (发送方, clientMsgId) 去重：客户端重发时直接回原 ACK，不重复持久化与广播
+ * - 群聊消息带房间内递增序号 seq，并写入房间回放缓冲；重连客户端发送 RESUME 补齐缺口，缓冲不足时回退数据库
+ * - 私聊接收方不在线时消息进入离线收件箱；连接建立后一次性推送一批（INBOX），客户端 INBOX_ACK 确认后才删除并推送下一批
+ * - 服务端定时 Ping 静默连接并统计 RTT，静默超过空闲超时的连接从注册表移除并关闭（SessionHeartbeatMonitor）
+ * - 握手时声明子协议 wsagent.cbor 的连接收发 CBOR 二进制帧，声明 wsagent.json.deflate 的连接下行大帧压缩，其余连接使用 JSON 文本帧（见 WireFormat）
+ * - 入站消息在分发前按会话、用户、房间维度限流（MessageRateLimiter），超限回 ERROR 并带 retryAfterMs
+ * - 入站处理经 SessionInboundExecutor 执行：VIRTUAL 模式下按会话串行地在虚拟线程上处理，容器线程不被阻塞
  *
  * 客户端示例连接：
  *   const ws = new WebSocket("ws://localhost:8080/ws/chat?userId=alice");
@@ -28,39 +54,109 @@ import java.util.Set;
  *   { "type":"JOIN_GROUP","roomId":"room-1" }
  *   { "type":"GROUP_MSG","roomId":"room-1","content":"大家好" }
  *   { "type":"PRIVATE_MSG","toUserId":"bob","content":"你好，Bob" }
+ *   { "type":"HEARTBEAT" }
+ *   { "type":"RESUME","roomId":"room-1","seq":42 }
+ *   { "type":"INBOX_ACK","id":"<INBOX 帧的 id>" }
  */
 @Component
 public class ChatWebSocketHandler extends TextWebSocketHandler {
 
     private final ChatSessionRegistry registry;
     private final ChatMessageService chatMessageService;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final SessionOutboundManager outbound;
+    private final ChatDispatcher dispatcher;
+    private final ClusterFanout clusterFanout;
+    private final PresenceService presenceService;
+    private final SessionInboundExecutor inbound;
+    private final RoomSequencer roomSequencer;
+    private final RoomReplayBuffer replayBuffer;
+    private final MessageIdGenerator idGenerator;
+    private final ClientMessageDeduplicator deduplicator;
+    private final OfflineInboxService inbox;
+    private final SessionHeartbeatMonitor heartbeatMonitor;
+    private final MessageRateLimiter rateLimiter;
+    private final int replayMaxDbRows;
+    private final int inboxBatchSize;
 
     public ChatWebSocketHandler(ChatSessionRegistry registry,
-                                ChatMessageService chatMessageService) {
+                                ChatMessageService chatMessageService,
+                                SessionOutboundManager outbound,
+                                ChatDispatcher dispatcher,
+                                ClusterFanout clusterFanout,
+                                PresenceService presenceService,
+                                SessionInboundExecutor inbound,
+                                RoomSequencer roomSequencer,
+                                RoomReplayBuffer replayBuffer,
+                                MessageIdGenerator idGenerator,
+                                ClientMessageDeduplicator deduplicator,
+                                OfflineInboxService inbox,
+                                SessionHeartbeatMonitor heartbeatMonitor,
+                                MessageRateLimiter rateLimiter,
+                                @Value("${chat.replay.max-db-rows:500}") int replayMaxDbRows,
+                                @Value("${chat.inbox.batch-size:200}") int inboxBatchSize) {
         this.registry = registry;
         this.chatMessageService = chatMessageService;
+        this.outbound = outbound;
+        this.dispatcher = dispatcher;
+        this.clusterFanout = clusterFanout;
+        this.presenceService = presenceService;
+        this.inbound = inbound;
+        this.roomSequencer = roomSequencer;
+        this.replayBuffer = replayBuffer;
+        this.idGenerator = idGenerator;
+        this.deduplicator = deduplicator;
+        this.inbox = inbox;
+        this.heartbeatMonitor = heartbeatMonitor;
+        this.rateLimiter = rateLimiter;
+        this.replayMaxDbRows = Math.max(1, replayMaxDbRows);
+        this.inboxBatchSize = Math.max(1, inboxBatchSize);
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         Optional<String> userOpt = registry.resolveUserId(session);
         if (userOpt.isEmpty()) {
-            sendError(session, null, "缺少userId参数，连接被拒绝");
-            session.close(CloseStatus.BAD_DATA);
+            // 尚未注册出站队列，拒绝原因直接写出后关闭
+            try {
+                dispatcher.replyBeforeRegister(session, errorMessage(null, "缺少userId参数，连接被拒绝", null));
+            } finally {
+                session.close(CloseStatus.BAD_DATA);
+            }
             return;
         }
         String userId = userOpt.get();
+        outbound.register(dispatcher.outboundSession(session));
         registry.addSession(userId, session);
+        heartbeatMonitor.register(session);
         // 回执连接成功
         sendAck(session, null, "连接成功，userId=" + userId);
+        // 离线期间的私聊消息：在入站执行器上读取收件箱，不阻塞连接建立
+        inbound.execute(session, () -> pushInbox(session, userId));
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        heartbeatMonitor.touch(session);
+        if (!inbound.execute(session, () -> processMessage(session, () -> dispatcher.decode(message)))) {
+            sendError(session, null, "消息处理积压过多，请稍后重试");
+        }
+    }
+
+    /**
+     * CBOR 连接（子协议 wsagent.cbor）发来的二进制帧，解码后与文本消息同样处理
+     */
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        heartbeatMonitor.touch(session);
+        if (!inbound.execute(session, () -> processMessage(session, () -> dispatcher.decode(message)))) {
+            sendError(session, null, "消息处理积压过多，请稍后重试");
+        }
+    }
+
+    private void processMessage(WebSocketSession session, Callable<ChatMessage> decoder) {
         ChatMessage msg;
         try {
-            msg = mapper.readValue(message.getPayload(), ChatMessage.class);
+            msg = decoder.call();
         } catch (Exception e) {
             sendError(session, null, "消息格式错误：" + e.getMessage());
             return;
@@ -79,6 +175,12 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         // 补齐发送方
         msg.setFromUserId(fromUserId);
 
+        long retryAfterMs = rateLimiter.tryAcquire(session.getId(), fromUserId, msg);
+        if (retryAfterMs > 0) {
+            sendError(session, msg.getClientMsgId(), "发送过于频繁，请 " + retryAfterMs + "ms 后重试", retryAfterMs);
+            return;
+        }
+
         try {
             switch (msg.getType()) {
                 case JOIN_GROUP:
@@ -93,6 +195,15 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
                 case PRIVATE_MSG:
                     handlePrivateMsg(session, msg);
                     break;
+                case HEARTBEAT:
+                    handleHeartbeat(session, msg);
+                    break;
+                case RESUME:
+                    handleResume(session, msg);
+                    break;
+                case INBOX_ACK:
+                    handleInboxAck(session, msg);
+                    break;
                 default:
                     sendError(session, msg.getClientMsgId(), "不支持的消息类型: " + msg.getType());
             }
@@ -101,12 +212,20 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) throws Exception {
+        heartbeatMonitor.onPong(session, message);
+    }
+
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        heartbeatMonitor.unregister(session);
+        inbound.remove(session);
         registry.removeSession(session);
+        outbound.unregister(session);
     }
 
-    private void handleJoinGroup(WebSocketSession session, ChatMessage msg) throws IOException {
+    private void handleJoinGroup(WebSocketSession session, ChatMessage msg) {
         if (isBlank(msg.getRoomId())) {
             sendError(session, msg.getClientMsgId(), "JOIN_GROUP缺少roomId");
             return;
@@ -115,7 +234,7 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         sendAck(session, msg.getClientMsgId(), "已加入房间：" + msg.getRoomId());
     }
 
-    private void handleLeaveGroup(WebSocketSession session, ChatMessage msg) throws IOException {
+    private void handleLeaveGroup(WebSocketSession session, ChatMessage msg) {
         if (isBlank(msg.getRoomId())) {
             sendError(session, msg.getClientMsgId(), "LEAVE_GROUP缺少roomId");
             return;
@@ -124,7 +243,7 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         sendAck(session, msg.getClientMsgId(), "已离开房间：" + msg.getRoomId());
     }
 
-    private void handleGroupMsg(WebSocketSession session, ChatMessage msg) throws IOException {
+    private void handleGroupMsg(WebSocketSession session, ChatMessage msg) {
         if (isBlank(msg.getRoomId())) {
             sendError(session, msg.getClientMsgId(), "GROUP_MSG缺少roomId");
             return;
@@ -133,20 +252,34 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             sendError(session, msg.getClientMsgId(), "GROUP_MSG缺少content");
             return;
         }
-        // 持久化
-        chatMessageService.save(MessageType.GROUP_MSG.name(),
-                msg.getFromUserId(), null, msg.getRoomId(), msg.getContent());
+        if (replayIfDuplicate(session, msg)) {
+            return;
+        }
+        try {
+            // 分配消息 ID 与房间序号（忽略客户端携带的值），广播无需等待持久化
+            long seq = roomSequencer.next(msg.getRoomId());
+            msg.setSeq(seq);
+            msg.setId(idGenerator.nextId());
+            // 持久化（write-behind 模式下仅入队，队列满时抛出异常由上层回 ERROR）
+            ChatMessageEntity entity = toEntity(msg.getId(), MessageType.GROUP_MSG, msg.getFromUserId(), null, msg.getRoomId(), msg.getContent());
+            entity.setRoomSeq(seq);
+            CompletableFuture<ChatMessageEntity> persisted = chatMessageService.saveAsync(entity);
 
-        // 广播到房间内所有成员的所有连接
-        Set<String> members = registry.getRoomMembers(msg.getRoomId());
-        for (String uid : members) {
-            sendToUser(uid, msg);
+            // 广播到房间内所有成员的所有连接：只编码一次，共享同一帧，并留存到回放缓冲
+            TextMessage frame = dispatcher.encode(msg);
+            replayBuffer.record(msg.getRoomId(), seq, frame);
+            Set<String> members = registry.getRoomMembers(msg.getRoomId());
+            dispatcher.broadcast(members, frame);
+            clusterFanout.publishToRoom(msg.getRoomId(), seq, frame);
+            // 按持久化 ACK 语义向发送者回执
+            ackWhenPersisted(session, msg, persisted, "群消息已投递并持久化到房间：" + msg.getRoomId());
+        } catch (RuntimeException e) {
+            deduplicator.release(msg.getFromUserId(), msg.getClientMsgId(), e);
+            throw e;
         }
-        // 向发送者回执
-        sendAck(session, msg.getClientMsgId(), "群消息已投递并持久化到房间：" + msg.getRoomId());
     }
 
-    private void handlePrivateMsg(WebSocketSession session, ChatMessage msg) throws IOException {
+    private void handlePrivateMsg(WebSocketSession session, ChatMessage msg) {
         if (isBlank(msg.getToUserId())) {
             sendError(session, msg.getClientMsgId(), "PRIVATE_MSG缺少toUserId");
             return;
@@ -155,49 +288,202 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             sendError(session, msg.getClientMsgId(), "PRIVATE_MSG缺少content");
             return;
         }
-        // 持久化
-        chatMessageService.save(MessageType.PRIVATE_MSG.name(),
-                msg.getFromUserId(), msg.getToUserId(), null, msg.getContent());
+        if (replayIfDuplicate(session, msg)) {
+            return;
+        }
+        try {
+            // 分配消息 ID 后持久化
+            msg.setId(idGenerator.nextId());
+            CompletableFuture<ChatMessageEntity> persisted = chatMessageService.saveAsync(
+                    toEntity(msg.getId(), MessageType.PRIVATE_MSG, msg.getFromUserId(), msg.getToUserId(), null, msg.getContent()));
 
-        // 发送给目标用户的所有连接
-        sendToUser(msg.getToUserId(), msg);
-        // 向发送者回执
-        sendAck(session, msg.getClientMsgId(), "私聊消息已发送并持久化给：" + msg.getToUserId());
+            // 发送给目标用户的所有连接（本节点直投，其他节点经集群频道）
+            TextMessage frame = dispatcher.encode(msg);
+            int delivered = dispatcher.deliverToUser(msg.getToUserId(), frame);
+            clusterFanout.publishToUser(msg.getToUserId(), frame);
+            if (delivered == 0 && !presenceService.isOnline(msg.getToUserId())) {
+                // 接收方不在线：进入离线收件箱，下次连接时推送
+                inbox.offer(msg.getToUserId(), msg.getId(), frame.getPayload());
+            }
+            // 按持久化 ACK 语义向发送者回执
+            ackWhenPersisted(session, msg, persisted, "私聊消息已发送并持久化给：" + msg.getToUserId());
+        } catch (RuntimeException e) {
+            deduplicator.release(msg.getFromUserId(), msg.getClientMsgId(), e);
+            throw e;
+        }
     }
 
-    private void sendToUser(String userId, ChatMessage msg) throws IOException {
-        Set<WebSocketSession> sessions = registry.getSessionsByUserId(userId);
-        if (sessions == null || sessions.isEmpty()) {
+    /**
+     * 重发检测：同一发送方的 clientMsgId 已处理过（或正在处理）时，回原 ACK 并跳过持久化与投递
+     */
+    private boolean replayIfDuplicate(WebSocketSession session, ChatMessage msg) {
+        CompletableFuture<ChatMessage> original = deduplicator.claim(msg.getFromUserId(), msg.getClientMsgId());
+        if (original == null) {
+            return false;
+        }
+        original.whenComplete((ack, ex) -> {
+            if (ex == null) {
+                dispatcher.reply(session, ack);
+            } else {
+                sendError(session, msg.getClientMsgId(), "重复消息，原消息处理失败：" + ex.getMessage());
+            }
+        });
+        return true;
+    }
+
+    private void handleHeartbeat(WebSocketSession session, ChatMessage msg) {
+        presenceService.heartbeat(msg.getFromUserId());
+        ChatMessage pong = new ChatMessage();
+        pong.setType(MessageType.HEARTBEAT);
+        pong.setClientMsgId(msg.getClientMsgId());
+        dispatcher.reply(session, pong);
+    }
+
+    /**
+     * 断线重连补齐：先重新加入房间接收实时消息，再补发 seq 之后的缺口
+     * 补发与实时消息可能有少量重叠，客户端按 seq 去重
+     */
+    private void handleResume(WebSocketSession session, ChatMessage msg) {
+        if (isBlank(msg.getRoomId())) {
+            sendError(session, msg.getClientMsgId(), "RESUME缺少roomId");
             return;
         }
-        String payload = mapper.writeValueAsString(msg);
-        for (WebSocketSession s : sessions) {
-            if (s.isOpen()) {
-                s.sendMessage(new TextMessage(payload));
+        String roomId = msg.getRoomId();
+        long afterSeq = msg.getSeq() != null ? msg.getSeq() : 0L;
+        registry.joinRoom(roomId, msg.getFromUserId());
+
+        // 以序号分配器的最新值为区间终点：本节点缓冲可能缺少退订期间其他节点产生的消息
+        List<TextMessage> frames = replayBuffer.since(roomId, afterSeq, roomSequencer.current(roomId));
+        boolean truncated = false;
+        if (frames == null) {
+            // 缺口早于内存缓冲，回退数据库（多取一条用于判断是否截断）
+            List<ChatMessageEntity> rows = chatMessageService.listGroupAfterSeq(roomId, afterSeq, replayMaxDbRows + 1);
+            truncated = rows.size() > replayMaxDbRows;
+            frames = rows.stream()
+                    .limit(replayMaxDbRows)
+                    .map(this::toGroupMessage)
+                    .map(dispatcher::encode)
+                    .toList();
+        }
+        for (TextMessage frame : frames) {
+            dispatcher.send(session, frame);
+        }
+        sendAck(session, msg.getClientMsgId(), "已补发 " + frames.size() + " 条消息，房间：" + roomId
+                + (truncated ? "（超出单次补发上限，请以最后收到的 seq 再次 RESUME）" : ""));
+    }
+
+    /**
+     * 客户端确认离线消息：删除 id 不大于确认 id 的条目，还有剩余时继续推送下一批
+     */
+    private void handleInboxAck(WebSocketSession session, ChatMessage msg) {
+        if (msg.getId() == null) {
+            sendError(session, msg.getClientMsgId(), "INBOX_ACK缺少id");
+            return;
+        }
+        int removed = inbox.ack(msg.getFromUserId(), msg.getId());
+        sendAck(session, msg.getClientMsgId(), "已确认 " + removed + " 条离线消息");
+        pushInbox(session, msg.getFromUserId());
+    }
+
+    /**
+     * 把收件箱最早的一批消息合并为一帧推送：{"type":"INBOX","id":"<本批最后一条的 id>","messages":[原消息帧...]}
+     * 原消息帧入队时已编码，这里直接拼接，不再逐条序列化
+     */
+    private void pushInbox(WebSocketSession session, String userId) {
+        List<OfflineInboxService.Entry> entries = inbox.peek(userId, inboxBatchSize);
+        if (entries.isEmpty()) {
+            return;
+        }
+        long lastId = entries.get(entries.size() - 1).id();
+        int size = 64;
+        for (OfflineInboxService.Entry e : entries) {
+            size += e.frame().length() + 1;
+        }
+        StringBuilder sb = new StringBuilder(size)
+                .append("{\"type\":\"").append(MessageType.INBOX.name())
+                .append("\",\"id\":\"").append(lastId)
+                .append("\",\"messages\":[");
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
             }
+            sb.append(entries.get(i).frame());
         }
+        sb.append("]}");
+        dispatcher.send(session, new TextMessage(sb.toString()));
     }
 
-    private void sendAck(WebSocketSession session, String clientMsgId, String content) throws IOException {
+    private ChatMessage toGroupMessage(ChatMessageEntity entity) {
+        ChatMessage m = new ChatMessage();
+        m.setType(MessageType.GROUP_MSG);
+        m.setFromUserId(entity.getFromUserId());
+        m.setRoomId(entity.getRoomId());
+        m.setContent(entity.getContent());
+        m.setSeq(entity.getRoomSeq());
+        m.setId(entity.getId());
+        return m;
+    }
+
+    private ChatMessageEntity toEntity(long id, MessageType type, String fromUserId, String toUserId, String roomId, String content) {
+        ChatMessageEntity entity = new ChatMessageEntity();
+        entity.setId(id);
+        entity.setType(type.name());
+        entity.setFromUserId(fromUserId);
+        entity.setToUserId(toUserId);
+        entity.setRoomId(roomId);
+        entity.setContent(content);
+        return entity;
+    }
+
+    /**
+     * 持久化完成（入队或提交，取决于 chat.persist.ack）后回 ACK，失败回 ERROR
+     * 回调可能运行在刷盘线程上，回执经出站队列写出，线程安全
+     */
+    private void ackWhenPersisted(WebSocketSession session, ChatMessage msg,
+                                  CompletableFuture<ChatMessageEntity> persisted, String ackContent) {
+        persisted.whenComplete((entity, ex) -> {
+            if (ex == null) {
+                ChatMessage ack = ack(msg.getClientMsgId(), msg.getId(), ackContent);
+                deduplicator.complete(msg.getFromUserId(), msg.getClientMsgId(), ack);
+                dispatcher.reply(session, ack);
+            } else {
+                deduplicator.release(msg.getFromUserId(), msg.getClientMsgId(), ex);
+                sendError(session, msg.getClientMsgId(), "消息持久化失败：" + ex.getMessage());
+            }
+        });
+    }
+
+    private void sendAck(WebSocketSession session, String clientMsgId, String content) {
+        dispatcher.reply(session, ack(clientMsgId, null, content));
+    }
+
+    /**
+     * 回执携带服务端分配的消息 ID，发送方据此把本地消息与随后收到的广播对应起来
+     */
+    private ChatMessage ack(String clientMsgId, Long id, String content) {
         ChatMessage ack = new ChatMessage();
         ack.setType(MessageType.ACK);
         ack.setClientMsgId(clientMsgId);
+        ack.setId(id);
         ack.setContent(content);
-        String payload = mapper.writeValueAsString(ack);
-        if (session.isOpen()) {
-            session.sendMessage(new TextMessage(payload));
-        }
+        return ack;
+    }
+
+    private void sendError(WebSocketSession session, String clientMsgId, String content) {
+        sendError(session, clientMsgId, content, null);
     }
 
-    private void sendError(WebSocketSession session, String clientMsgId, String content) throws IOException {
+    private void sendError(WebSocketSession session, String clientMsgId, String content, Long retryAfterMs) {
+        dispatcher.reply(session, errorMessage(clientMsgId, content, retryAfterMs));
+    }
+
+    private static ChatMessage errorMessage(String clientMsgId, String content, Long retryAfterMs) {
         ChatMessage err = new ChatMessage();
         err.setType(MessageType.ERROR);
         err.setClientMsgId(clientMsgId);
         err.setContent(content);
-        String payload = mapper.writeValueAsString(err);
-        if (session.isOpen()) {
-            session.sendMessage(new TextMessage(payload));
-        }
+        err.setRetryAfterMs(retryAfterMs);
+        return err;
     }
 
     private boolean isBlank(String s) {
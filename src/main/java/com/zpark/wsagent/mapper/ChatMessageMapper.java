@@ -3,11 +3,85 @@ package com.zpark.wsagent.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.zpark.wsagent.emtity.ChatMessageEntity;
 
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * 聊天消息表的 Mapper
  */
 @Mapper
 public interface ChatMessageMapper extends BaseMapper<ChatMessageEntity> {
+
+    /**
+     * 多行批量插入（一条 INSERT ... VALUES (...),(...)，单次往返、单个事务）
+     * 主键由调用方预先分配，不依赖自增回填
+     */
+    @Insert({"<script>",
+            "INSERT INTO chat_messages (id, type, from_user_id, to_user_id, room_id, room_seq, conversation_key, content, created_at) VALUES ",
+            "<foreach collection='list' item='m' separator=','>",
+            "(#{m.id}, #{m.type}, #{m.fromUserId}, #{m.toUserId}, #{m.roomId}, #{m.roomSeq}, #{m.conversationKey}, #{m.content}, COALESCE(#{m.createdAt}, CURRENT_TIMESTAMP))",
+            "</foreach>",
+            "</script>"})
+    int insertBatch(@Param("list") List<ChatMessageEntity> list);
+
+    /**
+     * 房间内已持久化的最大序号（房间序号分配器的起点）
+     */
+    @Select("SELECT MAX(room_seq) FROM chat_messages WHERE room_id = #{roomId}")
+    Long selectMaxRoomSeq(@Param("roomId") String roomId);
+
+    /**
+     * 按主键顺序取出一批缺少会话键的私聊消息（会话键回填用）
+     */
+    @Select("SELECT id, from_user_id, to_user_id FROM chat_messages "
+            + "WHERE id > #{afterId} AND room_id IS NULL AND conversation_key IS NULL "
+            + "ORDER BY id LIMIT #{limit}")
+    List<ChatMessageEntity> selectMissingConversationKey(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 批量写回会话键（一条 UPDATE ... CASE id）
+     */
+    @Update({"<script>",
+            "UPDATE chat_messages SET conversation_key = CASE id ",
+            "<foreach collection='list' item='m'>WHEN #{m.id} THEN #{m.conversationKey} </foreach>",
+            "END WHERE id IN ",
+            "<foreach collection='list' item='m' open='(' separator=',' close=')'>#{m.id}</foreach>",
+            "</script>"})
+    int updateConversationKeys(@Param("list") List<ChatMessageEntity> list);
+
+    /**
+     * 流式读取一个消息流的全部消息（导出用），按 (created_at, id) 升序
+     * fetchSize=Integer.MIN_VALUE 使 MySQL 驱动逐行读取结果集而不是一次性缓存到客户端；
+     * 返回的 Cursor 只能在事务（连接保持打开）内迭代
+     * 私聊传入 userA/userB 时额外匹配缺少会话键的历史行（会话键回填完成前）
+     */
+    @Select({"<script>",
+            "SELECT id, type, from_user_id, to_user_id, room_id, room_seq, conversation_key, content, created_at ",
+            "FROM chat_messages WHERE ",
+            "<choose>",
+            "<when test='room'>room_id = #{key} AND to_user_id IS NULL</when>",
+            "<when test='userA != null'>(conversation_key = #{key} OR (conversation_key IS NULL AND room_id IS NULL AND ",
+            "((from_user_id = #{userA} AND to_user_id = #{userB}) OR (from_user_id = #{userB} AND to_user_id = #{userA}))))</when>",
+            "<otherwise>conversation_key = #{key}</otherwise>",
+            "</choose>",
+            "<if test='startTime != null'> AND created_at &gt;= #{startTime}</if>",
+            "<if test='endTime != null'> AND created_at &lt;= #{endTime}</if>",
+            " ORDER BY created_at, id",
+            "</script>"})
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    Cursor<ChatMessageEntity> streamMessages(@Param("room") boolean room,
+                                             @Param("key") String key,
+                                             @Param("userA") String userA,
+                                             @Param("userB") String userB,
+                                             @Param("startTime") LocalDateTime startTime,
+                                             @Param("endTime") LocalDateTime endTime);
 }
@@ -2,17 +2,47 @@ package com.zpark.wsagent.service;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.zpark.wsagent.dto.CursorPage;
+import com.zpark.wsagent.dto.MessageCursor;
 import com.zpark.wsagent.emtity.ChatMessageEntity;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface ChatMessageService {
 
     /**
-     * 持久化一条消息
+     * 持久化一条消息（服务端分配 ID）
      */
     ChatMessageEntity save(String type, String fromUserId, String toUserId, String roomId, String content);
 
+    /**
+     * 按配置的持久化模式保存一条消息；实体已带 ID（预分配）时沿用，否则由服务端分配
+     * - SYNC：在调用线程上同步写入，返回已完成的 future
+     * - WRITE_BEHIND：入批量写队列，future 按 ACK 语义完成（ENQUEUE 入队即完成 / COMMIT 提交后完成）
+     *
+     * @throws IllegalStateException 写队列已满（背压），调用方应向客户端返回错误
+     */
+    CompletableFuture<ChatMessageEntity> saveAsync(ChatMessageEntity entity);
+
+    /**
+     * 房间最近 limit 条群聊消息（按时间升序），优先读取最近消息缓存
+     */
+    List<ChatMessageEntity> recentGroupMessages(String roomId, int limit);
+
+    /**
+     * 两个用户之间最近 limit 条私聊消息（按时间升序），优先读取最近消息缓存
+     */
+    List<ChatMessageEntity> recentPrivateMessages(String userA, String userB, int limit);
+
+    /**
+     * 查询房间内序号大于 afterSeq 的群聊消息（断线重连补齐时内存缓冲不足的回退路径）
+     * - 按 room_seq 升序，最多返回 limit 条
+     */
+    List<ChatMessageEntity> listGroupAfterSeq(String roomId, long afterSeq, int limit);
+
     /**
      * 分页查询群聊历史
      * - 按时间范围过滤
@@ -34,4 +64,59 @@ public interface ChatMessageService {
                                     String userB,
                                     LocalDateTime startTime,
                                     LocalDateTime endTime);
+
+    /**
+     * 游标分页查询群聊历史（按 (created_at, id) 定位，不使用 OFFSET，默认不统计总数）
+     *
+     * @param cursor      上一页返回的游标；为 null 时从头（或从最新一条）开始
+     * @param newestFirst true 按时间倒序向更早翻页，false 按时间正序向后翻页
+     * @param withTotal   是否额外执行 COUNT 返回总条数
+     */
+    CursorPage<ChatMessageEntity> cursorGroupHistory(String roomId,
+                                                     MessageCursor cursor,
+                                                     int size,
+                                                     boolean newestFirst,
+                                                     boolean withTotal,
+                                                     LocalDateTime startTime,
+                                                     LocalDateTime endTime);
+
+    /**
+     * 游标分页查询私聊历史（双向），参数含义同 cursorGroupHistory
+     */
+    CursorPage<ChatMessageEntity> cursorPrivateHistory(String userA,
+                                                       String userB,
+                                                       MessageCursor cursor,
+                                                       int size,
+                                                       boolean newestFirst,
+                                                       boolean withTotal,
+                                                       LocalDateTime startTime,
+                                                       LocalDateTime endTime);
+
+    /**
+     * 按时间升序逐条导出房间的群聊历史（流式，不在内存中累积），可按时间范围过滤
+     */
+    void exportGroupHistory(String roomId, LocalDateTime startTime, LocalDateTime endTime,
+                            Consumer<ChatMessageEntity> sink);
+
+    /**
+     * 按时间升序逐条导出两个用户之间的私聊历史（双向，流式）
+     */
+    void exportPrivateHistory(String userA, String userB, LocalDateTime startTime, LocalDateTime endTime,
+                              Consumer<ChatMessageEntity> sink);
+
+    /**
+     * 全文检索是否可用（进程内索引仅支持单节点，集群模式或配置关闭时不可用）
+     */
+    boolean isSearchEnabled();
+
+    /**
+     * 在房间的群聊消息中全文检索，按相关度排序分页（page.total 为命中总数）
+     */
+    IPage<ChatMessageEntity> searchGroupMessages(String roomId, String query, Page<ChatMessageEntity> page);
+
+    /**
+     * 在两个用户之间的私聊消息中全文检索（双向），按相关度排序分页
+     */
+    IPage<ChatMessageEntity> searchPrivateMessages(String userA, String userB, String query,
+                                                   Page<ChatMessageEntity> page);
 }
@@ -0,0 +1,37 @@
+package com.zpark.wsagent.service;
+
+import java.util.List;
+
+/**
+ * 离线收件箱：私聊消息投递时接收方不在线，则把已编码的帧按用户排队，接收方连接后批量推送，
+ * 客户端确认后才删除（至少一次，客户端按消息 id 去重）
+ * - local 模式：本节点内存，单节点部署使用，重启后丢失（消息本身已持久化，可经历史接口查询）
+ * - redis 模式：Redis LIST，带 TTL，多节点共享，重启不丢失
+ *
+ * 每个用户的收件箱有条数上限，超出时丢弃最早的条目。
+ */
+public interface OfflineInboxService {
+
+    /**
+     * 为离线用户排队一条消息
+     *
+     * @param messageId 消息 id（时间有序），用于确认
+     * @param frame     已编码的消息帧（JSON）
+     */
+    void offer(String userId, long messageId, String frame);
+
+    /**
+     * 按入队顺序取出最早的 limit 条，不删除
+     */
+    List<Entry> peek(String userId, int limit);
+
+    /**
+     * 客户端确认：从队首删除 id 不大于 upToId 的条目
+     *
+     * @return 删除的条数
+     */
+    int ack(String userId, long upToId);
+
+    record Entry(long id, String frame) {
+    }
+}
@@ -0,0 +1,35 @@
+package com.zpark.wsagent.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 在线状态服务
+ * - local 模式：仅依据本节点会话注册表
+ * - redis 模式：在线状态写入 Redis 并以 TTL 心跳续期，支持跨节点批量查询，本地近端缓存吸收高频读
+ */
+public interface PresenceService {
+
+    /**
+     * 客户端心跳：刷新用户在线状态的 TTL
+     */
+    void heartbeat(String userId);
+
+    /**
+     * 查询单个用户是否在线
+     */
+    boolean isOnline(String userId);
+
+    /**
+     * 批量查询在线状态
+     *
+     * @return userId -> 是否在线
+     */
+    Map<String, Boolean> getOnlineStatus(Collection<String> userIds);
+
+    /**
+     * 查询房间内当前在线的成员（redis 模式下覆盖所有节点）
+     */
+    Set<String> getOnlineRoomMembers(String roomId);
+}
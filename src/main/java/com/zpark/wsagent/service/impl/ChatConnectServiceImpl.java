@@ -1,6 +1,7 @@
 package com.zpark.wsagent.service.impl;
 
 import com.zpark.wsagent.service.ChatConnectService;
+import com.zpark.wsagent.service.PresenceService;
 import com.zpark.wsagent.websocket.ChatSessionRegistry;
 import org.springframework.stereotype.Service;
 
@@ -14,9 +15,12 @@ import java.util.Set;
 public class ChatConnectServiceImpl implements ChatConnectService {
 
     private final ChatSessionRegistry chatSessionRegistry;
+    private final PresenceService presenceService;
 
-    public ChatConnectServiceImpl(ChatSessionRegistry chatSessionRegistry) {
+    public ChatConnectServiceImpl(ChatSessionRegistry chatSessionRegistry,
+                                  PresenceService presenceService) {
         this.chatSessionRegistry = chatSessionRegistry;
+        this.presenceService = presenceService;
     }
 
     /**
@@ -42,14 +46,14 @@ public class ChatConnectServiceImpl implements ChatConnectService {
     }
 
     /**
-     * 获取群聊成员列表
+     * 获取群聊在线成员列表（redis 模式下包含其他节点上的在线成员）
      *
      * @param roomId 房间ID
      * @return 群聊成员ID集合
      */
     @Override
     public Set<String> getGroupMembers(String roomId) {
-        return chatSessionRegistry.getRoomMembers(roomId);
+        return presenceService.getOnlineRoomMembers(roomId);
     }
 
     /**
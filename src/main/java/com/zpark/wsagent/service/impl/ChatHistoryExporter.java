@@ -0,0 +1,129 @@
+package com.zpark.wsagent.service.impl;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 聊天历史导出：把消息流逐条编码为 NDJSON（每行一个 JSON 对象，可选 gzip）写入输出流
+ * - 数据源逐条回调、编码后立即写入缓冲区，缓冲区写满即下发，内存占用与历史长度无关
+ * - 同时进行的导出数受 chat.export.max-concurrent 限制：MySQL 引擎下每个导出在整个过程中占用一个连接，
+ *   限流保证导出不会耗尽聊天读写所用的连接池；调用方在写出响应之前先用 tryAcquire 申请名额，申请不到直接返回 429，
+ *   导出过程中的失败与名额无关，照常向上抛出
+ */
+@Component
+public class ChatHistoryExporter {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final ObjectWriter writer;
+    private final Semaphore permits;
+    private final Counter rows;
+    private final Counter rejected;
+
+    public ChatHistoryExporter(ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry,
+                               @Value("${chat.export.max-concurrent:2}") int maxConcurrent) {
+        // 逐行写入时不在每个对象后 flush，由缓冲区决定下发时机
+        this.writer = objectMapper.writerFor(ChatMessageEntity.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        int limit = Math.max(1, maxConcurrent);
+        this.permits = new Semaphore(limit);
+        this.rows = Counter.builder("chat.export.rows")
+                .description("导出的消息条数")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("chat.export.rejected")
+                .description("因并发导出数已满被拒绝的导出请求")
+                .register(meterRegistry);
+        Gauge.builder("chat.export.active", permits, p -> limit - p.availablePermits())
+                .description("正在进行的导出数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 申请一个导出名额
+     *
+     * @return 名额（导出结束后 close 释放）；并发导出数已满时返回 null
+     */
+    public Permit tryAcquire() {
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            return null;
+        }
+        return new Permit();
+    }
+
+    /**
+     * 执行一次导出；名额由调用方持有并在结束后释放
+     *
+     * @param permit 通过 tryAcquire 申请到的名额
+     * @param out    目标输出流（导出结束后关闭）
+     * @param gzip   是否 gzip 压缩
+     * @param source 数据源：接收一个逐条消费消息的回调
+     * @return 导出的消息条数
+     * @throws IOException 写出失败（通常是客户端断开）
+     */
+    public long export(Permit permit, OutputStream out, boolean gzip,
+                       Consumer<Consumer<ChatMessageEntity>> source) throws IOException {
+        if (permit == null || permit.released.get()) {
+            throw new IllegalArgumentException("导出前须先申请名额");
+        }
+        long[] count = {0};
+        try (OutputStream target = gzip
+                ? new GZIPOutputStream(out, BUFFER_BYTES)
+                : new BufferedOutputStream(out, BUFFER_BYTES);
+             JsonGenerator gen = writer.getFactory().createGenerator(target)) {
+            gen.setRootValueSeparator(null); // 行分隔符自行写出，不使用默认的空格分隔
+            source.accept(m -> {
+                try {
+                    writer.writeValue(gen, m);
+                    gen.writeRaw('\n');
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            rows.increment(count[0]);
+        }
+        return count[0];
+    }
+
+    /**
+     * 导出名额：close 归还，重复 close 只归还一次
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+}
@@ -1,23 +1,45 @@
 package com.zpark.wsagent.service.impl;
 
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.zpark.wsagent.dto.CursorPage;
+import com.zpark.wsagent.dto.MessageCursor;
 import com.zpark.wsagent.emtity.ChatMessageEntity;
-import com.zpark.wsagent.mapper.ChatMessageMapper;
 import com.zpark.wsagent.service.ChatMessageService;
+import com.zpark.wsagent.store.ChatMessageStore;
+import com.zpark.wsagent.store.MessageStream;
+import com.zpark.wsagent.websocket.MessageIdGenerator;
 
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @Service
 public class ChatMessageServiceImpl implements ChatMessageService {
 
-    private final ChatMessageMapper chatMessageMapper;
+    private final ChatMessageStore store;
+    private final ChatMessageWriteBehindQueue writeBehindQueue;
+    private final RecentMessageCache recentCache;
+    private final MessageSearchIndex searchIndex;
+    private final MessageIdGenerator idGenerator;
 
-    public ChatMessageServiceImpl(ChatMessageMapper chatMessageMapper) {
-        this.chatMessageMapper = chatMessageMapper;
+    public ChatMessageServiceImpl(ChatMessageStore store,
+                                  ChatMessageWriteBehindQueue writeBehindQueue,
+                                  RecentMessageCache recentCache,
+                                  MessageSearchIndex searchIndex,
+                                  MessageIdGenerator idGenerator) {
+        this.store = store;
+        this.writeBehindQueue = writeBehindQueue;
+        this.recentCache = recentCache;
+        this.searchIndex = searchIndex;
+        this.idGenerator = idGenerator;
     }
 
     @Override
@@ -28,27 +50,159 @@ public class ChatMessageServiceImpl implements ChatMessageService {
         entity.setToUserId(toUserId);
         entity.setRoomId(roomId);
         entity.setContent(content);
-        // createdAt 由数据库默认值生成
-        chatMessageMapper.insert(entity);
+        fillId(entity);
+        fillConversationKey(entity);
+        fillCreatedAt(entity);
+        store.insert(entity);
+        recentCache.onCommitted(entity);
+        searchIndex.index(entity);
         return entity;
     }
 
+    @Override
+    public CompletableFuture<ChatMessageEntity> saveAsync(ChatMessageEntity entity) {
+        fillId(entity);
+        fillConversationKey(entity);
+        fillCreatedAt(entity);
+        if (writeBehindQueue.isEnabled()) {
+            return writeBehindQueue.enqueue(entity);
+        }
+        store.insert(entity);
+        recentCache.onCommitted(entity);
+        searchIndex.index(entity);
+        return CompletableFuture.completedFuture(entity);
+    }
+
+    @Override
+    public List<ChatMessageEntity> recentGroupMessages(String roomId, int limit) {
+        return recent(RecentMessageCache.roomKey(roomId), MessageStream.room(roomId), limit);
+    }
+
+    @Override
+    public List<ChatMessageEntity> recentPrivateMessages(String userA, String userB, int limit) {
+        String conversationKey = ConversationKeys.of(userA, userB);
+        return recent(RecentMessageCache.conversationKey(conversationKey), MessageStream.conversation(conversationKey), limit);
+    }
+
+    /**
+     * 最近消息：limit 不超过缓存窗口时走缓存（未命中时按窗口大小回源一次），否则直接查存储
+     */
+    private List<ChatMessageEntity> recent(String cacheKey, MessageStream stream, int limit) {
+        int n = Math.max(1, limit);
+        if (!recentCache.isEnabled() || n > recentCache.capacity()) {
+            return store.latest(stream, n);
+        }
+        return recentCache.recent(cacheKey, n, () -> store.latest(stream, recentCache.capacity()));
+    }
+
+    @Override
+    public List<ChatMessageEntity> listGroupAfterSeq(String roomId, long afterSeq, int limit) {
+        return store.roomAfterSeq(roomId, afterSeq, limit);
+    }
+
+    @Override
+    public CursorPage<ChatMessageEntity> cursorGroupHistory(String roomId,
+                                                            MessageCursor cursor,
+                                                            int size,
+                                                            boolean newestFirst,
+                                                            boolean withTotal,
+                                                            LocalDateTime startTime,
+                                                            LocalDateTime endTime) {
+        return store.cursor(MessageStream.room(roomId), cursor, size, newestFirst, withTotal, startTime, endTime);
+    }
+
+    @Override
+    public CursorPage<ChatMessageEntity> cursorPrivateHistory(String userA,
+                                                              String userB,
+                                                              MessageCursor cursor,
+                                                              int size,
+                                                              boolean newestFirst,
+                                                              boolean withTotal,
+                                                              LocalDateTime startTime,
+                                                              LocalDateTime endTime) {
+        return store.cursor(MessageStream.conversation(ConversationKeys.of(userA, userB)),
+                cursor, size, newestFirst, withTotal, startTime, endTime);
+    }
+
+    @Override
+    public void exportGroupHistory(String roomId, LocalDateTime startTime, LocalDateTime endTime,
+                                   Consumer<ChatMessageEntity> sink) {
+        store.scan(MessageStream.room(roomId), startTime, endTime, sink);
+    }
+
+    @Override
+    public void exportPrivateHistory(String userA, String userB, LocalDateTime startTime, LocalDateTime endTime,
+                                     Consumer<ChatMessageEntity> sink) {
+        store.scan(MessageStream.conversation(ConversationKeys.of(userA, userB)), startTime, endTime, sink);
+    }
+
+    @Override
+    public boolean isSearchEnabled() {
+        return searchIndex.isEnabled();
+    }
+
+    @Override
+    public IPage<ChatMessageEntity> searchGroupMessages(String roomId, String query, Page<ChatMessageEntity> page) {
+        return search(MessageStream.room(roomId), query, page);
+    }
+
+    @Override
+    public IPage<ChatMessageEntity> searchPrivateMessages(String userA, String userB, String query,
+                                                          Page<ChatMessageEntity> page) {
+        return search(MessageStream.conversation(ConversationKeys.of(userA, userB)), query, page);
+    }
+
+    /**
+     * 索引只给出排好序的 id，消息本身按 id 回存储批量取出后恢复相关度顺序
+     */
+    private IPage<ChatMessageEntity> search(MessageStream stream, String query, Page<ChatMessageEntity> page) {
+        long offset = Math.max(0, (page.getCurrent() - 1) * page.getSize());
+        MessageSearchIndex.SearchHits hits = searchIndex.search(stream, query, offset, (int) page.getSize());
+        Map<Long, ChatMessageEntity> byId = new HashMap<>();
+        for (ChatMessageEntity m : store.findByIds(stream, hits.ids())) {
+            byId.put(m.getId(), m);
+        }
+        page.setRecords(hits.ids().stream().map(byId::get).filter(Objects::nonNull).toList());
+        page.setTotal(hits.total());
+        return page;
+    }
+
+    /**
+     * 调用方（WebSocket 处理器）通常已预先分配 ID 并随消息下发；未分配时在此补齐
+     */
+    private void fillId(ChatMessageEntity entity) {
+        if (entity.getId() == null) {
+            entity.setId(idGenerator.nextId());
+        }
+    }
+
+    /**
+     * 私聊消息写入前补齐会话键
+     */
+    private static void fillConversationKey(ChatMessageEntity entity) {
+        if (entity.getRoomId() == null && entity.getFromUserId() != null && entity.getToUserId() != null) {
+            entity.setConversationKey(ConversationKeys.of(entity.getFromUserId(), entity.getToUserId()));
+        }
+    }
+
+    /**
+     * 创建时间由服务端生成（秒精度，与 TIMESTAMP 列一致），缓存中的消息与数据库保持相同的排序键
+     */
+    private static void fillCreatedAt(ChatMessageEntity entity) {
+        if (entity.getCreatedAt() == null) {
+            entity.setCreatedAt(LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
+        }
+    }
+
+    /**
+     * 偏移分页按创建时间升序，第 1 页是最早的消息，不走最近消息缓存（最近一页见 recentGroupMessages）
+     */
     @Override
     public IPage<ChatMessageEntity> pageGroupHistory(Page<ChatMessageEntity> page,
                                              String roomId,
                                              LocalDateTime startTime,
                                              LocalDateTime endTime) {
-        QueryWrapper<ChatMessageEntity> qw = new QueryWrapper<>();
-        qw.eq("room_id", roomId)
-          .isNull("to_user_id"); // 群聊无 to_user_id
-        if (startTime != null) {
-            qw.ge("created_at", startTime);
-        }
-        if (endTime != null) {
-            qw.le("created_at", endTime);
-        }
-        qw.orderByAsc("created_at").orderByAsc("id");
-        return chatMessageMapper.selectPage(page, qw);
+        return store.page(MessageStream.room(roomId), page, startTime, endTime);
     }
 
     @Override
@@ -57,19 +211,6 @@ public class ChatMessageServiceImpl implements ChatMessageService {
                                                String userB,
                                                LocalDateTime startTime,
                                                LocalDateTime endTime) {
-        QueryWrapper<ChatMessageEntity> qw = new QueryWrapper<>();
-        qw.isNull("room_id") // 私聊无 room_id
-          .and(w -> w
-                .nested(n -> n.eq("from_user_id", userA).eq("to_user_id", userB))
-                .or(n -> n.eq("from_user_id", userB).eq("to_user_id", userA))
-          );
-        if (startTime != null) {
-            qw.ge("created_at", startTime);
-        }
-        if (endTime != null) {
-            qw.le("created_at", endTime);
-        }
-        qw.orderByAsc("created_at").orderByAsc("id");
-        return chatMessageMapper.selectPage(page, qw);
+        return store.page(MessageStream.conversation(ConversationKeys.of(userA, userB)), page, startTime, endTime);
     }
 }
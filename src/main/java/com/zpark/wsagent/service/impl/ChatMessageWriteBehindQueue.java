@@ -0,0 +1,249 @@
+package com.zpark.wsagent.service.impl;
+
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+import com.zpark.wsagent.enums.PersistAckMode;
+import com.zpark.wsagent.enums.PersistMode;
+import com.zpark.wsagent.store.ChatMessageStore;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 聊天消息 write-behind 批量持久化队列：
+ * - 有界队列：入队最多等待 offer-timeout-ms，超时即拒绝（向上游施加背压）
+ * - 单个后台线程按 batch-size 或 flush-interval-ms 时间窗口合并为一次批量写入（组提交，MySQL 引擎下为一条多行 INSERT）
+ * - ACK 语义：ENQUEUE 入队即完成；COMMIT 所在批次提交后完成
+ * - 批量失败时逐行重试，隔离出错的行
+ * - 应用停机时排空队列并落库：停机与入队互斥，停机开始后不再有消息进入队列；
+ *   等待超时仍未落库的消息以异常完成，不会留下永远不完成的回执
+ * - 提交成功的消息写穿到最近消息缓存
+ *
+ * 配置（application.properties）：
+ *   chat.persist.mode               SYNC / WRITE_BEHIND
+ *   chat.persist.ack                ENQUEUE / COMMIT
+ *   chat.persist.batch-size         单批最大行数
+ *   chat.persist.flush-interval-ms  攒批时间窗口
+ *   chat.persist.queue-capacity     队列容量
+ *   chat.persist.offer-timeout-ms   队列满时入队等待时间
+ */
+@Slf4j
+@Component
+public class ChatMessageWriteBehindQueue {
+
+    // 刷盘线程单次等待的上限：停机后最迟在此间隔内察觉，不必等满整个攒批窗口
+    private static final long WAKE_UP_MS = 100;
+
+    private final ChatMessageStore store;
+    private final RecentMessageCache recentCache;
+    private final MessageSearchIndex searchIndex;
+    private final PersistMode mode;
+    private final PersistAckMode ackMode;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+    private final BlockingQueue<Pending> queue;
+    private final Thread flusher;
+    private volatile boolean running;
+    // 入队持读锁、停机持写锁：停机返回前正在进行的入队都已完成
+    private final ReadWriteLock lifecycle = new ReentrantReadWriteLock();
+
+    private final Counter rejectedCounter;
+    private final Counter failedCounter;
+    private final Timer flushTimer;
+
+    public ChatMessageWriteBehindQueue(ChatMessageStore store,
+                                       RecentMessageCache recentCache,
+                                       MessageSearchIndex searchIndex,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${chat.persist.mode:SYNC}") PersistMode mode,
+                                       @Value("${chat.persist.ack:COMMIT}") PersistAckMode ackMode,
+                                       @Value("${chat.persist.batch-size:200}") int batchSize,
+                                       @Value("${chat.persist.flush-interval-ms:20}") long flushIntervalMs,
+                                       @Value("${chat.persist.queue-capacity:10000}") int queueCapacity,
+                                       @Value("${chat.persist.offer-timeout-ms:100}") long offerTimeoutMs) {
+        this.store = store;
+        this.recentCache = recentCache;
+        this.searchIndex = searchIndex;
+        this.mode = mode;
+        this.ackMode = ackMode;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.offerTimeoutMs = Math.max(0, offerTimeoutMs);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+
+        Gauge.builder("chat.persist.queue.size", queue, BlockingQueue::size)
+                .description("write-behind 队列中待落库的消息数")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("chat.persist.rejected")
+                .description("因队列满被拒绝的消息数")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("chat.persist.failed")
+                .description("落库失败的消息数")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("chat.persist.flush")
+                .description("单批落库耗时")
+                .register(meterRegistry);
+
+        this.flusher = new Thread(this::runFlusher, "chat-persist-flusher");
+        this.flusher.setDaemon(true);
+        if (mode == PersistMode.WRITE_BEHIND) {
+            running = true;
+            flusher.start();
+        }
+    }
+
+    /**
+     * 是否启用 write-behind 模式
+     */
+    public boolean isEnabled() {
+        return mode == PersistMode.WRITE_BEHIND;
+    }
+
+    /**
+     * 入队一条待持久化消息
+     *
+     * @return 按 ACK 语义完成的 future（ENQUEUE：已入队；COMMIT：已提交）
+     * @throws IllegalStateException 队列已满（背压）或队列已停止
+     */
+    public CompletableFuture<ChatMessageEntity> enqueue(ChatMessageEntity entity) {
+        Pending pending = new Pending(entity, new CompletableFuture<>());
+        boolean accepted;
+        lifecycle.readLock().lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("持久化队列未运行");
+            }
+            accepted = queue.offer(pending, offerTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        } finally {
+            lifecycle.readLock().unlock();
+        }
+        if (!accepted) {
+            rejectedCounter.increment();
+            throw new IllegalStateException("消息持久化队列已满，请稍后重试");
+        }
+        return ackMode == PersistAckMode.ENQUEUE
+                ? CompletableFuture.completedFuture(entity)
+                : pending.future;
+    }
+
+    private void runFlusher() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(Math.min(flushIntervalMs, WAKE_UP_MS), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (true) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    // 停机后不再等待攒批，已在队列中的消息照常按批排空
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    Pending next = queue.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(WAKE_UP_MS)),
+                            TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                // 攒批时被中断：已取出的消息照常落库，随后继续循环直到停机且队列排空
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (Exception e) {
+                log.error("write-behind 刷盘线程异常", e);
+                fail(batch, e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        List<ChatMessageEntity> rows = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            rows.add(p.entity);
+        }
+        try {
+            flushTimer.record(() -> store.insertBatch(rows));
+            for (Pending p : batch) {
+                recentCache.onCommitted(p.entity);
+                searchIndex.index(p.entity);
+                p.future.complete(p.entity);
+            }
+        } catch (Exception batchError) {
+            log.warn("批量落库失败（{} 行），改为逐行重试: {}", batch.size(), batchError.getMessage());
+            for (Pending p : batch) {
+                try {
+                    store.insert(p.entity);
+                    recentCache.onCommitted(p.entity);
+                    searchIndex.index(p.entity);
+                    p.future.complete(p.entity);
+                } catch (Exception rowError) {
+                    failedCounter.increment();
+                    log.error("消息落库失败 from={} room={} to={}",
+                            p.entity.getFromUserId(), p.entity.getRoomId(), p.entity.getToUserId(), rowError);
+                    p.future.completeExceptionally(rowError);
+                }
+            }
+        }
+    }
+
+    private void fail(List<Pending> batch, Exception cause) {
+        for (Pending p : batch) {
+            if (p.future.completeExceptionally(cause)) {
+                failedCounter.increment();
+            }
+        }
+    }
+
+    /**
+     * 停机：停止接收新消息，等待刷盘线程把队列排空；等待超时后剩余的消息以异常完成
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        lifecycle.writeLock().lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+        } finally {
+            lifecycle.writeLock().unlock();
+        }
+        flusher.join(TimeUnit.SECONDS.toMillis(30));
+        List<Pending> left = new ArrayList<>();
+        queue.drainTo(left);
+        if (!left.isEmpty()) {
+            log.error("停机时仍有 {} 条消息未落库", left.size());
+            fail(left, new IllegalStateException("停机时消息未能落库"));
+        }
+    }
+
+    private record Pending(ChatMessageEntity entity, CompletableFuture<ChatMessageEntity> future) {
+    }
+}
@@ -0,0 +1,112 @@
+package com.zpark.wsagent.service.impl;
+
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+import com.zpark.wsagent.mapper.ChatMessageMapper;
+import com.zpark.wsagent.store.MysqlChatMessageStore;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 会话键回填任务：为升级前写入、conversation_key 为空的私聊消息补齐会话键
+ * - 应用就绪后在后台线程按主键顺序分批执行，每批一条 SELECT + 一条 CASE 批量 UPDATE
+ * - 批次之间暂停 pause-ms，避免长时间占用数据库
+ * - 全部补齐后通知 MysqlChatMessageStore 停止匹配历史 (from, to) 条件，线程退出；重启时从头扫描，已补齐的行不会被再次选中
+ * - 禁用时只检查一次是否存在缺少会话键的私聊消息：不存在即通知存储，存在则私聊查询继续兼容历史行
+ * - 仅 MySQL 存储引擎需要
+ *
+ * 配置（application.properties）：
+ *   chat.conversation-key.backfill.enabled     是否启用
+ *   chat.conversation-key.backfill.batch-size  单批行数
+ *   chat.conversation-key.backfill.pause-ms    批次间隔
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "chat.store.engine", havingValue = "mysql", matchIfMissing = true)
+public class ConversationKeyBackfillJob {
+
+    private final ChatMessageMapper chatMessageMapper;
+    private final MysqlChatMessageStore store;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long pauseMs;
+    private volatile Thread worker;
+
+    public ConversationKeyBackfillJob(ChatMessageMapper chatMessageMapper,
+                                      MysqlChatMessageStore store,
+                                      @Value("${chat.conversation-key.backfill.enabled:true}") boolean enabled,
+                                      @Value("${chat.conversation-key.backfill.batch-size:1000}") int batchSize,
+                                      @Value("${chat.conversation-key.backfill.pause-ms:50}") long pauseMs) {
+        this.chatMessageMapper = chatMessageMapper;
+        this.store = store;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.pauseMs = Math.max(0, pauseMs);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            try {
+                if (chatMessageMapper.selectMissingConversationKey(0, 1).isEmpty()) {
+                    store.conversationKeysBackfilled();
+                } else {
+                    log.warn("会话键回填已禁用且存在缺少会话键的私聊消息，私聊查询将持续兼容历史 (from, to) 条件");
+                }
+            } catch (Exception e) {
+                log.warn("检查缺少会话键的私聊消息失败: {}", e.getMessage());
+            }
+            return;
+        }
+        Thread t = new Thread(this::run, "conversation-key-backfill");
+        t.setDaemon(true);
+        worker = t;
+        t.start();
+    }
+
+    private void run() {
+        long lastId = 0;
+        long filled = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<ChatMessageEntity> rows = chatMessageMapper.selectMissingConversationKey(lastId, batchSize);
+                if (rows.isEmpty()) {
+                    store.conversationKeysBackfilled();
+                    break;
+                }
+                for (ChatMessageEntity row : rows) {
+                    row.setConversationKey(ConversationKeys.of(row.getFromUserId(), row.getToUserId()));
+                }
+                chatMessageMapper.updateConversationKeys(rows);
+                filled += rows.size();
+                lastId = rows.get(rows.size() - 1).getId();
+                if (pauseMs > 0) {
+                    Thread.sleep(pauseMs);
+                }
+            }
+            if (filled > 0) {
+                log.info("会话键回填完成，共更新 {} 条私聊消息", filled);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("会话键回填中断（已更新 {} 条，lastId={}）: {}", filled, lastId, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Thread t = worker;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.zpark.wsagent.service.impl;
+
+/**
+ * 私聊会话键：把无序的用户对规范化为唯一字符串，A->B 与 B->A 的消息落在同一键下
+ * 格式：{较小用户ID的长度}:{较小用户ID}{较大用户ID}，长度前缀保证任意用户ID组合都不会产生歧义
+ */
+final class ConversationKeys {
+
+    private ConversationKeys() {
+    }
+
+    static String of(String userA, String userB) {
+        boolean ordered = userA.compareTo(userB) <= 0;
+        String lo = ordered ? userA : userB;
+        String hi = ordered ? userB : userA;
+        return lo.length() + ":" + lo + hi;
+    }
+}
@@ -0,0 +1,131 @@
+package com.zpark.wsagent.service.impl;
+
+import com.zpark.wsagent.service.OfflineInboxService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单节点离线收件箱（chat.inbox.mode=local，默认）：每个用户一个有界队列，条目 ttl-hours 后过期
+ * 用户数超过 max-users 时不再为新用户排队（计入丢弃数）
+ */
+@Service
+@ConditionalOnProperty(name = "chat.inbox.mode", havingValue = "local", matchIfMissing = true)
+public class LocalOfflineInboxServiceImpl implements OfflineInboxService {
+
+    private final int maxPerUser;
+    private final int maxUsers;
+    private final long ttlMs;
+    // userId -> 收件箱；单个队列的访问在队列对象上同步
+    private final Map<String, Deque<Item>> inboxes = new ConcurrentHashMap<>();
+
+    private final Counter offered;
+    private final Counter dropped;
+    private final Counter acked;
+
+    public LocalOfflineInboxServiceImpl(MeterRegistry meterRegistry,
+                                        @Value("${chat.inbox.max-per-user:1000}") int maxPerUser,
+                                        @Value("${chat.inbox.max-users:100000}") int maxUsers,
+                                        @Value("${chat.inbox.ttl-hours:168}") long ttlHours) {
+        this.maxPerUser = Math.max(1, maxPerUser);
+        this.maxUsers = Math.max(1, maxUsers);
+        this.ttlMs = TimeUnit.HOURS.toMillis(Math.max(1, ttlHours));
+        Gauge.builder("chat.inbox.users", inboxes, Map::size)
+                .description("有待投递离线消息的用户数")
+                .register(meterRegistry);
+        this.offered = Counter.builder("chat.inbox.offered").description("进入离线收件箱的消息数").register(meterRegistry);
+        this.dropped = Counter.builder("chat.inbox.dropped").description("因收件箱已满被丢弃的消息数").register(meterRegistry);
+        this.acked = Counter.builder("chat.inbox.acked").description("客户端确认后删除的离线消息数").register(meterRegistry);
+    }
+
+    @Override
+    public void offer(String userId, long messageId, String frame) {
+        Deque<Item> inbox = inboxes.get(userId);
+        if (inbox == null) {
+            if (inboxes.size() >= maxUsers) {
+                dropped.increment();
+                return;
+            }
+            inbox = inboxes.computeIfAbsent(userId, k -> new ArrayDeque<>());
+        }
+        long now = System.currentTimeMillis();
+        synchronized (inbox) {
+            purgeExpired(inbox, now);
+            inbox.addLast(new Item(new Entry(messageId, frame), now + ttlMs));
+            if (inbox.size() > maxPerUser) {
+                inbox.pollFirst();
+                dropped.increment();
+            }
+        }
+        offered.increment();
+    }
+
+    @Override
+    public List<Entry> peek(String userId, int limit) {
+        Deque<Item> inbox = inboxes.get(userId);
+        if (inbox == null) {
+            return List.of();
+        }
+        synchronized (inbox) {
+            purgeExpired(inbox, System.currentTimeMillis());
+            List<Entry> result = new ArrayList<>(Math.min(limit, inbox.size()));
+            for (Item item : inbox) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                result.add(item.entry());
+            }
+            removeIfEmpty(userId, inbox);
+            return result;
+        }
+    }
+
+    @Override
+    public int ack(String userId, long upToId) {
+        Deque<Item> inbox = inboxes.get(userId);
+        if (inbox == null) {
+            return 0;
+        }
+        int removed = 0;
+        synchronized (inbox) {
+            while (!inbox.isEmpty() && inbox.peekFirst().entry().id() <= upToId) {
+                inbox.pollFirst();
+                removed++;
+            }
+            removeIfEmpty(userId, inbox);
+        }
+        acked.increment(removed);
+        return removed;
+    }
+
+    private static void purgeExpired(Deque<Item> inbox, long now) {
+        while (!inbox.isEmpty() && inbox.peekFirst().expiresAt() <= now) {
+            inbox.pollFirst();
+        }
+    }
+
+    /**
+     * 队列已空时移除（调用方持有队列锁）；并发的 offer 可能已拿到旧队列引用，因此只按原对象移除
+     */
+    private void removeIfEmpty(String userId, Deque<Item> inbox) {
+        if (inbox.isEmpty()) {
+            inboxes.remove(userId, inbox);
+        }
+    }
+
+    private record Item(Entry entry, long expiresAt) {
+    }
+}
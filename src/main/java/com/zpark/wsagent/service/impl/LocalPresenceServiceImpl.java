@@ -0,0 +1,50 @@
+package com.zpark.wsagent.service.impl;
+
+import com.zpark.wsagent.service.PresenceService;
+import com.zpark.wsagent.websocket.ChatSessionRegistry;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 单节点在线状态：直接读取本节点会话注册表（chat.presence.mode=local，默认）
+ */
+@Service
+@ConditionalOnProperty(name = "chat.presence.mode", havingValue = "local", matchIfMissing = true)
+public class LocalPresenceServiceImpl implements PresenceService {
+
+    private final ChatSessionRegistry registry;
+
+    public LocalPresenceServiceImpl(ChatSessionRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void heartbeat(String userId) {
+        // 单节点模式下在线状态即会话存在与否，无需续期
+    }
+
+    @Override
+    public boolean isOnline(String userId) {
+        return registry.hasLocalSession(userId);
+    }
+
+    @Override
+    public Map<String, Boolean> getOnlineStatus(Collection<String> userIds) {
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        for (String uid : userIds) {
+            result.put(uid, registry.hasLocalSession(uid));
+        }
+        return result;
+    }
+
+    @Override
+    public Set<String> getOnlineRoomMembers(String roomId) {
+        return registry.getRoomMembers(roomId);
+    }
+}
@@ -0,0 +1,406 @@
+package com.zpark.wsagent.service.impl;
+
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+import com.zpark.wsagent.store.ChatMessageStore;
+import com.zpark.wsagent.store.MessageStream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内全文索引：按房间 / 私聊会话分别维护倒排表（词 -> 按 id 升序的消息 id 与词频）
+ *
+ * - 分词：见 MessageTokenizer（中日韩二元组 + 字母数字词）
+ * - 写入：消息提交成功后增量加入（与最近消息缓存同一时机）；同一 id 重复加入被忽略，启动重建与实时写入可并行
+ * - 查询：所有查询词都必须命中（AND），按 BM25 的 idf 与饱和词频打分，分数相同时新消息在前；
+ *         查询单个汉字时匹配该消息流中包含此字的全部二元组
+ * - 重建：应用就绪后在后台线程从存储全量扫描一次；重建完成前查询结果可能不完整
+ * - 只建索引不存内容：命中的 id 由调用方回存储取出消息；已被存储删除的消息（如日志引擎过期段）自然不再返回
+ * - 容量上限：倒排项总数超过 max-postings 时按最近访问（写入或查询）淘汰整个消息流；被淘汰的消息流不再增量写入，
+ *   下次查询时从存储重新加载该消息流（store.scan），避免返回不完整的结果
+ * - 仅支持单节点：索引只由本节点提交的消息增量更新，集群中其他节点提交的消息不会进入本节点索引，
+ *   因此 chat.cluster.enabled=true 时索引停用，检索接口返回 503
+ *
+ * 配置（application.properties）：
+ *   chat.search.enabled             是否启用（集群模式下忽略，始终停用）
+ *   chat.search.rebuild-on-startup  启动后是否从存储重建
+ *   chat.search.max-indexed-chars   每条消息参与索引的最大字符数（超长的智能体回复只索引开头部分）
+ *   chat.search.max-postings        倒排项总数上限（每项约 12 字节数组空间，另有词表开销）
+ */
+@Slf4j
+@Component
+public class MessageSearchIndex {
+
+    private static final double K1 = 1.2;
+
+    private final ChatMessageStore store;
+    private final boolean enabled;
+    private final boolean rebuildOnStartup;
+    private final int maxIndexedChars;
+    private final long maxPostings;
+
+    // 因容量被淘汰、尚未重新加载的消息流在 streams 中以此占位，状态切换均为单键原子操作
+    private final StreamTerms evicted = new StreamTerms();
+    private final Map<MessageStream, StreamTerms> streams = new ConcurrentHashMap<>();
+    private final AtomicLong docs = new AtomicLong();
+    private final AtomicLong postings = new AtomicLong();
+    // 访问序号（单调递增），用于淘汰最久未访问的消息流
+    private final AtomicLong accessClock = new AtomicLong();
+    private final Counter queries;
+    private final Counter evictions;
+    private volatile boolean ready;
+
+    public MessageSearchIndex(ChatMessageStore store,
+                              MeterRegistry meterRegistry,
+                              @Value("${chat.search.enabled:true}") boolean enabled,
+                              @Value("${chat.search.rebuild-on-startup:true}") boolean rebuildOnStartup,
+                              @Value("${chat.search.max-indexed-chars:2000}") int maxIndexedChars,
+                              @Value("${chat.search.max-postings:20000000}") long maxPostings,
+                              @Value("${chat.cluster.enabled:false}") boolean clustered) {
+        this.store = store;
+        this.enabled = enabled && !clustered;
+        this.rebuildOnStartup = rebuildOnStartup;
+        this.maxIndexedChars = Math.max(1, maxIndexedChars);
+        this.maxPostings = Math.max(1, maxPostings);
+        this.ready = !rebuildOnStartup;
+        this.evicted.release();
+        if (enabled && clustered) {
+            log.warn("全文索引仅支持单节点部署，集群模式下已停用");
+        }
+
+        Gauge.builder("chat.search.docs", docs, AtomicLong::get)
+                .description("全文索引中的消息数")
+                .register(meterRegistry);
+        Gauge.builder("chat.search.postings", postings, AtomicLong::get)
+                .description("全文索引中的倒排项总数")
+                .register(meterRegistry);
+        this.queries = Counter.builder("chat.search.queries")
+                .description("全文检索请求数")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("chat.search.evictions")
+                .description("因倒排项总数超限被淘汰的消息流数")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 启动重建是否已完成
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled || !rebuildOnStartup) {
+            return;
+        }
+        Thread t = new Thread(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                store.scanAll(this::index);
+                ready = true;
+                log.info("全文索引重建完成：消息数={}，倒排项={}，耗时={}ms",
+                        docs.get(), postings.get(), System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                log.error("全文索引重建失败，仅包含启动后的新消息", e);
+            }
+        }, "search-index-rebuild");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * 加入一条已提交的消息
+     */
+    public void index(ChatMessageEntity m) {
+        if (!enabled || m.getId() == null) {
+            return;
+        }
+        MessageStream stream = streamOf(m);
+        if (stream == null) {
+            return;
+        }
+        Map<String, Integer> tf = MessageTokenizer.termFrequencies(m.getContent(), maxIndexedChars);
+        if (tf.isEmpty()) {
+            return;
+        }
+        StreamTerms st = streams.computeIfAbsent(stream, s -> new StreamTerms());
+        if (st == evicted) {
+            return; // 已淘汰的消息流在下次查询时从存储整体加载
+        }
+        st.lastAccess = accessClock.incrementAndGet();
+        st.add(m.getId(), tf);
+        if (postings.get() > maxPostings) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    /**
+     * 在一个消息流内检索
+     *
+     * @return 按相关度排序的第 offset 起最多 limit 个消息 id，以及命中总数
+     */
+    public SearchHits search(MessageStream stream, String query, long offset, int limit) {
+        queries.increment();
+        List<String> terms = MessageTokenizer.queryTerms(query);
+        if (!enabled || terms.isEmpty()) {
+            return new SearchHits(List.of(), 0);
+        }
+        StreamTerms st = streams.get(stream);
+        if (st == evicted) {
+            st = reload(stream);
+        }
+        if (st == null) {
+            return new SearchHits(List.of(), 0);
+        }
+        st.lastAccess = accessClock.incrementAndGet();
+        return st.search(terms, offset, Math.max(1, limit));
+    }
+
+    /**
+     * 从存储重新加载一个已淘汰的消息流；加载期间提交的新消息照常写入，重复 id 被忽略
+     */
+    private StreamTerms reload(MessageStream stream) {
+        StreamTerms fresh = new StreamTerms();
+        if (!streams.replace(stream, evicted, fresh)) {
+            StreamTerms current = streams.get(stream);
+            return current != evicted ? current : null; // 其他线程正在加载
+        }
+        fresh.lastAccess = accessClock.incrementAndGet();
+        try {
+            store.scan(stream, null, null, m -> {
+                Map<String, Integer> tf = MessageTokenizer.termFrequencies(m.getContent(), maxIndexedChars);
+                if (m.getId() != null && !tf.isEmpty()) {
+                    fresh.add(m.getId(), tf);
+                }
+            });
+        } catch (Exception e) {
+            // 加载失败时重新标记为已淘汰，下次查询再试
+            drop(stream, fresh);
+            throw e;
+        }
+        if (postings.get() > maxPostings) {
+            evictLeastRecentlyUsed();
+        }
+        return fresh;
+    }
+
+    /**
+     * 淘汰最久未访问的消息流，直到倒排项总数回到上限以内；至少保留最近访问的一个消息流
+     */
+    private synchronized void evictLeastRecentlyUsed() {
+        while (postings.get() > maxPostings) {
+            Map.Entry<MessageStream, StreamTerms> oldest = null;
+            int live = 0;
+            for (Map.Entry<MessageStream, StreamTerms> e : streams.entrySet()) {
+                if (e.getValue() == evicted) {
+                    continue;
+                }
+                live++;
+                if (oldest == null || e.getValue().lastAccess < oldest.getValue().lastAccess) {
+                    oldest = e;
+                }
+            }
+            if (live <= 1 || !drop(oldest.getKey(), oldest.getValue())) {
+                return;
+            }
+            evictions.increment();
+            log.debug("全文索引淘汰消息流 {}", oldest.getKey());
+        }
+    }
+
+    private boolean drop(MessageStream stream, StreamTerms st) {
+        if (!streams.replace(stream, st, evicted)) {
+            return false;
+        }
+        st.release();
+        return true;
+    }
+
+    private static MessageStream streamOf(ChatMessageEntity m) {
+        if (m.getRoomId() != null) {
+            return MessageStream.room(m.getRoomId());
+        }
+        if (m.getConversationKey() != null) {
+            return MessageStream.conversation(m.getConversationKey());
+        }
+        if (m.getFromUserId() != null && m.getToUserId() != null) {
+            // 回填前的历史私聊消息没有会话键，按同一规则计算
+            return MessageStream.conversation(ConversationKeys.of(m.getFromUserId(), m.getToUserId()));
+        }
+        return null;
+    }
+
+    public record SearchHits(List<Long> ids, long total) {
+    }
+
+    /**
+     * 单个消息流的倒排表，所有访问在 this 上同步
+     */
+    private final class StreamTerms {
+
+        private final Map<String, Postings> terms = new HashMap<>();
+        private int docCount;
+        private long postingCount;
+        private boolean released;
+        volatile long lastAccess;
+
+        synchronized void add(long id, Map<String, Integer> tf) {
+            if (released) {
+                return; // 已被淘汰，计数不再计入全局
+            }
+            boolean newDoc = false;
+            for (Map.Entry<String, Integer> e : tf.entrySet()) {
+                if (terms.computeIfAbsent(e.getKey(), k -> new Postings()).add(id, e.getValue())) {
+                    newDoc = true;
+                    postingCount++;
+                    postings.incrementAndGet();
+                }
+            }
+            if (newDoc) {
+                docCount++;
+                docs.incrementAndGet();
+            }
+        }
+
+        /**
+         * 从索引中移除后扣减全局计数并释放倒排表
+         */
+        synchronized void release() {
+            released = true;
+            postings.addAndGet(-postingCount);
+            docs.addAndGet(-docCount);
+            terms.clear();
+            postingCount = 0;
+            docCount = 0;
+        }
+
+        synchronized SearchHits search(List<String> queryTerms, long offset, int limit) {
+            Postings[] lists = new Postings[queryTerms.size()];
+            for (int i = 0; i < lists.length; i++) {
+                String term = queryTerms.get(i);
+                lists[i] = MessageTokenizer.isSingleCjk(term) ? unionContaining(term) : terms.get(term);
+                if (lists[i] == null || lists[i].size == 0) {
+                    return new SearchHits(List.of(), 0);
+                }
+            }
+            Arrays.sort(lists, Comparator.comparingInt(p -> p.size));
+            double[] idf = new double[lists.length];
+            for (int i = 0; i < lists.length; i++) {
+                int df = lists[i].size;
+                idf[i] = Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+            }
+
+            // 以最短的倒排表为驱动求交集，在其余表中二分定位；只保留前 offset+limit 名
+            int keep = (int) Math.min(Integer.MAX_VALUE - 1, offset + limit);
+            PriorityQueue<Hit> top = new PriorityQueue<>(Math.min(keep, 1024) + 1, Hit.BEST_FIRST.reversed());
+            long total = 0;
+            Postings driver = lists[0];
+            outer:
+            for (int d = 0; d < driver.size; d++) {
+                long id = driver.ids[d];
+                double score = idf[0] * saturate(driver.tfs[d]);
+                for (int i = 1; i < lists.length; i++) {
+                    int at = lists[i].indexOf(id);
+                    if (at < 0) {
+                        continue outer;
+                    }
+                    score += idf[i] * saturate(lists[i].tfs[at]);
+                }
+                total++;
+                top.offer(new Hit(id, score));
+                if (top.size() > keep) {
+                    top.poll();
+                }
+            }
+            List<Hit> ranked = new ArrayList<>(top);
+            ranked.sort(Hit.BEST_FIRST);
+            List<Long> ids = new ArrayList<>(limit);
+            for (long i = offset; i < ranked.size(); i++) {
+                ids.add(ranked.get((int) i).id());
+            }
+            return new SearchHits(ids, total);
+        }
+
+        /**
+         * 单字查询：合并本消息流中包含该字的所有词的倒排表（同一消息的词频相加）
+         */
+        private Postings unionContaining(String ch) {
+            TreeMap<Long, Integer> merged = new TreeMap<>();
+            for (Map.Entry<String, Postings> e : terms.entrySet()) {
+                if (e.getKey().contains(ch)) {
+                    Postings p = e.getValue();
+                    for (int i = 0; i < p.size; i++) {
+                        merged.merge(p.ids[i], p.tfs[i], Integer::sum);
+                    }
+                }
+            }
+            Postings union = new Postings();
+            merged.forEach(union::add);
+            return union;
+        }
+    }
+
+    private static double saturate(int tf) {
+        return tf * (K1 + 1) / (tf + K1);
+    }
+
+    private record Hit(long id, double score) {
+        static final Comparator<Hit> BEST_FIRST = Comparator.comparingDouble(Hit::score).reversed()
+                .thenComparing(Comparator.comparingLong(Hit::id).reversed());
+    }
+
+    /**
+     * 单个词的倒排表：按 id 升序的并行数组
+     */
+    private static final class Postings {
+        long[] ids = new long[4];
+        int[] tfs = new int[4];
+        int size;
+
+        /**
+         * @return 是否为新加入的 id
+         */
+        boolean add(long id, int tf) {
+            int at = size;
+            if (size > 0 && ids[size - 1] >= id) {
+                // 提交顺序与 id 顺序偶有交错（或重建与实时写入重叠）：二分定位，已存在则忽略
+                int found = Arrays.binarySearch(ids, 0, size, id);
+                if (found >= 0) {
+                    return false;
+                }
+                at = -found - 1;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                tfs = Arrays.copyOf(tfs, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            System.arraycopy(tfs, at, tfs, at + 1, size - at);
+            ids[at] = id;
+            tfs[at] = tf;
+            size++;
+            return true;
+        }
+
+        int indexOf(long id) {
+            int found = Arrays.binarySearch(ids, 0, size, id);
+            return found >= 0 ? found : -1;
+        }
+    }
+}
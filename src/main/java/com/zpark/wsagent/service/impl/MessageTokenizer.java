@@ -0,0 +1,106 @@
+package com.zpark.wsagent.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 全文索引分词：
+ * - 中日韩文字按相邻二元组（bigram）切分，例如 "今天天气" -> 今天 / 天天 / 天气；只有一个字的片段保留单字
+ * - 字母与数字按连续片段切成词并转小写，丢弃单个字母，超长片段截断
+ * - 其余字符（空白、标点、表情等）作为分隔符
+ * 文档与查询使用同一套规则，查询词与文档词直接按字符串相等匹配。
+ */
+final class MessageTokenizer {
+
+    private static final int MAX_WORD_CHARS = 32;
+
+    private MessageTokenizer() {
+    }
+
+    /**
+     * 文档分词：词 -> 出现次数
+     */
+    static Map<String, Integer> termFrequencies(String text, int maxChars) {
+        Map<String, Integer> tf = new HashMap<>();
+        tokenize(text, maxChars, t -> tf.merge(t, 1, Integer::sum));
+        return tf;
+    }
+
+    /**
+     * 查询分词：去重后的词，保持出现顺序
+     */
+    static List<String> queryTerms(String query) {
+        Set<String> terms = new LinkedHashSet<>();
+        tokenize(query, Integer.MAX_VALUE, terms::add);
+        return new ArrayList<>(terms);
+    }
+
+    /**
+     * 是否为单个中日韩字符（查询单字时需匹配包含该字的所有二元组）
+     */
+    static boolean isSingleCjk(String term) {
+        return term.length() == Character.charCount(term.codePointAt(0)) && isCjk(term.codePointAt(0));
+    }
+
+    private static void tokenize(String text, int maxChars, Consumer<String> out) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        int end = Math.min(text.length(), maxChars);
+        StringBuilder word = new StringBuilder();
+        int prevCjk = -1;      // 上一个中日韩字符
+        boolean cjkEmitted = false; // 当前中日韩片段是否已输出过二元组
+        for (int i = 0; i < end; ) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            if (isCjk(cp)) {
+                flushWord(word, out);
+                if (prevCjk >= 0) {
+                    out.accept(new StringBuilder(4).appendCodePoint(prevCjk).appendCodePoint(cp).toString());
+                    cjkEmitted = true;
+                }
+                prevCjk = cp;
+                continue;
+            }
+            flushCjk(prevCjk, cjkEmitted, out);
+            prevCjk = -1;
+            cjkEmitted = false;
+            if (Character.isLetterOrDigit(cp)) {
+                if (word.length() < MAX_WORD_CHARS) {
+                    word.appendCodePoint(Character.toLowerCase(cp));
+                }
+            } else {
+                flushWord(word, out);
+            }
+        }
+        flushCjk(prevCjk, cjkEmitted, out);
+        flushWord(word, out);
+    }
+
+    private static void flushCjk(int prevCjk, boolean cjkEmitted, Consumer<String> out) {
+        if (prevCjk >= 0 && !cjkEmitted) {
+            out.accept(new String(Character.toChars(prevCjk)));
+        }
+    }
+
+    private static void flushWord(StringBuilder word, Consumer<String> out) {
+        if (word.length() > 1 || (word.length() == 1 && Character.isDigit(word.charAt(0)))) {
+            out.accept(word.toString().toLowerCase(Locale.ROOT));
+        }
+        word.setLength(0);
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
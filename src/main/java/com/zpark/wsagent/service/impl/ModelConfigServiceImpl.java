@@ -39,6 +39,8 @@ public class ModelConfigServiceImpl implements ModelConfigService {
         if (db == null) {
             throw new IllegalArgumentException("模型配置不存在，id=" + id);
         }
+        // 修改前的厂家与模型对应的 Agent 缓存失效（prompt 或模型名变化后旧实例不再使用）
+        agentFactory.invalidate(db.getModelFactory(), db.getModelName());
         // 仅允许修改字段：factory/name/context/system/creator
         if (StringUtils.hasText(req.getModelFactory())) db.setModelFactory(req.getModelFactory());
         if (StringUtils.hasText(req.getModelName())) db.setModelName(req.getModelName());
@@ -46,13 +48,19 @@ public class ModelConfigServiceImpl implements ModelConfigService {
         if (req.getModelSystemPrompt() != null) db.setModelSystemPrompt(req.getModelSystemPrompt());
         if (StringUtils.hasText(req.getCreator())) db.setCreator(req.getCreator());
         aiModelInfoMapper.updateById(db);
+        agentFactory.invalidate(db.getModelFactory(), db.getModelName());
         return db;
     }
 
     @Override
     public boolean delete(Long id) {
+        AiModelInfoEntity db = aiModelInfoMapper.selectById(id);
         // 逻辑删除
-        return aiModelInfoMapper.deleteById(id) > 0;
+        boolean deleted = aiModelInfoMapper.deleteById(id) > 0;
+        if (deleted && db != null) {
+            agentFactory.invalidate(db.getModelFactory(), db.getModelName());
+        }
+        return deleted;
     }
 
     @Override
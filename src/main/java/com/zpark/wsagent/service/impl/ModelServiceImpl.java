@@ -32,19 +32,19 @@ public class ModelServiceImpl implements ModelService {
     @Autowired
     private List<ToolBase> toolBaseList;
 
+    // 工具回调只构建一次，所有 Agent 共用（也是 AgentFactory 缓存 key 的一部分）
+    private volatile List<ToolCallback> toolCallbacks;
+
     @Override
     public List<ReactAgent> getReactAgents() {
         List<AiModelInfoEntity> all = modelConfigService.getAll();
         List<ReactAgent> agents = new java.util.ArrayList<>();
-        
+        List<ToolCallback> toolList = getToolCallbacks();
+
         for (AiModelInfoEntity modelConfig : all) {
             try {
                 String prompt = modelConfig.getModelContextPrompt()+modelConfig.getModelSystemPrompt();
-                log.info("Creating agent for model: {}", modelConfig.getModelName());
-                List<ToolCallback> toolList = new ArrayList<>();
-                for (ToolBase tool : toolBaseList) {
-                    toolList.add(tool.getToolCallback());
-                }
+                log.debug("Getting agent for model: {}", modelConfig.getModelName());
                 agents.add(agentFactory.getAgent(modelConfig.getModelFactory(), modelConfig.getModelName(),prompt,toolList));
             } catch (Exception e) {
                 log.error("Failed to create agent for model: {}", modelConfig.getModelName(), e);
@@ -52,4 +52,17 @@ public class ModelServiceImpl implements ModelService {
         }
         return agents;
     }
+
+    private List<ToolCallback> getToolCallbacks() {
+        List<ToolCallback> callbacks = toolCallbacks;
+        if (callbacks == null) {
+            List<ToolCallback> built = new ArrayList<>();
+            for (ToolBase tool : toolBaseList) {
+                built.add(tool.getToolCallback());
+            }
+            callbacks = List.copyOf(built);
+            toolCallbacks = callbacks;
+        }
+        return callbacks;
+    }
 }
@@ -0,0 +1,408 @@
+package com.zpark.wsagent.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 最近消息缓存：为每个房间 / 私聊会话保留最近 N 条已落库消息，"最近一页"读取不再访问数据库
+ *
+ * 两级结构：
+ * - 本地：按访问顺序淘汰的有界 LRU（最多 max-keys 个房间/会话）
+ * - Redis（可选）：LIST {prefix}history:{key}，元素为 "id\njson"，带 TTL；多节点共享，本地未命中时先查 Redis 再回源数据库
+ *
+ * 写入：消息提交成功后写穿（SYNC 插入后 / write-behind 批次提交后）。本地层只追加到已加载的窗口，
+ * 未加载的房间/会话在首次读取时从数据库整体加载。加载期间到达的新消息会合并进结果，不会丢失。
+ *
+ * Redis 层的完整性：写穿无条件 RPUSH（列表不存在时也创建），从数据库回填的列表以 WINDOW_MARKER 开头。
+ * 读取只认"以标记开头"或"已攒满 N 条"的列表，否则视为未命中；回填用脚本执行，列表已完整时不覆盖，
+ * 未完整时把数据库快照与回填前已写穿的消息按 id 合并。节点 A 读库回填期间节点 B 提交的消息
+ * 因此总会留在列表里，不会被 A 的旧快照覆盖掉。
+ *
+ * 集群（chat.cluster.enabled=true）：本地层停用。其他节点提交的消息只写穿到它们自己的本地窗口和共享的 Redis 列表，
+ * 本节点的本地窗口一旦加载就不再感知这些消息，会一直返回过期结果；因此集群下读取直接走 Redis 层（所有节点写穿同一列表），
+ * 未启用 Redis 层时直接回源数据库。
+ *
+ * 服务范围：最近消息接口（recentGroupMessages / recentPrivateMessages）。偏移分页 pageGroupHistory 按创建时间升序，
+ * 第 1 页是房间最早的消息而非最近的消息，且需要总数，缓存窗口无法覆盖，仍直接查询存储。
+ *
+ * 配置（application.properties）：
+ *   chat.history-cache.enabled              是否启用
+ *   chat.history-cache.size                 每个房间/会话缓存的条数 N
+ *   chat.history-cache.max-keys             本地缓存的房间/会话数上限
+ *   chat.history-cache.redis-enabled        是否启用 Redis 层
+ *   chat.history-cache.redis-ttl-seconds    Redis 列表过期时间
+ */
+@Slf4j
+@Component
+public class RecentMessageCache {
+
+    // Redis 列表头部的完整性标记：列表由数据库快照回填，包含快照之后写穿的全部消息
+    static final String WINDOW_MARKER = "#window";
+
+    // KEYS[1] 列表；ARGV[1] 窗口大小 N；ARGV[2] TTL 秒；ARGV[3] 标记；ARGV[4..] 数据库快照（"id\njson"）
+    // 合并后按 id（随时间递增）排序，保留最新的 N 条
+    private static final RedisScript<Long> FILL_SCRIPT = new DefaultRedisScript<>(
+            "local size = tonumber(ARGV[1]) "
+                    + "if redis.call('LINDEX', KEYS[1], 0) == ARGV[3] or redis.call('LLEN', KEYS[1]) >= size then "
+                    + "  return 0 "
+                    + "end "
+                    + "local seen, merged = {}, {} "
+                    + "local function idOf(v) "
+                    + "  return string.sub(v, 1, (string.find(v, '\\n', 1, true) or 1) - 1) "
+                    + "end "
+                    + "local function add(v) "
+                    + "  local id = idOf(v) "
+                    + "  if id == '' or not seen[id] then "
+                    + "    seen[id] = true "
+                    + "    merged[#merged + 1] = v "
+                    + "  end "
+                    + "end "
+                    + "for i = 4, #ARGV do add(ARGV[i]) end "
+                    + "for _, v in ipairs(redis.call('LRANGE', KEYS[1], 0, -1)) do add(v) end "
+                    + "table.sort(merged, function(a, b) "
+                    + "  local x, y = idOf(a), idOf(b) "
+                    + "  if #x ~= #y then return #x < #y end "
+                    + "  return x < y "
+                    + "end) "
+                    + "redis.call('DEL', KEYS[1]) "
+                    + "redis.call('RPUSH', KEYS[1], ARGV[3]) "
+                    + "for i = math.max(1, #merged - size + 1), #merged do redis.call('RPUSH', KEYS[1], merged[i]) end "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[2]) "
+                    + "return #merged", Long.class);
+
+    private static final Comparator<ChatMessageEntity> ORDER =
+            Comparator.comparing(ChatMessageEntity::getCreatedAt, Comparator.nullsLast(Comparator.naturalOrder()))
+                    .thenComparing(ChatMessageEntity::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final StringRedisTemplate redis;
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+    private final boolean enabled;
+    private final boolean redisEnabled;
+    private final boolean localEnabled;
+    private final int size;
+    private final int maxKeys;
+    private final long redisTtlSeconds;
+    private final String keyPrefix;
+
+    // key -> 窗口；访问顺序 LinkedHashMap 实现 LRU，所有访问在 this 上同步
+    private final LinkedHashMap<String, Window> local;
+
+    private final Counter localHit;
+    private final Counter localMiss;
+    private final Counter redisHit;
+    private final Counter redisMiss;
+    private final Counter evictions;
+
+    public RecentMessageCache(StringRedisTemplate redis,
+                              MeterRegistry meterRegistry,
+                              @Value("${chat.history-cache.enabled:true}") boolean enabled,
+                              @Value("${chat.history-cache.size:50}") int size,
+                              @Value("${chat.history-cache.max-keys:10000}") int maxKeys,
+                              @Value("${chat.history-cache.redis-enabled:false}") boolean redisEnabled,
+                              @Value("${chat.history-cache.redis-ttl-seconds:600}") long redisTtlSeconds,
+                              @Value("${chat.cluster.enabled:false}") boolean clustered,
+                              @Value("${chat.cluster.channel-prefix:wsagent:}") String keyPrefix) {
+        this.redis = redis;
+        this.enabled = enabled;
+        this.redisEnabled = redisEnabled;
+        this.localEnabled = !clustered;
+        this.size = Math.max(1, size);
+        this.maxKeys = Math.max(1, maxKeys);
+        this.redisTtlSeconds = Math.max(1, redisTtlSeconds);
+        this.keyPrefix = keyPrefix;
+        this.local = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Window> eldest) {
+                if (size() > RecentMessageCache.this.maxKeys) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        Gauge.builder("chat.history.cache.keys", this, RecentMessageCache::localSize)
+                .description("本地最近消息缓存中的房间/会话数")
+                .register(meterRegistry);
+        this.localHit = lookupCounter(meterRegistry, "local", "hit");
+        this.localMiss = lookupCounter(meterRegistry, "local", "miss");
+        this.redisHit = lookupCounter(meterRegistry, "redis", "hit");
+        this.redisMiss = lookupCounter(meterRegistry, "redis", "miss");
+        this.evictions = Counter.builder("chat.history.cache.evictions")
+                .description("本地最近消息缓存因容量淘汰的房间/会话数")
+                .register(meterRegistry);
+        if (enabled && clustered) {
+            log.info("集群模式下最近消息缓存停用本地层，{}", redisEnabled ? "读取走 Redis 层" : "未启用 Redis 层，读取直接回源数据库");
+        }
+    }
+
+    private static Counter lookupCounter(MeterRegistry registry, String tier, String result) {
+        return Counter.builder("chat.history.cache.lookups")
+                .tag("tier", tier)
+                .tag("result", result)
+                .description("最近消息缓存查询次数")
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 单个房间/会话缓存的最大条数
+     */
+    public int capacity() {
+        return size;
+    }
+
+    static String roomKey(String roomId) {
+        return "room:" + roomId;
+    }
+
+    static String conversationKey(String conversationKey) {
+        return "conv:" + conversationKey;
+    }
+
+    /**
+     * 消息已提交，写穿到缓存（仅追加到已加载的窗口）
+     */
+    public void onCommitted(ChatMessageEntity entity) {
+        if (!enabled) {
+            return;
+        }
+        String key = keyOf(entity);
+        if (key == null) {
+            return;
+        }
+        if (localEnabled) {
+            synchronized (this) {
+                Window w = local.get(key);
+                if (w != null) {
+                    w.append(entity, size);
+                }
+            }
+        }
+        if (redisEnabled) {
+            try {
+                byte[] k = bytes(redisKey(key));
+                byte[] v = bytes(encode(entity));
+                redis.executePipelined((RedisCallback<Object>) conn -> {
+                    // 无条件追加：列表尚未回填时也记下这条消息，回填脚本会把它与数据库快照合并；
+                    // 多保留一个位置给头部的完整性标记
+                    conn.listCommands().rPush(k, v);
+                    conn.listCommands().lTrim(k, -(size + 1), -1);
+                    conn.keyCommands().expire(k, redisTtlSeconds);
+                    return null;
+                });
+            } catch (Exception e) {
+                log.warn("最近消息写入 Redis 失败 key={}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 读取最近 limit 条（按时间升序），未命中时依次回源 Redis、数据库
+     *
+     * @param loader 数据库回源：返回最近 capacity() 条，顺序不限
+     */
+    public List<ChatMessageEntity> recent(String key, int limit, Supplier<List<ChatMessageEntity>> loader) {
+        if (!localEnabled) {
+            return recentShared(key, limit, loader);
+        }
+        Window w;
+        synchronized (this) {
+            w = local.get(key);
+            if (w != null && w.loaded) {
+                localHit.increment();
+                return w.tail(limit);
+            }
+            localMiss.increment();
+            if (w == null) {
+                // 先占位：加载期间提交的消息会追加到占位窗口，加载完成后合并
+                w = new Window();
+                local.put(key, w);
+            }
+        }
+        List<ChatMessageEntity> loaded = redisEnabled ? loadFromRedis(key) : null;
+        boolean fromDb = loaded == null;
+        if (fromDb) {
+            loaded = loader.get();
+        }
+        List<ChatMessageEntity> result;
+        List<ChatMessageEntity> snapshot;
+        synchronized (this) {
+            w.complete(loaded, size);
+            if (local.get(key) != w) {
+                local.put(key, w);
+            }
+            result = w.tail(limit);
+            snapshot = fromDb && redisEnabled ? w.snapshot() : null;
+        }
+        if (snapshot != null) {
+            storeToRedis(key, snapshot);
+        }
+        return result;
+    }
+
+    /**
+     * 集群下的读取：Redis 层（各节点写穿同一列表）未命中时回源数据库并回填 Redis，不经过本地层
+     */
+    private List<ChatMessageEntity> recentShared(String key, int limit, Supplier<List<ChatMessageEntity>> loader) {
+        List<ChatMessageEntity> loaded = redisEnabled ? loadFromRedis(key) : null;
+        boolean fromDb = loaded == null;
+        if (fromDb) {
+            loaded = loader.get();
+        }
+        Window w = new Window();
+        w.complete(loaded, size);
+        if (fromDb && redisEnabled) {
+            storeToRedis(key, w.snapshot());
+        }
+        return w.tail(limit);
+    }
+
+    /**
+     * 读取 Redis 窗口；列表不存在，或只有回填前写穿的部分消息（无标记且不足 N 条）时返回 null
+     */
+    private List<ChatMessageEntity> loadFromRedis(String key) {
+        try {
+            List<String> values = redis.opsForList().range(redisKey(key), 0, -1);
+            boolean marked = values != null && !values.isEmpty() && WINDOW_MARKER.equals(values.get(0));
+            if (values == null || (!marked && values.size() < size)) {
+                redisMiss.increment();
+                return null;
+            }
+            redisHit.increment();
+            List<ChatMessageEntity> result = new ArrayList<>(values.size());
+            for (int i = marked ? 1 : 0; i < values.size(); i++) {
+                String v = values.get(i);
+                result.add(mapper.readValue(v.substring(v.indexOf('\n') + 1), ChatMessageEntity.class));
+            }
+            return result;
+        } catch (Exception e) {
+            log.warn("读取 Redis 最近消息失败 key={}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 用数据库快照回填 Redis 窗口：列表已完整时不动，否则与已写穿的消息按 id 合并（见 FILL_SCRIPT）
+     */
+    private void storeToRedis(String key, List<ChatMessageEntity> messages) {
+        try {
+            List<String> args = new ArrayList<>(messages.size() + 3);
+            args.add(Integer.toString(size));
+            args.add(Long.toString(redisTtlSeconds));
+            args.add(WINDOW_MARKER);
+            for (ChatMessageEntity m : messages) {
+                args.add(encode(m));
+            }
+            redis.execute(FILL_SCRIPT, List.of(redisKey(key)), args.toArray());
+        } catch (Exception e) {
+            log.warn("写入 Redis 最近消息失败 key={}: {}", key, e.getMessage());
+        }
+    }
+
+    private String keyOf(ChatMessageEntity entity) {
+        if (entity.getRoomId() != null) {
+            return roomKey(entity.getRoomId());
+        }
+        if (entity.getConversationKey() != null) {
+            return conversationKey(entity.getConversationKey());
+        }
+        return null;
+    }
+
+    private String encode(ChatMessageEntity entity) throws Exception {
+        return (entity.getId() != null ? entity.getId().toString() : "") + '\n' + mapper.writeValueAsString(entity);
+    }
+
+    private String redisKey(String key) {
+        return keyPrefix + "history:" + key;
+    }
+
+    private synchronized int localSize() {
+        return local.size();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 单个房间/会话的最近消息窗口（按 created_at, id 升序），由外层 synchronized 保护
+     */
+    private static final class Window {
+
+        private final ArrayDeque<ChatMessageEntity> messages = new ArrayDeque<>();
+        private boolean loaded;
+
+        void append(ChatMessageEntity entity, int capacity) {
+            messages.addLast(entity);
+            while (messages.size() > capacity) {
+                messages.pollFirst();
+            }
+        }
+
+        /**
+         * 合并加载结果与加载期间追加的消息（按主键去重），排序后截取最近 capacity 条
+         */
+        void complete(List<ChatMessageEntity> loadedMessages, int capacity) {
+            if (loaded) {
+                return;
+            }
+            Map<Long, ChatMessageEntity> merged = new HashMap<>();
+            List<ChatMessageEntity> all = new ArrayList<>(loadedMessages.size() + messages.size());
+            for (ChatMessageEntity m : loadedMessages) {
+                if (m.getId() == null || merged.putIfAbsent(m.getId(), m) == null) {
+                    all.add(m);
+                }
+            }
+            for (ChatMessageEntity m : messages) {
+                if (m.getId() == null || merged.putIfAbsent(m.getId(), m) == null) {
+                    all.add(m);
+                }
+            }
+            all.sort(ORDER);
+            messages.clear();
+            for (int i = Math.max(0, all.size() - capacity); i < all.size(); i++) {
+                messages.addLast(all.get(i));
+            }
+            loaded = true;
+        }
+
+        List<ChatMessageEntity> tail(int limit) {
+            int skip = Math.max(0, messages.size() - limit);
+            List<ChatMessageEntity> result = new ArrayList<>(Math.min(limit, messages.size()));
+            Iterator<ChatMessageEntity> it = messages.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                ChatMessageEntity m = it.next();
+                if (i >= skip) {
+                    result.add(m);
+                }
+            }
+            return result;
+        }
+
+        List<ChatMessageEntity> snapshot() {
+            return new ArrayList<>(messages);
+        }
+    }
+}
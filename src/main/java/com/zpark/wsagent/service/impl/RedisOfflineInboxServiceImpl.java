@@ -0,0 +1,136 @@
+package com.zpark.wsagent.service.impl;
+
+import com.zpark.wsagent.service.OfflineInboxService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式离线收件箱（chat.inbox.mode=redis）
+ *
+ * Redis 数据结构：
+ * - {prefix}inbox:{userId}  LIST，元素为 "{messageId}\n{frame}"，按入队顺序 RPUSH；
+ *                           入队时 LTRIM 保留最新 max-per-user 条，并把 key 的 TTL 续到 ttl-hours
+ *
+ * 确认用 Lua 脚本原子地从队首弹出 id 不大于确认 id 的元素；id 超出 Lua 双精度数的精确范围，按十进制字符串比较。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "chat.inbox.mode", havingValue = "redis")
+public class RedisOfflineInboxServiceImpl implements OfflineInboxService {
+
+    private static final RedisScript<Long> ACK_SCRIPT = new DefaultRedisScript<>(
+            "local n = 0 "
+                    + "while true do "
+                    + "  local v = redis.call('LINDEX', KEYS[1], 0) "
+                    + "  if not v then break end "
+                    + "  local id = string.sub(v, 1, (string.find(v, '\\n', 1, true) or (#v + 1)) - 1) "
+                    + "  if #id > #ARGV[1] or (#id == #ARGV[1] and id > ARGV[1]) then break end "
+                    + "  redis.call('LPOP', KEYS[1]) "
+                    + "  n = n + 1 "
+                    + "end "
+                    + "return n", Long.class);
+
+    private final StringRedisTemplate redis;
+    private final String keyPrefix;
+    private final int maxPerUser;
+    private final long ttlSeconds;
+
+    private final Counter offered;
+    private final Counter acked;
+
+    public RedisOfflineInboxServiceImpl(StringRedisTemplate redis,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${chat.presence.key-prefix:wsagent:}") String keyPrefix,
+                                        @Value("${chat.inbox.max-per-user:1000}") int maxPerUser,
+                                        @Value("${chat.inbox.ttl-hours:168}") long ttlHours) {
+        this.redis = redis;
+        this.keyPrefix = keyPrefix;
+        this.maxPerUser = Math.max(1, maxPerUser);
+        this.ttlSeconds = TimeUnit.HOURS.toSeconds(Math.max(1, ttlHours));
+        this.offered = Counter.builder("chat.inbox.offered").description("进入离线收件箱的消息数").register(meterRegistry);
+        this.acked = Counter.builder("chat.inbox.acked").description("客户端确认后删除的离线消息数").register(meterRegistry);
+    }
+
+    @Override
+    public void offer(String userId, long messageId, String frame) {
+        byte[] key = bytes(inboxKey(userId));
+        byte[] value = bytes(messageId + "\n" + frame);
+        try {
+            redis.executePipelined((RedisCallback<Object>) conn -> {
+                conn.listCommands().rPush(key, value);
+                conn.listCommands().lTrim(key, -maxPerUser, -1);
+                conn.keyCommands().expire(key, ttlSeconds);
+                return null;
+            });
+            offered.increment();
+        } catch (Exception e) {
+            log.warn("离线消息入队失败 userId={} id={}: {}", userId, messageId, e.getMessage());
+        }
+    }
+
+    @Override
+    public List<Entry> peek(String userId, int limit) {
+        List<String> values;
+        try {
+            values = redis.opsForList().range(inboxKey(userId), 0, Math.max(1, limit) - 1);
+        } catch (Exception e) {
+            log.warn("读取离线收件箱失败 userId={}: {}", userId, e.getMessage());
+            return List.of();
+        }
+        if (values == null || values.isEmpty()) {
+            return List.of();
+        }
+        List<Entry> result = new ArrayList<>(values.size());
+        for (String v : values) {
+            int sep = v.indexOf('\n');
+            if (sep <= 0) {
+                continue;
+            }
+            try {
+                result.add(new Entry(Long.parseLong(v, 0, sep, 10), v.substring(sep + 1)));
+            } catch (NumberFormatException e) {
+                log.warn("忽略格式错误的离线消息 userId={}", userId);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int ack(String userId, long upToId) {
+        if (upToId < 0) {
+            return 0;
+        }
+        try {
+            Long removed = redis.execute(ACK_SCRIPT, List.of(inboxKey(userId)), Long.toString(upToId));
+            int n = removed == null ? 0 : removed.intValue();
+            acked.increment(n);
+            return n;
+        } catch (Exception e) {
+            log.warn("确认离线消息失败 userId={} upTo={}: {}", userId, upToId, e.getMessage());
+            return 0;
+        }
+    }
+
+    private String inboxKey(String userId) {
+        return keyPrefix + "inbox:" + userId;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
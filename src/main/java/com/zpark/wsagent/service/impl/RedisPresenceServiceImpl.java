@@ -0,0 +1,382 @@
+package com.zpark.wsagent.service.impl;
+
+import com.zpark.wsagent.cluster.ClusterFanout;
+import com.zpark.wsagent.service.PresenceService;
+import com.zpark.wsagent.websocket.ChatSessionRegistry;
+import com.zpark.wsagent.websocket.RegistryListener;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式在线状态（chat.presence.mode=redis）
+ *
+ * Redis 数据结构：
+ * - {prefix}presence:{userId}      HASH，field=nodeId，value=该节点上在线状态的过期时间戳(ms)；key 本身带 TTL
+ *                                  任一 field 未过期即视为在线，节点宕机后其 field 自然过期
+ * - {prefix}room-members:{roomId}  HASH，field=nodeId + '\n' + userId，value=该节点上成员关系的过期时间戳(ms)；key 本身带 TTL
+ *                                  与 presence 相同按节点记录并随续期刷新，节点宕机后其 field 过期不再计入，
+ *                                  读取时顺带用脚本删除已过期的 field，所有节点都停止续期后整个 key 过期
+ *
+ * 续期：本节点每 ttl/3 用一次 pipeline 为所有本地在线用户与本地房间成员关系续期；客户端 HEARTBEAT 额外按需续期。
+ * 加入/离开房间不在入站线程上访问 Redis：交给续期线程按注册表的最新状态写入或删除对应 field。
+ * 近端缓存：远端用户的在线状态与房间在线名单在本地缓存 near-cache-ms，高频名单查询不必每次访问 Redis。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "chat.presence.mode", havingValue = "redis")
+public class RedisPresenceServiceImpl implements PresenceService, RegistryListener {
+
+    // 删除仍未被续期的过期 field：ARGV[1] 为当前时间，其余为读取时已过期的 field
+    private static final RedisScript<Long> PRUNE_SCRIPT = new DefaultRedisScript<>(
+            "local n = 0 "
+                    + "for i = 2, #ARGV do "
+                    + "  local v = redis.call('HGET', KEYS[1], ARGV[i]) "
+                    + "  if v and tonumber(v) <= tonumber(ARGV[1]) then "
+                    + "    redis.call('HDEL', KEYS[1], ARGV[i]) "
+                    + "    n = n + 1 "
+                    + "  end "
+                    + "end "
+                    + "return n", Long.class);
+
+    private final StringRedisTemplate redis;
+    private final ChatSessionRegistry registry;
+    private final String nodeId;
+    private final String keyPrefix;
+    private final long ttlMs;
+    private final long nearCacheMs;
+    private final int nearCacheSize;
+
+    // userId -> 近端缓存的在线状态
+    private final Map<String, CachedStatus> statusCache = new ConcurrentHashMap<>();
+    // roomId -> 近端缓存的在线名单
+    private final Map<String, CachedRoster> rosterCache = new ConcurrentHashMap<>();
+    // userId -> 最近一次写入 Redis 的时间（心跳节流）
+    private final Map<String, Long> lastRefresh = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService refresher;
+
+    public RedisPresenceServiceImpl(StringRedisTemplate redis,
+                                    ChatSessionRegistry registry,
+                                    ClusterFanout clusterFanout,
+                                    @Value("${chat.presence.key-prefix:wsagent:}") String keyPrefix,
+                                    @Value("${chat.presence.ttl-seconds:60}") long ttlSeconds,
+                                    @Value("${chat.presence.near-cache-ms:1000}") long nearCacheMs,
+                                    @Value("${chat.presence.near-cache-size:100000}") int nearCacheSize) {
+        this.redis = redis;
+        this.registry = registry;
+        this.nodeId = clusterFanout.getNodeId();
+        this.keyPrefix = keyPrefix;
+        this.ttlMs = TimeUnit.SECONDS.toMillis(Math.max(3, ttlSeconds));
+        this.nearCacheMs = nearCacheMs;
+        this.nearCacheSize = nearCacheSize;
+        registry.addListener(this);
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("presence-refresh-");
+        threadFactory.setDaemon(true);
+        this.refresher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        long period = ttlMs / 3;
+        refresher.scheduleAtFixedRate(this::refreshLocalUsers, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // ---------------- 写路径 ----------------
+
+    @Override
+    public void heartbeat(String userId) {
+        long now = System.currentTimeMillis();
+        Long last = lastRefresh.get(userId);
+        if (last != null && now - last < ttlMs / 3) {
+            return; // 距上次续期不足 ttl/3，跳过
+        }
+        markOnline(userId, now);
+    }
+
+    @Override
+    public void onUserChanged(String userId) {
+        statusCache.remove(userId);
+        try {
+            if (registry.hasLocalSession(userId)) {
+                markOnline(userId, System.currentTimeMillis());
+            } else {
+                lastRefresh.remove(userId);
+                redis.opsForHash().delete(presenceKey(userId), nodeId);
+            }
+        } catch (Exception e) {
+            log.warn("更新在线状态失败 userId={}: {}", userId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMembershipChanged(String roomId, String userId, boolean joined) {
+        rosterCache.remove(roomId);
+        try {
+            refresher.execute(() -> syncMembership(roomId, userId));
+        } catch (RejectedExecutionException e) {
+            // 停机中，成员关系随 field 过期
+        }
+    }
+
+    /**
+     * 按注册表当前状态写入或删除本节点的成员关系 field，与回调的先后顺序无关
+     */
+    private void syncMembership(String roomId, String userId) {
+        String key = roomMembersKey(roomId);
+        try {
+            if (registry.getRoomMembers(roomId).contains(userId)) {
+                byte[] rawKey = bytes(key);
+                byte[] value = bytes(Long.toString(System.currentTimeMillis() + ttlMs));
+                redis.executePipelined((RedisCallback<Object>) conn -> {
+                    conn.hashCommands().hSet(rawKey, bytes(memberField(userId)), value);
+                    conn.keyCommands().pExpire(rawKey, ttlMs);
+                    return null;
+                });
+            } else {
+                redis.opsForHash().delete(key, memberField(userId));
+            }
+        } catch (Exception e) {
+            log.warn("更新房间成员失败 roomId={} userId={}: {}", roomId, userId, e.getMessage());
+        }
+    }
+
+    private void markOnline(String userId, long now) {
+        String key = presenceKey(userId);
+        redis.opsForHash().put(key, nodeId, Long.toString(now + ttlMs));
+        redis.expire(key, ttlMs, TimeUnit.MILLISECONDS);
+        lastRefresh.put(userId, now);
+    }
+
+    /**
+     * 定时用一次 pipeline 为本节点全部在线用户与本地房间成员关系续期
+     */
+    private void refreshLocalUsers() {
+        try {
+            List<String> users = new ArrayList<>(registry.getLocalUserIds());
+            List<String> rooms = new ArrayList<>(registry.getLocalRoomIds());
+            if (users.isEmpty() && rooms.isEmpty()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            byte[] field = bytes(nodeId);
+            byte[] value = bytes(Long.toString(now + ttlMs));
+            long ttlSeconds = TimeUnit.MILLISECONDS.toSeconds(ttlMs);
+            redis.executePipelined((RedisCallback<Object>) conn -> {
+                for (String uid : users) {
+                    byte[] key = bytes(presenceKey(uid));
+                    conn.hashCommands().hSet(key, field, value);
+                    conn.keyCommands().expire(key, ttlSeconds);
+                }
+                for (String roomId : rooms) {
+                    Set<String> members = registry.getRoomMembers(roomId);
+                    if (members.isEmpty()) {
+                        continue;
+                    }
+                    byte[] key = bytes(roomMembersKey(roomId));
+                    for (String uid : members) {
+                        conn.hashCommands().hSet(key, bytes(memberField(uid)), value);
+                    }
+                    conn.keyCommands().expire(key, ttlSeconds);
+                }
+                return null;
+            });
+            for (String uid : users) {
+                lastRefresh.put(uid, now);
+            }
+        } catch (Exception e) {
+            log.warn("在线状态批量续期失败: {}", e.getMessage());
+        }
+    }
+
+    // ---------------- 读路径 ----------------
+
+    @Override
+    public boolean isOnline(String userId) {
+        return getOnlineStatus(List.of(userId)).getOrDefault(userId, false);
+    }
+
+    @Override
+    public Map<String, Boolean> getOnlineStatus(Collection<String> userIds) {
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        List<String> misses = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String uid : userIds) {
+            if (registry.hasLocalSession(uid)) {
+                result.put(uid, true); // 本地连接无需查询 Redis
+                continue;
+            }
+            CachedStatus cached = statusCache.get(uid);
+            if (cached != null && cached.expiresAt > now) {
+                result.put(uid, cached.online);
+            } else {
+                result.put(uid, false);
+                misses.add(uid);
+            }
+        }
+        if (!misses.isEmpty()) {
+            lookupRemote(misses, now, result);
+        }
+        return result;
+    }
+
+    /**
+     * 用一次 pipeline 批量读取多个用户的 presence HASH
+     */
+    private void lookupRemote(List<String> userIds, long now, Map<String, Boolean> result) {
+        List<Object> replies;
+        try {
+            replies = redis.executePipelined((RedisCallback<Object>) conn -> {
+                for (String uid : userIds) {
+                    conn.hashCommands().hVals(bytes(presenceKey(uid)));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("批量查询在线状态失败: {}", e.getMessage());
+            return;
+        }
+        if (statusCache.size() + userIds.size() > nearCacheSize) {
+            statusCache.clear();
+        }
+        for (int i = 0; i < userIds.size(); i++) {
+            boolean online = false;
+            Object reply = i < replies.size() ? replies.get(i) : null;
+            if (reply instanceof Collection<?> values) {
+                for (Object v : values) {
+                    if (v != null && Long.parseLong(v.toString()) > now) {
+                        online = true;
+                        break;
+                    }
+                }
+            }
+            String uid = userIds.get(i);
+            result.put(uid, online);
+            statusCache.put(uid, new CachedStatus(online, now + nearCacheMs));
+        }
+    }
+
+    @Override
+    public Set<String> getOnlineRoomMembers(String roomId) {
+        long now = System.currentTimeMillis();
+        CachedRoster cached = rosterCache.get(roomId);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.members;
+        }
+        Set<String> candidates = new LinkedHashSet<>(registry.getRoomMembers(roomId));
+        try {
+            List<String> expired = new ArrayList<>();
+            for (Map.Entry<Object, Object> e : redis.opsForHash().entries(roomMembersKey(roomId)).entrySet()) {
+                String field = e.getKey().toString();
+                if (Long.parseLong(e.getValue().toString()) > now) {
+                    candidates.add(field.substring(field.indexOf('\n') + 1));
+                } else {
+                    expired.add(field);
+                }
+            }
+            if (!expired.isEmpty()) {
+                pruneExpired(roomId, now, expired);
+            }
+        } catch (Exception e) {
+            log.warn("查询房间成员失败 roomId={}: {}", roomId, e.getMessage());
+        }
+        Set<String> local = registry.getRoomMembers(roomId);
+        Set<String> online = new LinkedHashSet<>();
+        getOnlineStatus(candidates).forEach((uid, isOnline) -> {
+            // 本地成员（含无连接的智能体成员）始终计入
+            if (isOnline || local.contains(uid)) {
+                online.add(uid);
+            }
+        });
+        Set<String> roster = Collections.unmodifiableSet(online);
+        if (rosterCache.size() >= nearCacheSize) {
+            rosterCache.clear();
+        }
+        rosterCache.put(roomId, new CachedRoster(roster, now + nearCacheMs));
+        return roster;
+    }
+
+    /**
+     * 在续期线程上删除已过期的成员关系 field（宕机节点遗留）；删除前在脚本内复核，不会误删刚被续期的 field
+     */
+    private void pruneExpired(String roomId, long now, List<String> fields) {
+        List<String> args = new ArrayList<>(fields.size() + 1);
+        args.add(Long.toString(now));
+        args.addAll(fields);
+        try {
+            refresher.execute(() -> {
+                try {
+                    redis.execute(PRUNE_SCRIPT, List.of(roomMembersKey(roomId)), args.toArray());
+                } catch (Exception e) {
+                    log.warn("清理过期房间成员失败 roomId={}: {}", roomId, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 停机中，留给其他节点清理
+        }
+    }
+
+    // ---------------- 工具 ----------------
+
+    private String presenceKey(String userId) {
+        return keyPrefix + "presence:" + userId;
+    }
+
+    private String roomMembersKey(String roomId) {
+        return keyPrefix + "room-members:" + roomId;
+    }
+
+    private String memberField(String userId) {
+        return nodeId + '\n' + userId;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 停机：移除本节点写入的在线状态与房间成员关系，避免等待 TTL 过期
+     */
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+        try {
+            List<String> users = new ArrayList<>(registry.getLocalUserIds());
+            List<String> rooms = new ArrayList<>(registry.getLocalRoomIds());
+            byte[] field = bytes(nodeId);
+            redis.executePipelined((RedisCallback<Object>) conn -> {
+                for (String uid : users) {
+                    conn.hashCommands().hDel(bytes(presenceKey(uid)), field);
+                }
+                for (String roomId : rooms) {
+                    byte[] key = bytes(roomMembersKey(roomId));
+                    for (String uid : registry.getRoomMembers(roomId)) {
+                        conn.hashCommands().hDel(key, bytes(memberField(uid)));
+                    }
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("停机清理在线状态失败: {}", e.getMessage());
+        }
+    }
+
+    private record CachedStatus(boolean online, long expiresAt) {
+    }
+
+    private record CachedRoster(Set<String> members, long expiresAt) {
+    }
+}
@@ -0,0 +1,77 @@
+package com.zpark.wsagent.store;
+
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.zpark.wsagent.dto.CursorPage;
+import com.zpark.wsagent.dto.MessageCursor;
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 聊天消息存储 SPI：ChatMessageService 与写后队列只依赖此接口，具体引擎由 chat.store.engine 选择
+ * - mysql（默认）：MyBatis-Plus + MySQL，见 MysqlChatMessageStore
+ * - log：本地内存映射追加日志，无需外部数据库，见 MmapLogChatMessageStore
+ *
+ * 约定：写入前实体已补齐 id（MessageIdGenerator 预分配，主键 IdType.INPUT）、createdAt 与 conversationKey，
+ * 引擎不再回填 id；批量写入要么全部成功、要么全部不可见，失败后调用方可逐条重试而不会产生重复记录。
+ */
+public interface ChatMessageStore {
+
+    /**
+     * 写入一条消息
+     */
+    void insert(ChatMessageEntity entity);
+
+    /**
+     * 批量写入（单次提交，全部成功或全部失败）
+     */
+    void insertBatch(List<ChatMessageEntity> entities);
+
+    /**
+     * 消息流最近 limit 条，按 (created_at, id) 升序返回
+     */
+    List<ChatMessageEntity> latest(MessageStream stream, int limit);
+
+    /**
+     * OFFSET 分页，按 (created_at, id) 升序，可按时间范围过滤
+     */
+    IPage<ChatMessageEntity> page(MessageStream stream, Page<ChatMessageEntity> page,
+                                  LocalDateTime startTime, LocalDateTime endTime);
+
+    /**
+     * 游标分页，参数含义见 ChatMessageService#cursorGroupHistory
+     */
+    CursorPage<ChatMessageEntity> cursor(MessageStream stream, MessageCursor cursor, int size,
+                                         boolean newestFirst, boolean withTotal,
+                                         LocalDateTime startTime, LocalDateTime endTime);
+
+    /**
+     * 按 (created_at, id) 升序逐条回调消息流中的全部消息（导出用），不在内存中累积结果，可按时间范围过滤
+     */
+    void scan(MessageStream stream, LocalDateTime startTime, LocalDateTime endTime,
+              Consumer<ChatMessageEntity> sink);
+
+    /**
+     * 逐条回调全部消息流中的全部消息（全文索引启动重建用），不保证跨消息流的顺序
+     */
+    void scanAll(Consumer<ChatMessageEntity> sink);
+
+    /**
+     * 按 id 取出消息流中的消息，不存在（或已过保留期）的 id 被忽略，不保证返回顺序
+     */
+    List<ChatMessageEntity> findByIds(MessageStream stream, Collection<Long> ids);
+
+    /**
+     * 房间内序号大于 afterSeq 的消息，按序号升序，最多 limit 条
+     */
+    List<ChatMessageEntity> roomAfterSeq(String roomId, long afterSeq, int limit);
+
+    /**
+     * 房间内已持久化的最大序号，没有时返回 null
+     */
+    Long maxRoomSeq(String roomId);
+}
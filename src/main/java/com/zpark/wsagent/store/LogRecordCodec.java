@@ -0,0 +1,82 @@
+package com.zpark.wsagent.store;
+
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 追加日志的消息编解码（定长头 + 变长字符串，避免 JSON 的解析与体积开销）
+ *
+ * 负载布局：
+ *   long id | long createdAt(epoch 秒，按 UTC 解释本地时间) | long roomSeq(null 为 Long.MIN_VALUE)
+ *   | type | fromUserId | toUserId | roomId | conversationKey | content
+ * 每个字符串为 int 长度（null 为 -1）+ UTF-8 字节。
+ */
+final class LogRecordCodec {
+
+    private static final long NULL_SEQ = Long.MIN_VALUE;
+
+    private LogRecordCodec() {
+    }
+
+    static byte[] encode(ChatMessageEntity e) {
+        byte[][] strings = {
+                utf8(e.getType()), utf8(e.getFromUserId()), utf8(e.getToUserId()),
+                utf8(e.getRoomId()), utf8(e.getConversationKey()), utf8(e.getContent())
+        };
+        int size = 3 * Long.BYTES;
+        for (byte[] s : strings) {
+            size += Integer.BYTES + (s != null ? s.length : 0);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putLong(e.getId());
+        buf.putLong(toEpochSecond(e.getCreatedAt()));
+        buf.putLong(e.getRoomSeq() != null ? e.getRoomSeq() : NULL_SEQ);
+        for (byte[] s : strings) {
+            if (s == null) {
+                buf.putInt(-1);
+            } else {
+                buf.putInt(s.length);
+                buf.put(s);
+            }
+        }
+        return buf.array();
+    }
+
+    static ChatMessageEntity decode(byte[] payload) {
+        ByteBuffer buf = ByteBuffer.wrap(payload);
+        ChatMessageEntity e = new ChatMessageEntity();
+        e.setId(buf.getLong());
+        e.setCreatedAt(LocalDateTime.ofEpochSecond(buf.getLong(), 0, ZoneOffset.UTC));
+        long seq = buf.getLong();
+        e.setRoomSeq(seq != NULL_SEQ ? seq : null);
+        e.setType(readString(buf));
+        e.setFromUserId(readString(buf));
+        e.setToUserId(readString(buf));
+        e.setRoomId(readString(buf));
+        e.setConversationKey(readString(buf));
+        e.setContent(readString(buf));
+        return e;
+    }
+
+    static long toEpochSecond(LocalDateTime time) {
+        return time != null ? time.toEpochSecond(ZoneOffset.UTC) : 0L;
+    }
+
+    private static byte[] utf8(String s) {
+        return s != null ? s.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getInt();
+        if (len < 0) {
+            return null;
+        }
+        String s = new String(buf.array(), buf.position(), len, StandardCharsets.UTF_8);
+        buf.position(buf.position() + len);
+        return s;
+    }
+}
@@ -0,0 +1,200 @@
+package com.zpark.wsagent.store;
+
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * 日志段：一个预分配定长、整体内存映射的文件，记录顺序追加
+ *
+ * 记录格式：int 负载长度 | int CRC32(负载) | 负载；长度为 0 表示段内数据结束（预分配区域全为 0）。
+ * 打开已有段时逐条校验 CRC，遇到长度越界或校验失败即视为崩溃时的残缺写入，从该位置截断并清零。
+ *
+ * 写入由 MmapLogChatMessageStore 的写锁串行化；读取使用绝对位置访问，不修改 buffer 状态，可与写入并发。
+ */
+@Slf4j
+final class LogSegment {
+
+    static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    /**
+     * 恢复时逐条回调已校验的记录
+     */
+    interface RecordVisitor {
+        void visit(int offset, ChatMessageEntity entity);
+    }
+
+    private final int number;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int writePos;
+    private long maxCreatedAt;
+
+    private LogSegment(int number, Path path, FileChannel channel, MappedByteBuffer buffer) {
+        this.number = number;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity();
+    }
+
+    /**
+     * 打开（或创建）段文件并映射；已有数据逐条校验并回调 visitor
+     */
+    static LogSegment open(Path path, int number, int capacity, RecordVisitor visitor) {
+        try {
+            boolean exists = Files.exists(path);
+            FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            int size = exists ? (int) Math.max(ch.size(), 0) : capacity;
+            if (size == 0) {
+                size = capacity;
+            }
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            LogSegment segment = new LogSegment(number, path, ch, buf);
+            if (exists) {
+                segment.recover(visitor);
+            }
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开日志段失败: " + path, e);
+        }
+    }
+
+    private void recover(RecordVisitor visitor) {
+        int pos = 0;
+        CRC32 crc = new CRC32();
+        while (pos + HEADER_BYTES <= capacity) {
+            int len = buffer.getInt(pos);
+            if (len == 0) {
+                break;
+            }
+            if (len < 0 || pos + HEADER_BYTES + len > capacity) {
+                truncate(pos, "长度越界");
+                break;
+            }
+            byte[] payload = new byte[len];
+            buffer.get(pos + HEADER_BYTES, payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(pos + Integer.BYTES)) {
+                truncate(pos, "CRC 校验失败");
+                break;
+            }
+            ChatMessageEntity entity = LogRecordCodec.decode(payload);
+            maxCreatedAt = Math.max(maxCreatedAt, LogRecordCodec.toEpochSecond(entity.getCreatedAt()));
+            visitor.visit(pos, entity);
+            pos += HEADER_BYTES + len;
+        }
+        writePos = pos;
+    }
+
+    /**
+     * 残缺尾部清零，避免之后追加的短记录后面残留旧字节被误读
+     */
+    private void truncate(int pos, String reason) {
+        log.warn("日志段 {} 在偏移 {} 处{}，截断其后数据", path.getFileName(), pos, reason);
+        byte[] zeros = new byte[8192];
+        for (int p = pos; p < capacity; p += zeros.length) {
+            int n = Math.min(zeros.length, capacity - p);
+            buffer.put(p, zeros, 0, n);
+        }
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @return 记录起始偏移；剩余空间不足时返回 -1（调用方滚动到新段）
+     */
+    int append(byte[] payload, long createdAt) {
+        int need = HEADER_BYTES + payload.length;
+        if (writePos + need > capacity) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        int pos = writePos;
+        // 先写负载与校验和，最后写长度：长度非 0 即表示记录完整
+        buffer.put(pos + HEADER_BYTES, payload);
+        buffer.putInt(pos + Integer.BYTES, (int) crc.getValue());
+        buffer.putInt(pos, payload.length);
+        writePos = pos + need;
+        maxCreatedAt = Math.max(maxCreatedAt, createdAt);
+        return pos;
+    }
+
+    /**
+     * 回滚到之前的写入位置：清零其后已追加的记录（长度字段归零即不可见），恢复写入位置与最大创建时间
+     */
+    void rollback(int pos, long previousMaxCreatedAt) {
+        if (pos < writePos) {
+            byte[] zeros = new byte[Math.min(8192, writePos - pos)];
+            for (int p = pos; p < writePos; p += zeros.length) {
+                buffer.put(p, zeros, 0, Math.min(zeros.length, writePos - p));
+            }
+        }
+        writePos = pos;
+        maxCreatedAt = previousMaxCreatedAt;
+    }
+
+    ChatMessageEntity read(int offset) {
+        int len = buffer.getInt(offset);
+        byte[] payload = new byte[len];
+        buffer.get(offset + HEADER_BYTES, payload);
+        return LogRecordCodec.decode(payload);
+    }
+
+    int number() {
+        return number;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int size() {
+        return writePos;
+    }
+
+    long maxCreatedAt() {
+        return maxCreatedAt;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("关闭日志段失败 {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * 关闭并删除段文件（映射内存在 buffer 被回收后释放）
+     */
+    void delete() {
+        close();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("删除日志段失败 {}: {}", path, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.zpark.wsagent.store;
+
+/**
+ * 消息流：一个群聊房间或一个私聊会话（按会话键）
+ *
+ * @param room true 表示房间，false 表示私聊会话
+ * @param key  房间ID 或 私聊会话键
+ */
+public record MessageStream(boolean room, String key) {
+
+    public static MessageStream room(String roomId) {
+        return new MessageStream(true, roomId);
+    }
+
+    public static MessageStream conversation(String conversationKey) {
+        return new MessageStream(false, conversationKey);
+    }
+}
@@ -0,0 +1,530 @@
+package com.zpark.wsagent.store;
+
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.zpark.wsagent.dto.CursorPage;
+import com.zpark.wsagent.dto.MessageCursor;
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * 内存映射追加日志存储引擎（chat.store.engine=log），无需外部数据库
+ *
+ * - 写入：消息编码后顺序追加到当前活动段（预分配、整体 mmap 的定长文件），写满后滚动到新段
+ * - 索引：内存中按房间 / 私聊会话维护记录位置、id、创建时间、房间序号，启动时扫描全部段重建
+ * - 读取：按索引定位后直接从映射区解码，不经过数据库
+ * - 崩溃恢复：记录带 CRC32，启动扫描遇到残缺记录即截断
+ * - id：通常由调用方预先分配（时间有序）；未分配时从最大已存 id 继续递增。追加按 id 幂等：消息流中已存在的 id 直接跳过
+ * - 批量写入全部成功或全部不可见：先编码并校验整批，追加中途失败时回滚段写入位置、删除本批新建的段，
+ *   索引在全部追加成功后才更新，写后队列逐条重试不会产生重复记录或索引项
+ * - 保留策略：后台定期删除最新消息早于 retention-hours 的非活动段，并裁剪索引
+ * - 持久性：默认依赖操作系统回写页缓存（进程崩溃不丢数据）；force-on-write=true 时每批写入后 msync
+ *
+ * 本引擎中消息流的顺序以 id 为准（预分配 id 与写入顺序可能有少量交错，索引按 id 有序插入），游标分页按 id 定位。
+ *
+ * 配置（application.properties）：
+ *   chat.store.log.dir                 段文件目录
+ *   chat.store.log.segment-bytes       单段大小
+ *   chat.store.log.retention-hours     保留时长
+ *   chat.store.log.force-on-write      每批写入后是否强制刷盘
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "chat.store.engine", havingValue = "log")
+public class MmapLogChatMessageStore implements ChatMessageStore {
+
+    private static final String SUFFIX = ".log";
+    // 房间序号由处理线程分配、按写入顺序落盘，二者可能有少量交错；按序号回放时向前多看的记录数
+    private static final int SEQ_REORDER_WINDOW = 64;
+    // 导出时每次持有读锁解码的记录数，回调（写网络）在锁外执行，不阻塞写入
+    private static final int SCAN_CHUNK = 512;
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final long retentionSeconds;
+    private final boolean forceOnWrite;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, LogSegment> segments = new TreeMap<>();
+    private final Map<String, StreamIndex> streams = new HashMap<>();
+    private LogSegment active;
+    private long nextId = 1;
+    private final ScheduledExecutorService retentionExecutor;
+
+    public MmapLogChatMessageStore(MeterRegistry meterRegistry,
+                                   @Value("${chat.store.log.dir:./data/chat-log}") String dir,
+                                   @Value("${chat.store.log.segment-bytes:67108864}") int segmentBytes,
+                                   @Value("${chat.store.log.retention-hours:168}") long retentionHours,
+                                   @Value("${chat.store.log.force-on-write:false}") boolean forceOnWrite) {
+        this.dir = Paths.get(dir);
+        this.segmentBytes = Math.max(64 * 1024, segmentBytes);
+        this.retentionSeconds = TimeUnit.HOURS.toSeconds(Math.max(1, retentionHours));
+        this.forceOnWrite = forceOnWrite;
+        recover();
+
+        Gauge.builder("chat.store.log.segments", this, s -> s.withReadLock(s.segments::size))
+                .description("日志段数量")
+                .register(meterRegistry);
+        Gauge.builder("chat.store.log.bytes", this, MmapLogChatMessageStore::usedBytes)
+                .description("日志段中已写入的字节数")
+                .register(meterRegistry);
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("chat-log-retention-");
+        threadFactory.setDaemon(true);
+        this.retentionExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        retentionExecutor.scheduleWithFixedDelay(this::applyRetention, 5, 5, TimeUnit.MINUTES);
+    }
+
+    // ---------------- 启动恢复 ----------------
+
+    private void recover() {
+        try {
+            Files.createDirectories(dir);
+            List<Path> files;
+            try (Stream<Path> list = Files.list(dir)) {
+                files = list.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+            }
+            long count = 0;
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int number = Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+                long[] recovered = {0};
+                LogSegment segment = LogSegment.open(file, number, segmentBytes, (offset, e) -> {
+                    index(StreamIndex.position(number, offset), e);
+                    nextId = Math.max(nextId, e.getId() + 1);
+                    recovered[0]++;
+                });
+                segments.put(number, segment);
+                count += recovered[0];
+            }
+            active = segments.isEmpty() ? newSegment(0) : segments.lastEntry().getValue();
+            log.info("追加日志存储已加载：目录={}，段数={}，消息数={}，下一个id={}", dir.toAbsolutePath(), segments.size(), count, nextId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("初始化追加日志存储失败: " + dir, e);
+        }
+    }
+
+    private LogSegment newSegment(int number) {
+        Path path = dir.resolve(String.format("%010d%s", number, SUFFIX));
+        LogSegment segment = LogSegment.open(path, number, segmentBytes, (o, e) -> { });
+        segments.put(number, segment);
+        return segment;
+    }
+
+    // ---------------- 写入 ----------------
+
+    @Override
+    public void insert(ChatMessageEntity entity) {
+        insertBatch(List.of(entity));
+    }
+
+    @Override
+    public void insertBatch(List<ChatMessageEntity> entities) {
+        lock.writeLock().lock();
+        try {
+            // 第一步：分配缺失的 id、跳过已存在的 id、编码并校验整批，任何一条不合法都不写入
+            List<ChatMessageEntity> accepted = new ArrayList<>(entities.size());
+            List<byte[]> payloads = new ArrayList<>(entities.size());
+            Set<Long> batchIds = new HashSet<>();
+            long assign = nextId;
+            for (ChatMessageEntity e : entities) {
+                // 沿用预分配的 ID（MessageIdGenerator），未分配时按本地递增序列补齐
+                if (e.getId() == null) {
+                    e.setId(assign++);
+                }
+                if (!batchIds.add(e.getId()) || isStored(e)) {
+                    continue; // 重试或重复提交的同一条消息
+                }
+                byte[] payload = LogRecordCodec.encode(e);
+                if (LogSegment.HEADER_BYTES + payload.length > segmentBytes) {
+                    throw new IllegalArgumentException("消息过大，超过单个日志段容量");
+                }
+                accepted.add(e);
+                payloads.add(payload);
+            }
+            // 已回填到实体上的 id 即使本批失败也不再分配给其他消息，重试时沿用
+            nextId = Math.max(nextId, assign);
+
+            // 第二步：追加到日志；中途失败则回滚到本批开始前的位置
+            LogSegment startSegment = active;
+            int startPos = startSegment.size();
+            long startMaxCreated = startSegment.maxCreatedAt();
+            long[] positions = new long[accepted.size()];
+            try {
+                for (int i = 0; i < accepted.size(); i++) {
+                    long created = LogRecordCodec.toEpochSecond(accepted.get(i).getCreatedAt());
+                    int offset = active.append(payloads.get(i), created);
+                    if (offset < 0) {
+                        // 当前段已满：落盘后滚动到新段
+                        active.force();
+                        active = newSegment(active.number() + 1);
+                        offset = active.append(payloads.get(i), created);
+                    }
+                    positions[i] = StreamIndex.position(active.number(), offset);
+                }
+                if (forceOnWrite) {
+                    active.force();
+                }
+            } catch (RuntimeException | Error failure) {
+                rollback(startSegment, startPos, startMaxCreated);
+                throw failure;
+            }
+
+            // 第三步：全部追加成功后再更新索引
+            for (int i = 0; i < accepted.size(); i++) {
+                ChatMessageEntity e = accepted.get(i);
+                nextId = Math.max(nextId, e.getId() + 1);
+                index(positions[i], e);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean isStored(ChatMessageEntity e) {
+        StreamIndex idx = streams.get(streamKey(e));
+        return idx != null && idx.containsId(e.getId());
+    }
+
+    /**
+     * 撤销一批未完成的追加：删除本批新建的段，起始段回到本批开始前的写入位置
+     */
+    private void rollback(LogSegment startSegment, int startPos, long startMaxCreated) {
+        while (active != startSegment) {
+            segments.remove(active.number());
+            active.delete();
+            active = segments.lastEntry().getValue();
+        }
+        startSegment.rollback(startPos, startMaxCreated);
+        log.warn("批量写入失败，已回滚到段 {} 偏移 {}", startSegment.number(), startPos);
+    }
+
+    private void index(long position, ChatMessageEntity e) {
+        String key = streamKey(e);
+        if (key == null) {
+            return;
+        }
+        streams.computeIfAbsent(key, k -> new StreamIndex()).add(position, e.getId(),
+                LogRecordCodec.toEpochSecond(e.getCreatedAt()),
+                e.getRoomSeq() != null ? e.getRoomSeq() : StreamIndex.NO_SEQ);
+    }
+
+    // ---------------- 读取 ----------------
+
+    @Override
+    public List<ChatMessageEntity> latest(MessageStream stream, int limit) {
+        return withReadLock(() -> {
+            StreamIndex idx = streams.get(streamKey(stream));
+            if (idx == null) {
+                return List.of();
+            }
+            List<ChatMessageEntity> result = new ArrayList<>();
+            for (int i = Math.max(0, idx.size - Math.max(1, limit)); i < idx.size; i++) {
+                result.add(read(idx.positions[i]));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public IPage<ChatMessageEntity> page(MessageStream stream, Page<ChatMessageEntity> page,
+                                         LocalDateTime startTime, LocalDateTime endTime) {
+        return withReadLock(() -> {
+            StreamIndex idx = streams.get(streamKey(stream));
+            int[] matches = matches(idx, startTime, endTime);
+            long from = Math.max(0, (page.getCurrent() - 1) * page.getSize());
+            List<ChatMessageEntity> records = new ArrayList<>();
+            for (long i = from; i < matches.length && records.size() < page.getSize(); i++) {
+                records.add(read(idx.positions[matches[(int) i]]));
+            }
+            page.setRecords(records);
+            page.setTotal(matches.length);
+            return page;
+        });
+    }
+
+    @Override
+    public CursorPage<ChatMessageEntity> cursor(MessageStream stream, MessageCursor cursor, int size,
+                                                boolean newestFirst, boolean withTotal,
+                                                LocalDateTime startTime, LocalDateTime endTime) {
+        return withReadLock(() -> {
+            StreamIndex idx = streams.get(streamKey(stream));
+            int[] matches = matches(idx, startTime, endTime);
+            int limit = Math.max(1, size);
+            // 在按 id 升序的命中列表中定位游标
+            int start;
+            if (cursor == null) {
+                start = newestFirst ? matches.length - 1 : 0;
+            } else {
+                int firstAfter = firstMatchWithIdAbove(idx, matches, cursor.id());
+                start = newestFirst ? firstAfter - 1 : firstAfter;
+                if (newestFirst && start >= 0 && idx.ids[matches[start]] == cursor.id()) {
+                    start--;
+                }
+            }
+            List<ChatMessageEntity> rows = new ArrayList<>(limit);
+            int step = newestFirst ? -1 : 1;
+            int i = start;
+            for (; i >= 0 && i < matches.length && rows.size() < limit; i += step) {
+                rows.add(read(idx.positions[matches[i]]));
+            }
+            boolean hasMore = i >= 0 && i < matches.length;
+            String nextCursor = null;
+            if (hasMore && !rows.isEmpty()) {
+                ChatMessageEntity last = rows.get(rows.size() - 1);
+                nextCursor = new MessageCursor(last.getCreatedAt(), last.getId()).encode();
+            }
+            return new CursorPage<>(rows, nextCursor, hasMore, withTotal ? (long) matches.length : null);
+        });
+    }
+
+    /**
+     * 分块扫描：每块在读锁内按 id 续扫并解码，释放锁后再回调；期间被保留策略删除的记录自然跳过
+     */
+    @Override
+    public void scan(MessageStream stream, LocalDateTime startTime, LocalDateTime endTime,
+                     Consumer<ChatMessageEntity> sink) {
+        scanStream(streamKey(stream), startTime, endTime, sink);
+    }
+
+    @Override
+    public void scanAll(Consumer<ChatMessageEntity> sink) {
+        List<String> keys = withReadLock(() -> new ArrayList<>(streams.keySet()));
+        for (String key : keys) {
+            scanStream(key, null, null, sink);
+        }
+    }
+
+    private void scanStream(String key, LocalDateTime startTime, LocalDateTime endTime,
+                            Consumer<ChatMessageEntity> sink) {
+        long from = startTime != null ? LogRecordCodec.toEpochSecond(startTime) : Long.MIN_VALUE;
+        long to = endTime != null ? LogRecordCodec.toEpochSecond(endTime) : Long.MAX_VALUE;
+        long afterId = 0;
+        while (true) {
+            long cursorId = afterId;
+            ScanChunk chunk = withReadLock(() -> {
+                StreamIndex idx = streams.get(key);
+                if (idx == null) {
+                    return new ScanChunk(List.of(), cursorId, true);
+                }
+                int i = cursorId == 0 && startTime != null ? idx.lowerBoundByTime(from) : idx.upperBoundById(cursorId);
+                List<ChatMessageEntity> rows = new ArrayList<>(SCAN_CHUNK);
+                long lastId = cursorId;
+                for (; i < idx.size && rows.size() < SCAN_CHUNK; i++) {
+                    lastId = idx.ids[i];
+                    if (idx.createdAt[i] >= from && idx.createdAt[i] <= to) {
+                        rows.add(read(idx.positions[i]));
+                    }
+                }
+                return new ScanChunk(rows, lastId, i >= idx.size);
+            });
+            chunk.rows().forEach(sink);
+            if (chunk.done()) {
+                return;
+            }
+            afterId = chunk.lastId();
+        }
+    }
+
+    private record ScanChunk(List<ChatMessageEntity> rows, long lastId, boolean done) {
+    }
+
+    @Override
+    public List<ChatMessageEntity> findByIds(MessageStream stream, Collection<Long> ids) {
+        return withReadLock(() -> {
+            StreamIndex idx = streams.get(streamKey(stream));
+            if (idx == null) {
+                return List.of();
+            }
+            List<ChatMessageEntity> result = new ArrayList<>(ids.size());
+            for (long id : ids) {
+                int i = idx.upperBoundById(id - 1);
+                if (i < idx.size && idx.ids[i] == id) {
+                    result.add(read(idx.positions[i]));
+                }
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public List<ChatMessageEntity> roomAfterSeq(String roomId, long afterSeq, int limit) {
+        return withReadLock(() -> {
+            StreamIndex idx = streams.get(streamKey(MessageStream.room(roomId)));
+            if (idx == null) {
+                return List.of();
+            }
+            // 从尾部向前扫描，越过最后一条 seq <= afterSeq 的记录后再多看一个乱序窗口
+            int i = idx.size - 1;
+            int pastBoundary = 0;
+            List<Integer> hits = new ArrayList<>();
+            for (; i >= 0 && pastBoundary < SEQ_REORDER_WINDOW; i--) {
+                if (idx.seqs[i] > afterSeq) {
+                    hits.add(i);
+                } else {
+                    pastBoundary++;
+                }
+            }
+            hits.sort(Comparator.comparingLong(h -> idx.seqs[h]));
+            List<ChatMessageEntity> result = new ArrayList<>(Math.min(limit, hits.size()));
+            for (int h = 0; h < hits.size() && result.size() < Math.max(1, limit); h++) {
+                result.add(read(idx.positions[hits.get(h)]));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public Long maxRoomSeq(String roomId) {
+        return withReadLock(() -> {
+            StreamIndex idx = streams.get(streamKey(MessageStream.room(roomId)));
+            return idx == null || idx.maxSeq == StreamIndex.NO_SEQ ? null : idx.maxSeq;
+        });
+    }
+
+    /**
+     * 按时间范围过滤后的索引下标（升序）
+     */
+    private static int[] matches(StreamIndex idx, LocalDateTime startTime, LocalDateTime endTime) {
+        if (idx == null) {
+            return new int[0];
+        }
+        long from = startTime != null ? LogRecordCodec.toEpochSecond(startTime) : Long.MIN_VALUE;
+        long to = endTime != null ? LogRecordCodec.toEpochSecond(endTime) : Long.MAX_VALUE;
+        int begin = startTime != null ? idx.lowerBoundByTime(from) : 0;
+        int[] out = new int[idx.size - begin];
+        int n = 0;
+        for (int i = begin; i < idx.size; i++) {
+            if (idx.createdAt[i] >= from && idx.createdAt[i] <= to) {
+                out[n++] = i;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static int firstMatchWithIdAbove(StreamIndex idx, int[] matches, long id) {
+        int lo = 0;
+        int hi = matches.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (idx.ids[matches[mid]] <= id) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private ChatMessageEntity read(long position) {
+        return segments.get(StreamIndex.segmentOf(position)).read(StreamIndex.offsetOf(position));
+    }
+
+    // ---------------- 保留策略 ----------------
+
+    /**
+     * 删除最新消息早于保留期的非活动段，并裁剪各消息流索引中指向已删除段的前缀
+     */
+    void applyRetention() {
+        long cutoff = LogRecordCodec.toEpochSecond(LocalDateTime.now()) - retentionSeconds;
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            Iterator<LogSegment> it = segments.values().iterator();
+            while (it.hasNext()) {
+                LogSegment s = it.next();
+                if (s == active || s.maxCreatedAt() >= cutoff) {
+                    break; // 段按时间顺序排列，遇到未过期段即停止
+                }
+                s.delete();
+                it.remove();
+                removed++;
+            }
+            if (removed > 0) {
+                int minSegment = segments.firstKey();
+                streams.values().removeIf(idx -> {
+                    idx.dropBefore(minSegment);
+                    return idx.size == 0;
+                });
+                log.info("追加日志保留策略删除 {} 个过期段", removed);
+            }
+        } catch (Exception e) {
+            log.warn("追加日志保留策略执行失败: {}", e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ---------------- 工具 ----------------
+
+    private <T> T withReadLock(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private double usedBytes() {
+        return withReadLock(() -> {
+            long total = 0;
+            for (LogSegment s : segments.values()) {
+                total += s.size();
+            }
+            return (double) total;
+        });
+    }
+
+    private static String streamKey(MessageStream stream) {
+        return (stream.room() ? "room:" : "conv:") + stream.key();
+    }
+
+    private static String streamKey(ChatMessageEntity e) {
+        if (e.getRoomId() != null) {
+            return "room:" + e.getRoomId();
+        }
+        if (e.getConversationKey() != null) {
+            return "conv:" + e.getConversationKey();
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retentionExecutor.shutdownNow();
+        lock.writeLock().lock();
+        try {
+            for (LogSegment s : segments.values()) {
+                s.force();
+                s.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.zpark.wsagent.store;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.zpark.wsagent.dto.CursorPage;
+import com.zpark.wsagent.dto.MessageCursor;
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+import com.zpark.wsagent.mapper.ChatMessageMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * MySQL 存储引擎（chat.store.engine=mysql，默认）
+ * - 房间查询走 idx_room_time，私聊查询走 idx_conv_time，均为单次范围扫描
+ * - 批量写入为一条多行 INSERT
+ * - 导出走只读事务内的流式游标，结果集逐行读取，内存占用与历史长度无关
+ * - 升级前写入的私聊消息 conversation_key 为空，由 ConversationKeyBackfillJob 在后台补齐；
+ *   回填报告完成之前，私聊查询额外匹配 conversation_key 为空、按 (from, to) 双向匹配的历史行（走 idx_private_pair_time），
+ *   回填未完成、被禁用或中途失败时历史私聊仍然可见
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "chat.store.engine", havingValue = "mysql", matchIfMissing = true)
+public class MysqlChatMessageStore implements ChatMessageStore {
+
+    // 全表扫描时每批按主键读取的行数
+    private static final int SCAN_BATCH = 1000;
+
+    private final ChatMessageMapper chatMessageMapper;
+    private final TransactionTemplate readOnlyTx;
+    // 是否可能存在缺少会话键的历史私聊消息（会话键回填完成前为 true）
+    private volatile boolean legacyConversationRows = true;
+
+    public MysqlChatMessageStore(ChatMessageMapper chatMessageMapper,
+                                 PlatformTransactionManager transactionManager) {
+        this.chatMessageMapper = chatMessageMapper;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    /**
+     * 会话键回填完成（或确认不存在缺少会话键的私聊消息）后调用，此后私聊查询只按会话键过滤
+     */
+    public void conversationKeysBackfilled() {
+        if (legacyConversationRows) {
+            legacyConversationRows = false;
+            log.info("私聊会话键已全部补齐，私聊查询不再匹配历史 (from, to) 条件");
+        }
+    }
+
+    @Override
+    public void insert(ChatMessageEntity entity) {
+        chatMessageMapper.insert(entity);
+    }
+
+    @Override
+    public void insertBatch(List<ChatMessageEntity> entities) {
+        chatMessageMapper.insertBatch(entities);
+    }
+
+    @Override
+    public List<ChatMessageEntity> latest(MessageStream stream, int limit) {
+        // 倒序走索引取最近 n 条，再翻转为升序
+        QueryWrapper<ChatMessageEntity> qw = filters(stream, null, null);
+        qw.orderByDesc("created_at").orderByDesc("id").last("LIMIT " + Math.max(1, limit));
+        List<ChatMessageEntity> rows = new ArrayList<>(chatMessageMapper.selectList(qw));
+        Collections.reverse(rows);
+        return rows;
+    }
+
+    @Override
+    public IPage<ChatMessageEntity> page(MessageStream stream, Page<ChatMessageEntity> page,
+                                         LocalDateTime startTime, LocalDateTime endTime) {
+        QueryWrapper<ChatMessageEntity> qw = filters(stream, startTime, endTime);
+        qw.orderByAsc("created_at").orderByAsc("id");
+        return chatMessageMapper.selectPage(page, qw);
+    }
+
+    /**
+     * 键集分页：WHERE 过滤条件 AND (created_at, id) 越过游标 ORDER BY created_at, id LIMIT size+1
+     * 多取的一条只用于判断是否还有下一页；COUNT 仅在 withTotal 时执行
+     */
+    @Override
+    public CursorPage<ChatMessageEntity> cursor(MessageStream stream, MessageCursor cursor, int size,
+                                                boolean newestFirst, boolean withTotal,
+                                                LocalDateTime startTime, LocalDateTime endTime) {
+        int limit = Math.max(1, size);
+        QueryWrapper<ChatMessageEntity> qw = filters(stream, startTime, endTime);
+        if (cursor != null) {
+            if (newestFirst) {
+                qw.and(w -> w.lt("created_at", cursor.createdAt())
+                        .or(n -> n.eq("created_at", cursor.createdAt()).lt("id", cursor.id())));
+            } else {
+                qw.and(w -> w.gt("created_at", cursor.createdAt())
+                        .or(n -> n.eq("created_at", cursor.createdAt()).gt("id", cursor.id())));
+            }
+        }
+        if (newestFirst) {
+            qw.orderByDesc("created_at").orderByDesc("id");
+        } else {
+            qw.orderByAsc("created_at").orderByAsc("id");
+        }
+        qw.last("LIMIT " + (limit + 1));
+        List<ChatMessageEntity> rows = chatMessageMapper.selectList(qw);
+
+        boolean hasMore = rows.size() > limit;
+        if (hasMore) {
+            rows = rows.subList(0, limit);
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            ChatMessageEntity last = rows.get(rows.size() - 1);
+            nextCursor = new MessageCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        Long total = withTotal ? chatMessageMapper.selectCount(filters(stream, startTime, endTime)) : null;
+        return new CursorPage<>(rows, nextCursor, hasMore, total);
+    }
+
+    /**
+     * 流式游标需要在整个迭代期间占用同一连接，因此在只读事务内打开并迭代
+     */
+    @Override
+    public void scan(MessageStream stream, LocalDateTime startTime, LocalDateTime endTime,
+                     Consumer<ChatMessageEntity> sink) {
+        String[] pair = !stream.room() && legacyConversationRows ? users(stream.key()) : null;
+        readOnlyTx.executeWithoutResult(status -> {
+            try (Cursor<ChatMessageEntity> cursor = chatMessageMapper.streamMessages(stream.room(), stream.key(),
+                    pair != null ? pair[0] : null, pair != null ? pair[1] : null, startTime, endTime)) {
+                cursor.forEach(sink);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * 按主键分批读取（每批一次独立查询），扫描期间不长期占用连接
+     */
+    @Override
+    public void scanAll(Consumer<ChatMessageEntity> sink) {
+        long lastId = 0;
+        while (true) {
+            QueryWrapper<ChatMessageEntity> qw = new QueryWrapper<>();
+            qw.gt("id", lastId).orderByAsc("id").last("LIMIT " + SCAN_BATCH);
+            List<ChatMessageEntity> rows = chatMessageMapper.selectList(qw);
+            rows.forEach(sink);
+            if (rows.size() < SCAN_BATCH) {
+                return;
+            }
+            lastId = rows.get(rows.size() - 1).getId();
+        }
+    }
+
+    @Override
+    public List<ChatMessageEntity> findByIds(MessageStream stream, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return chatMessageMapper.selectBatchIds(ids);
+    }
+
+    @Override
+    public List<ChatMessageEntity> roomAfterSeq(String roomId, long afterSeq, int limit) {
+        QueryWrapper<ChatMessageEntity> qw = new QueryWrapper<>();
+        qw.eq("room_id", roomId)
+          .gt("room_seq", afterSeq)
+          .orderByAsc("room_seq")
+          .last("LIMIT " + Math.max(1, limit));
+        return chatMessageMapper.selectList(qw);
+    }
+
+    @Override
+    public Long maxRoomSeq(String roomId) {
+        return chatMessageMapper.selectMaxRoomSeq(roomId);
+    }
+
+    private QueryWrapper<ChatMessageEntity> filters(MessageStream stream,
+                                                    LocalDateTime startTime, LocalDateTime endTime) {
+        QueryWrapper<ChatMessageEntity> qw = new QueryWrapper<>();
+        if (stream.room()) {
+            qw.eq("room_id", stream.key())
+              .isNull("to_user_id"); // 群聊无 to_user_id
+        } else if (!legacyConversationRows) {
+            // 双向会话统一落在同一会话键下，走 idx_conv_time 单次范围扫描
+            qw.eq("conversation_key", stream.key());
+        } else {
+            // 回填完成前：会话键命中，或会话键为空且用户对双向匹配
+            String[] pair = users(stream.key());
+            qw.and(w -> w.eq("conversation_key", stream.key())
+                    .or(l -> l.isNull("conversation_key").isNull("room_id")
+                            .and(p -> p.nested(n -> n.eq("from_user_id", pair[0]).eq("to_user_id", pair[1]))
+                                    .or(n -> n.eq("from_user_id", pair[1]).eq("to_user_id", pair[0])))));
+        }
+        if (startTime != null) {
+            qw.ge("created_at", startTime);
+        }
+        if (endTime != null) {
+            qw.le("created_at", endTime);
+        }
+        return qw;
+    }
+
+    /**
+     * 从会话键还原用户对，格式见 ConversationKeys：{较小用户ID的长度}:{较小用户ID}{较大用户ID}
+     */
+    private static String[] users(String conversationKey) {
+        int colon = conversationKey.indexOf(':');
+        int loEnd = colon + 1 + Integer.parseInt(conversationKey.substring(0, colon));
+        return new String[]{conversationKey.substring(colon + 1, loEnd), conversationKey.substring(loEnd)};
+    }
+}
@@ -0,0 +1,117 @@
+package com.zpark.wsagent.store;
+
+import java.util.Arrays;
+
+/**
+ * 单个消息流（房间/会话）的内存索引，按 id 升序保存每条记录的
+ * 位置（段号 << 32 | 段内偏移）、id、创建时间（epoch 秒）与房间序号。
+ * 并发由 MmapLogChatMessageStore 的读写锁保护。
+ */
+final class StreamIndex {
+
+    static final long NO_SEQ = Long.MIN_VALUE;
+
+    long[] positions = new long[16];
+    long[] ids = new long[16];
+    long[] createdAt = new long[16];
+    long[] seqs = new long[16];
+    int size;
+    long maxSeq = NO_SEQ;
+
+    void add(long position, long id, long created, long seq) {
+        if (size == positions.length) {
+            int cap = size * 2;
+            positions = Arrays.copyOf(positions, cap);
+            ids = Arrays.copyOf(ids, cap);
+            createdAt = Arrays.copyOf(createdAt, cap);
+            seqs = Arrays.copyOf(seqs, cap);
+        }
+        // 预分配 id 的写入顺序与 id 顺序偶有交错：从尾部向前找到插入点，通常一步即止
+        int at = size;
+        while (at > 0 && ids[at - 1] > id) {
+            at--;
+        }
+        if (at < size) {
+            System.arraycopy(positions, at, positions, at + 1, size - at);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            System.arraycopy(createdAt, at, createdAt, at + 1, size - at);
+            System.arraycopy(seqs, at, seqs, at + 1, size - at);
+        }
+        positions[at] = position;
+        ids[at] = id;
+        createdAt[at] = created;
+        seqs[at] = seq;
+        size++;
+        if (seq != NO_SEQ && seq > maxSeq) {
+            maxSeq = seq;
+        }
+    }
+
+    /**
+     * 丢弃位于已删除段（段号 < minSegment）上的记录（按 id 排序后不一定是严格前缀，整体压缩一遍）
+     */
+    void dropBefore(int minSegment) {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (segmentOf(positions[i]) >= minSegment) {
+                positions[n] = positions[i];
+                ids[n] = ids[i];
+                createdAt[n] = createdAt[i];
+                seqs[n] = seqs[i];
+                n++;
+            }
+        }
+        size = n;
+    }
+
+    /**
+     * 第一个 createdAt >= time 的下标（创建时间随写入顺序近似递增，二分定位后由调用方逐条过滤）
+     */
+    int lowerBoundByTime(long time) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (createdAt[mid] < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    boolean containsId(long id) {
+        int at = upperBoundById(id);
+        return at > 0 && ids[at - 1] == id;
+    }
+
+    /**
+     * 第一个 id > id 的下标（id 严格递增）
+     */
+    int upperBoundById(long id) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ids[mid] <= id) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    static int segmentOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    static long position(int segment, int offset) {
+        return ((long) segment << 32) | (offset & 0xffffffffL);
+    }
+}
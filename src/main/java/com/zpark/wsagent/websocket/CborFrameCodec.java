@@ -0,0 +1,73 @@
+package com.zpark.wsagent.websocket;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.zpark.wsagent.dto.ChatMessage;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * CBOR 帧编解码（子协议 wsagent.cbor）：
+ * - encode / decode：ChatMessage 与二进制帧互转，字段名与 JSON 一致
+ * - transcode：把已编码的 JSON 文本帧按 token 流式转写为 CBOR，不经过对象或树；
+ *   广播帧只编码一次 JSON，CBOR 连接共享同一份转写后的字节，每个会话各自包装 BinaryMessage
+ *   （容器写出时会推进 BinaryMessage 内 ByteBuffer 的 position，消息对象不能跨会话共享）
+ */
+public final class CborFrameCodec {
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final CBORFactory cborFactory = new CBORFactory();
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+
+    public CborFrameCodec() {
+        CBORMapper cborMapper = new CBORMapper(cborFactory);
+        this.reader = cborMapper.readerFor(ChatMessage.class);
+        this.writer = cborMapper.writerFor(ChatMessage.class);
+    }
+
+    public BinaryMessage encode(ChatMessage msg) {
+        try {
+            return new BinaryMessage(writer.writeValueAsBytes(msg));
+        } catch (IOException e) {
+            throw new IllegalStateException("消息序列化失败", e);
+        }
+    }
+
+    public ChatMessage decode(BinaryMessage frame) throws IOException {
+        ByteBuffer buf = frame.getPayload();
+        if (buf.hasArray()) {
+            return reader.readValue(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+        }
+        byte[] bytes = new byte[buf.remaining()];
+        buf.duplicate().get(bytes);
+        return reader.readValue(bytes);
+    }
+
+    /**
+     * JSON 文本帧 -> CBOR 字节（只读共享，按会话包装为 BinaryMessage 后写出）
+     */
+    public byte[] transcode(TextMessage frame) {
+        String json = frame.getPayload();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length());
+        try (JsonParser parser = jsonMapper.getFactory().createParser(json);
+             JsonGenerator gen = cborFactory.createGenerator(out)) {
+            parser.nextToken();
+            gen.copyCurrentStructure(parser);
+        } catch (IOException e) {
+            throw new UncheckedIOException("JSON 帧转写 CBOR 失败", e);
+        }
+        return out.toByteArray();
+    }
+}
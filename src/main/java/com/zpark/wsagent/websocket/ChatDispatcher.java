@@ -0,0 +1,185 @@
+package com.zpark.wsagent.websocket;
+
+import com.zpark.wsagent.dto.ChatMessage;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * 本地投递器：负责把消息编码成帧并投递到本节点上的会话
+ * - encode：一条消息只序列化一次，得到不可变的 TextMessage 帧（JsonFrameCodec：回执按预序列化模板拼接，其余经预构建的 ObjectWriter）
+ * - broadcast / deliverToUser：同一帧实例复用给所有目标会话，不再逐成员重复编码与拷贝
+ * - reply：向单个会话回写 ACK / ERROR 等点对点消息
+ * - 按会话协商的 WireFormat 写出：帧统一以 JSON 编码（集群、回放缓冲、离线收件箱共用），
+ *   投递给 CBOR 连接时转写为二进制帧，投递给协商了压缩的连接时按阈值压缩（见 DeflateFrameCodec），一次投递内同一帧只转写/压缩一次，
+ *   转写/压缩后的字节在会话间共享，BinaryMessage 按会话包装
+ *
+ * 实际写出由 SessionOutboundManager 的会话级出站队列异步完成。
+ */
+@Component
+public class ChatDispatcher {
+
+    private final ChatSessionRegistry registry;
+    private final SessionOutboundManager outbound;
+    private final JsonFrameCodec json = new JsonFrameCodec();
+    private final CborFrameCodec cbor = new CborFrameCodec();
+    private final DeflateFrameCodec deflate;
+
+    /**
+     * 不启用下行压缩
+     */
+    public ChatDispatcher(ChatSessionRegistry registry, SessionOutboundManager outbound) {
+        this(registry, outbound, null);
+    }
+
+    @Autowired
+    public ChatDispatcher(ChatSessionRegistry registry, SessionOutboundManager outbound, DeflateFrameCodec deflate) {
+        this.registry = registry;
+        this.outbound = outbound;
+        this.deflate = deflate;
+    }
+
+    /**
+     * 将消息编码为预构建的文本帧（TextMessage 不可变，可安全地在多个会话间共享）
+     */
+    public TextMessage encode(ChatMessage msg) {
+        return json.encode(msg);
+    }
+
+    /**
+     * 将同一帧投递给一组用户的所有本地连接
+     *
+     * @return 成功入队的会话数
+     */
+    public int broadcast(Collection<String> userIds, WebSocketMessage<?> frame) {
+        Frames frames = new Frames(frame);
+        int delivered = 0;
+        for (String uid : userIds) {
+            delivered += deliver(uid, frames);
+        }
+        return delivered;
+    }
+
+    /**
+     * 将帧投递给某个用户的所有本地连接（支持同一用户多连接）
+     *
+     * @return 成功入队的会话数
+     */
+    public int deliverToUser(String userId, WebSocketMessage<?> frame) {
+        return deliver(userId, new Frames(frame));
+    }
+
+    private int deliver(String userId, Frames frames) {
+        Set<WebSocketSession> sessions = registry.getSessionsByUserId(userId);
+        if (sessions == null || sessions.isEmpty()) {
+            return 0;
+        }
+        int delivered = 0;
+        for (WebSocketSession s : sessions) {
+            if (s.isOpen() && outbound.send(s, frames.forSession(s))) {
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * 向单个会话回写一条消息（ACK / ERROR 等）
+     */
+    public void reply(WebSocketSession session, ChatMessage msg) {
+        if (session.isOpen()) {
+            if (WireFormat.of(session) == WireFormat.CBOR) {
+                outbound.send(session, cbor.encode(msg));
+            } else {
+                send(session, encode(msg));
+            }
+        }
+    }
+
+    /**
+     * 向尚未注册出站队列的会话同步写出一条消息：仅用于连接建立阶段拒绝连接，
+     * 此时会话尚未进入注册表与出站队列，没有其他线程会写该会话
+     */
+    public void replyBeforeRegister(WebSocketSession session, ChatMessage msg) throws IOException {
+        if (session.isOpen()) {
+            session.sendMessage(WireFormat.of(session) == WireFormat.CBOR
+                    ? cbor.encode(msg)
+                    : new Frames(encode(msg)).forSession(session));
+        }
+    }
+
+    /**
+     * 向单个会话写出一个已编码的 JSON 帧（补发、离线推送等），按会话格式转写
+     */
+    public boolean send(WebSocketSession session, TextMessage frame) {
+        return outbound.send(session, new Frames(frame).forSession(session));
+    }
+
+    /**
+     * 连接注册到出站队列时实际写出的会话（上下文压缩模式下带按序压缩的装饰器）
+     */
+    public WebSocketSession outboundSession(WebSocketSession session) {
+        return deflate == null ? session : deflate.outboundSession(session);
+    }
+
+    /**
+     * 解码 JSON 文本帧（流式解析，见 JsonFrameCodec）
+     */
+    public ChatMessage decode(TextMessage frame) throws IOException {
+        return json.decode(frame.getPayload());
+    }
+
+    /**
+     * 解码 CBOR 连接发来的二进制帧
+     */
+    public ChatMessage decode(BinaryMessage frame) throws IOException {
+        return cbor.decode(frame);
+    }
+
+    /**
+     * 一次投递中同一帧的各格式版本，CBOR / 压缩字节在首个需要它的会话出现时才生成；
+     * 字节在会话间共享，BinaryMessage 按会话新建（容器写出时会推进其 ByteBuffer 的 position）
+     */
+    private final class Frames {
+        private final WebSocketMessage<?> frame;
+        private byte[] binary;
+        private byte[] compressed;
+        private boolean compressTried;
+
+        Frames(WebSocketMessage<?> frame) {
+            this.frame = frame;
+        }
+
+        WebSocketMessage<?> forSession(WebSocketSession session) {
+            if (frame instanceof BinaryMessage bin) {
+                return new BinaryMessage(bin.getPayload().duplicate(), bin.isLast());
+            }
+            if (!(frame instanceof TextMessage text)) {
+                return frame;
+            }
+            WireFormat format = WireFormat.of(session);
+            if (format == WireFormat.CBOR) {
+                if (binary == null) {
+                    binary = cbor.transcode(text);
+                }
+                return new BinaryMessage(binary);
+            }
+            if (deflate != null && deflate.compressesShared(session)) {
+                if (!compressTried) {
+                    compressed = deflate.compress(text);
+                    compressTried = true;
+                }
+                return compressed == null ? frame : new BinaryMessage(compressed);
+            }
+            return frame;
+        }
+    }
+}
@@ -8,20 +8,40 @@ import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * 会话注册表：维护用户与会话、房间成员关系
- * 线程安全，支持多节点时可替换为Redis广播或SharedMap。
+ * 会话注册表：维护本节点上用户与会话、房间成员关系
+ * 线程安全；多节点部署时跨节点投递由 ClusterFanout 经 Redis 广播完成（见 chat.cluster.enabled）。
+ *
+ * 并发约定：
+ * - 同一用户的会话/房间变更在按 userId 分段的锁内执行，保证 userSessions、roomMembers、userRooms 三者一致
+ * - 集合"移除元素后为空则删除 key"统一用 compute/computeIfPresent 原子完成，不丢失并发加入
  */
 @Component
 public class ChatSessionRegistry {
 
+    private static final int LOCK_STRIPES = 64;
+
     // userId -> sessions
     private final Map<String, Set<WebSocketSession>> userSessions = new ConcurrentHashMap<>();
     // sessionId -> userId
     private final Map<String, String> sessionUser = new ConcurrentHashMap<>();
     // roomId -> userIds
     private final Map<String, Set<String>> roomMembers = new ConcurrentHashMap<>();
+    // userId -> roomIds（roomMembers 的反向索引，断线清理与"用户所在房间"查询只需 O(用户房间数)）
+    private final Map<String, Set<String>> userRooms = new ConcurrentHashMap<>();
+    // 按 userId 分段的锁（ReentrantLock 不会钉住虚拟线程）
+    private final ReentrantLock[] userLocks = new ReentrantLock[LOCK_STRIPES];
+    // 边沿变化监听器（如集群订阅管理）
+    private final List<RegistryListener> listeners = new CopyOnWriteArrayList<>();
+
+    public ChatSessionRegistry() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            userLocks[i] = new ReentrantLock();
+        }
+    }
 
     /**
      * 从连接URL参数中解析 userId（例如 ws://host/ws/chat?userId=123）
@@ -55,33 +75,83 @@ public class ChatSessionRegistry {
         return map;
     }
 
+    public void addListener(RegistryListener listener) {
+        listeners.add(listener);
+    }
+
     public void addSession(String userId, WebSocketSession session) {
-        sessionUser.put(session.getId(), userId);
-        userSessions.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(session);
+        boolean[] firstSession = {false};
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            sessionUser.put(session.getId(), userId);
+            userSessions.compute(userId, (k, set) -> {
+                firstSession[0] = set == null;
+                Set<WebSocketSession> s = set != null ? set : ConcurrentHashMap.newKeySet();
+                s.add(session);
+                return s;
+            });
+        } finally {
+            lock.unlock();
+        }
+        if (firstSession[0]) {
+            fireUserChanged(userId);
+        }
     }
 
     public void removeSession(WebSocketSession session) {
         String sid = session.getId();
-        String userId = sessionUser.remove(sid);
-        if (userId != null) {
-            Set<WebSocketSession> set = userSessions.get(userId);
-            if (set != null) {
+        String userId = sessionUser.get(sid);
+        if (userId == null) return;
+        boolean lastSession;
+        List<String> leftRooms;
+        List<String> emptiedRooms = new ArrayList<>();
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            if (!sessionUser.remove(sid, userId)) return; // 已被并发移除
+            // 原子地移除会话，集合为空时同时移除 key，不会吞掉并发 addSession
+            userSessions.computeIfPresent(userId, (k, set) -> {
                 set.remove(session);
-                if (set.isEmpty()) {
-                    userSessions.remove(userId);
-                }
-            }
+                return set.isEmpty() ? null : set;
+            });
+            lastSession = !userSessions.containsKey(userId);
             // 从所有房间移除该用户（如无其他会话仍在）
-            cleanupUserFromRoomsIfNoActiveSession(userId);
+            leftRooms = cleanupUserFromRoomsIfNoActiveSession(userId, emptiedRooms);
+        } finally {
+            lock.unlock();
         }
+        if (lastSession) {
+            fireUserChanged(userId);
+        }
+        for (String roomId : leftRooms) {
+            fireMembershipChanged(roomId, userId, false);
+        }
+        emptiedRooms.forEach(this::fireRoomChanged);
     }
 
-    private void cleanupUserFromRoomsIfNoActiveSession(String userId) {
-        if (userId == null) return;
-        if (userSessions.containsKey(userId)) return; // 该用户仍有其它连接
-        for (Set<String> members : roomMembers.values()) {
-            members.remove(userId);
+    /**
+     * 调用方需持有该用户的分段锁
+     *
+     * @param emptied 输出：因此变为空而被移除的房间
+     * @return 该用户被移出的房间
+     */
+    private List<String> cleanupUserFromRoomsIfNoActiveSession(String userId, List<String> emptied) {
+        if (userId == null) return List.of();
+        if (userSessions.containsKey(userId)) return List.of(); // 该用户仍有其它连接
+        Set<String> rooms = userRooms.remove(userId);
+        if (rooms == null) return List.of();
+        for (String roomId : rooms) {
+            if (removeMember(roomId, userId)) {
+                emptied.add(roomId);
+            }
         }
+        return new ArrayList<>(rooms);
+    }
+
+    private ReentrantLock lockFor(String userId) {
+        int h = userId.hashCode();
+        return userLocks[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
     }
 
     public Optional<String> getUserIdBySession(WebSocketSession session) {
@@ -93,20 +163,126 @@ public class ChatSessionRegistry {
     }
 
     public void joinRoom(String roomId, String userId) {
-        roomMembers.computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet()).add(userId);
+        boolean[] firstMember = {false};
+        boolean[] added = {false};
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            roomMembers.compute(roomId, (k, members) -> {
+                firstMember[0] = members == null;
+                Set<String> m = members != null ? members : ConcurrentHashMap.newKeySet();
+                added[0] = m.add(userId);
+                return m;
+            });
+            userRooms.compute(userId, (k, rooms) -> {
+                Set<String> r = rooms != null ? rooms : ConcurrentHashMap.newKeySet();
+                r.add(roomId);
+                return r;
+            });
+        } finally {
+            lock.unlock();
+        }
+        if (added[0]) {
+            fireMembershipChanged(roomId, userId, true);
+        }
+        if (firstMember[0]) {
+            fireRoomChanged(roomId);
+        }
     }
 
     public void leaveRoom(String roomId, String userId) {
-        Set<String> members = roomMembers.get(roomId);
-        if (members != null) {
+        boolean emptied;
+        boolean[] removed = {false};
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            emptied = removeMember(roomId, userId);
+            userRooms.computeIfPresent(userId, (k, rooms) -> {
+                removed[0] = rooms.remove(roomId);
+                return rooms.isEmpty() ? null : rooms;
+            });
+        } finally {
+            lock.unlock();
+        }
+        if (removed[0]) {
+            fireMembershipChanged(roomId, userId, false);
+        }
+        if (emptied) {
+            fireRoomChanged(roomId);
+        }
+    }
+
+    /**
+     * 原子地移除房间成员：判空与删除 key 在同一个 compute 内完成，
+     * 并发 joinRoom 要么先于它加入（集合非空不删除），要么在其后重新创建集合，不会丢失
+     */
+    private boolean removeMember(String roomId, String userId) {
+        boolean[] emptied = {false};
+        roomMembers.computeIfPresent(roomId, (k, members) -> {
             members.remove(userId);
-            if (members.isEmpty()) {
-                roomMembers.remove(roomId);
-            }
+            emptied[0] = members.isEmpty();
+            return emptied[0] ? null : members;
+        });
+        return emptied[0];
+    }
+
+    private void fireRoomChanged(String roomId) {
+        for (RegistryListener l : listeners) {
+            l.onRoomChanged(roomId);
+        }
+    }
+
+    private void fireUserChanged(String userId) {
+        for (RegistryListener l : listeners) {
+            l.onUserChanged(userId);
+        }
+    }
+
+    private void fireMembershipChanged(String roomId, String userId, boolean joined) {
+        for (RegistryListener l : listeners) {
+            l.onMembershipChanged(roomId, userId, joined);
         }
     }
 
+    /**
+     * 本节点上该房间是否有成员
+     */
+    public boolean hasRoom(String roomId) {
+        return roomMembers.containsKey(roomId);
+    }
+
+    /**
+     * 本节点上该用户是否有活跃连接
+     */
+    public boolean hasLocalSession(String userId) {
+        return userSessions.containsKey(userId);
+    }
+
+    /**
+     * 本节点上有成员的房间（只读视图）
+     */
+    public Set<String> getLocalRoomIds() {
+        return Collections.unmodifiableSet(roomMembers.keySet());
+    }
+
+    /**
+     * 本节点上有活跃连接的用户（只读视图）
+     */
+    public Set<String> getLocalUserIds() {
+        return Collections.unmodifiableSet(userSessions.keySet());
+    }
+
+    /**
+     * 房间成员（只读视图，所有修改须经 joinRoom / leaveRoom）
+     */
     public Set<String> getRoomMembers(String roomId) {
-        return roomMembers.getOrDefault(roomId, Collections.emptySet());
+        return Collections.unmodifiableSet(roomMembers.getOrDefault(roomId, Collections.emptySet()));
+    }
+
+    /**
+     * 查询用户当前所在的房间（只读视图）
+     */
+    public Set<String> getRoomsOfUser(String userId) {
+        return Collections.unmodifiableSet(userRooms.getOrDefault(userId, Collections.emptySet()));
     }
 }
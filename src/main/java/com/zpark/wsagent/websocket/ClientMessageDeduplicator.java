@@ -0,0 +1,236 @@
+package com.zpark.wsagent.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zpark.wsagent.dto.ChatMessage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发送幂等：按 (fromUserId, clientMsgId) 去重，客户端因 ACK 丢失而重发时直接回原 ACK，不再持久化、不再广播
+ *
+ * - 首条消息 claim 成功后正常处理，ACK 生成时 complete 记录原 ACK；处理失败时 release，允许客户端重试
+ * - 重复消息 claim 得到原 ACK 的 future：原消息仍在处理中时等其完成后回同一 ACK
+ * - 本地：按插入顺序的有界表（max-entries），条目 ttl-seconds 后过期
+ * - Redis（可选）：SET {prefix}dedup:{len(fromUserId)}:{fromUserId}:{clientMsgId} NX PX，值为处理中标记或原 ACK 的 JSON；
+ *   客户端重连到其他节点后重发同样能识别。Redis 异常时退化为仅本地去重
+ * - 未携带 clientMsgId 的消息不参与去重
+ *
+ * 配置（application.properties）：
+ *   chat.dedup.enabled          是否启用
+ *   chat.dedup.ttl-seconds      去重窗口
+ *   chat.dedup.max-entries      本地条目上限
+ *   chat.dedup.redis-enabled    是否启用 Redis 层
+ */
+@Slf4j
+@Component
+public class ClientMessageDeduplicator {
+
+    private static final String PENDING = "-";
+
+    private final StringRedisTemplate redis;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final boolean enabled;
+    private final boolean redisEnabled;
+    private final long ttlMs;
+    private final int maxEntries;
+    private final String keyPrefix;
+
+    // key -> 原 ACK；插入顺序即过期顺序，所有访问在 this 上同步
+    private final LinkedHashMap<String, Entry> local;
+
+    private final Counter localDuplicates;
+    private final Counter redisDuplicates;
+
+    public ClientMessageDeduplicator(StringRedisTemplate redis,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${chat.dedup.enabled:true}") boolean enabled,
+                                     @Value("${chat.dedup.ttl-seconds:300}") long ttlSeconds,
+                                     @Value("${chat.dedup.max-entries:100000}") int maxEntries,
+                                     @Value("${chat.dedup.redis-enabled:false}") boolean redisEnabled,
+                                     @Value("${chat.cluster.channel-prefix:wsagent:}") String keyPrefix) {
+        this.redis = redis;
+        this.enabled = enabled;
+        this.redisEnabled = redisEnabled;
+        this.ttlMs = TimeUnit.SECONDS.toMillis(Math.max(1, ttlSeconds));
+        this.maxEntries = Math.max(1, maxEntries);
+        this.keyPrefix = keyPrefix;
+        this.local = new LinkedHashMap<>(1024) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ClientMessageDeduplicator.this.maxEntries;
+            }
+        };
+
+        Gauge.builder("chat.dedup.entries", this, ClientMessageDeduplicator::localSize)
+                .description("本地去重表中的条目数")
+                .register(meterRegistry);
+        this.localDuplicates = duplicateCounter(meterRegistry, "local");
+        this.redisDuplicates = duplicateCounter(meterRegistry, "redis");
+    }
+
+    private static Counter duplicateCounter(MeterRegistry registry, String tier) {
+        return Counter.builder("chat.dedup.duplicates")
+                .tag("tier", tier)
+                .description("被识别为重发而直接回原 ACK 的消息数")
+                .register(registry);
+    }
+
+    /**
+     * 登记一条待处理的消息
+     *
+     * @return null 表示首次出现，调用方继续处理并在之后调用 complete / release；
+     *         否则为重复消息，返回原 ACK（原消息处理失败时异常完成）
+     */
+    public CompletableFuture<ChatMessage> claim(String fromUserId, String clientMsgId) {
+        if (!enabled || clientMsgId == null || clientMsgId.isBlank()) {
+            return null;
+        }
+        String key = key(fromUserId, clientMsgId);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            purgeExpired(now);
+            Entry existing = local.get(key);
+            if (existing != null) {
+                localDuplicates.increment();
+                return existing.ack;
+            }
+            local.put(key, new Entry(new CompletableFuture<>(), now + ttlMs));
+        }
+        if (redisEnabled) {
+            CompletableFuture<ChatMessage> remote = claimRemote(key);
+            if (remote != null) {
+                Entry entry;
+                synchronized (this) {
+                    entry = local.remove(key);
+                }
+                if (entry != null) {
+                    // 期间命中本地条目的重复消息同样收到远端记录的结果
+                    remote.whenComplete((ack, ex) -> {
+                        if (ex == null) {
+                            entry.ack.complete(ack);
+                        } else {
+                            entry.ack.completeExceptionally(ex);
+                        }
+                    });
+                }
+                redisDuplicates.increment();
+                return remote;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 首条消息处理成功，记录原 ACK；等待中的重复消息随之收到同一 ACK
+     */
+    public void complete(String fromUserId, String clientMsgId, ChatMessage ack) {
+        if (!enabled || clientMsgId == null || clientMsgId.isBlank()) {
+            return;
+        }
+        String key = key(fromUserId, clientMsgId);
+        Entry entry;
+        synchronized (this) {
+            entry = local.get(key);
+        }
+        if (entry != null) {
+            entry.ack.complete(ack);
+        }
+        if (redisEnabled) {
+            try {
+                redis.opsForValue().set(redisKey(key), mapper.writeValueAsString(ack), Duration.ofMillis(ttlMs));
+            } catch (Exception e) {
+                log.warn("去重记录写入 Redis 失败 key={}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 首条消息处理失败：移除记录，允许客户端重试；等待中的重复消息收到同一错误
+     */
+    public void release(String fromUserId, String clientMsgId, Throwable error) {
+        if (!enabled || clientMsgId == null || clientMsgId.isBlank()) {
+            return;
+        }
+        String key = key(fromUserId, clientMsgId);
+        Entry entry;
+        synchronized (this) {
+            entry = local.remove(key);
+        }
+        if (entry != null) {
+            entry.ack.completeExceptionally(error);
+        }
+        if (redisEnabled) {
+            try {
+                redis.delete(redisKey(key));
+            } catch (Exception e) {
+                log.warn("去重记录删除失败 key={}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Redis 层登记：SET NX 成功表示全局首次出现；否则读出原 ACK（原消息在其他节点处理中时返回失败，客户端稍后重试）
+     */
+    private CompletableFuture<ChatMessage> claimRemote(String key) {
+        try {
+            String rk = redisKey(key);
+            Boolean first = redis.opsForValue().setIfAbsent(rk, PENDING, Duration.ofMillis(ttlMs));
+            if (Boolean.TRUE.equals(first)) {
+                return null;
+            }
+            String value = redis.opsForValue().get(rk);
+            if (value == null) {
+                return null; // 期间已过期或被释放
+            }
+            if (PENDING.equals(value)) {
+                return CompletableFuture.failedFuture(new IllegalStateException("重复消息正在处理中，请稍后重试"));
+            }
+            return CompletableFuture.completedFuture(mapper.readValue(value, ChatMessage.class));
+        } catch (Exception e) {
+            log.warn("去重记录查询 Redis 失败 key={}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void purgeExpired(long now) {
+        Iterator<Entry> it = local.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiresAt > now) {
+                break; // 插入顺序即过期顺序
+            }
+            it.remove();
+        }
+    }
+
+    private synchronized double localSize() {
+        return local.size();
+    }
+
+    /**
+     * 用户ID带长度前缀，避免 ID 中的分隔符造成歧义
+     */
+    private static String key(String fromUserId, String clientMsgId) {
+        return fromUserId.length() + ":" + fromUserId + ":" + clientMsgId;
+    }
+
+    private String redisKey(String key) {
+        return keyPrefix + "dedup:" + key;
+    }
+
+    private record Entry(CompletableFuture<ChatMessage> ack, long expiresAt) {
+    }
+}
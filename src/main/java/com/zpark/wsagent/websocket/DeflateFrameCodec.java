@@ -0,0 +1,236 @@
+package com.zpark.wsagent.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * 下行帧压缩（子协议 wsagent.json.deflate）：
+ * - 不小于 min-bytes 的 JSON 文本帧压缩为二进制帧（raw deflate，无 zlib 头），小帧仍以文本帧发送；客户端按帧类型区分
+ * - 预置字典：压缩流以 DICTIONARY 为预设字典（客户端 Inflater.setDictionary 使用同一字典），
+ *   JSON 字段名与消息类型等重复片段在首条消息上即可被引用
+ * - 默认无上下文（每帧独立的完整 deflate 流）：广播帧只压缩一次，所有协商了压缩的成员共享同一份压缩字节，
+ *   每个会话各自包装 BinaryMessage（容器写出时会推进 ByteBuffer 的 position，消息对象不能跨会话共享）；
+ *   压缩流（原生 zlib 内存）从有界池借出、用完归还，池满时立即 end()，不随发送线程的创建与退出泄漏
+ * - context-takeover=true：每个会话保留一个压缩流，帧之间共享历史窗口（SYNC_FLUSH 分帧），相似消息压缩率更高；
+ *   压缩在该会话的写线程上按写出顺序进行，不再跨会话共享，CPU 随接收方数量线性增长
+ *
+ * 容器自带的 permessage-deflate 扩展与本压缩重复，协商本子协议的连接在握手时去掉该扩展（见 ChatWebSocketConfig）。
+ *
+ * 配置（application.properties）：
+ *   chat.ws.deflate.enabled            是否提供 wsagent.json.deflate 子协议
+ *   chat.ws.deflate.min-bytes          压缩阈值（UTF-8 字节数）
+ *   chat.ws.deflate.level              压缩级别 1~9
+ *   chat.ws.deflate.context-takeover   是否跨消息保留压缩上下文
+ */
+@Component
+public class DeflateFrameCodec {
+
+    /**
+     * 预置字典：按 ChatMessage 的序列化字段顺序拼接的各类典型帧；越常见的帧越靠后（回溯距离更短）
+     */
+    public static final String DICTIONARY = "{\"type\":\"ERROR\",\"fromUserId\":null,\"toUserId\":null,\"roomId\":null,\"content\":\"\","
+            + "\"clientMsgId\":null,\"seq\":null,\"id\":null}"
+            + "{\"type\":\"INBOX\",\"id\":\"\",\"messages\":["
+            + "{\"type\":\"ACK\",\"fromUserId\":null,\"toUserId\":null,\"roomId\":null,\"content\":\"\",\"clientMsgId\":\"\",\"seq\":null,\"id\":\"\"}"
+            + "{\"type\":\"PRIVATE_MSG\",\"fromUserId\":\"\",\"toUserId\":\"\",\"roomId\":null,\"content\":\"\",\"clientMsgId\":null,\"seq\":null,\"id\":\"\"}"
+            + "{\"type\":\"GROUP_MSG\",\"fromUserId\":\"\",\"toUserId\":null,\"roomId\":\"\",\"content\":\"\",\"clientMsgId\":null,\"seq\":,\"id\":\"\"}";
+
+    private static final byte[] DICTIONARY_BYTES = DICTIONARY.getBytes(StandardCharsets.UTF_8);
+
+    // 无上下文模式下空闲压缩流的最大保留数
+    private static final int MAX_IDLE_DEFLATERS = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+
+    private final boolean enabled;
+    private final int minBytes;
+    private final int level;
+    private final boolean contextTakeover;
+    private final BlockingQueue<Deflater> idleDeflaters = new ArrayBlockingQueue<>(MAX_IDLE_DEFLATERS);
+
+    private final Counter rawBytes;
+    private final Counter compressedBytes;
+    private final Counter skipped;
+
+    @Autowired
+    public DeflateFrameCodec(MeterRegistry meterRegistry,
+                             @Value("${chat.ws.deflate.enabled:true}") boolean enabled,
+                             @Value("${chat.ws.deflate.min-bytes:512}") int minBytes,
+                             @Value("${chat.ws.deflate.level:6}") int level,
+                             @Value("${chat.ws.deflate.context-takeover:false}") boolean contextTakeover) {
+        this.enabled = enabled;
+        this.minBytes = Math.max(0, minBytes);
+        this.level = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, level));
+        this.contextTakeover = contextTakeover;
+
+        this.rawBytes = Counter.builder("chat.ws.deflate.bytes")
+                .tag("stage", "raw")
+                .description("参与压缩的帧在压缩前的字节数")
+                .register(meterRegistry);
+        this.compressedBytes = Counter.builder("chat.ws.deflate.bytes")
+                .tag("stage", "compressed")
+                .description("参与压缩的帧在压缩后的字节数")
+                .register(meterRegistry);
+        this.skipped = Counter.builder("chat.ws.deflate.skipped")
+                .description("低于阈值未压缩的帧数")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 会话是否按帧共享压缩结果（无上下文模式）
+     */
+    boolean compressesShared(WebSocketSession session) {
+        return !contextTakeover && WireFormat.of(session) == WireFormat.JSON_DEFLATE;
+    }
+
+    /**
+     * 无上下文压缩：低于阈值返回 null（按原文本帧发送），否则返回独立的 deflate 流字节（只读共享，按会话包装为 BinaryMessage）
+     */
+    public byte[] compress(TextMessage frame) {
+        byte[] raw = frame.asBytes();
+        if (raw.length < minBytes) {
+            skipped.increment();
+            return null;
+        }
+        Deflater deflater = idleDeflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        byte[] out;
+        try {
+            deflater.setDictionary(DICTIONARY_BYTES);
+            deflater.setInput(raw);
+            deflater.finish();
+            out = drain(deflater, raw.length, Deflater.NO_FLUSH);
+            deflater.reset();
+        } catch (RuntimeException | Error e) {
+            deflater.end();
+            throw e;
+        }
+        if (!idleDeflaters.offer(deflater)) {
+            deflater.end();
+        }
+        record(raw.length, out.length);
+        return out;
+    }
+
+    /**
+     * 释放池中空闲的压缩流
+     */
+    @PreDestroy
+    public void shutdown() {
+        Deflater deflater;
+        while ((deflater = idleDeflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 出站写出用的会话：上下文模式下为协商了压缩的会话包一层按写出顺序压缩的装饰器，其余原样返回
+     */
+    public WebSocketSession outboundSession(WebSocketSession session) {
+        if (!contextTakeover || WireFormat.of(session) != WireFormat.JSON_DEFLATE) {
+            return session;
+        }
+        return new ContextTakeoverSession(session);
+    }
+
+    private void record(int raw, int compressed) {
+        rawBytes.increment(raw);
+        compressedBytes.increment(compressed);
+    }
+
+    private static byte[] drain(Deflater deflater, int sizeHint, int flush) {
+        byte[] buf = new byte[Math.max(64, sizeHint / 2)];
+        int len = 0;
+        while (true) {
+            len += deflater.deflate(buf, len, buf.length - len, flush);
+            boolean done = flush == Deflater.NO_FLUSH ? deflater.finished() : len < buf.length;
+            if (done) {
+                return Arrays.copyOf(buf, len);
+            }
+            if (len == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+        }
+    }
+
+    /**
+     * 上下文模式：每个会话一个持续的压缩流，每帧以 SYNC_FLUSH 结束（与 permessage-deflate 的 context takeover 相同）；
+     * sendMessage 只在该会话的出站写任务中串行调用；close 时（出站队列注销或断开连接时）释放压缩流，
+     * 与可能仍在进行的写出以压缩流为锁互斥，释放后的写出失败
+     */
+    private final class ContextTakeoverSession extends WebSocketSessionDecorator {
+
+        private final Deflater deflater = new Deflater(level, true);
+        private boolean ended;
+
+        ContextTakeoverSession(WebSocketSession delegate) {
+            super(delegate);
+            deflater.setDictionary(DICTIONARY_BYTES);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (message instanceof TextMessage text) {
+                byte[] raw = text.asBytes();
+                if (raw.length < minBytes) {
+                    skipped.increment();
+                } else {
+                    byte[] out;
+                    synchronized (deflater) {
+                        if (ended) {
+                            throw new IOException("压缩流已释放");
+                        }
+                        deflater.setInput(raw);
+                        out = drain(deflater, raw.length, Deflater.SYNC_FLUSH);
+                    }
+                    record(raw.length, out.length);
+                    message = new BinaryMessage(out);
+                }
+            }
+            super.sendMessage(message);
+        }
+
+        @Override
+        public void close(CloseStatus status) throws IOException {
+            try {
+                if (getDelegate().isOpen()) {
+                    super.close(status);
+                }
+            } finally {
+                synchronized (deflater) {
+                    if (!ended) {
+                        ended = true;
+                        deflater.end();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            close(CloseStatus.NORMAL);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.zpark.wsagent.websocket;
+
+/**
+ * WebSocket 消息处理的执行模式
+ * - CONTAINER: 在容器（Tomcat）线程上直接处理入站消息，出站写线程为固定大小的平台线程池
+ * - VIRTUAL: 入站消息按会话串行投递到虚拟线程处理，出站写也使用虚拟线程（需 Java 21+，否则回退为 CONTAINER）
+ */
+public enum ExecutionMode {
+    CONTAINER,
+    VIRTUAL
+}
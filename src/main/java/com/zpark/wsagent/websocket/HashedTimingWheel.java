@@ -0,0 +1,196 @@
+package com.zpark.wsagent.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 哈希时间轮：大量低精度定时任务（每个会话一个心跳检查）共用一个线程
+ *
+ * - 轮盘有 wheelSize 个槽，每 tick 推进一格；到期时间映射到 (到期 tick & mask) 槽，超过一圈的任务记录剩余圈数
+ * - schedule / cancel 为 O(1)：新任务先进入无锁队列，由轮线程在下一 tick 挂到槽上；取消只打标记，轮到该槽时摘除
+ * - 每 tick 只遍历当前一个槽，与定时任务总数无关（10 万个会话定时器不会产生 10 万个调度任务）
+ * - 精度为一个 tick，到期任务在轮线程上执行，必须短小且不阻塞（耗时操作应转交其他线程池）
+ */
+@Slf4j
+public final class HashedTimingWheel {
+
+    private static final int MAX_TRANSFER_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean running = true;
+    private long tick;
+
+    public HashedTimingWheel(String threadName, long tickMs, int wheelSize) {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("tickMs 必须大于 0：" + tickMs);
+        }
+        int size = Integer.highestOneBit(Math.max(1, Math.min(wheelSize, 1 << 16)) * 2 - 1);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, threadName);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 在 delay 之后于轮线程上执行 task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("时间轮已停止");
+        }
+        Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay)));
+        scheduled.incrementAndGet();
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * 已登记且尚未执行或摘除的任务数（含已取消但尚未轮到的）
+     */
+    public int size() {
+        return scheduled.get();
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                continue;
+            }
+            transferPending();
+            expire(wheel[(int) (tick & mask)], deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * 等到当前 tick 结束
+     *
+     * @return 当前 tick 结束时刻（相对 startTime），被打断时返回 -1
+     */
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (running) {
+            long remaining = deadline - (System.nanoTime() - startTime);
+            if (remaining <= 0) {
+                return deadline;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+        return -1;
+    }
+
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Timeout t = pending.poll();
+            if (t == null) {
+                return;
+            }
+            if (t.cancelled) {
+                scheduled.decrementAndGet();
+                continue;
+            }
+            long expireTick = t.deadline / tickNanos;
+            t.remainingRounds = Math.max(0, (expireTick - tick) / wheel.length);
+            // 已过期的任务挂到当前槽，本 tick 内执行
+            wheel[(int) (Math.max(expireTick, tick) & mask)].add(t);
+        }
+    }
+
+    /**
+     * 摘除当前槽中已取消与已到期的任务；到期任务先摘除并计数，再执行，任务内观察到的 size() 已不含自身
+     */
+    private void expire(Bucket bucket, long deadline) {
+        Timeout prev = null;
+        Timeout t = bucket.head;
+        while (t != null) {
+            Timeout next = t.next;
+            boolean due = !t.cancelled && t.remainingRounds <= 0 && t.deadline <= deadline;
+            boolean remove = t.cancelled || due;
+            if (!remove && t.remainingRounds > 0) {
+                t.remainingRounds--;
+            }
+            if (remove) {
+                scheduled.decrementAndGet();
+                if (prev == null) {
+                    bucket.head = next;
+                } else {
+                    prev.next = next;
+                }
+                t.next = null;
+            } else {
+                prev = t;
+            }
+            if (due) {
+                t.fire();
+            }
+            t = next;
+        }
+    }
+
+    /**
+     * 槽内任务的单向链表，只由轮线程访问
+     */
+    private static final class Bucket {
+        Timeout head;
+
+        void add(Timeout t) {
+            t.next = head;
+            head = t;
+        }
+    }
+
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long remainingRounds;
+        private Timeout next;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消尚未执行的任务（对已执行的任务无效果）
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void fire() {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                log.warn("时间轮任务执行失败: {}", e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.zpark.wsagent.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.zpark.wsagent.dto.ChatMessage;
+import com.zpark.wsagent.dto.MessageType;
+
+import org.springframework.web.socket.TextMessage;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * JSON 帧编解码（默认线上格式）：
+ * - decode：流式解析，逐字段写入 ChatMessage；type 直接在解析器的字符缓冲上匹配 MessageType，
+ *   字段名使用解析器的符号表（不为每帧生成新的字段名字符串），不经过 data-binding 的反射与中间对象
+ * - encode：仅含 type / content / clientMsgId / id / retryAfterMs 的回执（ACK、ERROR、HEARTBEAT 等）
+ *   由预先序列化好的信封模板拼接，只转义变化的字段；其余消息由预构建的 ObjectWriter 写出
+ * - 编码写入线程内复用的缓冲区，每帧只产生最终的 String
+ *
+ * 输出与默认 ObjectMapper 序列化 ChatMessage 的结果逐字节一致；解码语义与 ObjectMapper.readValue 一致
+ * （未知字段报错，数字字段接受数字字符串，空内容报错）。
+ */
+public final class JsonFrameCodec {
+
+    // 超过该长度的线程缓冲区用完即丢弃，避免偶发的大帧长期占用内存
+    private static final int MAX_RETAINED_BUFFER = 16 * 1024;
+
+    private static final MessageType[] TYPES = MessageType.values();
+    private static final char[][] TYPE_NAMES = new char[TYPES.length][];
+    // 按 MessageType 下标：{"type":"ACK","fromUserId":null,"toUserId":null,"roomId":null,"content":
+    private static final String[] ENVELOPE_HEADS = new String[TYPES.length];
+    private static final String ENVELOPE_NULL_HEAD =
+            "{\"type\":null,\"fromUserId\":null,\"toUserId\":null,\"roomId\":null,\"content\":";
+
+    static {
+        for (MessageType type : TYPES) {
+            TYPE_NAMES[type.ordinal()] = type.name().toCharArray();
+            ENVELOPE_HEADS[type.ordinal()] = "{\"type\":\"" + type.name()
+                    + "\",\"fromUserId\":null,\"toUserId\":null,\"roomId\":null,\"content\":";
+        }
+    }
+
+    private final JsonFactory factory;
+    private final ObjectWriter writer;
+    private final JsonStringEncoder quoter = JsonStringEncoder.getInstance();
+    private final ThreadLocal<BufferWriter> buffers = ThreadLocal.withInitial(BufferWriter::new);
+
+    public JsonFrameCodec() {
+        ObjectMapper mapper = new ObjectMapper();
+        this.factory = mapper.getFactory();
+        this.writer = mapper.writerFor(ChatMessage.class);
+    }
+
+    /**
+     * ChatMessage -> JSON 文本帧
+     */
+    public TextMessage encode(ChatMessage msg) {
+        BufferWriter out = buffers.get();
+        try {
+            if (isEnvelope(msg)) {
+                writeEnvelope(msg, out.buf);
+            } else {
+                writer.writeValue(out, msg);
+            }
+            return new TextMessage(out.buf.toString());
+        } catch (IOException e) {
+            throw new IllegalStateException("消息序列化失败", e);
+        } finally {
+            out.reset();
+        }
+    }
+
+    /**
+     * JSON 文本 -> ChatMessage；文本为 null 字面量时返回 null
+     */
+    public ChatMessage decode(String json) throws IOException {
+        try (JsonParser p = factory.createParser(json)) {
+            JsonToken token = p.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new JsonParseException(p, token == null ? "消息内容为空" : "消息必须是 JSON 对象");
+            }
+            ChatMessage msg = new ChatMessage();
+            String field;
+            while ((field = p.nextFieldName()) != null) {
+                JsonToken value = p.nextToken();
+                switch (field) {
+                    case "type" -> msg.setType(readType(p, value));
+                    case "fromUserId" -> msg.setFromUserId(readText(p, value));
+                    case "toUserId" -> msg.setToUserId(readText(p, value));
+                    case "roomId" -> msg.setRoomId(readText(p, value));
+                    case "content" -> msg.setContent(readText(p, value));
+                    case "clientMsgId" -> msg.setClientMsgId(readText(p, value));
+                    case "seq" -> msg.setSeq(readLong(p, value));
+                    case "id" -> msg.setId(readLong(p, value));
+                    case "retryAfterMs" -> msg.setRetryAfterMs(readLong(p, value));
+                    default -> throw new JsonParseException(p, "未知字段：" + field);
+                }
+            }
+            return msg;
+        }
+    }
+
+    /**
+     * 不带路由字段（发送方、接收方、房间、序号）的消息按信封模板编码
+     */
+    private static boolean isEnvelope(ChatMessage msg) {
+        return msg.getFromUserId() == null && msg.getToUserId() == null
+                && msg.getRoomId() == null && msg.getSeq() == null;
+    }
+
+    private void writeEnvelope(ChatMessage msg, StringBuilder out) {
+        MessageType type = msg.getType();
+        out.append(type == null ? ENVELOPE_NULL_HEAD : ENVELOPE_HEADS[type.ordinal()]);
+        appendQuoted(msg.getContent(), out);
+        out.append(",\"clientMsgId\":");
+        appendQuoted(msg.getClientMsgId(), out);
+        out.append(",\"seq\":null,\"id\":");
+        if (msg.getId() == null) {
+            out.append("null");
+        } else {
+            out.append('"').append(msg.getId().longValue()).append('"');
+        }
+        if (msg.getRetryAfterMs() != null) {
+            out.append(",\"retryAfterMs\":").append(msg.getRetryAfterMs().longValue());
+        }
+        out.append('}');
+    }
+
+    private void appendQuoted(String value, StringBuilder out) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        quoter.quoteAsString(value, out);
+        out.append('"');
+    }
+
+    private static MessageType readType(JsonParser p, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.VALUE_STRING) {
+            throw new JsonParseException(p, "type 必须是字符串");
+        }
+        char[] chars = p.getTextCharacters();
+        int offset = p.getTextOffset();
+        int length = p.getTextLength();
+        for (int i = 0; i < TYPE_NAMES.length; i++) {
+            if (matches(TYPE_NAMES[i], chars, offset, length)) {
+                return TYPES[i];
+            }
+        }
+        throw new JsonParseException(p, "未知的消息类型：" + p.getText());
+    }
+
+    private static boolean matches(char[] name, char[] chars, int offset, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name[i] != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String readText(JsonParser p, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw new JsonParseException(p, "字段 " + p.currentName() + " 必须是字符串");
+        }
+        return p.getText();
+    }
+
+    private static Long readLong(JsonParser p, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return p.getLongValue();
+            case VALUE_STRING:
+                String text = p.getText().trim();
+                if (text.isEmpty()) {
+                    return null;
+                }
+                try {
+                    return Long.parseLong(text);
+                } catch (NumberFormatException e) {
+                    throw new JsonParseException(p, "字段 " + p.currentName() + " 不是整数：" + text, e);
+                }
+            default:
+                throw new JsonParseException(p, "字段 " + p.currentName() + " 必须是整数");
+        }
+    }
+
+    /**
+     * 写入 StringBuilder 的 Writer，随线程复用
+     */
+    private static final class BufferWriter extends Writer {
+        private StringBuilder buf = new StringBuilder(256);
+
+        void reset() {
+            if (buf.capacity() > MAX_RETAINED_BUFFER) {
+                buf = new StringBuilder(256);
+            } else {
+                buf.setLength(0);
+            }
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            buf.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            buf.append(str, off, off + len);
+        }
+
+        @Override
+        public void write(int c) {
+            buf.append((char) c);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
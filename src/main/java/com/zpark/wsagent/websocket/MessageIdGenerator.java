@@ -0,0 +1,93 @@
+package com.zpark.wsagent.websocket;
+
+import com.zpark.wsagent.cluster.ClusterFanout;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息 ID 生成器（Snowflake 布局，64 位，按时间有序）：
+ *   0 | 41 位毫秒时间戳（自 2025-01-01 起，约 69 年） | 10 位节点号 | 12 位毫秒内序号
+ *
+ * - 在处理线程上、持久化之前分配：扇出无需等待数据库回填主键，写后队列可直接批量写入
+ * - 无锁：时间戳与序号打包在一个 AtomicLong 中，CAS 推进；同一毫秒内序号用尽时进位到下一毫秒（向未来借用），
+ *   调用方从不阻塞或自旋等待时钟
+ * - 时钟回拨：时间戳取 max(当前时间, 上次时间戳)，ID 仍单调递增
+ * - 同一节点内严格递增；不同节点之间按毫秒近似有序
+ *
+ * 节点号取 chat.id.node-id（0~1023）。单节点部署未配置时由随机的 nodeId 散列得到；
+ * 集群部署（chat.cluster.enabled=true）必须为每个节点显式配置不同的节点号，否则启动失败：
+ * 散列得到的节点号可能相同，相同节点号在同一毫秒生成的 ID 会重复，而主键由应用分配（IdType.INPUT），重复即写入失败或覆盖。
+ */
+@Slf4j
+@Component
+public class MessageIdGenerator {
+
+    static final long EPOCH_MS = Instant.parse("2025-01-01T00:00:00Z").toEpochMilli();
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeBits;
+    // 高位：相对 EPOCH 的毫秒数；低 SEQUENCE_BITS 位：毫秒内序号
+    private final AtomicLong state = new AtomicLong();
+
+    @Autowired
+    public MessageIdGenerator(ClusterFanout clusterFanout,
+                              @Value("${chat.id.node-id:-1}") long nodeId) {
+        this(nodeId >= 0 ? nodeId : derive(requireSingleNode(clusterFanout).getNodeId()));
+        if (nodeId < 0) {
+            log.info("未配置 chat.id.node-id，单节点部署使用散列得到的节点号：{}", this.nodeId());
+        }
+    }
+
+    private static ClusterFanout requireSingleNode(ClusterFanout clusterFanout) {
+        if (clusterFanout.isEnabled()) {
+            throw new IllegalStateException("集群模式（chat.cluster.enabled=true）必须为每个节点配置不同的 chat.id.node-id（0~"
+                    + MAX_NODE + "），否则不同节点可能生成重复的消息 ID");
+        }
+        return clusterFanout;
+    }
+
+    public MessageIdGenerator(long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE) {
+            throw new IllegalArgumentException("chat.id.node-id 取值范围为 0~" + MAX_NODE + "：" + nodeId);
+        }
+        this.nodeBits = nodeId << SEQUENCE_BITS;
+    }
+
+    /**
+     * 分配下一个 ID
+     */
+    public long nextId() {
+        long next = state.updateAndGet(current -> {
+            long now = System.currentTimeMillis() - EPOCH_MS;
+            // 新的毫秒：序号归零；同一毫秒（或时钟回拨）：加一，序号溢出时自然进位到时间戳
+            return now > (current >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : current + 1;
+        });
+        long timestamp = next >>> SEQUENCE_BITS;
+        return timestamp << (NODE_BITS + SEQUENCE_BITS) | nodeBits | (next & SEQUENCE_MASK);
+    }
+
+    public long nodeId() {
+        return nodeBits >>> SEQUENCE_BITS;
+    }
+
+    /**
+     * ID 中的时间戳（epoch 毫秒）
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MS;
+    }
+
+    private static long derive(String clusterNodeId) {
+        return (clusterNodeId.hashCode() & 0x7fffffff) % (MAX_NODE + 1);
+    }
+}
@@ -0,0 +1,333 @@
+package com.zpark.wsagent.websocket;
+
+import com.zpark.wsagent.dto.ChatMessage;
+import com.zpark.wsagent.dto.MessageType;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 入站消息限流：按会话、用户、房间三个维度，对每种 MessageType 分别配置令牌桶
+ *
+ * - 令牌桶以 GCRA 实现：每个桶只有一个 AtomicLong（理论到达时间 TAT），CAS 推进，无锁；
+ *   rate 为每秒补充的令牌数，burst 为桶容量（允许的突发条数）
+ * - 一条消息需通过所有适用规则；某条规则拒绝时归还已从其他桶取走的令牌，并返回需要等待的毫秒数
+ * - Redis（可选）：用户与房间维度改由 Lua 脚本在 Redis 上原子地检查并扣减全部相关桶（以 Redis TIME 为时钟），
+ *   限额在集群内共享；会话维度始终在本地。Redis 异常时退化为本地限流
+ * - 空闲的桶（已补满）与新桶等价，桶数超过 max-keys 时清理
+ *
+ * 规则格式（chat.ratelimit.rules，逗号分隔）：{消息类型|*}.{session|user|room}={每秒条数}/{突发条数}
+ *   例：*.session=20/40,GROUP_MSG.user=5/20,GROUP_MSG.room=50/100
+ *   * 表示所有消息类型共用一个桶；room 维度只对携带 roomId 的消息生效
+ *
+ * 配置（application.properties）：
+ *   chat.ratelimit.enabled        是否启用
+ *   chat.ratelimit.rules          规则
+ *   chat.ratelimit.max-keys       本地桶数上限（超过后清理空闲桶）
+ *   chat.ratelimit.redis-enabled  用户与房间维度是否经 Redis 在集群内共享
+ */
+@Slf4j
+@Component
+public class MessageRateLimiter {
+
+    /**
+     * KEYS：各桶的 key；ARGV：每个桶依次为 (发射间隔 us, 容量 us)
+     * 返回 {0} 表示放行（已扣减全部桶），否则为 {需要等待的毫秒数, 拒绝的桶序号（从 1 开始）}（不扣减任何桶）
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List> GCRA_SCRIPT = new DefaultRedisScript<>(
+            "local t = redis.call('TIME') "
+                    + "local now = tonumber(t[1]) * 1000000 + tonumber(t[2]) "
+                    + "local tats = {} "
+                    + "local wait = 0 "
+                    + "local worst = 0 "
+                    + "for i = 1, #KEYS do "
+                    + "  local interval = tonumber(ARGV[2 * i - 1]) "
+                    + "  local capacity = tonumber(ARGV[2 * i]) "
+                    + "  local tat = tonumber(redis.call('GET', KEYS[i]) or '0') "
+                    + "  local nt = math.max(tat, now) + interval "
+                    + "  local over = nt - now - capacity "
+                    + "  if over > wait then wait = over worst = i end "
+                    + "  tats[i] = nt "
+                    + "end "
+                    + "if wait > 0 then return {math.ceil(wait / 1000), worst} end "
+                    + "for i = 1, #KEYS do "
+                    + "  redis.call('SET', KEYS[i], string.format('%d', tats[i]), 'PX', math.ceil((tats[i] - now) / 1000) + 1000) "
+                    + "end "
+                    + "return {0}", List.class);
+
+    private final StringRedisTemplate redis;
+    private final boolean enabled;
+    private final boolean redisEnabled;
+    private final int maxKeys;
+    private final String keyPrefix;
+
+    // 消息类型 -> 适用规则（含 * 规则）
+    private final Map<MessageType, List<Rule>> rules = new EnumMap<>(MessageType.class);
+    // 桶 key -> TAT（System.nanoTime 时间轴）
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong sweepGuard = new AtomicLong();
+
+    private final Map<Scope, Counter> rejected = new EnumMap<>(Scope.class);
+
+    public MessageRateLimiter(StringRedisTemplate redis,
+                              MeterRegistry meterRegistry,
+                              @Value("${chat.ratelimit.enabled:true}") boolean enabled,
+                              @Value("${chat.ratelimit.rules:*.session=20/40,GROUP_MSG.user=5/20,GROUP_MSG.room=50/100,PRIVATE_MSG.user=5/20}") String rules,
+                              @Value("${chat.ratelimit.max-keys:100000}") int maxKeys,
+                              @Value("${chat.ratelimit.redis-enabled:false}") boolean redisEnabled,
+                              @Value("${chat.cluster.channel-prefix:wsagent:}") String keyPrefix) {
+        this.redis = redis;
+        this.enabled = enabled;
+        this.redisEnabled = redisEnabled;
+        this.maxKeys = Math.max(1, maxKeys);
+        this.keyPrefix = keyPrefix;
+        parseRules(rules);
+
+        Gauge.builder("chat.ratelimit.buckets", buckets, Map::size)
+                .description("本地令牌桶数")
+                .register(meterRegistry);
+        for (Scope scope : Scope.values()) {
+            rejected.put(scope, Counter.builder("chat.ratelimit.rejected")
+                    .tag("scope", scope.key)
+                    .description("被限流拒绝的消息数")
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * 尝试为一条入站消息取令牌
+     *
+     * @return 0 表示放行；否则为建议客户端等待的毫秒数
+     */
+    public long tryAcquire(String sessionId, String userId, ChatMessage msg) {
+        if (!enabled || msg.getType() == null) {
+            return 0;
+        }
+        List<Rule> applicable = rules.get(msg.getType());
+        if (applicable == null) {
+            return 0;
+        }
+        List<Rule> local = new ArrayList<>(applicable.size());
+        List<String> localKeys = new ArrayList<>(applicable.size());
+        List<Rule> remote = new ArrayList<>(applicable.size());
+        List<String> remoteKeys = new ArrayList<>(applicable.size());
+        for (Rule rule : applicable) {
+            String subject = switch (rule.scope) {
+                case SESSION -> sessionId;
+                case USER -> userId;
+                case ROOM -> msg.getRoomId();
+            };
+            if (subject == null || subject.isEmpty()) {
+                continue;
+            }
+            String key = rule.key(subject);
+            if (redisEnabled && rule.scope != Scope.SESSION) {
+                remote.add(rule);
+                remoteKeys.add(key);
+            } else {
+                local.add(rule);
+                localKeys.add(key);
+            }
+        }
+        // 先取本地（会话维度）令牌，再取 Redis 上的；后者拒绝时归还前者
+        long wait = acquireLocal(local, localKeys);
+        if (wait > 0 || remote.isEmpty()) {
+            return wait;
+        }
+        wait = acquireRemote(remote, remoteKeys);
+        if (wait < 0) {
+            wait = acquireLocal(remote, remoteKeys); // Redis 不可用，退化为本地
+        }
+        if (wait > 0) {
+            refund(local, localKeys, local.size());
+        }
+        return wait;
+    }
+
+    private long acquireLocal(List<Rule> rules, List<String> keys) {
+        long now = System.nanoTime();
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            long over = take(bucket(keys.get(i), now), rule, now);
+            if (over > 0) {
+                refund(rules, keys, i);
+                rejected.get(rule.scope).increment();
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(over + 999_999));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 归还前 count 个桶各一个令牌
+     */
+    private void refund(List<Rule> rules, List<String> keys, int count) {
+        for (int i = 0; i < count; i++) {
+            AtomicLong tat = buckets.get(keys.get(i));
+            if (tat != null) {
+                tat.addAndGet(-rules.get(i).intervalNanos);
+            }
+        }
+    }
+
+    /**
+     * GCRA：新 TAT = max(TAT, now) + 发射间隔；超出 now + 容量即拒绝
+     *
+     * @return 0 表示已取得令牌，否则为超出的纳秒数
+     */
+    private static long take(AtomicLong tat, Rule rule, long now) {
+        while (true) {
+            long current = tat.get();
+            long next = Math.max(current, now) + rule.intervalNanos;
+            long over = next - now - rule.capacityNanos;
+            if (over > 0) {
+                return over;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private AtomicLong bucket(String key, long now) {
+        AtomicLong tat = buckets.get(key);
+        if (tat != null) {
+            return tat;
+        }
+        if (buckets.size() >= maxKeys) {
+            sweep(now);
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+    }
+
+    /**
+     * 清理已补满的桶（TAT 不晚于当前时刻，与新桶等价）；同一时刻只有一个线程执行
+     */
+    private void sweep(long now) {
+        long last = sweepGuard.get();
+        if (now - last < TimeUnit.SECONDS.toNanos(1) || !sweepGuard.compareAndSet(last, now)) {
+            return;
+        }
+        buckets.values().removeIf(tat -> tat.get() <= now);
+    }
+
+    /**
+     * @return -1 表示 Redis 不可用；0 表示放行；否则为等待毫秒数
+     */
+    private long acquireRemote(List<Rule> rules, List<String> keys) {
+        List<String> redisKeys = new ArrayList<>(keys.size());
+        Object[] args = new Object[rules.size() * 2];
+        for (int i = 0; i < rules.size(); i++) {
+            redisKeys.add(keyPrefix + "rl:" + keys.get(i));
+            args[2 * i] = Long.toString(TimeUnit.NANOSECONDS.toMicros(rules.get(i).intervalNanos));
+            args[2 * i + 1] = Long.toString(TimeUnit.NANOSECONDS.toMicros(rules.get(i).capacityNanos));
+        }
+        try {
+            List<?> result = redis.execute(GCRA_SCRIPT, redisKeys, args);
+            long wait = result == null || result.isEmpty() ? 0 : ((Number) result.get(0)).longValue();
+            if (wait > 0) {
+                int index = result.size() > 1 ? ((Number) result.get(1)).intValue() - 1 : 0;
+                rejected.get(rules.get(Math.max(0, Math.min(index, rules.size() - 1))).scope).increment();
+            }
+            return wait;
+        } catch (Exception e) {
+            log.warn("Redis 限流不可用，退化为本地限流: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    private void parseRules(String spec) {
+        List<Rule> wildcard = new ArrayList<>();
+        Map<MessageType, List<Rule>> specific = new EnumMap<>(MessageType.class);
+        for (String item : spec.split(",")) {
+            String entry = item.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            try {
+                int dot = entry.indexOf('.');
+                int eq = entry.indexOf('=', dot);
+                int slash = entry.indexOf('/', eq);
+                String type = entry.substring(0, dot).trim();
+                Scope scope = Scope.of(entry.substring(dot + 1, eq).trim());
+                double rate = Double.parseDouble(entry.substring(eq + 1, slash).trim());
+                int burst = Integer.parseInt(entry.substring(slash + 1).trim());
+                if (rate <= 0 || burst <= 0) {
+                    throw new IllegalArgumentException("rate 与 burst 必须大于 0");
+                }
+                if ("*".equals(type)) {
+                    wildcard.add(new Rule("*", scope, rate, burst));
+                } else {
+                    MessageType mt = MessageType.valueOf(type);
+                    specific.computeIfAbsent(mt, k -> new ArrayList<>()).add(new Rule(mt.name(), scope, rate, burst));
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("chat.ratelimit.rules 格式错误：" + entry, e);
+            }
+        }
+        for (MessageType type : MessageType.values()) {
+            List<Rule> all = new ArrayList<>(wildcard);
+            all.addAll(specific.getOrDefault(type, List.of()));
+            if (!all.isEmpty()) {
+                rules.put(type, List.copyOf(all));
+            }
+        }
+    }
+
+    enum Scope {
+        SESSION("session"), USER("user"), ROOM("room");
+
+        final String key;
+
+        Scope(String key) {
+            this.key = key;
+        }
+
+        static Scope of(String key) {
+            for (Scope s : values()) {
+                if (s.key.equals(key)) {
+                    return s;
+                }
+            }
+            throw new IllegalArgumentException("未知的限流维度：" + key);
+        }
+    }
+
+    private static final class Rule {
+        final String type;
+        final Scope scope;
+        final long intervalNanos;
+        final long capacityNanos;
+
+        Rule(String type, Scope scope, double ratePerSecond, int burst) {
+            this.type = type;
+            this.scope = scope;
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+            this.capacityNanos = intervalNanos * burst;
+        }
+
+        /**
+         * 维度与主体带长度前缀，避免 ID 中的分隔符造成歧义
+         */
+        String key(String subject) {
+            return scope.key + ":" + type + ":" + subject.length() + ":" + subject;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.zpark.wsagent.websocket;
+
+/**
+ * 出站队列溢出策略（队列已满时如何处理新消息）
+ * - DROP_OLDEST: 丢弃队首最旧的消息，为新消息腾出位置
+ * - DROP_NEW: 丢弃当前这条新消息
+ * - DISCONNECT: 视为慢消费者，直接断开该连接
+ */
+public enum OverflowPolicy {
+    DROP_OLDEST,
+    DROP_NEW,
+    DISCONNECT
+}
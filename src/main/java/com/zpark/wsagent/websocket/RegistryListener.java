@@ -0,0 +1,27 @@
+package com.zpark.wsagent.websocket;
+
+/**
+ * 会话注册表变更监听器（仅在"出现/消失"这类边沿变化时回调）
+ * 回调在变更完成、锁释放后触发，多个回调之间可能乱序，
+ * 实现方应以注册表的当前状态为准（幂等地对齐），而不是依赖回调顺序。
+ */
+public interface RegistryListener {
+
+    /**
+     * 本节点上某房间出现了第一个成员，或最后一个成员离开
+     */
+    default void onRoomChanged(String roomId) {
+    }
+
+    /**
+     * 本节点上某用户建立了第一条连接，或最后一条连接断开
+     */
+    default void onUserChanged(String userId) {
+    }
+
+    /**
+     * 本节点上某用户加入（joined=true）或离开（joined=false）某房间，仅在成员关系真实变化时回调一次
+     */
+    default void onMembershipChanged(String roomId, String userId, boolean joined) {
+    }
+}
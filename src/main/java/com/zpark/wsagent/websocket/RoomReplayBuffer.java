@@ -0,0 +1,163 @@
+package com.zpark.wsagent.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 房间消息回放缓冲：每个房间保留最近 N 条已编码的群聊帧，供断线重连的客户端按序号补齐
+ * - 槽位按 seq % N 定位，序号乱序到达（集群内不同节点分配的序号）也能正确落位
+ * - 回放区间内任一序号缺失（已被覆盖或从未到达本节点）即视为未命中，由调用方回退到数据库
+ * - 回放区间的终点取调用方给出的权威最新序号（RoomSequencer.current）与缓冲已知最新序号中的较大者：
+ *   集群中节点在房间无本地成员时退订频道，其间其他节点产生的消息不会到达本节点，只看本地缓冲会把缺口误判为“已是最新”
+ * - 本节点退订房间频道时由 ClusterFanout 调用 remove 丢弃该房间缓冲
+ * - 房间数超过上限时，优先淘汰本节点已无成员的房间
+ *
+ * 配置（application.properties）：
+ *   chat.replay.buffer-size  单房间保留的消息条数
+ *   chat.replay.max-rooms    保留缓冲的房间数上限
+ */
+@Component
+public class RoomReplayBuffer {
+
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+    private final ChatSessionRegistry registry;
+    private final int bufferSize;
+    private final int maxRooms;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    @Autowired
+    public RoomReplayBuffer(ChatSessionRegistry registry,
+                            MeterRegistry meterRegistry,
+                            @Value("${chat.replay.buffer-size:256}") int bufferSize,
+                            @Value("${chat.replay.max-rooms:10000}") int maxRooms) {
+        this.registry = registry;
+        this.bufferSize = Math.max(1, bufferSize);
+        this.maxRooms = Math.max(1, maxRooms);
+        Gauge.builder("chat.replay.rooms", rings, Map::size)
+                .description("持有回放缓冲的房间数")
+                .register(meterRegistry);
+        this.hitCounter = Counter.builder("chat.replay.lookups").tag("result", "hit")
+                .description("从内存缓冲完成的回放次数")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("chat.replay.lookups").tag("result", "miss")
+                .description("内存缓冲不足、需回退数据库的回放次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一条已分配序号的房间消息帧
+     */
+    public void record(String roomId, long seq, TextMessage frame) {
+        Ring ring = rings.get(roomId);
+        if (ring == null) {
+            if (rings.size() >= maxRooms) {
+                evictIdleRooms();
+            }
+            ring = rings.computeIfAbsent(roomId, k -> new Ring(bufferSize));
+        }
+        ring.put(seq, frame);
+    }
+
+    /**
+     * 取出 afterSeq 之后（不含）的全部帧，按序号升序；区间终点仅以本节点缓冲为准
+     *
+     * @return 帧列表；缓冲无法覆盖整个区间时返回 null
+     */
+    public List<TextMessage> since(String roomId, long afterSeq) {
+        return since(roomId, afterSeq, 0L);
+    }
+
+    /**
+     * 取出 afterSeq 之后（不含）、直到 latestSeq（含）的全部帧，按序号升序
+     *
+     * @param latestSeq 房间的权威最新序号；缓冲尚未收到的序号视为缺失
+     * @return 帧列表；缓冲无法覆盖整个区间时返回 null
+     */
+    public List<TextMessage> since(String roomId, long afterSeq, long latestSeq) {
+        Ring ring = rings.get(roomId);
+        List<TextMessage> frames = ring != null ? ring.since(afterSeq, latestSeq) : null;
+        (frames != null ? hitCounter : missCounter).increment();
+        return frames;
+    }
+
+    /**
+     * 丢弃房间的回放缓冲（本节点不再接收该房间的消息时调用）
+     */
+    public void remove(String roomId) {
+        rings.remove(roomId);
+    }
+
+    /**
+     * 本节点已知的房间最新序号（无缓冲时返回 0）
+     */
+    public long latestSeq(String roomId) {
+        Ring ring = rings.get(roomId);
+        return ring != null ? ring.latest() : 0;
+    }
+
+    private void evictIdleRooms() {
+        rings.keySet().removeIf(roomId -> !registry.hasRoom(roomId));
+    }
+
+    /**
+     * 定长环形缓冲，槽位 = seq % capacity
+     */
+    private static final class Ring {
+
+        private final long[] seqs;
+        private final TextMessage[] frames;
+        private long latest;
+
+        Ring(int capacity) {
+            this.seqs = new long[capacity];
+            this.frames = new TextMessage[capacity];
+        }
+
+        synchronized void put(long seq, TextMessage frame) {
+            if (seq <= latest - seqs.length) {
+                return; // 比缓冲窗口还旧的迟到消息
+            }
+            int slot = (int) (seq % seqs.length);
+            seqs[slot] = seq;
+            frames[slot] = frame;
+            if (seq > latest) {
+                latest = seq;
+            }
+        }
+
+        synchronized List<TextMessage> since(long afterSeq, long latestSeq) {
+            long upTo = Math.max(latest, latestSeq);
+            if (afterSeq >= upTo) {
+                return List.of();
+            }
+            if (upTo - afterSeq > seqs.length) {
+                return null; // 缺口早于缓冲窗口
+            }
+            List<TextMessage> result = new ArrayList<>((int) (upTo - afterSeq));
+            for (long s = afterSeq + 1; s <= upTo; s++) {
+                int slot = (int) (s % seqs.length);
+                if (seqs[slot] != s) {
+                    return null;
+                }
+                result.add(frames[slot]);
+            }
+            return result;
+        }
+
+        synchronized long latest() {
+            return latest;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.zpark.wsagent.websocket;
+
+import com.zpark.wsagent.store.ChatMessageStore;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 房间序号分配器：为每条群聊消息分配房间内单调递增的序号（从 1 开始）
+ * - 单节点：内存 AtomicLong，首次使用某房间时以存储中该房间的最大 room_seq 作为起点（查询存储在 Map 操作之外进行）
+ * - 集群（chat.cluster.enabled=true）：Redis INCR {prefix}room-seq:{roomId}；本节点首次使用某房间时，
+ *   用脚本原子地完成"键不存在则以存储中的最大值初始化，再 INCR"，并发的首次分配不会从 1 开始
+ */
+@Slf4j
+@Component
+public class RoomSequencer {
+
+    private static final RedisScript<Long> SEED_AND_INCR_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then "
+                    + "  redis.call('SET', KEYS[1], ARGV[1]) "
+                    + "end "
+                    + "return redis.call('INCR', KEYS[1])", Long.class);
+
+    private final ChatMessageStore store;
+    private final StringRedisTemplate redis;
+    private final boolean clustered;
+    private final String keyPrefix;
+
+    // 单节点模式：roomId -> 当前序号
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    // 集群模式：本节点已确认完成初始化的房间（初始化脚本执行成功后才加入）
+    private final Set<String> seeded = ConcurrentHashMap.newKeySet();
+
+    public RoomSequencer(ChatMessageStore store,
+                         StringRedisTemplate redis,
+                         @Value("${chat.cluster.enabled:false}") boolean clustered,
+                         @Value("${chat.cluster.channel-prefix:wsagent:}") String keyPrefix) {
+        this.store = store;
+        this.redis = redis;
+        this.clustered = clustered;
+        this.keyPrefix = keyPrefix;
+    }
+
+    /**
+     * 分配房间的下一个序号
+     */
+    public long next(String roomId) {
+        if (!clustered) {
+            AtomicLong counter = counters.get(roomId);
+            if (counter == null) {
+                AtomicLong loaded = new AtomicLong(maxPersisted(roomId));
+                AtomicLong existing = counters.putIfAbsent(roomId, loaded);
+                counter = existing != null ? existing : loaded;
+            }
+            return counter.incrementAndGet();
+        }
+        String key = keyPrefix + "room-seq:" + roomId;
+        Long seq;
+        if (seeded.contains(roomId)) {
+            seq = redis.opsForValue().increment(key);
+        } else {
+            seq = redis.execute(SEED_AND_INCR_SCRIPT, List.of(key), Long.toString(maxPersisted(roomId)));
+            if (seq != null) {
+                seeded.add(roomId);
+            }
+        }
+        if (seq == null) {
+            throw new IllegalStateException("房间序号分配失败：" + roomId);
+        }
+        return seq;
+    }
+
+    /**
+     * 房间当前已分配的最新序号（不分配新序号）
+     * - 单节点：本进程计数器的当前值，本进程尚未为该房间分配过序号时返回 0
+     * - 集群：读取 Redis 中的计数器，是跨节点的权威值；键不存在时返回 0
+     */
+    public long current(String roomId) {
+        if (!clustered) {
+            AtomicLong counter = counters.get(roomId);
+            return counter != null ? counter.get() : 0L;
+        }
+        String value = redis.opsForValue().get(keyPrefix + "room-seq:" + roomId);
+        return value != null ? Long.parseLong(value) : 0L;
+    }
+
+    private long maxPersisted(String roomId) {
+        Long max = store.maxRoomSeq(roomId);
+        return max != null ? max : 0L;
+    }
+}
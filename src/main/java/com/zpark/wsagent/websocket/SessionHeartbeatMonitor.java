@@ -0,0 +1,206 @@
+package com.zpark.wsagent.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务端心跳与空闲连接回收：
+ * - 每个会话在时间轮上挂一个检查任务，每 ping-interval 触发一次
+ * - 期间收到过任何入站消息（含 pong）视为存活；静默超过 ping-interval 时发送 Ping（载荷为发送时刻，pong 回来即得 RTT）
+ * - 静默超过 idle-timeout 视为失联：经 ChatSessionRegistry.removeSession 正常移除（房间名单、在线状态监听器随之更新），
+ *   再由写线程异步关闭连接，不在时间轮线程上阻塞
+ * - 失联的 TCP 连接不再长期留在注册表中占用扇出名单与写出
+ *
+ * 指标：chat.ws.heartbeat.sessions / pings / reaped，chat.ws.heartbeat.rtt（pong 往返时间分布）
+ *
+ * 配置（application.properties）：
+ *   chat.ws.heartbeat.enabled               是否启用
+ *   chat.ws.heartbeat.ping-interval-seconds 检查与 Ping 间隔
+ *   chat.ws.heartbeat.idle-timeout-seconds  静默多久判定失联
+ *   chat.ws.heartbeat.tick-ms               时间轮精度
+ *   chat.ws.heartbeat.wheel-size            时间轮槽数
+ */
+@Slf4j
+@Component
+public class SessionHeartbeatMonitor {
+
+    private final ChatSessionRegistry registry;
+    private final SessionOutboundManager outbound;
+    private final boolean enabled;
+    private final long pingIntervalMs;
+    private final long idleTimeoutMs;
+    private final HashedTimingWheel wheel;
+
+    // sessionId -> 心跳状态
+    private final Map<String, Heartbeat> heartbeats = new ConcurrentHashMap<>();
+
+    private final Counter pings;
+    private final Counter reaped;
+    private final Timer rtt;
+
+    @Autowired
+    public SessionHeartbeatMonitor(ChatSessionRegistry registry,
+                                   SessionOutboundManager outbound,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${chat.ws.heartbeat.enabled:true}") boolean enabled,
+                                   @Value("${chat.ws.heartbeat.ping-interval-seconds:30}") long pingIntervalSeconds,
+                                   @Value("${chat.ws.heartbeat.idle-timeout-seconds:90}") long idleTimeoutSeconds,
+                                   @Value("${chat.ws.heartbeat.tick-ms:100}") long tickMs,
+                                   @Value("${chat.ws.heartbeat.wheel-size:512}") int wheelSize) {
+        this(registry, outbound, meterRegistry, enabled,
+                Duration.ofSeconds(Math.max(1, pingIntervalSeconds)), Duration.ofSeconds(Math.max(1, idleTimeoutSeconds)),
+                tickMs, wheelSize);
+    }
+
+    public SessionHeartbeatMonitor(ChatSessionRegistry registry,
+                                   SessionOutboundManager outbound,
+                                   MeterRegistry meterRegistry,
+                                   boolean enabled,
+                                   Duration pingInterval,
+                                   Duration idleTimeout,
+                                   long tickMs,
+                                   int wheelSize) {
+        this.registry = registry;
+        this.outbound = outbound;
+        this.enabled = enabled;
+        this.pingIntervalMs = Math.max(1, pingInterval.toMillis());
+        this.idleTimeoutMs = Math.max(pingIntervalMs, idleTimeout.toMillis());
+        this.wheel = enabled ? new HashedTimingWheel("ws-heartbeat", Math.max(1, tickMs), wheelSize) : null;
+
+        Gauge.builder("chat.ws.heartbeat.sessions", heartbeats, Map::size)
+                .description("受心跳监控的会话数")
+                .register(meterRegistry);
+        this.pings = Counter.builder("chat.ws.heartbeat.pings")
+                .description("服务端发送的 Ping 数")
+                .register(meterRegistry);
+        this.reaped = Counter.builder("chat.ws.heartbeat.reaped")
+                .description("因空闲超时被回收的连接数")
+                .register(meterRegistry);
+        this.rtt = Timer.builder("chat.ws.heartbeat.rtt")
+                .description("Ping/Pong 往返时间")
+                .publishPercentiles(0.5, 0.9, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * 连接建立时登记
+     */
+    public void register(WebSocketSession session) {
+        if (!enabled) {
+            return;
+        }
+        Heartbeat hb = new Heartbeat(session);
+        if (heartbeats.putIfAbsent(session.getId(), hb) == null) {
+            hb.timeout = wheel.schedule(() -> check(hb), pingIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 收到入站消息：刷新最近活动时间（每条消息调用，只做一次查表与 volatile 写）
+     */
+    public void touch(WebSocketSession session) {
+        if (!enabled) {
+            return;
+        }
+        Heartbeat hb = heartbeats.get(session.getId());
+        if (hb != null) {
+            hb.lastSeen = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 收到 Pong：刷新活动时间，载荷为本节点发送的时刻时记录 RTT
+     */
+    public void onPong(WebSocketSession session, PongMessage pong) {
+        touch(session);
+        ByteBuffer payload = pong.getPayload();
+        if (enabled && payload.remaining() == Long.BYTES) {
+            long elapsed = System.nanoTime() - payload.getLong(payload.position());
+            if (elapsed >= 0 && elapsed < TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs)) {
+                rtt.record(elapsed, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * 连接关闭时注销
+     */
+    public void unregister(WebSocketSession session) {
+        if (!enabled) {
+            return;
+        }
+        Heartbeat hb = heartbeats.remove(session.getId());
+        if (hb != null && hb.timeout != null) {
+            hb.timeout.cancel();
+        }
+    }
+
+    /**
+     * 时间轮线程上执行：判定失联则回收，否则按需 Ping 并挂下一次检查
+     */
+    private void check(Heartbeat hb) {
+        WebSocketSession session = hb.session;
+        if (heartbeats.get(session.getId()) != hb) {
+            return; // 已注销
+        }
+        long idle = System.currentTimeMillis() - hb.lastSeen;
+        if (idle >= idleTimeoutMs || !session.isOpen()) {
+            reap(hb, idle);
+            return;
+        }
+        if (idle >= pingIntervalMs) {
+            ByteBuffer payload = ByteBuffer.allocate(Long.BYTES).putLong(0, System.nanoTime());
+            if (outbound.send(session, new PingMessage(payload))) {
+                pings.increment();
+            }
+        }
+        hb.timeout = wheel.schedule(() -> check(hb), pingIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void reap(Heartbeat hb, long idle) {
+        WebSocketSession session = hb.session;
+        if (!heartbeats.remove(session.getId(), hb)) {
+            return;
+        }
+        reaped.increment();
+        log.info("回收空闲连接 sessionId={} 静默={}ms", session.getId(), idle);
+        registry.removeSession(session);
+        outbound.disconnect(session, CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (wheel != null) {
+            wheel.stop();
+        }
+    }
+
+    private static final class Heartbeat {
+        final WebSocketSession session;
+        volatile long lastSeen = System.currentTimeMillis();
+        volatile HashedTimingWheel.Timeout timeout;
+
+        Heartbeat(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.zpark.wsagent.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 入站消息执行器：决定 handleTextMessage 的业务处理运行在哪个线程上
+ * - CONTAINER：直接在容器线程上执行（原有行为）
+ * - VIRTUAL：每个会话一条串行通道，消息按到达顺序逐条交给虚拟线程执行；
+ *   阻塞的持久化与投递只挂起虚拟线程，容器线程立即返回继续读取其他连接
+ *
+ * 同一会话的消息任意时刻最多只有一个在执行，保证会话内顺序；单会话积压超过 max-pending 时拒绝新消息。
+ * 连接关闭后通道标记为已关闭：丢弃尚未执行的消息，之后提交的任务一律拒绝，不会重新创建通道。
+ *
+ * 配置（application.properties）：
+ *   chat.ws.execution-mode        CONTAINER / VIRTUAL
+ *   chat.ws.inbound.max-pending   单会话允许积压的入站消息数
+ */
+@Slf4j
+@Component
+public class SessionInboundExecutor {
+
+    // sessionId -> 串行通道
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final ExecutionMode mode;
+    private final int maxPending;
+    private final ExecutorService executor;
+    private final Counter rejectedCounter;
+
+    @Autowired
+    public SessionInboundExecutor(MeterRegistry meterRegistry,
+                                  @Value("${chat.ws.execution-mode:CONTAINER}") ExecutionMode mode,
+                                  @Value("${chat.ws.inbound.max-pending:256}") int maxPending) {
+        this(meterRegistry, virtualExecutor(mode), maxPending);
+    }
+
+    /**
+     * @param executor 按会话串行执行任务的执行器；为 null 时在调用线程上直接执行（CONTAINER）
+     */
+    public SessionInboundExecutor(MeterRegistry meterRegistry, ExecutorService executor, int maxPending) {
+        this.executor = executor;
+        this.mode = executor != null ? ExecutionMode.VIRTUAL : ExecutionMode.CONTAINER;
+        this.maxPending = Math.max(1, maxPending);
+        log.info("WebSocket 入站执行模式: {}", this.mode);
+
+        Gauge.builder("chat.ws.inbound.pending", this, SessionInboundExecutor::totalPending)
+                .description("所有会话等待处理的入站消息总数")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("chat.ws.inbound.rejected")
+                .description("因单会话积压过多被拒绝的入站消息数")
+                .register(meterRegistry);
+    }
+
+    private static ExecutorService virtualExecutor(ExecutionMode mode) {
+        ExecutorService virtual = mode == ExecutionMode.VIRTUAL ? VirtualThreads.newExecutor("ws-inbound-") : null;
+        if (mode == ExecutionMode.VIRTUAL && virtual == null) {
+            log.warn("chat.ws.execution-mode=VIRTUAL 需要 Java 21+，已回退为 CONTAINER");
+        }
+        return virtual;
+    }
+
+    public ExecutionMode getMode() {
+        return mode;
+    }
+
+    /**
+     * 提交一条入站消息的处理任务
+     *
+     * @return false 表示该会话积压已满或连接已关闭，任务未被接受
+     */
+    public boolean execute(WebSocketSession session, Runnable task) {
+        if (executor == null) {
+            task.run();
+            return true;
+        }
+        if (!session.isOpen()) {
+            return false; // 已关闭的连接不再创建通道
+        }
+        Lane lane = lanes.computeIfAbsent(session.getId(), k -> new Lane());
+        if (!lane.offer(task)) {
+            if (!lane.closed) {
+                rejectedCounter.increment();
+            }
+            return false;
+        }
+        if (!session.isOpen()) {
+            // 与 remove 竞争：通道在连接关闭后才创建，由这里负责关闭回收
+            close(session.getId(), lane);
+        }
+        return true;
+    }
+
+    /**
+     * 连接关闭时关闭并移除会话通道，丢弃尚未开始执行的消息；正在执行的消息照常完成
+     */
+    public void remove(WebSocketSession session) {
+        Lane lane = lanes.get(session.getId());
+        if (lane != null) {
+            close(session.getId(), lane);
+        }
+    }
+
+    private void close(String sessionId, Lane lane) {
+        lane.close();
+        lanes.remove(sessionId, lane);
+    }
+
+    private double totalPending() {
+        int total = 0;
+        for (Lane lane : lanes.values()) {
+            total += lane.pending.get();
+        }
+        return total;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 单会话串行通道：任务入队后，若当前没有排空任务在跑则调度一个；排空任务逐条执行直到队列为空
+     */
+    private final class Lane implements Runnable {
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+
+        boolean offer(Runnable task) {
+            if (closed) {
+                return false;
+            }
+            if (pending.incrementAndGet() > maxPending) {
+                pending.decrementAndGet();
+                return false;
+            }
+            tasks.add(task);
+            if (closed) {
+                // 与 close 竞争：close 已排空过队列，由这里把刚加入的任务撤回
+                drain();
+                return false;
+            }
+            schedule();
+            return true;
+        }
+
+        /**
+         * 标记关闭并丢弃尚未执行的任务；pending 只随实际移除的任务递减，不会变为负数
+         */
+        void close() {
+            closed = true;
+            drain();
+        }
+
+        private void drain() {
+            while (tasks.poll() != null) {
+                pending.decrementAndGet();
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Runnable task;
+                while (!closed && (task = tasks.poll()) != null) {
+                    pending.decrementAndGet();
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        log.warn("入站消息处理异常: {}", e.getMessage(), e);
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                // 释放标记与新任务入队之间存在竞争窗口，复查一次
+                if (!closed && !tasks.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+}
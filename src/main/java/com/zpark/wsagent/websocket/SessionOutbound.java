@@ -0,0 +1,169 @@
+package com.zpark.wsagent.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单个会话的出站队列：
+ * - 有界队列，满时按 OverflowPolicy 处理
+ * - 同一时刻最多只有一个写任务在共享写线程池上排空该队列，保证单会话内消息顺序
+ * - 单次写耗时超过阈值即标记为慢连接，本轮立即让出共享写线程，之后改由慢写线程池排空；
+ *   慢写线程上一轮写出全部恢复正常后移回共享写线程池
+ * - 写失败只影响本会话（关闭连接），不会中断对其他会话的投递
+ */
+@Slf4j
+final class SessionOutbound implements Runnable {
+
+    private final WebSocketSession session;
+    private final BlockingDeque<WebSocketMessage<?>> queue;
+    private final SessionOutboundManager owner;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile boolean closed;
+    // 是否由慢写线程池排空；只在持有排空任务（scheduled=true）的线程上修改
+    private volatile boolean slow;
+
+    SessionOutbound(WebSocketSession session, int capacity, SessionOutboundManager owner) {
+        this.session = session;
+        this.queue = new LinkedBlockingDeque<>(capacity);
+        this.owner = owner;
+    }
+
+    /**
+     * 入队一条消息；返回 false 表示该消息被丢弃（队列满或连接已关闭）
+     */
+    boolean enqueue(WebSocketMessage<?> message, OverflowPolicy policy) {
+        if (closed) {
+            return false;
+        }
+        if (!queue.offerLast(message)) {
+            switch (policy) {
+                case DROP_NEW:
+                    owner.onDropped(policy);
+                    return false;
+                case DROP_OLDEST:
+                    while (!queue.offerLast(message)) {
+                        if (queue.pollFirst() != null) {
+                            owner.onDropped(policy);
+                        }
+                    }
+                    break;
+                case DISCONNECT:
+                default:
+                    owner.onSlowConsumer(this);
+                    return false;
+            }
+        }
+        owner.onEnqueued(queue.size());
+        schedule();
+        return true;
+    }
+
+    private void schedule() {
+        if (closed || !scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            owner.writerFor(slow).execute(this);
+        } catch (RejectedExecutionException e) {
+            // 写线程池已关闭（应用停机中），放弃剩余消息
+            scheduled.set(false);
+            discard();
+        }
+    }
+
+    /**
+     * 排空队列：每轮最多写出 batch 条后让出线程，避免单个大队列长期占用写线程
+     * 共享写线程上出现慢写时立即结束本轮，剩余消息由慢写线程池继续排空
+     */
+    @Override
+    public void run() {
+        try {
+            int written = 0;
+            int batch = owner.getDrainBatch();
+            long threshold = owner.getSlowWriteNanos();
+            boolean allFast = true;
+            WebSocketMessage<?> message;
+            while (written < batch && (message = queue.pollFirst()) != null) {
+                if (!session.isOpen()) {
+                    discard();
+                    return;
+                }
+                long start = System.nanoTime();
+                session.sendMessage(message);
+                long elapsed = System.nanoTime() - start;
+                written++;
+                if (elapsed > threshold) {
+                    allFast = false;
+                    if (!slow) {
+                        slow = true;
+                        owner.onSlowWrite(this, elapsed);
+                        break;
+                    }
+                }
+            }
+            if (slow && allFast && written > 0) {
+                slow = false;
+            }
+        } catch (Exception e) {
+            log.warn("出站写失败，关闭会话 sessionId={}: {}", session.getId(), e.getMessage());
+            close(CloseStatus.SESSION_NOT_RELIABLE);
+        } finally {
+            scheduled.set(false);
+            if (!closed && !queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    void close(CloseStatus status) {
+        discard();
+        try {
+            if (session.isOpen()) {
+                session.close(status);
+            }
+        } catch (Exception e) {
+            log.debug("关闭会话失败 sessionId={}: {}", session.getId(), e.getMessage());
+        }
+        release();
+    }
+
+    /**
+     * 连接已关闭后释放写出会话：写出会话为装饰器（如按会话的压缩流）时关闭装饰器，释放其持有的资源
+     */
+    void release() {
+        discard();
+        if (session instanceof WebSocketSessionDecorator && !session.isOpen()) {
+            try {
+                session.close(CloseStatus.NORMAL);
+            } catch (Exception e) {
+                log.debug("释放会话资源失败 sessionId={}: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+
+    void discard() {
+        closed = true;
+        queue.clear();
+    }
+
+    int depth() {
+        return queue.size();
+    }
+
+    boolean isSlow() {
+        return slow;
+    }
+
+    WebSocketSession getSession() {
+        return session;
+    }
+}
@@ -0,0 +1,291 @@
+package com.zpark.wsagent.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 出站队列管理器：为每个已注册的会话维护一个有界出站队列
+ * - send 仅入队，不在调用方线程上阻塞写 socket
+ * - 写操作由共享写线程池按会话串行排空，慢连接只会积压自己的队列
+ * - 慢连接隔离：单次写耗时超过 slow-write-ms 的会话被移到独立的慢写线程池，之后的写出不再占用共享写线程，
+ *   避免少数卡住的连接（每次阻塞到 send-timeout）占满共享线程、拖慢所有其他会话；一轮写出全部恢复正常后移回共享池。
+ *   慢连接的断开（close 可能阻塞到写超时）同样在慢写线程池执行
+ * - 队列满时按配置的 OverflowPolicy 处理（丢最旧/丢最新/断开）
+ * - 通过 Micrometer 暴露队列深度、丢弃数、慢消费者断开数
+ *
+ * 配置（application.properties）：
+ *   chat.ws.outbound.queue-capacity   单会话队列容量
+ *   chat.ws.outbound.overflow-policy  DROP_OLDEST / DROP_NEW / DISCONNECT
+ *   chat.ws.outbound.writer-threads   共享写线程数
+ *   chat.ws.outbound.slow-write-ms    单次写耗时超过该值即视为慢连接
+ *   chat.ws.outbound.slow-writer-threads  慢写线程池的最大线程数（按需创建，空闲回收）
+ *   chat.ws.outbound.drain-batch      单轮最多写出条数
+ *   chat.ws.outbound.send-timeout-ms  单次阻塞写超时（Tomcat）
+ *   chat.ws.execution-mode            VIRTUAL 时写操作改用虚拟线程执行（每个排空任务独占虚拟线程，无队头阻塞），
+ *                                     writer-threads 与慢写线程池不再生效
+ */
+@Slf4j
+@Component
+public class SessionOutboundManager {
+
+    private static final String TOMCAT_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    // sessionId -> 出站队列
+    private final Map<String, SessionOutbound> outbounds = new ConcurrentHashMap<>();
+
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final int drainBatch;
+    private final long sendTimeoutMs;
+    private final long slowWriteNanos;
+    private final ExecutorService writer;
+    // 慢连接专用；虚拟线程模式下与 writer 相同
+    private final ExecutorService slowWriter;
+
+    private final DistributionSummary depthSummary;
+    private final Counter slowConsumerCounter;
+    private final Counter slowWriteCounter;
+    private final Map<OverflowPolicy, Counter> droppedCounters = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    public SessionOutboundManager(MeterRegistry meterRegistry,
+                                  int queueCapacity,
+                                  OverflowPolicy overflowPolicy,
+                                  int writerThreads,
+                                  int drainBatch,
+                                  long sendTimeoutMs) {
+        this(meterRegistry, queueCapacity, overflowPolicy, writerThreads, drainBatch, sendTimeoutMs,
+                100, 32, ExecutionMode.CONTAINER);
+    }
+
+    @Autowired
+    public SessionOutboundManager(MeterRegistry meterRegistry,
+                                  @Value("${chat.ws.outbound.queue-capacity:1024}") int queueCapacity,
+                                  @Value("${chat.ws.outbound.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy,
+                                  @Value("${chat.ws.outbound.writer-threads:8}") int writerThreads,
+                                  @Value("${chat.ws.outbound.drain-batch:64}") int drainBatch,
+                                  @Value("${chat.ws.outbound.send-timeout-ms:5000}") long sendTimeoutMs,
+                                  @Value("${chat.ws.outbound.slow-write-ms:100}") long slowWriteMs,
+                                  @Value("${chat.ws.outbound.slow-writer-threads:32}") int slowWriterThreads,
+                                  @Value("${chat.ws.execution-mode:CONTAINER}") ExecutionMode executionMode) {
+        this.meterRegistry = meterRegistry;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.drainBatch = Math.max(1, drainBatch);
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.slowWriteNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, slowWriteMs));
+        // 虚拟线程模式：每个会话的排空任务跑在独立虚拟线程上，阻塞写不占用平台线程
+        ExecutorService virtual = executionMode == ExecutionMode.VIRTUAL
+                ? VirtualThreads.newExecutor("ws-outbound-") : null;
+        if (virtual != null) {
+            this.writer = virtual;
+            this.slowWriter = virtual;
+        } else {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ws-outbound-");
+            threadFactory.setDaemon(true);
+            this.writer = Executors.newFixedThreadPool(Math.max(1, writerThreads), threadFactory);
+            CustomizableThreadFactory slowFactory = new CustomizableThreadFactory("ws-outbound-slow-");
+            slowFactory.setDaemon(true);
+            int slowThreads = Math.max(1, slowWriterThreads);
+            ThreadPoolExecutor slow = new ThreadPoolExecutor(slowThreads, slowThreads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), slowFactory);
+            slow.allowCoreThreadTimeOut(true);
+            this.slowWriter = slow;
+        }
+
+        Gauge.builder("chat.ws.outbound.sessions", outbounds, Map::size)
+                .description("已注册出站队列的会话数")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.outbound.queued", this, SessionOutboundManager::totalDepth)
+                .description("所有会话出站队列中待写出的消息总数")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.outbound.max-depth", this, SessionOutboundManager::maxDepth)
+                .description("单会话出站队列的最大深度")
+                .register(meterRegistry);
+        this.depthSummary = DistributionSummary.builder("chat.ws.outbound.depth")
+                .description("入队后的队列深度分布")
+                .register(meterRegistry);
+        this.slowConsumerCounter = Counter.builder("chat.ws.outbound.slow-consumer.disconnected")
+                .description("因出站队列溢出被断开的连接数")
+                .register(meterRegistry);
+        this.slowWriteCounter = Counter.builder("chat.ws.outbound.slow-writes")
+                .description("写耗时超过阈值、会话被移到慢写线程池的次数")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.outbound.slow-sessions", this, SessionOutboundManager::slowSessions)
+                .description("当前由慢写线程池排空的会话数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 为会话创建出站队列（连接建立时调用）
+     */
+    public void register(WebSocketSession session) {
+        applySendTimeout(session);
+        outbounds.computeIfAbsent(session.getId(),
+                k -> new SessionOutbound(session, queueCapacity, this));
+    }
+
+    /**
+     * 移除会话的出站队列并丢弃未写出的消息，释放写出会话持有的资源（连接关闭时调用）
+     */
+    public void unregister(WebSocketSession session) {
+        SessionOutbound outbound = outbounds.remove(session.getId());
+        if (outbound != null) {
+            outbound.release();
+        }
+    }
+
+    /**
+     * 丢弃会话未写出的消息并在慢写线程上关闭连接（失联连接的 close 可能阻塞到写超时，不占用调用方线程与共享写线程）
+     * 关闭完成前队列仍保留在表中并拒绝入队，期间的发送不会退化为同步直写
+     */
+    public void disconnect(WebSocketSession session, CloseStatus status) {
+        SessionOutbound outbound = outbounds.computeIfAbsent(session.getId(),
+                k -> new SessionOutbound(session, 1, this));
+        outbound.discard();
+        try {
+            slowWriter.execute(() -> {
+                outbound.close(status);
+                outbounds.remove(session.getId(), outbound);
+            });
+        } catch (RejectedExecutionException e) {
+            outbounds.remove(session.getId(), outbound); // 停机中
+        }
+    }
+
+    /**
+     * 异步发送：入队即返回，不抛 IO 异常
+     * 未注册（或已注销）的会话直接丢弃，不在调用方线程上同步直写：直写既会阻塞调用方，
+     * 也可能与该会话的写线程并发写同一个非线程安全的 WebSocketSession
+     *
+     * @return 是否成功入队
+     */
+    public boolean send(WebSocketSession session, WebSocketMessage<?> message) {
+        SessionOutbound outbound = outbounds.get(session.getId());
+        return outbound != null && outbound.enqueue(message, overflowPolicy);
+    }
+
+    /**
+     * 当前会话的出站队列深度（未注册返回0）
+     */
+    public int queueDepth(WebSocketSession session) {
+        SessionOutbound outbound = outbounds.get(session.getId());
+        return outbound == null ? 0 : outbound.depth();
+    }
+
+    int getDrainBatch() {
+        return drainBatch;
+    }
+
+    long getSlowWriteNanos() {
+        return slowWriteNanos;
+    }
+
+    Executor writerFor(boolean slow) {
+        return slow ? slowWriter : writer;
+    }
+
+    void onSlowWrite(SessionOutbound outbound, long nanos) {
+        slowWriteCounter.increment();
+        log.info("会话写出耗时 {}ms，移到慢写线程池 sessionId={}",
+                TimeUnit.NANOSECONDS.toMillis(nanos), outbound.getSession().getId());
+    }
+
+    void onEnqueued(int depth) {
+        depthSummary.record(depth);
+    }
+
+    void onDropped(OverflowPolicy policy) {
+        droppedCounters.computeIfAbsent(policy, p -> Counter.builder("chat.ws.outbound.dropped")
+                .description("因出站队列溢出被丢弃的消息数")
+                .tag("policy", p.name())
+                .register(meterRegistry)).increment();
+    }
+
+    void onSlowConsumer(SessionOutbound outbound) {
+        slowConsumerCounter.increment();
+        log.warn("会话出站队列溢出，按慢消费者断开 sessionId={}", outbound.getSession().getId());
+        // 在慢写线程上关闭：卡住的连接 close 可能阻塞到写超时，不占用入队方线程
+        outbound.discard();
+        try {
+            slowWriter.execute(() -> outbound.close(CloseStatus.SESSION_NOT_RELIABLE));
+        } catch (RejectedExecutionException e) {
+            // 停机中
+        }
+    }
+
+    private double totalDepth() {
+        long sum = 0;
+        for (SessionOutbound o : outbounds.values()) {
+            sum += o.depth();
+        }
+        return sum;
+    }
+
+    private double slowSessions() {
+        int n = 0;
+        for (SessionOutbound o : outbounds.values()) {
+            if (o.isSlow()) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private double maxDepth() {
+        int max = 0;
+        for (SessionOutbound o : outbounds.values()) {
+            max = Math.max(max, o.depth());
+        }
+        return max;
+    }
+
+    /**
+     * 为 Tomcat 原生会话设置阻塞写超时，防止写线程被卡死的连接长期占用
+     */
+    private void applySendTimeout(WebSocketSession session) {
+        if (sendTimeoutMs <= 0 || !(WebSocketSessionDecorator.unwrap(session) instanceof NativeWebSocketSession nativeSession)) {
+            return;
+        }
+        jakarta.websocket.Session ws = nativeSession.getNativeSession(jakarta.websocket.Session.class);
+        if (ws != null) {
+            ws.getUserProperties().put(TOMCAT_SEND_TIMEOUT, sendTimeoutMs);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        writer.shutdown();
+        slowWriter.shutdown();
+        if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+            writer.shutdownNow();
+        }
+        if (!slowWriter.awaitTermination(1, TimeUnit.SECONDS)) {
+            slowWriter.shutdownNow();
+        }
+    }
+}
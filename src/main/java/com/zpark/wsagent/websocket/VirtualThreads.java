@@ -0,0 +1,46 @@
+package com.zpark.wsagent.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程工具
+ * 项目按 Java 17 编译，虚拟线程 API 通过 MethodHandle 在运行时查找：运行在 Java 21+ 上时可用，否则返回 null 由调用方回退。
+ */
+@Slf4j
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 创建"每任务一个虚拟线程"的执行器，线程名为 namePrefix + 序号
+     *
+     * @return 执行器；当前 JVM 不支持虚拟线程时返回 null
+     */
+    static ExecutorService newExecutor(String namePrefix) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            Object builder = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualClass)).invoke();
+            MethodHandle name = lookup.findVirtual(ofVirtualClass, "name",
+                    MethodType.methodType(ofVirtualClass, String.class, long.class));
+            builder = name.invoke(builder, namePrefix, 0L);
+            ThreadFactory factory = (ThreadFactory) lookup.findVirtual(builderClass, "factory",
+                    MethodType.methodType(ThreadFactory.class)).invoke(builder);
+            MethodHandle perTask = lookup.findStatic(Executors.class, "newThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+            return (ExecutorService) perTask.invoke(factory);
+        } catch (Throwable e) {
+            log.warn("当前 JVM（{}）不支持虚拟线程: {}", Runtime.version(), e.toString());
+            return null;
+        }
+    }
+}
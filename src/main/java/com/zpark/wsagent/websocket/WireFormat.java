@@ -0,0 +1,36 @@
+package com.zpark.wsagent.websocket;
+
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * 连接的线上编码格式，握手时经 WebSocket 子协议（Sec-WebSocket-Protocol）协商：
+ * - JSON：文本帧，未声明子协议或声明 wsagent.json 的连接
+ * - CBOR：二进制帧（RFC 8949），字段与 JSON 相同，体积更小、解析更快；声明 wsagent.cbor 的连接
+ * - JSON_DEFLATE：上行为 JSON 文本帧；下行大帧压缩为二进制帧、小帧仍为文本帧（见 DeflateFrameCodec）；声明 wsagent.json.deflate 的连接
+ */
+public enum WireFormat {
+    JSON("wsagent.json"),
+    CBOR("wsagent.cbor"),
+    JSON_DEFLATE("wsagent.json.deflate");
+
+    private final String subProtocol;
+
+    WireFormat(String subProtocol) {
+        this.subProtocol = subProtocol;
+    }
+
+    public String subProtocol() {
+        return subProtocol;
+    }
+
+    public static WireFormat of(WebSocketSession session) {
+        return fromSubProtocol(session.getAcceptedProtocol());
+    }
+
+    public static WireFormat fromSubProtocol(String protocol) {
+        if (CBOR.subProtocol.equals(protocol)) {
+            return CBOR;
+        }
+        return JSON_DEFLATE.subProtocol.equals(protocol) ? JSON_DEFLATE : JSON;
+    }
+}
@@ -1,18 +1,28 @@
 -- 创建聊天消息表（MySQL）
 CREATE TABLE IF NOT EXISTS chat_messages (
-  id BIGINT NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+  id BIGINT NOT NULL AUTO_INCREMENT COMMENT '主键ID（应用侧按时间有序分配，自增仅用于升级前的历史数据）',
   type VARCHAR(32) NOT NULL COMMENT '消息类型：GROUP_MSG/PRIVATE_MSG',
   from_user_id VARCHAR(128) NOT NULL COMMENT '发送方用户ID',
   to_user_id VARCHAR(128) NULL COMMENT '私聊目标用户ID（群聊为空）',
   room_id VARCHAR(128) NULL COMMENT '群聊房间ID（私聊为空）',
+  room_seq BIGINT NULL COMMENT '房间内序号（仅群聊）',
+  conversation_key VARCHAR(264) NULL COMMENT '私聊会话键（有序用户对，仅私聊）',
   content TEXT NOT NULL COMMENT '消息内容',
   created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   PRIMARY KEY (id),
   KEY idx_room_time (room_id, created_at),
+  KEY idx_room_seq (room_id, room_seq),
   KEY idx_private_pair_time (from_user_id, to_user_id, created_at),
+  KEY idx_conv_time (conversation_key, created_at, id),
   KEY idx_created_at (created_at)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='聊天消息表';
 
+-- 旧表升级：补充房间序号、会话键列与索引（已存在时报错被 continue-on-error 忽略）
+ALTER TABLE chat_messages ADD COLUMN room_seq BIGINT NULL COMMENT '房间内序号（仅群聊）' AFTER room_id;
+ALTER TABLE chat_messages ADD KEY idx_room_seq (room_id, room_seq);
+ALTER TABLE chat_messages ADD COLUMN conversation_key VARCHAR(264) NULL COMMENT '私聊会话键（有序用户对，仅私聊）' AFTER room_seq;
+ALTER TABLE chat_messages ADD KEY idx_conv_time (conversation_key, created_at, id);
+
 
 CREATE TABLE IF NOT EXISTS ai_model_info (
   id BIGINT UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '主键ID',
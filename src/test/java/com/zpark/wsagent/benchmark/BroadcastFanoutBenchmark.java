@@ -0,0 +1,106 @@
+package com.zpark.wsagent.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zpark.wsagent.dto.ChatMessage;
+import com.zpark.wsagent.dto.MessageType;
+import com.zpark.wsagent.support.StubWebSocketSession;
+import com.zpark.wsagent.websocket.ChatDispatcher;
+import com.zpark.wsagent.websocket.ChatSessionRegistry;
+import com.zpark.wsagent.websocket.OverflowPolicy;
+import com.zpark.wsagent.websocket.SessionOutboundManager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 群聊广播编码成本基准：
+ * - perMemberEncode：旧路径，每个成员各自 writeValueAsString + new TextMessage
+ * - sharedFrame：新路径，编码一次后同一帧复用给所有成员
+ * - encodeOnly：单次编码成本，sharedFrame 的编码部分不随房间人数增长
+ *
+ * 运行：mvn test-compile 后执行本类 main 方法，或
+ *   java -cp target/test-classes:<依赖> org.openjdk.jmh.Main BroadcastFanoutBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BroadcastFanoutBenchmark {
+
+    @Param({"10", "100", "1000", "2000"})
+    public int roomSize;
+
+    private ChatSessionRegistry registry;
+    private SessionOutboundManager outbound;
+    private ChatDispatcher dispatcher;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private ChatMessage msg;
+    private Set<String> members;
+
+    @Setup
+    public void setup() {
+        registry = new ChatSessionRegistry();
+        outbound = new SessionOutboundManager(new SimpleMeterRegistry(), 4096, OverflowPolicy.DROP_OLDEST, 4, 64, 0);
+        dispatcher = new ChatDispatcher(registry, outbound);
+        for (int i = 0; i < roomSize; i++) {
+            String uid = "user-" + i;
+            WebSocketSession s = new StubWebSocketSession("s-" + i);
+            outbound.register(s);
+            registry.addSession(uid, s);
+            registry.joinRoom("room-1", uid);
+        }
+        members = registry.getRoomMembers("room-1");
+        msg = new ChatMessage();
+        msg.setType(MessageType.GROUP_MSG);
+        msg.setFromUserId("user-0");
+        msg.setRoomId("room-1");
+        msg.setContent("大家好，这是一条用于基准测试的群聊消息，长度大致接近日常聊天内容。");
+        msg.setClientMsgId("c-1");
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        outbound.shutdown();
+    }
+
+    @Benchmark
+    public int perMemberEncode() throws Exception {
+        int delivered = 0;
+        for (String uid : members) {
+            String payload = mapper.writeValueAsString(msg);
+            for (WebSocketSession s : registry.getSessionsByUserId(uid)) {
+                if (outbound.send(s, new TextMessage(payload))) {
+                    delivered++;
+                }
+            }
+        }
+        return delivered;
+    }
+
+    @Benchmark
+    public int sharedFrame() {
+        return dispatcher.broadcast(members, dispatcher.encode(msg));
+    }
+
+    @Benchmark
+    public TextMessage encodeOnly() {
+        return dispatcher.encode(msg);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BroadcastFanoutBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,159 @@
+package com.zpark.wsagent.benchmark;
+
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+import com.zpark.wsagent.store.MessageStream;
+import com.zpark.wsagent.store.MmapLogChatMessageStore;
+import com.zpark.wsagent.websocket.MessageIdGenerator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 消息存储引擎写入 / 最近消息读取吞吐对比：
+ * - log：MmapLogChatMessageStore（本地内存映射追加日志）
+ * - mysql：与 ChatMessageMapper#insertBatch 相同的多行 INSERT，经 JDBC 直连执行（排除框架开销，只比较存储本身）
+ *
+ * 每次调用写入 batchSize 条，吞吐（消息/秒）= ops/s × batchSize。
+ * mysql 需通过系统属性指定连接：-Dbench.mysql.url=jdbc:mysql://... -Dbench.mysql.user=root -Dbench.mysql.password=...
+ * 未指定时 mysql 参数组在 Setup 阶段失败并被 JMH 跳过。
+ *
+ * 运行：mvn test-compile 后执行本类 main 方法，或
+ *   java -cp target/test-classes:<依赖> org.openjdk.jmh.Main ChatMessageStoreBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatMessageStoreBenchmark {
+
+    private static final String INSERT_SQL_PREFIX =
+            "INSERT INTO chat_messages (id, type, from_user_id, to_user_id, room_id, room_seq, conversation_key, content, created_at) VALUES ";
+
+    @Param({"log", "mysql"})
+    public String engine;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private Path dir;
+    private MmapLogChatMessageStore logStore;
+    private Connection connection;
+    private PreparedStatement insert;
+    private PreparedStatement latest;
+    private List<ChatMessageEntity> batch;
+    private long seq;
+    private final MessageIdGenerator ids = new MessageIdGenerator(1);
+
+    @Setup
+    public void setup() throws Exception {
+        if ("log".equals(engine)) {
+            dir = Files.createTempDirectory("chat-log-bench");
+            logStore = new MmapLogChatMessageStore(new SimpleMeterRegistry(), dir.toString(),
+                    256 * 1024 * 1024, 24 * 365, false);
+        } else {
+            String url = System.getProperty("bench.mysql.url");
+            if (url == null) {
+                throw new IllegalStateException("未指定 -Dbench.mysql.url，跳过 mysql 引擎");
+            }
+            connection = DriverManager.getConnection(url,
+                    System.getProperty("bench.mysql.user", "root"), System.getProperty("bench.mysql.password", ""));
+            StringBuilder sql = new StringBuilder(INSERT_SQL_PREFIX);
+            for (int i = 0; i < batchSize; i++) {
+                sql.append(i == 0 ? "" : ",").append("(?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            }
+            insert = connection.prepareStatement(sql.toString());
+            latest = connection.prepareStatement("SELECT * FROM chat_messages WHERE room_id = ? AND to_user_id IS NULL "
+                    + "ORDER BY created_at DESC, id DESC LIMIT 50");
+        }
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            ChatMessageEntity m = new ChatMessageEntity();
+            m.setType("GROUP_MSG");
+            m.setFromUserId("user-" + i);
+            m.setRoomId("bench-room-" + (i % 16));
+            m.setContent("大家好，这是一条用于基准测试的群聊消息，长度大致接近日常聊天内容。");
+            batch.add(m);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (logStore != null) {
+            logStore.shutdown();
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public int insertBatch() throws Exception {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        for (ChatMessageEntity m : batch) {
+            m.setId(ids.nextId());
+            m.setRoomSeq(++seq);
+            m.setCreatedAt(now);
+        }
+        if (logStore != null) {
+            logStore.insertBatch(batch);
+            return batch.size();
+        }
+        int p = 1;
+        for (ChatMessageEntity m : batch) {
+            insert.setLong(p++, m.getId());
+            insert.setString(p++, m.getType());
+            insert.setString(p++, m.getFromUserId());
+            insert.setString(p++, m.getToUserId());
+            insert.setString(p++, m.getRoomId());
+            insert.setLong(p++, m.getRoomSeq());
+            insert.setString(p++, m.getConversationKey());
+            insert.setString(p++, m.getContent());
+            insert.setTimestamp(p++, Timestamp.valueOf(m.getCreatedAt()));
+        }
+        return insert.executeUpdate();
+    }
+
+    @Benchmark
+    public int latest50() throws Exception {
+        if (logStore != null) {
+            return logStore.latest(MessageStream.room("bench-room-0"), 50).size();
+        }
+        latest.setString(1, "bench-room-0");
+        int n = 0;
+        try (var rs = latest.executeQuery()) {
+            while (rs.next()) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ChatMessageStoreBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
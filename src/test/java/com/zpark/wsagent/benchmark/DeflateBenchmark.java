@@ -0,0 +1,109 @@
+package com.zpark.wsagent.benchmark;
+
+import com.zpark.wsagent.support.StubWebSocketSession;
+import com.zpark.wsagent.websocket.DeflateFrameCodec;
+import com.zpark.wsagent.websocket.WireFormat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下行压缩 CPU 与字节数的权衡：
+ * - shared：无上下文压缩（预置字典），广播时每帧压缩一次，所有成员共享
+ * - contextTakeover：每个连接一个持续压缩流，同一连接上的相似消息互相引用，但每个成员各压缩一次
+ * - 参数：level 压缩级别，size 消息内容长度（短消息约一句话，长消息为智能体长回复）
+ *
+ * 每种组合的压缩前后字节数在 Setup 时打印；contextTakeover 打印的是连续 16 帧的平均值。
+ * 广播到 N 个协商了压缩的成员时，shared 的 CPU 为单次成本，contextTakeover 为 N 倍。
+ *
+ * 运行：mvn test-compile 后执行本类 main 方法，或
+ *   java -cp target/test-classes:<依赖> org.openjdk.jmh.Main DeflateBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeflateBenchmark {
+
+    private static final int FRAMES = 16;
+
+    @Param({"1", "6"})
+    public int level;
+
+    @Param({"600", "4000"})
+    public int size;
+
+    private DeflateFrameCodec shared;
+    private WebSocketSession takeover;
+    private TextMessage[] frames;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        shared = new DeflateFrameCodec(new SimpleMeterRegistry(), true, 0, level, false);
+        DeflateFrameCodec ctx = new DeflateFrameCodec(new SimpleMeterRegistry(), true, 0, level, true);
+        takeover = ctx.outboundSession(new StubWebSocketSession("bench", null, false,
+                WireFormat.JSON_DEFLATE.subProtocol()));
+
+        String[] sentences = {
+                "根据检索到的资料，本季度的接口平均响应时间下降了百分之十八。",
+                "建议优先处理数据库慢查询，其次是缓存命中率偏低的问题。",
+                "Here is the summary of the deployment checklist for tomorrow's release.",
+                "如需进一步分析，请提供最近一周的监控截图和错误日志。"
+        };
+        frames = new TextMessage[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            StringBuilder content = new StringBuilder();
+            for (int j = i; content.length() < size; j++) {
+                content.append(sentences[j % sentences.length]);
+            }
+            content.setLength(size);
+            frames[i] = new TextMessage("{\"type\":\"GROUP_MSG\",\"fromUserId\":\"agent-assistant\",\"toUserId\":null,"
+                    + "\"roomId\":\"room-product\",\"content\":\"" + content + "\",\"clientMsgId\":null,\"seq\":"
+                    + (1000 + i) + ",\"id\":\"" + (9_000_000_000L + i) + "\"}");
+        }
+
+        long raw = 0;
+        long sharedBytes = 0;
+        for (TextMessage f : frames) {
+            raw += f.asBytes().length;
+            sharedBytes += shared.compress(f).length;
+        }
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        DeflateFrameCodec measuring = new DeflateFrameCodec(meters, true, 0, level, true);
+        WebSocketSession s = measuring.outboundSession(new StubWebSocketSession("m", null, false,
+                WireFormat.JSON_DEFLATE.subProtocol()));
+        for (TextMessage f : frames) {
+            s.sendMessage(f);
+        }
+        double takeoverBytes = meters.get("chat.ws.deflate.bytes").tag("stage", "compressed").counter().count();
+        System.out.printf("%n字节/帧 level=%d size=%d：原始=%d shared=%d contextTakeover=%.0f%n",
+                level, size, raw / FRAMES, sharedBytes / FRAMES, takeoverBytes / FRAMES);
+    }
+
+    @Benchmark
+    public byte[] shared() {
+        return shared.compress(frames[next++ & (FRAMES - 1)]);
+    }
+
+    @Benchmark
+    public void contextTakeover() throws Exception {
+        takeover.sendMessage(frames[next++ & (FRAMES - 1)]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DeflateBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,98 @@
+package com.zpark.wsagent.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zpark.wsagent.dto.ChatMessage;
+import com.zpark.wsagent.dto.MessageType;
+import com.zpark.wsagent.websocket.JsonFrameCodec;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON 帧编解码基准：默认 ObjectMapper（mapper*）与 JsonFrameCodec（codec*）对比
+ * - decode：一条典型的入站群聊消息（type、roomId、clientMsgId、约 40 字中文内容）
+ * - encodeAck：持久化后回给发送方的 ACK（clientMsgId、消息 id、短文本）
+ * - encodeGroup：群聊下行消息（字段齐全，走 ObjectWriter）
+ *
+ * 关注每条消息的分配量：加 -prof gc 查看 gc.alloc.rate.norm（字节/次）。
+ *
+ * 运行：mvn test-compile 后执行本类 main 方法，或
+ *   java -cp target/test-classes:<依赖> org.openjdk.jmh.Main JsonFrameCodecBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonFrameCodecBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonFrameCodec codec = new JsonFrameCodec();
+
+    private String inbound;
+    private ChatMessage ack;
+    private ChatMessage group;
+
+    @Setup
+    public void setUp() {
+        inbound = "{\"type\":\"GROUP_MSG\",\"roomId\":\"room-product-weekly\",\"clientMsgId\":\"c-7f3a9e21-5b44-4d0e-9a61\","
+                + "\"content\":\"周五下午三点在二号会议室同步本周发布进度，请各模块负责人提前准备好测试报告和遗留问题清单。\"}";
+
+        ack = new ChatMessage();
+        ack.setType(MessageType.ACK);
+        ack.setClientMsgId("c-7f3a9e21-5b44-4d0e-9a61");
+        ack.setId(1_234_567_890_123_456L);
+        ack.setContent("群消息已发送");
+
+        group = new ChatMessage();
+        group.setType(MessageType.GROUP_MSG);
+        group.setId(1_234_567_890_123_456L);
+        group.setSeq(48_213L);
+        group.setRoomId("room-product-weekly");
+        group.setFromUserId("alice.zhang");
+        group.setClientMsgId("c-7f3a9e21-5b44-4d0e-9a61");
+        group.setContent("周五下午三点在二号会议室同步本周发布进度，请各模块负责人提前准备好测试报告和遗留问题清单。");
+    }
+
+    @Benchmark
+    public ChatMessage mapperDecode() throws Exception {
+        return mapper.readValue(inbound, ChatMessage.class);
+    }
+
+    @Benchmark
+    public ChatMessage codecDecode() throws Exception {
+        return codec.decode(inbound);
+    }
+
+    @Benchmark
+    public TextMessage mapperEncodeAck() throws Exception {
+        return new TextMessage(mapper.writeValueAsString(ack));
+    }
+
+    @Benchmark
+    public TextMessage codecEncodeAck() {
+        return codec.encode(ack);
+    }
+
+    @Benchmark
+    public TextMessage mapperEncodeGroup() throws Exception {
+        return new TextMessage(mapper.writeValueAsString(group));
+    }
+
+    @Benchmark
+    public TextMessage codecEncodeGroup() {
+        return codec.encode(group);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonFrameCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
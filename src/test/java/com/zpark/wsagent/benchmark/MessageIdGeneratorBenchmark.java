@@ -0,0 +1,92 @@
+package com.zpark.wsagent.benchmark;
+
+import com.zpark.wsagent.websocket.MessageIdGenerator;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息 ID 生成器高并发基准：
+ * - lockFree*：MessageIdGenerator，单个 AtomicLong CAS 推进，序号用尽时进位到下一毫秒
+ * - synchronized*：经典 Snowflake 写法（synchronized + 序号用尽时自旋等待下一毫秒），作为对照
+ *
+ * 8 线程争用同一个生成器：无锁实现的总吞吐应不低于单线程且不受每毫秒 4096 个的自旋上限约束；
+ * 加锁实现在争用下退化为串行并被时钟节流。
+ *
+ * 运行：mvn test-compile 后执行本类 main 方法，或
+ *   java -cp target/test-classes:<依赖> org.openjdk.jmh.Main MessageIdGeneratorBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageIdGeneratorBenchmark {
+
+    private final MessageIdGenerator lockFree = new MessageIdGenerator(1);
+    private final SynchronizedSnowflake locked = new SynchronizedSnowflake(1);
+
+    @Benchmark
+    @Threads(1)
+    public long lockFreeSingle() {
+        return lockFree.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long lockFreeContended() {
+        return lockFree.nextId();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long synchronizedSingle() {
+        return locked.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long synchronizedContended() {
+        return locked.nextId();
+    }
+
+    /**
+     * 对照组：常见的加锁 Snowflake 实现
+     */
+    static final class SynchronizedSnowflake {
+        private final long node;
+        private long lastTimestamp = -1;
+        private long sequence;
+
+        SynchronizedSnowflake(long node) {
+            this.node = node;
+        }
+
+        synchronized long nextId() {
+            long now = System.currentTimeMillis();
+            if (now == lastTimestamp) {
+                sequence = (sequence + 1) & 4095;
+                if (sequence == 0) {
+                    while (now <= lastTimestamp) {
+                        now = System.currentTimeMillis();
+                    }
+                }
+            } else {
+                sequence = 0;
+            }
+            lastTimestamp = now;
+            return now << 22 | node << 12 | sequence;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MessageIdGeneratorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
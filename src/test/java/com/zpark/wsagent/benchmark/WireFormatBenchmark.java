@@ -0,0 +1,91 @@
+package com.zpark.wsagent.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zpark.wsagent.dto.ChatMessage;
+import com.zpark.wsagent.dto.MessageType;
+import com.zpark.wsagent.websocket.CborFrameCodec;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线上编码基准：一条典型群聊下行消息（id、seq、房间、发送方、clientMsgId、约 40 字中文内容）
+ * - json*：当前路径，ObjectMapper 编码为 TextMessage / 从文本解析
+ * - cbor*：CborFrameCodec 编码为 BinaryMessage / 从二进制解析
+ * - cborTranscode：广播路径，已编码的 JSON 帧流式转写为 CBOR（每帧每次投递只做一次）
+ *
+ * 每条消息的字节数在 Setup 时打印（JSON 按 UTF-8 计）。
+ *
+ * 运行：mvn test-compile 后执行本类 main 方法，或
+ *   java -cp target/test-classes:<依赖> org.openjdk.jmh.Main WireFormatBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WireFormatBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final CborFrameCodec cbor = new CborFrameCodec();
+
+    private ChatMessage message;
+    private TextMessage jsonFrame;
+    private BinaryMessage cborFrame;
+
+    @Setup
+    public void setUp() throws Exception {
+        message = new ChatMessage();
+        message.setType(MessageType.GROUP_MSG);
+        message.setId(1_234_567_890_123_456L);
+        message.setSeq(48_213L);
+        message.setRoomId("room-product-weekly");
+        message.setFromUserId("alice.zhang");
+        message.setClientMsgId("c-7f3a9e21-5b44-4d0e-9a61");
+        message.setContent("周五下午三点在二号会议室同步本周发布进度，请各模块负责人提前准备好测试报告和遗留问题清单。");
+
+        jsonFrame = new TextMessage(mapper.writeValueAsString(message));
+        cborFrame = cbor.encode(message);
+        System.out.printf("%n字节/消息：json=%d cbor=%d%n",
+                jsonFrame.getPayload().getBytes(StandardCharsets.UTF_8).length, cborFrame.getPayloadLength());
+    }
+
+    @Benchmark
+    public TextMessage jsonEncode() throws Exception {
+        return new TextMessage(mapper.writeValueAsString(message));
+    }
+
+    @Benchmark
+    public BinaryMessage cborEncode() {
+        return cbor.encode(message);
+    }
+
+    @Benchmark
+    public ChatMessage jsonDecode() throws Exception {
+        return mapper.readValue(jsonFrame.getPayload(), ChatMessage.class);
+    }
+
+    @Benchmark
+    public ChatMessage cborDecode() throws Exception {
+        return cbor.decode(cborFrame);
+    }
+
+    @Benchmark
+    public byte[] cborTranscode() {
+        return cbor.transcode(jsonFrame);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WireFormatBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
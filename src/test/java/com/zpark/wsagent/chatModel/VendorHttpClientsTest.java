@@ -0,0 +1,63 @@
+package com.zpark.wsagent.chatModel;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VendorHttpClientsTest {
+
+    private final VendorHttpClients clients = new VendorHttpClients(4, 16, 1000, 30, 300, 1000, 5, true);
+    private HttpServer server;
+
+    @AfterEach
+    void tearDown() {
+        clients.shutdown();
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void sharesOneClientPerVendorAndNegotiatesHttp2OnlyOverTls() {
+        HttpClient dashscope = clients.httpClient("dashscope", "https://dashscope.aliyuncs.com");
+        assertSame(dashscope, clients.httpClient("DashScope", "https://dashscope.aliyuncs.com"));
+
+        HttpClient ollama = clients.httpClient("ollama", "http://localhost:11434");
+        assertNotSame(dashscope, ollama);
+
+        assertEquals(Set.of(HttpProtocol.H2, HttpProtocol.HTTP11), Set.of(dashscope.configuration().protocols()));
+        assertEquals(Set.of(HttpProtocol.HTTP11), Set.of(ollama.configuration().protocols()));
+        assertEquals(4, dashscope.configuration().connectionProvider().maxConnections());
+    }
+
+    @Test
+    void restAndWebClientsGoThroughTheSharedPool() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/tags", exchange -> {
+            byte[] body = "{\"models\":[]}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        String rest = clients.restClientBuilder("ollama", baseUrl).baseUrl(baseUrl).build()
+                .get().uri("/api/tags").retrieve().body(String.class);
+        String web = clients.webClientBuilder("ollama", baseUrl).baseUrl(baseUrl).build()
+                .get().uri("/api/tags").retrieve().bodyToMono(String.class).block();
+
+        assertEquals("{\"models\":[]}", rest);
+        assertEquals(rest, web);
+    }
+}
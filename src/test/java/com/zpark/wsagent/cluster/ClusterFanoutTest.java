@@ -0,0 +1,130 @@
+package com.zpark.wsagent.cluster;
+
+import com.zpark.wsagent.support.InMemoryClusterBroker;
+import com.zpark.wsagent.support.StubWebSocketSession;
+import com.zpark.wsagent.websocket.ChatDispatcher;
+import com.zpark.wsagent.websocket.ChatSessionRegistry;
+import com.zpark.wsagent.websocket.OverflowPolicy;
+import com.zpark.wsagent.websocket.RoomReplayBuffer;
+import com.zpark.wsagent.websocket.SessionOutboundManager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterFanoutTest {
+
+    private final InMemoryClusterBroker broker = new InMemoryClusterBroker();
+    private final List<Node> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (Node n : nodes) {
+            n.outbound.shutdown();
+        }
+    }
+
+    @Test
+    void roomMessageReachesMembersOnOtherNodesOnly() throws Exception {
+        Node a = node("a");
+        Node b = node("b");
+        Node c = node("c");
+        StubWebSocketSession alice = a.connect("alice");
+        StubWebSocketSession bob = b.connect("bob");
+        c.connect("carol");
+        a.registry.joinRoom("room-1", "alice");
+        b.registry.joinRoom("room-1", "bob");
+
+        // 只有存在本地成员的节点订阅房间频道
+        assertEquals(2, broker.subscriberCount("wsagent:room:room-1"));
+
+        TextMessage frame = new TextMessage("{\"type\":\"GROUP_MSG\",\"roomId\":\"room-1\"}");
+        a.dispatcher.broadcast(a.registry.getRoomMembers("room-1"), frame);
+        a.fanout.publishToRoom("room-1", 1, frame);
+
+        awaitSent(alice, 1);
+        awaitSent(bob, 1);
+        assertEquals(frame.getPayload(), ((TextMessage) bob.getSent().get(0)).getPayload());
+        Thread.sleep(50);
+        assertEquals(1, alice.getSent().size(), "发送方节点不应重复投递回环消息");
+        // 接收节点把远端房间消息写入本地回放缓冲
+        assertEquals(1, b.replay.since("room-1", 0).size());
+
+        // 本地成员离开后节点退订房间，回放缓冲随之丢弃，不再以过期缓冲响应补齐
+        b.registry.leaveRoom("room-1", "bob");
+        assertEquals(1, broker.subscriberCount("wsagent:room:room-1"));
+        assertNull(b.replay.since("room-1", 0));
+    }
+
+    @Test
+    void subscriptionsFollowLocalMembership() {
+        Node a = node("a");
+        StubWebSocketSession alice = a.connect("alice");
+        a.registry.joinRoom("room-1", "alice");
+        assertEquals(1, broker.subscriberCount("wsagent:room:room-1"));
+        assertEquals(1, broker.subscriberCount("wsagent:user:alice"));
+
+        a.registry.leaveRoom("room-1", "alice");
+        assertEquals(0, broker.subscriberCount("wsagent:room:room-1"));
+
+        a.registry.removeSession(alice);
+        assertEquals(0, broker.subscriberCount("wsagent:user:alice"));
+    }
+
+    @Test
+    void privateMessageReachesUserOnAnotherNode() throws Exception {
+        Node a = node("a");
+        Node b = node("b");
+        a.connect("alice");
+        StubWebSocketSession bob = b.connect("bob");
+
+        TextMessage frame = new TextMessage("{\"type\":\"PRIVATE_MSG\",\"toUserId\":\"bob\"}");
+        assertEquals(0, a.dispatcher.deliverToUser("bob", frame));
+        a.fanout.publishToUser("bob", frame);
+
+        awaitSent(bob, 1);
+    }
+
+    private Node node(String id) {
+        Node n = new Node(id);
+        nodes.add(n);
+        return n;
+    }
+
+    private static void awaitSent(StubWebSocketSession s, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (s.getSent().size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, s.getSent().size());
+    }
+
+    private final class Node {
+        final ChatSessionRegistry registry = new ChatSessionRegistry();
+        final SessionOutboundManager outbound =
+                new SessionOutboundManager(new SimpleMeterRegistry(), 64, OverflowPolicy.DROP_OLDEST, 1, 64, 0);
+        final ChatDispatcher dispatcher = new ChatDispatcher(registry, outbound);
+        final RoomReplayBuffer replay = new RoomReplayBuffer(registry, new SimpleMeterRegistry(), 16, 16);
+        final ClusterFanout fanout;
+        final String id;
+
+        Node(String id) {
+            this.id = id;
+            this.fanout = new ClusterFanout(registry, dispatcher, broker.transport(), replay, id, "wsagent:");
+        }
+
+        StubWebSocketSession connect(String userId) {
+            StubWebSocketSession s = new StubWebSocketSession(id + "-" + userId, null, true);
+            outbound.register(s);
+            registry.addSession(userId, s);
+            return s;
+        }
+    }
+}
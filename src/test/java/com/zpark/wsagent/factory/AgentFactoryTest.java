@@ -0,0 +1,74 @@
+package com.zpark.wsagent.factory;
+
+import com.alibaba.cloud.ai.graph.agent.ReactAgent;
+import com.zpark.wsagent.chatModel.AgentProvider;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentFactoryTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final CountingProvider provider = new CountingProvider();
+
+    @Test
+    void reusesAgentsPerKeyAndInvalidatesByVendorAndModel() {
+        AgentFactory factory = new AgentFactory(List.of(provider), meters, 16);
+
+        ReactAgent first = factory.getAgent("Fake", "m-1", "prompt", List.of());
+        assertSame(first, factory.getAgent("fake", "m-1", "prompt", List.of()));
+        assertNotSame(first, factory.getAgent("fake", "m-1", "other prompt", List.of()));
+        assertNotSame(first, factory.getAgent("fake", "m-2", "prompt", List.of()));
+        assertEquals(3, provider.builds.get());
+
+        factory.invalidate("FAKE", "m-1");
+        assertEquals(1.0, meters.get("ai.agent.cache.size").gauge().value());
+        assertNotSame(first, factory.getAgent("fake", "m-1", "prompt", List.of()));
+        assertEquals(4, provider.builds.get());
+        assertEquals(1.0, meters.get("ai.agent.cache.requests").tag("result", "hit").counter().count());
+        assertEquals(4, meters.get("ai.agent.build").timer().count());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondMaxSize() {
+        AgentFactory factory = new AgentFactory(List.of(provider), meters, 2);
+
+        ReactAgent a = factory.getAgent("fake", "a", "p", List.of());
+        factory.getAgent("fake", "b", "p", List.of());
+        factory.getAgent("fake", "a", "p", List.of());
+        ReactAgent c = factory.getAgent("fake", "c", "p", List.of());
+
+        assertEquals(2.0, meters.get("ai.agent.cache.size").gauge().value());
+        assertSame(a, factory.getAgent("fake", "a", "p", List.of()));
+        assertSame(c, factory.getAgent("fake", "c", "p", List.of()));
+        assertEquals(3, provider.builds.get());
+        factory.getAgent("fake", "b", "p", List.of()); // b 已被淘汰，重新构建
+        assertEquals(4, provider.builds.get());
+    }
+
+    private static final class CountingProvider implements AgentProvider {
+        final AtomicInteger builds = new AtomicInteger();
+        final ChatModel model = prompt -> {
+            throw new UnsupportedOperationException();
+        };
+
+        @Override
+        public ReactAgent getAgent(String model, String prompt, List<ToolCallback> tool) {
+            builds.incrementAndGet();
+            return ReactAgent.builder().name(model).model(this.model).instruction(prompt).build();
+        }
+
+        @Override
+        public String getVendor() {
+            return "fake";
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.zpark.wsagent.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatHistoryExporterTest {
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final ChatHistoryExporter exporter = new ChatHistoryExporter(mapper, new SimpleMeterRegistry(), 1);
+
+    @Test
+    void writesOneJsonObjectPerLine() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long n = export(out, false, sink -> {
+            for (long i = 1; i <= 3; i++) {
+                sink.accept(msg(i));
+            }
+        });
+
+        assertEquals(3, n);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n", -1);
+        assertEquals(4, lines.length, "每条消息一行，末尾以换行结束");
+        assertEquals("", lines[3]);
+        JsonNode first = mapper.readTree(lines[0]);
+        assertEquals(1, first.get("id").asLong());
+        assertEquals("2025-01-01T00:00:01", first.get("createdAt").asText());
+    }
+
+    @Test
+    void gzipOutputRoundTrips() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        export(out, true, sink -> sink.accept(msg(7)));
+
+        String text = new String(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())).readAllBytes(),
+                StandardCharsets.UTF_8);
+        assertEquals(7, mapper.readTree(text.trim()).get("id").asLong());
+    }
+
+    @Test
+    void rejectsExportBeyondConcurrencyLimitAndReleasesPermit() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread running = new Thread(() -> {
+            try {
+                export(new ByteArrayOutputStream(), false, sink -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        running.start();
+        started.await();
+
+        assertNull(exporter.tryAcquire(), "名额已满时申请失败");
+
+        release.countDown();
+        running.join();
+        assertEquals(0, export(new ByteArrayOutputStream(), false, sink -> { }));
+    }
+
+    @Test
+    void failureWhileStreamingPropagatesAndReleasesPermit() throws Exception {
+        IllegalStateException boom = new IllegalStateException("游标中断");
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> export(new ByteArrayOutputStream(), false, sink -> {
+                    sink.accept(msg(1));
+                    throw boom;
+                }));
+        assertSame(boom, thrown, "导出过程中的失败原样抛出，不当作名额不足");
+
+        ChatHistoryExporter.Permit permit = exporter.tryAcquire();
+        assertNotNull(permit);
+        permit.close();
+        permit.close();
+        assertThrows(IllegalArgumentException.class,
+                () -> exporter.export(permit, new ByteArrayOutputStream(), false, sink -> { }));
+        try (ChatHistoryExporter.Permit again = exporter.tryAcquire()) {
+            assertNotNull(again, "重复 close 不应多归还名额");
+            assertNull(exporter.tryAcquire());
+        }
+    }
+
+    private long export(ByteArrayOutputStream out, boolean gzip,
+                        Consumer<Consumer<ChatMessageEntity>> source) throws IOException {
+        try (ChatHistoryExporter.Permit permit = exporter.tryAcquire()) {
+            assertNotNull(permit);
+            return exporter.export(permit, out, gzip, source);
+        }
+    }
+
+    private static ChatMessageEntity msg(long id) {
+        ChatMessageEntity m = new ChatMessageEntity();
+        m.setId(id);
+        m.setType("GROUP_MSG");
+        m.setFromUserId("alice");
+        m.setRoomId("r");
+        m.setContent("m" + id);
+        m.setCreatedAt(LocalDateTime.of(2025, 1, 1, 0, 0).plusSeconds(id));
+        return m;
+    }
+}
@@ -0,0 +1,153 @@
+package com.zpark.wsagent.service.impl;
+
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+import com.zpark.wsagent.enums.PersistAckMode;
+import com.zpark.wsagent.enums.PersistMode;
+import com.zpark.wsagent.store.ChatMessageStore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatMessageWriteBehindQueueTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    // 每次批量写入的消息 id
+    private final List<List<Long>> batches = Collections.synchronizedList(new ArrayList<>());
+    // 打开前批量写入一直阻塞，用于模拟慢库
+    private final CountDownLatch storeGate = new CountDownLatch(1);
+    private volatile boolean gated;
+    private ChatMessageWriteBehindQueue queue;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        storeGate.countDown();
+        if (queue != null) {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void flushesAsSoonAsABatchIsFull() throws Exception {
+        queue = newQueue(PersistAckMode.COMMIT, 3, 5_000, 100);
+        List<CompletableFuture<ChatMessageEntity>> acks = new ArrayList<>();
+        for (long i = 1; i <= 6; i++) {
+            acks.add(queue.enqueue(msg(i)));
+        }
+
+        // 时间窗口 5 秒，批次凑满即落库，不等窗口结束
+        CompletableFuture.allOf(acks.toArray(CompletableFuture[]::new)).get(2, TimeUnit.SECONDS);
+        assertEquals(List.of(List.of(1L, 2L, 3L), List.of(4L, 5L, 6L)), batches);
+    }
+
+    @Test
+    void flushesAPartialBatchWhenTheWindowCloses() throws Exception {
+        queue = newQueue(PersistAckMode.COMMIT, 100, 50, 100);
+        CompletableFuture<ChatMessageEntity> first = queue.enqueue(msg(1));
+        CompletableFuture<ChatMessageEntity> second = queue.enqueue(msg(2));
+
+        assertEquals(1L, first.get(2, TimeUnit.SECONDS).getId());
+        assertEquals(2L, second.get(2, TimeUnit.SECONDS).getId());
+        assertEquals(List.of(List.of(1L, 2L)), batches);
+    }
+
+    @Test
+    void enqueueAckCompletesBeforeCommitAndCommitAckWaitsForTheStore() throws Exception {
+        gated = true;
+        queue = newQueue(PersistAckMode.ENQUEUE, 10, 10, 100);
+        assertTrue(queue.enqueue(msg(1)).isDone(), "ENQUEUE 入队即回执");
+
+        ChatMessageWriteBehindQueue commit = newQueue(PersistAckMode.COMMIT, 10, 10, 100);
+        try {
+            CompletableFuture<ChatMessageEntity> ack = commit.enqueue(msg(2));
+            Thread.sleep(100);
+            assertFalse(ack.isDone(), "COMMIT 在批次提交前不应完成");
+            storeGate.countDown();
+            assertEquals(2L, ack.get(2, TimeUnit.SECONDS).getId());
+        } finally {
+            commit.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsWhenTheQueueStaysFull() throws Exception {
+        gated = true;
+        queue = newQueue(PersistAckMode.COMMIT, 1, 10, 1);
+        CompletableFuture<ChatMessageEntity> inFlight = queue.enqueue(msg(1));
+        awaitBatches(1);
+        CompletableFuture<ChatMessageEntity> queued = queue.enqueue(msg(2));
+
+        assertThrows(IllegalStateException.class, () -> queue.enqueue(msg(3)));
+        assertEquals(1.0, meters.get("chat.persist.rejected").counter().count());
+
+        storeGate.countDown();
+        inFlight.get(2, TimeUnit.SECONDS);
+        queued.get(2, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void shutdownFlushesEverythingAcceptedAndRejectsLaterMessages() throws Exception {
+        queue = newQueue(PersistAckMode.COMMIT, 100, 5_000, 100);
+        List<CompletableFuture<ChatMessageEntity>> acks = new ArrayList<>();
+        for (long i = 1; i <= 5; i++) {
+            acks.add(queue.enqueue(msg(i)));
+        }
+
+        queue.shutdown();
+
+        for (CompletableFuture<ChatMessageEntity> ack : acks) {
+            assertTrue(ack.isDone() && !ack.isCompletedExceptionally());
+        }
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), batches.stream().flatMap(List::stream).toList());
+        assertThrows(IllegalStateException.class, () -> queue.enqueue(msg(6)));
+    }
+
+    private ChatMessageWriteBehindQueue newQueue(PersistAckMode ack, int batchSize, long flushIntervalMs, int capacity) {
+        ChatMessageStore store = (ChatMessageStore) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ChatMessageStore.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("insertBatch")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    @SuppressWarnings("unchecked")
+                    List<ChatMessageEntity> rows = (List<ChatMessageEntity>) args[0];
+                    batches.add(rows.stream().map(ChatMessageEntity::getId).toList());
+                    if (gated) {
+                        storeGate.await(5, TimeUnit.SECONDS);
+                    }
+                    return null;
+                });
+        RecentMessageCache recent = new RecentMessageCache(null, meters, false, 3, 2, false, 60, false, "wsagent:");
+        MessageSearchIndex search = new MessageSearchIndex(null, meters, false, false, 2000, 100, false);
+        return new ChatMessageWriteBehindQueue(store, recent, search, meters, PersistMode.WRITE_BEHIND, ack,
+                batchSize, flushIntervalMs, capacity, 50);
+    }
+
+    private void awaitBatches(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (batches.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, batches.size());
+    }
+
+    private static ChatMessageEntity msg(long id) {
+        ChatMessageEntity m = new ChatMessageEntity();
+        m.setId(id);
+        m.setType("GROUP_MSG");
+        m.setFromUserId("alice");
+        m.setRoomId("r");
+        m.setContent("m" + id);
+        return m;
+    }
+}
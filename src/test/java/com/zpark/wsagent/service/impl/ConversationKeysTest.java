@@ -0,0 +1,20 @@
+package com.zpark.wsagent.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationKeysTest {
+
+    @Test
+    void keyIsIndependentOfDirection() {
+        assertEquals(ConversationKeys.of("alice", "bob"), ConversationKeys.of("bob", "alice"));
+        assertEquals("5:alicebob", ConversationKeys.of("bob", "alice"));
+    }
+
+    @Test
+    void lengthPrefixKeepsDistinctPairsApart() {
+        // 直接拼接时 "ab"+"c" 与 "a"+"bc" 会冲突
+        assertNotEquals(ConversationKeys.of("ab", "c"), ConversationKeys.of("a", "bc"));
+    }
+}
@@ -0,0 +1,48 @@
+package com.zpark.wsagent.service.impl;
+
+import com.zpark.wsagent.service.OfflineInboxService.Entry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalOfflineInboxServiceImplTest {
+
+    private final LocalOfflineInboxServiceImpl inbox =
+            new LocalOfflineInboxServiceImpl(new SimpleMeterRegistry(), 3, 2, 1);
+
+    @Test
+    void entriesRemainUntilAcknowledged() {
+        inbox.offer("bob", 10, "{\"id\":\"10\"}");
+        inbox.offer("bob", 11, "{\"id\":\"11\"}");
+        inbox.offer("bob", 12, "{\"id\":\"12\"}");
+
+        List<Entry> batch = inbox.peek("bob", 2);
+        assertEquals(List.of(10L, 11L), batch.stream().map(Entry::id).toList());
+        assertEquals(3, inbox.peek("bob", 10).size(), "peek 不删除");
+
+        assertEquals(2, inbox.ack("bob", 11));
+        assertEquals(List.of(12L), inbox.peek("bob", 10).stream().map(Entry::id).toList());
+        assertEquals(0, inbox.ack("bob", 11), "重复确认无副作用");
+        assertEquals(1, inbox.ack("bob", 12));
+        assertTrue(inbox.peek("bob", 10).isEmpty());
+    }
+
+    @Test
+    void boundedPerUserAndByUserCount() {
+        for (long id = 1; id <= 5; id++) {
+            inbox.offer("bob", id, "m" + id);
+        }
+        assertEquals(List.of(3L, 4L, 5L), inbox.peek("bob", 10).stream().map(Entry::id).toList(),
+                "超出上限时丢弃最早的条目");
+
+        inbox.offer("carol", 1, "m");
+        inbox.offer("dave", 1, "m");
+        assertTrue(inbox.peek("dave", 10).isEmpty(), "用户数已达上限");
+        assertEquals(1, inbox.peek("carol", 10).size());
+    }
+}
@@ -0,0 +1,116 @@
+package com.zpark.wsagent.service.impl;
+
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+import com.zpark.wsagent.store.ChatMessageStore;
+import com.zpark.wsagent.store.MessageStream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageSearchIndexTest {
+
+    private final MessageSearchIndex index = new MessageSearchIndex(null, new SimpleMeterRegistry(), true, false, 2000, 1_000_000, false);
+    private final MessageStream room = MessageStream.room("r");
+
+    @Test
+    void tokenizesCjkAsBigramsAndLatinAsWords() {
+        assertEquals(Map.of("今天", 1, "天天", 1, "天气", 1, "hello", 1, "42", 1),
+                MessageTokenizer.termFrequencies("今天天气 Hello, 42!", 100));
+        assertEquals(List.of("好"), MessageTokenizer.queryTerms("好"));
+        assertEquals(List.of("周报", "v2"), MessageTokenizer.queryTerms("周报 V2 周报 a"));
+    }
+
+    @Test
+    void requiresAllTermsAndRanksByRelevanceThenRecency() {
+        index.index(msg(1, "明天开会讨论周报"));
+        index.index(msg(2, "周报周报周报 记得交"));
+        index.index(msg(3, "今天天气不错"));
+        index.index(msg(4, "周报已经发到群里，明天开会"));
+        index.index(msg(2, "重复写入同一条消息会被忽略"));
+
+        MessageSearchIndex.SearchHits hits = index.search(room, "周报", 0, 10);
+        assertEquals(3, hits.total());
+        assertEquals(2L, hits.ids().get(0), "词频更高的排在前面");
+        assertEquals(List.of(4L, 1L), hits.ids().subList(1, 3), "相关度相同时新消息在前");
+
+        assertEquals(List.of(4L, 1L), index.search(room, "周报 开会", 0, 10).ids());
+        assertEquals(List.of(1L), index.search(room, "周报 开会", 1, 10).ids());
+        assertEquals(0, index.search(room, "周报 天气", 0, 10).total());
+        assertEquals(0, index.search(MessageStream.room("other"), "周报", 0, 10).total());
+    }
+
+    @Test
+    void singleCharacterQueryMatchesAnyBigramContainingIt() {
+        index.index(msg(1, "天气"));
+        index.index(msg(2, "下雨"));
+        index.index(msg(3, "雨"));
+
+        assertEquals(List.of(3L, 2L), index.search(room, "雨", 0, 10).ids());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedStreamAndReloadsItFromStoreOnSearch() {
+        List<ChatMessageEntity> stored = new ArrayList<>();
+        AtomicInteger scans = new AtomicInteger();
+        ChatMessageStore store = (ChatMessageStore) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ChatMessageStore.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("scan")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    scans.incrementAndGet();
+                    MessageStream stream = (MessageStream) args[0];
+                    @SuppressWarnings("unchecked")
+                    Consumer<ChatMessageEntity> sink = (Consumer<ChatMessageEntity>) args[3];
+                    stored.stream().filter(m -> stream.key().equals(m.getRoomId())).forEach(sink);
+                    return null;
+                });
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        // 每条消息 2 个倒排项（"周报"、"v2"），上限 5：第三条写入后淘汰最久未访问的房间
+        MessageSearchIndex capped = new MessageSearchIndex(store, meters, true, false, 2000, 5, false);
+        for (ChatMessageEntity m : List.of(msg(1, "a", "周报 v2"), msg(2, "b", "周报 v2"), msg(3, "c", "周报 v2"))) {
+            stored.add(m);
+            capped.index(m);
+        }
+        assertEquals(1.0, meters.get("chat.search.evictions").counter().count());
+        assertEquals(4.0, meters.get("chat.search.postings").gauge().value());
+
+        // 已淘汰的房间不再增量写入，查询时从存储整体加载，结果完整
+        ChatMessageEntity late = msg(4, "a", "周报");
+        stored.add(late);
+        capped.index(late);
+        assertEquals(List.of(4L, 1L), capped.search(MessageStream.room("a"), "周报", 0, 10).ids());
+        assertEquals(1, scans.get());
+    }
+
+    @Test
+    void disabledInClusterMode() {
+        MessageSearchIndex clustered = new MessageSearchIndex(null, new SimpleMeterRegistry(), true, false, 2000, 100, true);
+        clustered.index(msg(1, "周报"));
+        assertFalse(clustered.isEnabled());
+        assertEquals(0, clustered.search(room, "周报", 0, 10).total());
+    }
+
+    private static ChatMessageEntity msg(long id, String content) {
+        return msg(id, "r", content);
+    }
+
+    private static ChatMessageEntity msg(long id, String roomId, String content) {
+        ChatMessageEntity m = new ChatMessageEntity();
+        m.setId(id);
+        m.setType("GROUP_MSG");
+        m.setFromUserId("alice");
+        m.setRoomId(roomId);
+        m.setContent(content);
+        return m;
+    }
+}
@@ -0,0 +1,94 @@
+package com.zpark.wsagent.service.impl;
+
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecentMessageCacheTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final RecentMessageCache cache =
+            new RecentMessageCache(null, meters, true, 3, 2, false, 60, false, "wsagent:");
+
+    @Test
+    void loadsOnceThenServesWriteThroughFromMemory() {
+        AtomicInteger loads = new AtomicInteger();
+        List<ChatMessageEntity> db = new ArrayList<>(List.of(msg(1), msg(2)));
+        String key = RecentMessageCache.roomKey("r");
+
+        assertEquals(ids(1, 2), idsOf(cache.recent(key, 3, () -> { loads.incrementAndGet(); return db; })));
+        cache.onCommitted(msg(3));
+        cache.onCommitted(msg(4));
+        assertEquals(ids(2, 3, 4), idsOf(cache.recent(key, 3, () -> { loads.incrementAndGet(); return db; })));
+        assertEquals(ids(4), idsOf(cache.recent(key, 1, List::of)));
+        assertEquals(1, loads.get());
+        assertEquals(2, lookups("hit"));
+        assertEquals(1, lookups("miss"));
+    }
+
+    @Test
+    void commitsDuringLoadAreMergedNotLost() {
+        String key = RecentMessageCache.roomKey("r");
+        List<ChatMessageEntity> result = cache.recent(key, 3, () -> {
+            // 加载期间提交了一条新消息，数据库快照里没有它
+            cache.onCommitted(msg(3));
+            return List.of(msg(1), msg(2));
+        });
+        assertEquals(ids(1, 2, 3), idsOf(result));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedKeys() {
+        cache.recent(RecentMessageCache.roomKey("a"), 1, List::of);
+        cache.recent(RecentMessageCache.roomKey("b"), 1, List::of);
+        cache.recent(RecentMessageCache.roomKey("c"), 1, List::of);
+        assertEquals(1, meters.get("chat.history.cache.evictions").counter().count());
+    }
+
+    @Test
+    void clusteredCacheNeverServesFromTheLocalTier() {
+        RecentMessageCache clustered =
+                new RecentMessageCache(null, new SimpleMeterRegistry(), true, 3, 2, false, 60, true, "wsagent:");
+        String key = RecentMessageCache.roomKey("r");
+        List<ChatMessageEntity> db = new ArrayList<>(List.of(msg(1), msg(2)));
+
+        assertEquals(ids(1, 2), idsOf(clustered.recent(key, 3, () -> db)));
+        // 另一节点提交的消息只进入数据库（本节点收不到 onCommitted），下次读取仍能看到
+        db.add(msg(3));
+        db.add(msg(4));
+        assertEquals(ids(2, 3, 4), idsOf(clustered.recent(key, 3, () -> db)));
+    }
+
+    private double lookups(String result) {
+        return meters.get("chat.history.cache.lookups").tag("tier", "local").tag("result", result).counter().count();
+    }
+
+    private static ChatMessageEntity msg(long id) {
+        ChatMessageEntity m = new ChatMessageEntity();
+        m.setId(id);
+        m.setRoomId("r");
+        m.setCreatedAt(LocalDateTime.of(2025, 1, 1, 0, 0).plusSeconds(id));
+        return m;
+    }
+
+    private static List<Long> ids(long... ids) {
+        List<Long> list = new ArrayList<>();
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static List<Long> idsOf(List<ChatMessageEntity> messages) {
+        return messages.stream().map(ChatMessageEntity::getId).toList();
+    }
+}
@@ -0,0 +1,249 @@
+package com.zpark.wsagent.store;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.zpark.wsagent.dto.CursorPage;
+import com.zpark.wsagent.dto.MessageCursor;
+import com.zpark.wsagent.emtity.ChatMessageEntity;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MmapLogChatMessageStoreTest {
+
+    private static final int SEGMENT_BYTES = 64 * 1024;
+
+    @TempDir
+    Path dir;
+
+    private final List<MmapLogChatMessageStore> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(MmapLogChatMessageStore::shutdown);
+    }
+
+    @Test
+    void readsBackAndRecoversIndexAfterRestart() {
+        MmapLogChatMessageStore store = open(168);
+        for (int i = 1; i <= 5; i++) {
+            store.insert(roomMsg("r1", i));
+        }
+        store.insert(privateMsg("5:alicebob"));
+        store.shutdown();
+
+        MmapLogChatMessageStore reopened = open(168);
+        List<ChatMessageEntity> latest = reopened.latest(MessageStream.room("r1"), 3);
+        assertEquals(List.of(3L, 4L, 5L), latest.stream().map(ChatMessageEntity::getRoomSeq).toList());
+        assertTrue(latest.get(2).getContent().startsWith("content-5 "));
+        assertEquals(5L, reopened.maxRoomSeq("r1"));
+        assertEquals(1, reopened.latest(MessageStream.conversation("5:alicebob"), 10).size());
+
+        // id 在重启后继续递增
+        ChatMessageEntity next = roomMsg("r1", 6);
+        reopened.insert(next);
+        assertEquals(7L, next.getId());
+    }
+
+    @Test
+    void truncatesTornTailOnRecovery() throws Exception {
+        MmapLogChatMessageStore store = open(168);
+        store.insert(roomMsg("r1", 1));
+        store.insert(roomMsg("r1", 2));
+        store.shutdown();
+
+        // 破坏第二条记录的负载，模拟写入中途崩溃
+        Path segment = segmentFiles().get(0);
+        int firstLen;
+        try (RandomAccessFile raf = new RandomAccessFile(segment.toFile(), "rw")) {
+            firstLen = raf.readInt();
+            raf.seek(LogSegment.HEADER_BYTES + firstLen + LogSegment.HEADER_BYTES + 3);
+            raf.writeByte(0x7f);
+        }
+
+        MmapLogChatMessageStore reopened = open(168);
+        assertEquals(List.of(1L), reopened.latest(MessageStream.room("r1"), 10).stream()
+                .map(ChatMessageEntity::getRoomSeq).toList());
+        reopened.insert(roomMsg("r1", 2));
+        assertEquals(2, reopened.latest(MessageStream.room("r1"), 10).size());
+    }
+
+    @Test
+    void rollsOverSegmentsAndPaginates() {
+        MmapLogChatMessageStore store = open(168);
+        for (int i = 1; i <= 600; i++) {
+            store.insert(roomMsg("r1", i));
+        }
+        assertTrue(segmentFiles().size() > 1, "应滚动出多个段");
+
+        assertEquals(600, store.page(MessageStream.room("r1"), new Page<>(1, 50), null, null).getTotal());
+        List<Long> seen = new ArrayList<>();
+        CursorPage<ChatMessageEntity> page = store.cursor(MessageStream.room("r1"), null, 100, true, false, null, null);
+        while (true) {
+            page.getRecords().forEach(m -> seen.add(m.getRoomSeq()));
+            if (!page.isHasMore()) {
+                break;
+            }
+            page = store.cursor(MessageStream.room("r1"),
+                    MessageCursor.decode(page.getNextCursor()), 100, true, false, null, null);
+        }
+        assertEquals(600, seen.size());
+        assertEquals(600L, seen.get(0));
+        assertEquals(1L, seen.get(599));
+
+        assertEquals(List.of(599L, 600L), store.roomAfterSeq("r1", 598, 10).stream()
+                .map(ChatMessageEntity::getRoomSeq).toList());
+    }
+
+    @Test
+    void scansWholeStreamInChunksWithTimeRange() {
+        MmapLogChatMessageStore store = open(168);
+        for (int i = 1; i <= 1200; i++) {
+            store.insert(roomMsg("r1", i));
+            if (i % 3 == 0) {
+                store.insert(roomMsg("r2", i));
+            }
+        }
+        List<Long> all = new ArrayList<>();
+        store.scan(MessageStream.room("r1"), null, null, m -> all.add(m.getRoomSeq()));
+        assertEquals(1200, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(i + 1L, all.get(i));
+        }
+
+        LocalDateTime base = LocalDateTime.of(2025, 1, 1, 0, 0);
+        List<Long> ranged = new ArrayList<>();
+        store.scan(MessageStream.room("r1"), base.plusSeconds(100), base.plusSeconds(899), m -> ranged.add(m.getRoomSeq()));
+        assertEquals(800, ranged.size());
+        assertEquals(100L, ranged.get(0));
+        assertEquals(899L, ranged.get(799));
+
+        store.scan(MessageStream.room("missing"), null, null, m -> fail("不存在的消息流不应有回调"));
+
+        int[] total = {0};
+        store.scanAll(m -> total[0]++);
+        assertEquals(1600, total[0]);
+        assertEquals(List.of(1L, 1599L), store.findByIds(MessageStream.room("r1"), List.of(1L, 1599L, 1600L, 99999L)).stream()
+                .map(ChatMessageEntity::getId).toList());
+    }
+
+    @Test
+    void failedBatchLeavesNothingBehindAndRetryIsIdempotent() {
+        MmapLogChatMessageStore store = open(168);
+        store.insert(roomMsg("r1", 0));
+
+        // 整批跨越段边界，最后一条在追加阶段失败
+        List<ChatMessageEntity> batch = new ArrayList<>();
+        for (int i = 1; i < 300; i++) {
+            batch.add(roomMsg("r1", i));
+        }
+        batch.add(new FailingOnAppend("r1", 300));
+        assertThrows(IllegalStateException.class, () -> store.insertBatch(batch));
+        assertEquals(1, store.latest(MessageStream.room("r1"), 1000).size());
+        assertEquals(1, segmentFiles().size(), "本批新建的段应被删除");
+
+        // 写后队列的逐条重试：每条只落一次，重复提交同一 id 被跳过
+        for (ChatMessageEntity m : batch.subList(0, 299)) {
+            store.insert(m);
+        }
+        store.insertBatch(batch.subList(0, 10));
+        assertEquals(300, store.latest(MessageStream.room("r1"), 1000).size());
+
+        store.shutdown();
+        assertEquals(300, open(168).latest(MessageStream.room("r1"), 1000).size(), "回滚的记录重启后也不可见");
+    }
+
+    @Test
+    void retentionDropsExpiredSegmentsAndIndexEntries() {
+        MmapLogChatMessageStore store = open(1);
+        for (int i = 1; i <= 600; i++) {
+            ChatMessageEntity m = roomMsg("old", i);
+            m.setCreatedAt(LocalDateTime.now().minusDays(2));
+            store.insert(m);
+        }
+        ChatMessageEntity fresh = roomMsg("new", 1);
+        fresh.setCreatedAt(LocalDateTime.now());
+        store.insert(fresh);
+        int before = segmentFiles().size();
+
+        store.applyRetention();
+
+        assertTrue(segmentFiles().size() < before);
+        assertTrue(store.latest(MessageStream.room("old"), 1000).size() < 600);
+        assertEquals(1, store.latest(MessageStream.room("new"), 10).size());
+    }
+
+    private MmapLogChatMessageStore open(long retentionHours) {
+        MmapLogChatMessageStore store = new MmapLogChatMessageStore(new SimpleMeterRegistry(),
+                dir.toString(), SEGMENT_BYTES, retentionHours, false);
+        opened.add(store);
+        return store;
+    }
+
+    private List<Path> segmentFiles() {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.sorted().toList();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ChatMessageEntity roomMsg(String roomId, long seq) {
+        ChatMessageEntity m = new ChatMessageEntity();
+        m.setType("GROUP_MSG");
+        m.setFromUserId("alice");
+        m.setRoomId(roomId);
+        m.setRoomSeq(seq);
+        m.setContent("content-" + seq + " " + "x".repeat(200));
+        m.setCreatedAt(LocalDateTime.of(2025, 1, 1, 0, 0).plusSeconds(seq));
+        return m;
+    }
+
+    /**
+     * 编码校验阶段正常，追加阶段（第二次读取创建时间）抛出异常
+     */
+    private static final class FailingOnAppend extends ChatMessageEntity {
+        private int reads;
+
+        FailingOnAppend(String roomId, long seq) {
+            ChatMessageEntity m = roomMsg(roomId, seq);
+            setType(m.getType());
+            setFromUserId(m.getFromUserId());
+            setRoomId(roomId);
+            setRoomSeq(seq);
+            setContent(m.getContent());
+            setCreatedAt(m.getCreatedAt());
+        }
+
+        @Override
+        public LocalDateTime getCreatedAt() {
+            if (++reads > 1) {
+                throw new IllegalStateException("模拟追加失败");
+            }
+            return super.getCreatedAt();
+        }
+    }
+
+    private static ChatMessageEntity privateMsg(String conversationKey) {
+        ChatMessageEntity m = new ChatMessageEntity();
+        m.setType("PRIVATE_MSG");
+        m.setFromUserId("alice");
+        m.setToUserId("bob");
+        m.setConversationKey(conversationKey);
+        m.setContent("hi");
+        m.setCreatedAt(LocalDateTime.of(2025, 1, 1, 0, 0));
+        return m;
+    }
+}
@@ -0,0 +1,55 @@
+package com.zpark.wsagent.support;
+
+import com.zpark.wsagent.cluster.ClusterTransport;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * 进程内 Pub/Sub 替身：代替 Redis，用于多节点扇出测试
+ * 每个 transport() 代表一个节点的连接，发布同步投递给所有订阅了该频道的节点。
+ */
+public class InMemoryClusterBroker {
+
+    // channel -> (节点连接 -> 监听器)
+    private final Map<String, Map<Node, BiConsumer<String, String>>> subscriptions = new ConcurrentHashMap<>();
+
+    public ClusterTransport transport() {
+        return new Node();
+    }
+
+    public Set<String> channels() {
+        return subscriptions.keySet();
+    }
+
+    public int subscriberCount(String channel) {
+        Map<Node, BiConsumer<String, String>> subs = subscriptions.get(channel);
+        return subs == null ? 0 : subs.size();
+    }
+
+    private final class Node implements ClusterTransport {
+
+        @Override
+        public void publish(String channel, String message) {
+            Map<Node, BiConsumer<String, String>> subs = subscriptions.get(channel);
+            if (subs != null) {
+                subs.values().forEach(l -> l.accept(channel, message));
+            }
+        }
+
+        @Override
+        public void subscribe(String channel, BiConsumer<String, String> listener) {
+            subscriptions.computeIfAbsent(channel, k -> new ConcurrentHashMap<>()).put(this, listener);
+        }
+
+        @Override
+        public void unsubscribe(String channel) {
+            subscriptions.computeIfPresent(channel, (k, subs) -> {
+                subs.remove(this);
+                return subs.isEmpty() ? null : subs;
+            });
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.zpark.wsagent.support;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 测试/基准用的轻量 WebSocketSession 桩：
+ * - 可选记录写出的消息（recording=true）
+ * - 与容器一样消费 BinaryMessage 的 ByteBuffer（推进 position），记录的是读出的字节副本；
+ *   跨会话共享同一个 BinaryMessage 时后续会话会读到空帧，测试可据此发现
+ * - close 后 isOpen 返回 false
+ */
+public class StubWebSocketSession implements WebSocketSession {
+
+    private final String id;
+    private final URI uri;
+    private final boolean recording;
+    private final String acceptedProtocol;
+    private final List<WebSocketMessage<?>> sent = new CopyOnWriteArrayList<>();
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private volatile boolean open = true;
+    private volatile CloseStatus closeStatus;
+
+    public StubWebSocketSession(String id) {
+        this(id, null, false);
+    }
+
+    public StubWebSocketSession(String id, URI uri, boolean recording) {
+        this(id, uri, recording, null);
+    }
+
+    public StubWebSocketSession(String id, URI uri, boolean recording, String acceptedProtocol) {
+        this.id = id;
+        this.uri = uri;
+        this.recording = recording;
+        this.acceptedProtocol = acceptedProtocol;
+    }
+
+    public List<WebSocketMessage<?>> getSent() {
+        return sent;
+    }
+
+    public CloseStatus getCloseStatus() {
+        return closeStatus;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public URI getUri() {
+        return uri;
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return new HttpHeaders();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return acceptedProtocol;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        if (message instanceof BinaryMessage binary) {
+            ByteBuffer payload = binary.getPayload();
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            message = new BinaryMessage(bytes, binary.isLast());
+        }
+        if (recording) {
+            sent.add(message);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        close(CloseStatus.NORMAL);
+    }
+
+    @Override
+    public void close(CloseStatus status) {
+        this.closeStatus = status;
+        this.open = false;
+    }
+}
@@ -0,0 +1,134 @@
+package com.zpark.wsagent.websocket;
+
+import com.zpark.wsagent.dto.ChatMessage;
+import com.zpark.wsagent.dto.MessageType;
+import com.zpark.wsagent.support.StubWebSocketSession;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatDispatcherTest {
+
+    private ChatSessionRegistry registry;
+    private SessionOutboundManager outbound;
+    private ChatDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        registry = new ChatSessionRegistry();
+        outbound = new SessionOutboundManager(new SimpleMeterRegistry(), 16, OverflowPolicy.DROP_OLDEST, 2, 64, 0);
+        dispatcher = new ChatDispatcher(registry, outbound);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        outbound.shutdown();
+    }
+
+    @Test
+    void broadcastSharesOneEncodedFrameAcrossMembers() throws Exception {
+        List<StubWebSocketSession> sessions = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            StubWebSocketSession s = new StubWebSocketSession("s-" + i, null, true);
+            sessions.add(s);
+            outbound.register(s);
+            registry.addSession("u-" + i, s);
+            registry.joinRoom("room-1", "u-" + i);
+        }
+        ChatMessage msg = new ChatMessage();
+        msg.setType(MessageType.GROUP_MSG);
+        msg.setRoomId("room-1");
+        msg.setContent("hello");
+        TextMessage frame = dispatcher.encode(msg);
+
+        assertEquals(5, dispatcher.broadcast(registry.getRoomMembers("room-1"), frame));
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (sessions.stream().anyMatch(s -> s.getSent().isEmpty()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        for (StubWebSocketSession s : sessions) {
+            assertEquals(1, s.getSent().size());
+            assertSame(frame, s.getSent().get(0));
+        }
+    }
+
+    @Test
+    void everyCborSessionReceivesTheFullTranscodedFrame() throws Exception {
+        List<StubWebSocketSession> sessions = joinRoom(4, i -> i == 0 ? null : WireFormat.CBOR.subProtocol());
+        ChatMessage msg = groupMessage("你好");
+        TextMessage frame = dispatcher.encode(msg);
+
+        assertEquals(4, dispatcher.broadcast(registry.getRoomMembers("room-1"), frame));
+
+        awaitDelivery(sessions);
+        assertSame(frame, sessions.get(0).getSent().get(0));
+        for (StubWebSocketSession s : sessions.subList(1, sessions.size())) {
+            BinaryMessage binary = (BinaryMessage) s.getSent().get(0);
+            assertTrue(binary.getPayloadLength() > 0, "会话 " + s.getId() + " 收到空帧");
+            assertEquals(msg, dispatcher.decode(binary));
+        }
+    }
+
+    @Test
+    void everyDeflateSessionReceivesTheFullCompressedFrame() throws Exception {
+        DeflateFrameCodec deflate = new DeflateFrameCodec(new SimpleMeterRegistry(), true, 64, 6, false);
+        dispatcher = new ChatDispatcher(registry, outbound, deflate);
+        List<StubWebSocketSession> sessions = joinRoom(4, i -> WireFormat.JSON_DEFLATE.subProtocol());
+        TextMessage frame = dispatcher.encode(groupMessage("智能体回复：" + "检索结果如下。".repeat(40)));
+
+        assertEquals(4, dispatcher.broadcast(registry.getRoomMembers("room-1"), frame));
+
+        awaitDelivery(sessions);
+        for (StubWebSocketSession s : sessions) {
+            BinaryMessage binary = (BinaryMessage) s.getSent().get(0);
+            Inflater inflater = new Inflater(true);
+            inflater.setDictionary(DeflateFrameCodec.DICTIONARY.getBytes(StandardCharsets.UTF_8));
+            inflater.setInput(binary.getPayload().array());
+            byte[] out = new byte[64 * 1024];
+            int len = inflater.inflate(out);
+            assertEquals(frame.getPayload(), new String(out, 0, len, StandardCharsets.UTF_8), "会话 " + s.getId());
+        }
+    }
+
+    private List<StubWebSocketSession> joinRoom(int count, IntFunction<String> protocol) {
+        List<StubWebSocketSession> sessions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StubWebSocketSession s = new StubWebSocketSession("s-" + i, null, true, protocol.apply(i));
+            sessions.add(s);
+            outbound.register(s);
+            registry.addSession("u-" + i, s);
+            registry.joinRoom("room-1", "u-" + i);
+        }
+        return sessions;
+    }
+
+    private static ChatMessage groupMessage(String content) {
+        ChatMessage msg = new ChatMessage();
+        msg.setType(MessageType.GROUP_MSG);
+        msg.setRoomId("room-1");
+        msg.setId(42L);
+        msg.setContent(content);
+        return msg;
+    }
+
+    private static void awaitDelivery(List<StubWebSocketSession> sessions) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (sessions.stream().anyMatch(s -> s.getSent().isEmpty()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
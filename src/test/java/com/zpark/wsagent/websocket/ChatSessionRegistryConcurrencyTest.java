@@ -0,0 +1,156 @@
+package com.zpark.wsagent.websocket;
+
+import com.zpark.wsagent.support.StubWebSocketSession;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChatSessionRegistry 并发压力测试（多线程竞争同一房间/同一用户）
+ * 旧实现中 leaveRoom / removeSession 的"判空后删除"会吞掉并发加入，这里反复制造该竞争窗口。
+ */
+class ChatSessionRegistryConcurrencyTest {
+
+    private static final int ITERATIONS = 500_000;
+
+    @Test
+    void concurrentJoinIsNeverLostWhenLastMemberLeaves() throws Exception {
+        ChatSessionRegistry registry = new ChatSessionRegistry();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            // A 反复加入/离开，使房间不断在"空"与"非空"之间切换
+            Future<?> churn = pool.submit(() -> {
+                await(start);
+                for (int i = 0; i < ITERATIONS; i++) {
+                    registry.joinRoom("room", "a");
+                    registry.leaveRoom("room", "a");
+                }
+            });
+            // B 加入后立即检查自己是否仍在房间内：任何一次被吞掉的加入都会被计数
+            Future<Integer> lost = pool.submit(() -> {
+                await(start);
+                int lostJoins = 0;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    registry.joinRoom("room", "b");
+                    if (!registry.getRoomMembers("room").contains("b")
+                            || !registry.getRoomsOfUser("b").contains("room")) {
+                        lostJoins++;
+                    }
+                    registry.leaveRoom("room", "b");
+                }
+                return lostJoins;
+            });
+            start.countDown();
+            churn.get(60, TimeUnit.SECONDS);
+            assertEquals(0, lost.get(60, TimeUnit.SECONDS));
+            assertTrue(registry.getRoomMembers("room").isEmpty());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentAddSessionIsNeverLostWhenAnotherSessionCloses() throws Exception {
+        ChatSessionRegistry registry = new ChatSessionRegistry();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> churn = pool.submit(() -> {
+                await(start);
+                for (int i = 0; i < ITERATIONS; i++) {
+                    StubWebSocketSession s = new StubWebSocketSession("a-" + i);
+                    registry.addSession("u", s);
+                    registry.removeSession(s);
+                }
+            });
+            Future<Integer> lost = pool.submit(() -> {
+                await(start);
+                int lostSessions = 0;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    StubWebSocketSession s = new StubWebSocketSession("b-" + i);
+                    registry.addSession("u", s);
+                    if (!registry.getSessionsByUserId("u").contains(s)) {
+                        lostSessions++;
+                    }
+                    registry.removeSession(s);
+                }
+                return lostSessions;
+            });
+            start.countDown();
+            churn.get(60, TimeUnit.SECONDS);
+            assertEquals(0, lost.get(60, TimeUnit.SECONDS));
+            assertTrue(registry.getSessionsByUserId("u").isEmpty());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void membershipAndReverseIndexStayConsistentUnderRandomContention() throws Exception {
+        ChatSessionRegistry registry = new ChatSessionRegistry();
+        int threads = 8;
+        int users = 16;
+        int rooms = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int worker = t;
+            futures.add(pool.submit(() -> {
+                await(start);
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                for (int i = 0; i < 50_000; i++) {
+                    String user = "u" + rnd.nextInt(users);
+                    String room = "r" + rnd.nextInt(rooms);
+                    switch (rnd.nextInt(4)) {
+                        case 0 -> registry.joinRoom(room, user);
+                        case 1 -> registry.leaveRoom(room, user);
+                        case 2 -> registry.addSession(user, new StubWebSocketSession("s-" + worker + "-" + i));
+                        default -> {
+                            for (var s : List.copyOf(registry.getSessionsByUserId(user))) {
+                                registry.removeSession(s);
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        for (int r = 0; r < rooms; r++) {
+            String room = "r" + r;
+            for (String user : registry.getRoomMembers(room)) {
+                assertTrue(registry.getRoomsOfUser(user).contains(room), user + " in " + room);
+            }
+        }
+        for (int u = 0; u < users; u++) {
+            String user = "u" + u;
+            for (String room : registry.getRoomsOfUser(user)) {
+                assertTrue(registry.getRoomMembers(room).contains(user), room + " has " + user);
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.zpark.wsagent.websocket;
+
+import com.zpark.wsagent.dto.ChatMessage;
+import com.zpark.wsagent.dto.MessageType;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientMessageDeduplicatorTest {
+
+    private final ClientMessageDeduplicator dedup =
+            new ClientMessageDeduplicator(null, new SimpleMeterRegistry(), true, 60, 2, false, "wsagent:");
+
+    @Test
+    void retryWaitsForAndReceivesOriginalAck() throws Exception {
+        assertNull(dedup.claim("alice", "c1"));
+        CompletableFuture<ChatMessage> retry = dedup.claim("alice", "c1");
+        assertNotNull(retry);
+        assertFalse(retry.isDone(), "原消息仍在处理中");
+
+        ChatMessage ack = ack("c1", 42L);
+        dedup.complete("alice", "c1", ack);
+        assertSame(ack, retry.get());
+        assertSame(ack, dedup.claim("alice", "c1").get());
+
+        // 不同发送方、缺少 clientMsgId 的消息互不影响
+        assertNull(dedup.claim("bob", "c1"));
+        assertNull(dedup.claim("alice", null));
+        assertNull(dedup.claim("alice", null));
+    }
+
+    @Test
+    void failedOriginalAllowsRetry() {
+        assertNull(dedup.claim("alice", "c1"));
+        CompletableFuture<ChatMessage> waiting = dedup.claim("alice", "c1");
+
+        dedup.release("alice", "c1", new IllegalStateException("写队列已满"));
+        assertTrue(waiting.isCompletedExceptionally());
+        assertNull(dedup.claim("alice", "c1"), "失败后重试应重新处理");
+    }
+
+    @Test
+    void boundedByMaxEntries() {
+        dedup.claim("alice", "c1");
+        dedup.claim("alice", "c2");
+        dedup.claim("alice", "c3");
+        assertNull(dedup.claim("alice", "c1"), "最早的条目被淘汰");
+        assertNotNull(dedup.claim("alice", "c3"));
+    }
+
+    private static ChatMessage ack(String clientMsgId, Long id) {
+        ChatMessage ack = new ChatMessage();
+        ack.setType(MessageType.ACK);
+        ack.setClientMsgId(clientMsgId);
+        ack.setId(id);
+        return ack;
+    }
+}
@@ -0,0 +1,98 @@
+package com.zpark.wsagent.websocket;
+
+import com.zpark.wsagent.support.StubWebSocketSession;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeflateFrameCodecTest {
+
+    private static final byte[] DICTIONARY = DeflateFrameCodec.DICTIONARY.getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void compressesLargeFramesWithPresetDictionaryAndSkipsSmallOnes() throws Exception {
+        DeflateFrameCodec codec = new DeflateFrameCodec(new SimpleMeterRegistry(), true, 64, 6, false);
+        TextMessage small = new TextMessage("{\"type\":\"ACK\"}");
+        assertNull(codec.compress(small));
+
+        TextMessage large = new TextMessage(groupFrame("智能体回复：" + "检索结果如下。".repeat(40)));
+        BinaryMessage compressed = new BinaryMessage(codec.compress(large));
+        assertTrue(compressed.getPayloadLength() < large.getPayloadLength() / 2);
+
+        Inflater inflater = newInflater();
+        assertEquals(large.getPayload(), inflate(inflater, compressed));
+    }
+
+    @Test
+    void contextTakeoverCompressesFramesOnOneStreamInWriteOrder() throws Exception {
+        DeflateFrameCodec codec = new DeflateFrameCodec(new SimpleMeterRegistry(), true, 64, 6, true);
+        StubWebSocketSession raw = new StubWebSocketSession("s-1", null, true, WireFormat.JSON_DEFLATE.subProtocol());
+        WebSocketSession session = codec.outboundSession(raw);
+        assertNotSame(raw, session);
+        StubWebSocketSession plain = new StubWebSocketSession("s-2");
+        assertSame(plain, codec.outboundSession(plain), "未协商压缩的连接不包装");
+
+        String first = groupFrame("今天下午的评审会议改到四点，地点不变，请大家准时参加。".repeat(3));
+        String second = groupFrame("今天下午的评审会议改到四点半，地点不变，请大家准时参加。".repeat(3));
+        session.sendMessage(new TextMessage(first));
+        session.sendMessage(new TextMessage(second));
+        session.sendMessage(new TextMessage("{\"type\":\"ACK\"}"));
+
+        BinaryMessage f1 = (BinaryMessage) raw.getSent().get(0);
+        BinaryMessage f2 = (BinaryMessage) raw.getSent().get(1);
+        assertInstanceOf(TextMessage.class, raw.getSent().get(2));
+        assertTrue(f2.getPayloadLength() < f1.getPayloadLength() / 2, "第二帧引用了第一帧的历史");
+
+        Inflater inflater = newInflater();
+        assertEquals(first, inflate(inflater, f1));
+        assertEquals(second, inflate(inflater, f2));
+
+        // 注销时释放压缩流，之后的写出失败而不是使用已释放的 Deflater
+        raw.close();
+        session.close();
+        assertThrows(IOException.class, () -> session.sendMessage(new TextMessage(first)));
+    }
+
+    private static String groupFrame(String content) {
+        return "{\"type\":\"GROUP_MSG\",\"fromUserId\":\"agent\",\"toUserId\":null,\"roomId\":\"room-1\",\"content\":\""
+                + content + "\",\"clientMsgId\":null,\"seq\":7,\"id\":\"123456789\"}";
+    }
+
+    /**
+     * raw deflate 不携带字典标识，客户端在解压前设置同一预置字典
+     */
+    private static Inflater newInflater() {
+        Inflater inflater = new Inflater(true);
+        inflater.setDictionary(DICTIONARY);
+        return inflater;
+    }
+
+    private static String inflate(Inflater inflater, WebSocketMessage<?> frame) throws Exception {
+        ByteBuffer payload = (ByteBuffer) frame.getPayload();
+        byte[] in = new byte[payload.remaining()];
+        payload.duplicate().get(in);
+        inflater.setInput(in);
+        byte[] out = new byte[64 * 1024];
+        int len = 0;
+        while (true) {
+            int n = inflater.inflate(out, len, out.length - len);
+            len += n;
+            if (n == 0 || inflater.finished()) {
+                break;
+            }
+        }
+        return new String(out, 0, len, StandardCharsets.UTF_8);
+    }
+}
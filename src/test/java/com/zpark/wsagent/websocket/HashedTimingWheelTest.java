@@ -0,0 +1,50 @@
+package com.zpark.wsagent.websocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashedTimingWheelTest {
+
+    // 4 个槽、10ms 一格：一圈 40ms，便于覆盖跨圈任务
+    private final HashedTimingWheel wheel = new HashedTimingWheel("test-wheel", 10, 4);
+
+    @AfterEach
+    void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    void firesInDeadlineOrderAcrossRounds() throws Exception {
+        List<Integer> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        wheel.schedule(() -> { fired.add(150); done.countDown(); }, 150, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { fired.add(20); done.countDown(); }, 20, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { fired.add(70); done.countDown(); }, 70, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 140, "跨圈任务不应提前执行");
+        assertEquals(List.of(20, 70, 150), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelledTasksDoNotFire() throws Exception {
+        List<String> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        HashedTimingWheel.Timeout cancelled = wheel.schedule(() -> fired.add("cancelled"), 30, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { fired.add("kept"); done.countDown(); }, 60, TimeUnit.MILLISECONDS);
+        cancelled.cancel();
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of("kept"), fired);
+        assertTrue(cancelled.isCancelled());
+    }
+}
@@ -0,0 +1,78 @@
+package com.zpark.wsagent.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zpark.wsagent.dto.ChatMessage;
+import com.zpark.wsagent.dto.MessageType;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonFrameCodecTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonFrameCodec codec = new JsonFrameCodec();
+
+    @Test
+    void encodesExactlyLikeObjectMapper() throws Exception {
+        String tricky = "引号\" 反斜杠\\ 换行\n 制表\t 控制\u0001 斜杠/ 表情😀";
+
+        ChatMessage ack = message(MessageType.ACK, null, null, tricky, "c-1");
+        ack.setId(1_234_567_890_123L);
+        ChatMessage error = message(MessageType.ERROR, null, null, "发送过于频繁", null);
+        error.setRetryAfterMs(250L);
+        ChatMessage pong = message(MessageType.HEARTBEAT, null, null, null, "c-2");
+        ChatMessage untyped = message(null, null, null, null, null);
+        ChatMessage group = message(MessageType.GROUP_MSG, "alice", "room-1", tricky, "c-3");
+        group.setSeq(42L);
+        group.setId(7L);
+
+        for (ChatMessage msg : List.of(ack, error, pong, untyped, group)) {
+            assertEquals(mapper.writeValueAsString(msg), codec.encode(msg).getPayload());
+        }
+    }
+
+    @Test
+    void decodesLikeObjectMapper() throws Exception {
+        List<String> frames = List.of(
+                "{\"type\":\"GROUP_MSG\",\"roomId\":\"room-1\",\"content\":\"大家好\\n\\u0041\",\"clientMsgId\":\"c-1\"}",
+                "{\"type\":\"RESUME\",\"roomId\":\"room-1\",\"seq\":42}",
+                "{\"type\":\"INBOX_ACK\",\"id\":\"1234567890123\",\"seq\":\"7\"}",
+                "{ \"type\" : \"PRIVATE_MSG\", \"toUserId\" : \"bob\", \"content\" : null, \"id\" : 5 }",
+                "{\"type\":null,\"content\":123}",
+                "{}");
+        for (String frame : frames) {
+            assertEquals(mapper.readValue(frame, ChatMessage.class), codec.decode(frame), frame);
+        }
+        assertNull(codec.decode("null"));
+    }
+
+    @Test
+    void rejectsWhatObjectMapperRejects() {
+        List<String> frames = List.of(
+                "{\"type\":\"NOPE\"}",
+                "{\"type\":\"ACK\",\"unknown\":1}",
+                "{\"seq\":\"abc\"}",
+                "{\"content\":{\"nested\":true}}",
+                "[1,2]",
+                "",
+                "{\"type\":\"ACK\"");
+        for (String frame : frames) {
+            assertThrows(IOException.class, () -> mapper.readValue(frame, ChatMessage.class), frame);
+            assertThrows(IOException.class, () -> codec.decode(frame), frame);
+        }
+    }
+
+    private static ChatMessage message(MessageType type, String from, String roomId, String content, String clientMsgId) {
+        ChatMessage msg = new ChatMessage();
+        msg.setType(type);
+        msg.setFromUserId(from);
+        msg.setRoomId(roomId);
+        msg.setContent(content);
+        msg.setClientMsgId(clientMsgId);
+        return msg;
+    }
+}
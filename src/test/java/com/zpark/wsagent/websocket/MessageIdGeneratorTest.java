@@ -0,0 +1,82 @@
+package com.zpark.wsagent.websocket;
+
+import com.zpark.wsagent.cluster.ClusterFanout;
+import com.zpark.wsagent.cluster.ClusterTransport;
+import com.zpark.wsagent.support.InMemoryClusterBroker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageIdGeneratorTest {
+
+    @Test
+    void idsAreUniqueAndIncreasingPerThreadUnderContention() throws Exception {
+        MessageIdGenerator generator = new MessageIdGenerator(7);
+        int threads = 8;
+        int perThread = 50_000;
+        long[][] results = new long[threads][perThread];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long[] out = results[t];
+            Thread w = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    out[i] = generator.nextId();
+                }
+            });
+            workers.add(w);
+            w.start();
+        }
+        start.countDown();
+        for (Thread w : workers) {
+            w.join();
+        }
+
+        Set<Long> all = new HashSet<>();
+        for (long[] out : results) {
+            for (int i = 0; i < perThread; i++) {
+                assertTrue(all.add(out[i]), "ID 重复");
+                if (i > 0) {
+                    assertTrue(out[i] > out[i - 1], "同一线程内 ID 必须递增");
+                }
+            }
+        }
+        assertEquals(threads * perThread, all.size());
+    }
+
+    @Test
+    void encodesNodeAndTimestamp() {
+        long before = System.currentTimeMillis();
+        MessageIdGenerator generator = new MessageIdGenerator(1023);
+        long id = generator.nextId();
+
+        assertTrue(id > 0);
+        assertEquals(1023, (id >>> MessageIdGenerator.SEQUENCE_BITS) & MessageIdGenerator.MAX_NODE);
+        assertTrue(MessageIdGenerator.timestampOf(id) >= before);
+        assertTrue(MessageIdGenerator.timestampOf(id) <= System.currentTimeMillis() + 1);
+        assertThrows(IllegalArgumentException.class, () -> new MessageIdGenerator(1024));
+    }
+
+    @Test
+    void clusterRequiresExplicitNodeId() {
+        ClusterFanout single = new ClusterFanout(new ChatSessionRegistry(), null, (ClusterTransport) null, null, "", "wsagent:");
+        assertTrue(new MessageIdGenerator(single, -1).nodeId() <= MessageIdGenerator.MAX_NODE);
+
+        ClusterFanout clustered = new ClusterFanout(new ChatSessionRegistry(), null,
+                new InMemoryClusterBroker().transport(), null, "node-a", "wsagent:");
+        assertThrows(IllegalStateException.class, () -> new MessageIdGenerator(clustered, -1));
+        assertEquals(5, new MessageIdGenerator(clustered, 5).nodeId());
+    }
+}
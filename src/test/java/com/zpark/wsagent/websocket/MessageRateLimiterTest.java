@@ -0,0 +1,55 @@
+package com.zpark.wsagent.websocket;
+
+import com.zpark.wsagent.dto.ChatMessage;
+import com.zpark.wsagent.dto.MessageType;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageRateLimiterTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    private MessageRateLimiter limiter(String rules) {
+        return new MessageRateLimiter(null, meters, true, rules, 1000, false, "wsagent:");
+    }
+
+    @Test
+    void allowsBurstThenRejectsWithRetryAfter() {
+        MessageRateLimiter limiter = limiter("GROUP_MSG.user=1/3");
+        ChatMessage msg = message(MessageType.GROUP_MSG, "room-1");
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("s-1", "alice", msg));
+        }
+        long wait = limiter.tryAcquire("s-2", "alice", msg);
+        assertTrue(wait > 0 && wait <= 1000, "retry-after=" + wait);
+        // 其他用户与不受规则约束的类型不受影响
+        assertEquals(0, limiter.tryAcquire("s-3", "bob", msg));
+        assertEquals(0, limiter.tryAcquire("s-1", "alice", message(MessageType.PRIVATE_MSG, null)));
+        assertEquals(1.0, meters.get("chat.ratelimit.rejected").tag("scope", "user").counter().count());
+    }
+
+    @Test
+    void rejectedMessageDoesNotConsumeOtherBuckets() {
+        MessageRateLimiter limiter = limiter("*.session=100/100,GROUP_MSG.room=1/2");
+
+        assertEquals(0, limiter.tryAcquire("s-1", "alice", message(MessageType.GROUP_MSG, "room-1")));
+        assertEquals(0, limiter.tryAcquire("s-1", "alice", message(MessageType.GROUP_MSG, "room-1")));
+        for (int i = 0; i < 200; i++) {
+            assertTrue(limiter.tryAcquire("s-1", "alice", message(MessageType.GROUP_MSG, "room-1")) > 0);
+        }
+        // 被房间桶拒绝的消息归还了会话令牌：会话桶仍有余量
+        assertEquals(0, limiter.tryAcquire("s-1", "alice", message(MessageType.GROUP_MSG, "room-2")));
+    }
+
+    private static ChatMessage message(MessageType type, String roomId) {
+        ChatMessage msg = new ChatMessage();
+        msg.setType(type);
+        msg.setRoomId(roomId);
+        return msg;
+    }
+}
@@ -0,0 +1,60 @@
+package com.zpark.wsagent.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomReplayBufferTest {
+
+    private final RoomReplayBuffer buffer =
+            new RoomReplayBuffer(new ChatSessionRegistry(), new SimpleMeterRegistry(), 4, 16);
+
+    @Test
+    void replaysGapWithinWindowInSeqOrder() {
+        // 乱序到达（集群内不同节点分配的序号）
+        buffer.record("r", 2, frame(2));
+        buffer.record("r", 1, frame(1));
+        buffer.record("r", 3, frame(3));
+
+        List<TextMessage> frames = buffer.since("r", 1);
+        assertEquals(List.of("2", "3"), frames.stream().map(TextMessage::getPayload).toList());
+        assertTrue(buffer.since("r", 3).isEmpty());
+    }
+
+    @Test
+    void missesWhenGapIsOlderThanWindowOrHasHoles() {
+        for (long s = 1; s <= 6; s++) {
+            buffer.record("r", s, frame(s));
+        }
+        assertNull(buffer.since("r", 1), "seq 2 已被覆盖");
+        assertEquals(4, buffer.since("r", 2).size());
+
+        buffer.record("r", 8, frame(8)); // 7 未到达
+        assertNull(buffer.since("r", 5));
+        assertNull(buffer.since("unknown", 0));
+    }
+
+    @Test
+    void missesWhenAuthoritativeLatestSeqIsAheadOfBuffer() {
+        buffer.record("r", 1, frame(1));
+        buffer.record("r", 2, frame(2));
+
+        // 本节点退订期间其他节点产生了 3..5，本地缓冲仍停在 2
+        assertNull(buffer.since("r", 2, 5));
+        assertNull(buffer.since("r", 0, 5));
+        assertEquals(2, buffer.since("r", 0, 2).size());
+        assertTrue(buffer.since("r", 2, 2).isEmpty());
+
+        buffer.remove("r");
+        assertNull(buffer.since("r", 0, 2));
+    }
+
+    private static TextMessage frame(long seq) {
+        return new TextMessage(Long.toString(seq));
+    }
+}
@@ -0,0 +1,59 @@
+package com.zpark.wsagent.websocket;
+
+import com.zpark.wsagent.support.StubWebSocketSession;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionHeartbeatMonitorTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final ChatSessionRegistry registry = new ChatSessionRegistry();
+    private final SessionOutboundManager outbound =
+            new SessionOutboundManager(meters, 16, OverflowPolicy.DROP_OLDEST, 1, 64, 0);
+    private final SessionHeartbeatMonitor monitor = new SessionHeartbeatMonitor(registry, outbound, meters, true,
+            Duration.ofMillis(50), Duration.ofMillis(200), 10, 64);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        monitor.shutdown();
+        outbound.shutdown();
+    }
+
+    @Test
+    void pingsIdleSessionsAndReapsSilentOnes() throws Exception {
+        StubWebSocketSession silent = connect("s-1", "alice");
+        StubWebSocketSession active = connect("s-2", "bob");
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (silent.isOpen() && System.currentTimeMillis() < deadline) {
+            monitor.touch(active);
+            Thread.sleep(20);
+        }
+
+        assertEquals(CloseStatus.SESSION_NOT_RELIABLE, silent.getCloseStatus());
+        assertFalse(registry.hasLocalSession("alice"), "经 removeSession 移除");
+        assertTrue(silent.getSent().stream().anyMatch(m -> m instanceof PingMessage), "静默期间先发送 Ping");
+
+        assertTrue(active.isOpen());
+        assertTrue(registry.hasLocalSession("bob"));
+        assertEquals(1.0, meters.get("chat.ws.heartbeat.reaped").counter().count());
+        assertEquals(1.0, meters.get("chat.ws.heartbeat.sessions").gauge().value());
+    }
+
+    private StubWebSocketSession connect(String sessionId, String userId) {
+        StubWebSocketSession session = new StubWebSocketSession(sessionId, null, true);
+        outbound.register(session);
+        registry.addSession(userId, session);
+        monitor.register(session);
+        return session;
+    }
+}
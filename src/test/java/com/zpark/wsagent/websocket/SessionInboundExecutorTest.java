@@ -0,0 +1,133 @@
+package com.zpark.wsagent.websocket;
+
+import com.zpark.wsagent.support.StubWebSocketSession;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionInboundExecutorTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        pool.shutdownNow();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void runsEachSessionSeriallyInArrivalOrder() throws Exception {
+        SessionInboundExecutor inbound = new SessionInboundExecutor(meters, pool, 10_000);
+        StubWebSocketSession a = new StubWebSocketSession("a");
+        StubWebSocketSession b = new StubWebSocketSession("b");
+        List<Integer> seenA = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> seenB = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger runningA = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(2000);
+
+        for (int i = 0; i < 1000; i++) {
+            int n = i;
+            assertTrue(inbound.execute(a, () -> {
+                if (runningA.incrementAndGet() > 1) {
+                    overlapped.set(true);
+                }
+                seenA.add(n);
+                runningA.decrementAndGet();
+                done.countDown();
+            }));
+            assertTrue(inbound.execute(b, () -> {
+                seenB.add(n);
+                done.countDown();
+            }));
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(overlapped.get(), "同一会话的消息不应并发执行");
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, seenA.get(i));
+            assertEquals(i, seenB.get(i));
+        }
+    }
+
+    @Test
+    void rejectsBeyondMaxPendingAndClosedLanesStayClosed() throws Exception {
+        SessionInboundExecutor inbound = new SessionInboundExecutor(meters, pool, 2);
+        StubWebSocketSession session = new StubWebSocketSession("s");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+
+        assertTrue(inbound.execute(session, () -> {
+            started.countDown();
+            await(release);
+            ran.incrementAndGet();
+            finished.countDown();
+        }));
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        assertTrue(inbound.execute(session, ran::incrementAndGet));
+        assertTrue(inbound.execute(session, ran::incrementAndGet));
+        assertFalse(inbound.execute(session, ran::incrementAndGet), "积压超过上限应被拒绝");
+        assertEquals(1.0, meters.get("chat.ws.inbound.rejected").counter().count());
+        assertEquals(2.0, pending());
+
+        // 连接关闭：丢弃排队中的消息，正在执行的消息照常完成，计数不为负
+        session.close(CloseStatus.NORMAL);
+        inbound.remove(session);
+        assertEquals(0.0, pending());
+        assertFalse(inbound.execute(session, ran::incrementAndGet), "关闭后提交的任务应被拒绝");
+        assertEquals(0.0, pending());
+        assertEquals(1.0, meters.get("chat.ws.inbound.rejected").counter().count(), "关闭后的拒绝不计入积压拒绝");
+
+        release.countDown();
+        assertTrue(finished.await(2, TimeUnit.SECONDS));
+        // 等执行线程退出，确认被丢弃的任务不会再执行
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(2, TimeUnit.SECONDS));
+        assertEquals(1, ran.get());
+        assertEquals(0.0, pending());
+    }
+
+    @Test
+    void containerModeRunsInlineOnTheCallerThread() {
+        SessionInboundExecutor inbound = new SessionInboundExecutor(meters, ExecutionMode.CONTAINER, 1);
+        assertEquals(ExecutionMode.CONTAINER, inbound.getMode());
+        Thread caller = Thread.currentThread();
+        AtomicBoolean inline = new AtomicBoolean();
+        assertTrue(inbound.execute(new StubWebSocketSession("s"), () -> inline.set(Thread.currentThread() == caller)));
+        assertTrue(inline.get());
+
+        // 不支持虚拟线程的 JVM 上 VIRTUAL 回退为 CONTAINER
+        ExecutionMode expected = Runtime.version().feature() >= 21 ? ExecutionMode.VIRTUAL : ExecutionMode.CONTAINER;
+        assertEquals(expected, new SessionInboundExecutor(new SimpleMeterRegistry(), ExecutionMode.VIRTUAL, 1).getMode());
+    }
+
+    private double pending() {
+        return meters.get("chat.ws.inbound.pending").gauge().value();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.zpark.wsagent.websocket;
+
+import com.zpark.wsagent.support.StubWebSocketSession;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionOutboundManagerTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    // 只有一个共享写线程：慢连接若继续占用它，其他会话会被整段阻塞
+    private final SessionOutboundManager outbound = new SessionOutboundManager(meters, 64, OverflowPolicy.DROP_OLDEST,
+            1, 64, 0, 50, 4, ExecutionMode.CONTAINER);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        outbound.shutdown();
+    }
+
+    @Test
+    void slowSessionMovesOffTheSharedWriterAndKeepsItsOrder() throws Exception {
+        StubWebSocketSession slow = new StubWebSocketSession("slow", null, true) {
+            @Override
+            public void sendMessage(WebSocketMessage<?> message) {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.sendMessage(message);
+            }
+        };
+        StubWebSocketSession fast = new StubWebSocketSession("fast", null, true);
+        outbound.register(slow);
+        outbound.register(fast);
+
+        for (int i = 1; i <= 3; i++) {
+            outbound.send(slow, new TextMessage("slow-" + i));
+        }
+        awaitSent(slow, 1, 2000);
+
+        // 慢连接的后续写出已转到慢写线程池，共享写线程空闲
+        long start = System.currentTimeMillis();
+        outbound.send(fast, new TextMessage("fast-1"));
+        awaitSent(fast, 1, 2000);
+        assertTrue(System.currentTimeMillis() - start < 200, "快连接不应等待慢连接的写出");
+        assertTrue(slow.getSent().size() < 3);
+        assertEquals(1.0, meters.get("chat.ws.outbound.slow-sessions").gauge().value());
+
+        awaitSent(slow, 3, 3000);
+        assertEquals(List.of("slow-1", "slow-2", "slow-3"),
+                slow.getSent().stream().map(m -> ((TextMessage) m).getPayload()).toList());
+        assertEquals(1.0, meters.get("chat.ws.outbound.slow-writes").counter().count());
+    }
+
+    @Test
+    void unregisteredSessionIsNeverWrittenOnTheCallerThread() {
+        StubWebSocketSession session = new StubWebSocketSession("unregistered", null, true);
+        assertFalse(outbound.send(session, new TextMessage("x")));
+        assertTrue(session.getSent().isEmpty());
+
+        outbound.register(session);
+        outbound.unregister(session);
+        assertFalse(outbound.send(session, new TextMessage("y")));
+        assertTrue(session.getSent().isEmpty());
+    }
+
+    private static void awaitSent(StubWebSocketSession session, int count, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (session.getSent().size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, session.getSent().size());
+    }
+}